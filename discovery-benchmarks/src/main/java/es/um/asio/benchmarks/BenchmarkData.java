@@ -0,0 +1,140 @@
+package es.um.asio.benchmarks;
+
+import com.google.gson.internal.LinkedTreeMap;
+import data.DataGenerator;
+import data.SyntheticData;
+import es.um.asio.service.model.TripleObject;
+import es.um.asio.service.model.stats.StatsHandler;
+import es.um.asio.service.service.impl.CacheServiceImp;
+import org.javatuples.Pair;
+
+import java.util.*;
+
+/**
+ * Inputs of the benchmarks built from the test fixtures of discovery-service.
+ * <p>
+ * String pairs come from the {@link SyntheticData} generators (modified and different pairs, half each) with words of
+ * {@link #WORD_LENGTH} characters, so that a pair has roughly the requested length. Entities take the attribute names
+ * of the {@link DataGenerator} triple objects, fill them with those strings and wrap each value in as many nested
+ * objects as requested, which exercises the flattened paths ("a.b.c") of the comparators.
+ */
+public final class BenchmarkData {
+
+    public static final String NODE = "um";
+    public static final String TRIPLE_STORE = "trellis";
+    public static final String CLASS_NAME = "benchmark";
+    public static final int WORD_LENGTH = 8;
+
+    private BenchmarkData() {}
+
+    /*
+     * Pares de cadenas de unos length caracteres: la mitad con modificaciones (palabras desordenadas, caracteres
+     * cambiados y truncados) y la otra mitad distintas
+     */
+    public static List<Pair<String,String>> stringPairs(int length, int size) {
+        SyntheticData sd = SyntheticData.getInstance();
+        int nWords = Math.max(1, (length + 1) / (WORD_LENGTH + 1));
+        int nCharacters = (nWords == 1) ? length : WORD_LENGTH;
+        List<Pair<String,String>> pairs = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            if (i % 2 == 0)
+                pairs.add(stringPair(sd.generateAllModificationsString(nWords, nCharacters, 1, 1, i % 4 == 0)));
+            else
+                pairs.add(stringPair(sd.generateDifferentString(nWords, nCharacters)));
+        }
+        return pairs;
+    }
+
+    /*
+     * Parejas de entidades con los atributos de DataGenerator, valores de unos length caracteres y nesting niveles de
+     * objetos anidados por atributo. Los pares alternan entidades parecidas y distintas
+     */
+    public static List<Pair<TripleObject,TripleObject>> entityPairs(int length, int nesting, int size) throws Exception {
+        List<String> attributes = attributeNames();
+        List<Pair<String,String>> values = stringPairs(length, size * attributes.size());
+        List<Pair<TripleObject,TripleObject>> pairs = new ArrayList<>(size);
+        int v = 0;
+        for (int i = 0; i < size; i++) {
+            LinkedTreeMap<String,Object> attributes1 = new LinkedTreeMap<>();
+            LinkedTreeMap<String,Object> attributes2 = new LinkedTreeMap<>();
+            for (String attribute : attributes) {
+                Pair<String,String> value = values.get(v++);
+                attributes1.put(attribute, nest(attribute, value.getValue0(), nesting));
+                attributes2.put(attribute, nest(attribute, value.getValue1(), nesting));
+            }
+            pairs.add(new Pair<>(tripleObject(String.valueOf(2 * i), attributes1), tripleObject(String.valueOf(2 * i + 1), attributes2)));
+        }
+        return pairs;
+    }
+
+    /*
+     * Cache con las entidades y sus estadisticas generadas, como la usan los servicios
+     */
+    public static CacheServiceImp cache(List<Pair<TripleObject,TripleObject>> pairs) throws Exception {
+        CacheServiceImp cache = new DataGenerator().getCacheServiceImp();
+        for (Pair<TripleObject,TripleObject> pair : pairs) {
+            cache.addTripleObject(NODE, TRIPLE_STORE, pair.getValue0());
+            cache.addTripleObject(NODE, TRIPLE_STORE, pair.getValue1());
+        }
+        cache.setStatsHandler(new StatsHandler());
+        cache.generateEntityStats();
+        return cache;
+    }
+
+    /*
+     * Entidad con valores unicos (id, nombre, URI) y repetidos (tipo, ciudad, palabras clave, años), con numeros como
+     * los deja Gson (Double) y un objeto anidado
+     */
+    public static TripleObject cachedEntity(int i, String className, Random random) {
+        LinkedTreeMap<String,Object> attributes = new LinkedTreeMap<>();
+        attributes.put("id", String.valueOf(i));
+        attributes.put("name", "name-" + Integer.toHexString(random.nextInt()));
+        attributes.put("surname", "surname" + random.nextInt(2000));
+        attributes.put("type", "type" + random.nextInt(8));
+        attributes.put("year", (double) (1950 + random.nextInt(70)));
+        attributes.put("birthDate", String.format("%d-%02d-%02d", 1950 + random.nextInt(70), 1 + random.nextInt(12), 1 + random.nextInt(28)));
+        attributes.put("active", random.nextBoolean());
+        attributes.put("keywords", new ArrayList<>(Arrays.asList("keyword" + random.nextInt(200), "keyword" + random.nextInt(200))));
+        LinkedTreeMap<String,Object> address = new LinkedTreeMap<>();
+        address.put("city", "city" + random.nextInt(50));
+        address.put("country", "country" + random.nextInt(10));
+        attributes.put("address", address);
+        TripleObject to = new TripleObject(NODE, TRIPLE_STORE, className, attributes);
+        to.setId(String.valueOf(i));
+        to.setLocalURI("http://localhost/" + className + "/" + i);
+        to.setLastModification(1600000000000L + i);
+        return to;
+    }
+
+    /*
+     * Los generadores de SyntheticData devuelven Pair sin tipo, aunque siempre con dos String
+     */
+    @SuppressWarnings("unchecked")
+    private static Pair<String,String> stringPair(Pair<?,?> pair) {
+        return (Pair<String,String>) pair;
+    }
+
+    private static List<String> attributeNames() throws Exception {
+        List<TripleObject> tripleObjects = new DataGenerator().getTripleObjects();
+        return new ArrayList<>(tripleObjects.get(0).getAttributes().keySet());
+    }
+
+    private static Object nest(String attribute, String value, int nesting) {
+        Object nested = value;
+        for (int level = nesting; level > 0; level--) {
+            LinkedTreeMap<String,Object> object = new LinkedTreeMap<>();
+            object.put(attribute + "-" + level, nested);
+            nested = object;
+        }
+        return nested;
+    }
+
+    private static TripleObject tripleObject(String id, LinkedTreeMap<String,Object> attributes) {
+        TripleObject to = new TripleObject(NODE, TRIPLE_STORE, CLASS_NAME, attributes);
+        to.setId(id);
+        to.setLocalURI("http://localhost/" + id);
+        to.setLastModification(new Date().getTime());
+        to.buildFlattenAttributes();
+        return to;
+    }
+}
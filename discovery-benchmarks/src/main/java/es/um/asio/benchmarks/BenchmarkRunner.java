@@ -0,0 +1,31 @@
+package es.um.asio.benchmarks;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Entry point of the benchmarks jar.
+ * <p>
+ * Accepts the same arguments as the JMH command line (benchmark regexps, {@code -p length=32}, {@code -rf json}...)
+ * and always adds the GC profiler, so every run reports the allocation rate ({@code gc.alloc.rate.norm}, bytes per
+ * operation) next to the throughput.
+ */
+public class BenchmarkRunner {
+
+    private BenchmarkRunner() {}
+
+    public static void main(String[] args) throws RunnerException, CommandLineOptionException {
+        CommandLineOptions commandLine = new CommandLineOptions(args);
+        ChainedOptionsBuilder options = new OptionsBuilder()
+                .parent(commandLine)
+                .addProfiler(GCProfiler.class);
+        if (commandLine.getIncludes().isEmpty())
+            options.include("es.um.asio.benchmarks.*");
+        new Runner(options.build()).run();
+    }
+}
@@ -0,0 +1,101 @@
+package es.um.asio.benchmarks.cache;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonObject;
+import com.google.gson.reflect.TypeToken;
+import es.um.asio.benchmarks.BenchmarkData;
+import es.um.asio.service.model.TripleObject;
+import es.um.asio.service.model.cache.CacheFile;
+import es.um.asio.service.model.cache.CacheSnapshot;
+import es.um.asio.service.model.cache.TripleObjectIndex;
+import org.openjdk.jmh.annotations.*;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.lang.reflect.Type;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cold start of the cache from the JSON stored in Redis against the local binary file ({@link CacheFile}).
+ * <p>
+ * {@code redis} parses the JSON of every class as {@code RedisServiceHelper.getTripleMap} does (the value of each
+ * {@code TRIPLES_MAP} key is already in memory, so the network transfer is not measured) and {@code file} reads the
+ * binary file; both then build the {@link TripleObjectIndex} of the cache, as {@code CacheServiceImp.setTriplesMap}.
+ * The instances are spread over {@link #classes} classes, which is what the file decodes in parallel. The size of the
+ * JSON and of the file are logged at setup.
+ */
+@State(Scope.Benchmark)
+@Fork(value = 1, jvmArgs = {"-Xms4g", "-Xmx4g"})
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+public class CacheFileBenchmark {
+
+    @Param({"100000", "500000"})
+    public int size;
+
+    @Param({"20"})
+    public int classes;
+
+    private final Logger logger = LoggerFactory.getLogger(CacheFileBenchmark.class);
+    private final Type type = new TypeToken<Map<String, TripleObject>>() {}.getType();
+    private Gson gson;
+    private Map<String, String> redisValues;
+    private Path directory;
+    private Path file;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        gson = new GsonBuilder()
+                .setPrettyPrinting()
+                .excludeFieldsWithoutExposeAnnotation()
+                .create();
+        TripleObjectIndex index = new TripleObjectIndex();
+        Random random = new Random(size);
+        for (int i = 0; i < size; i++) {
+            index.put(BenchmarkData.NODE, BenchmarkData.TRIPLE_STORE, BenchmarkData.cachedEntity(i, "class" + (i % classes), random));
+        }
+        // Lo que guarda RedisServiceImp.setTriplesMap por cada clase
+        redisValues = new LinkedHashMap<>();
+        for (Map.Entry<String, Map<String, TripleObject>> classEntry : index.toNestedMap().get(BenchmarkData.NODE).get(BenchmarkData.TRIPLE_STORE).entrySet()) {
+            JsonObject json = gson.fromJson(gson.toJson(classEntry.getValue()), JsonObject.class);
+            redisValues.put(classEntry.getKey(), json.toString());
+        }
+        directory = Files.createTempDirectory("cache-file-benchmark");
+        file = directory.resolve("triples-map.bin");
+        try (CacheSnapshot snapshot = index.pin()) {
+            long bytes = CacheFile.write(snapshot, file);
+            long jsonBytes = redisValues.values().stream().mapToLong(String::length).sum();
+            logger.info("JSON in Redis: {} chars, local file: {} bytes", jsonBytes, bytes);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(file);
+        Files.deleteIfExists(directory);
+    }
+
+    @Benchmark
+    public TripleObjectIndex redis() {
+        Map<String, Map<String, Map<String, Map<String, TripleObject>>>> triplesMap = new HashMap<>();
+        Map<String, Map<String, TripleObject>> tripleStore = new HashMap<>();
+        for (Map.Entry<String, String> value : redisValues.entrySet()) {
+            Map<String, TripleObject> instances = gson.fromJson(value.getValue(), type);
+            tripleStore.put(value.getKey(), instances);
+        }
+        triplesMap.put(BenchmarkData.NODE, Collections.singletonMap(BenchmarkData.TRIPLE_STORE, tripleStore));
+        return TripleObjectIndex.of(triplesMap);
+    }
+
+    @Benchmark
+    public TripleObjectIndex file() throws IOException {
+        return TripleObjectIndex.of(CacheFile.read(file));
+    }
+}
@@ -0,0 +1,137 @@
+package es.um.asio.benchmarks.cache;
+
+import com.google.gson.internal.LinkedTreeMap;
+import es.um.asio.benchmarks.BenchmarkData;
+import es.um.asio.service.model.TripleObject;
+import es.um.asio.service.model.TypedValue;
+import es.um.asio.service.model.cache.ClassColumnStore;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jol.info.GraphLayout;
+import org.slf4j.LoggerFactory;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Heap footprint of the instances of a class in the cache, as {@link TripleObject} objects (with the flattened and typed
+ * attributes that the comparators build) against a {@link ClassColumnStore}.
+ * <p>
+ * {@code footprint} loads the class and measures the retained graph of the map with JOL: the result to read is the
+ * {@code bytesPerEntity} counter (the time includes the JOL walk). {@code scan} reads a flattened attribute of every
+ * instance, which is the cost of going through the flyweight views. Entities mix unique values (ids, names, URIs) with
+ * repeated ones (types, cities, keywords, years), as the classes of the triple stores do.
+ */
+@State(Scope.Benchmark)
+@Fork(1)
+public class ClassColumnStoreBenchmark {
+
+    @Param({"10000", "100000"})
+    public int size;
+
+    @Param({"objects", "columnar"})
+    public String storage;
+
+    private List<TripleObject> entities;
+    private Map<String, TripleObject> instances;
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Footprint {
+        public long bytes;
+        public long bytesPerEntity;
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Random random = new Random(size);
+        entities = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            entities.add(entity(i, random));
+        }
+        instances = load();
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    @Warmup(iterations = 0)
+    @Measurement(iterations = 1)
+    public Map<String, TripleObject> footprint(Footprint footprint) {
+        Map<String, TripleObject> loaded = load();
+        // El logger de TripleObject es compartido, no forma parte de lo que ocupa cada entidad
+        GraphLayout layout = GraphLayout.parseInstance(loaded).subtract(GraphLayout.parseInstance(LoggerFactory.getLogger(TripleObject.class)));
+        footprint.bytes = layout.totalSize();
+        footprint.bytesPerEntity = layout.totalSize() / size;
+        return loaded;
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    @Warmup(iterations = 3, time = 1)
+    @Measurement(iterations = 5, time = 1)
+    public void scan(Blackhole blackhole) {
+        for (TripleObject to : instances.values()) {
+            List<TypedValue> city = to.getTypedValueFromFlattenAttributes("address.city");
+            blackhole.consume(city);
+        }
+    }
+
+    /*
+     * Carga la clase como lo hace la cache. Los objetos llevan sus atributos aplanados y tipados, que los comparadores
+     * construyen la primera vez que los usan y quedan en la cache
+     */
+    private Map<String, TripleObject> load() {
+        Map<String, TripleObject> map;
+        if (storage.equals("columnar")) {
+            map = new ClassColumnStore(BenchmarkData.NODE, BenchmarkData.TRIPLE_STORE, BenchmarkData.CLASS_NAME);
+        } else {
+            map = new HashMap<>();
+        }
+        for (TripleObject to : entities) {
+            if (map instanceof ClassColumnStore) {
+                map.put(to.getId(), to);
+            } else {
+                TripleObject copy = copy(to);
+                copy.buildFlattenAttributes();
+                map.put(copy.getId(), copy);
+            }
+        }
+        return map;
+    }
+
+    private static TripleObject copy(TripleObject to) {
+        TripleObject copy = new TripleObject(BenchmarkData.NODE, BenchmarkData.TRIPLE_STORE, BenchmarkData.CLASS_NAME, to.getAttributes());
+        copy.setId(to.getId());
+        copy.setLocalURI(to.getLocalURI());
+        copy.setLastModification(to.getLastModification());
+        return copy;
+    }
+
+    /*
+     * Entidad con valores unicos (id, nombre, URI) y repetidos (tipo, ciudad, palabras clave, años), con numeros como
+     * los deja Gson (Double), una fecha, una lista y un objeto anidado
+     */
+    private static TripleObject entity(int i, Random random) {
+        LinkedTreeMap<String,Object> attributes = new LinkedTreeMap<>();
+        attributes.put("id", String.valueOf(i));
+        attributes.put("name", "name-" + Integer.toHexString(random.nextInt()));
+        attributes.put("surname", "surname" + random.nextInt(2000));
+        attributes.put("type", "type" + random.nextInt(8));
+        attributes.put("year", (double) (1950 + random.nextInt(70)));
+        attributes.put("birthDate", String.format("%d-%02d-%02d", 1950 + random.nextInt(70), 1 + random.nextInt(12), 1 + random.nextInt(28)));
+        attributes.put("active", random.nextBoolean());
+        attributes.put("keywords", new ArrayList<>(Arrays.asList("keyword" + random.nextInt(200), "keyword" + random.nextInt(200), "keyword" + random.nextInt(200))));
+        LinkedTreeMap<String,Object> address = new LinkedTreeMap<>();
+        address.put("city", "city" + random.nextInt(50));
+        address.put("country", "country" + random.nextInt(10));
+        address.put("number", (double) random.nextInt(300));
+        attributes.put("address", address);
+        TripleObject to = new TripleObject(BenchmarkData.NODE, BenchmarkData.TRIPLE_STORE, BenchmarkData.CLASS_NAME, attributes);
+        to.setId(String.valueOf(i));
+        to.setLocalURI("http://localhost/" + BenchmarkData.CLASS_NAME + "/" + i);
+        to.setLastModification(1600000000000L + i);
+        return to;
+    }
+}
@@ -0,0 +1,98 @@
+package es.um.asio.benchmarks.comparators;
+
+import es.um.asio.benchmarks.BenchmarkData;
+import es.um.asio.service.comparators.aggregators.AccordSimilarity;
+import es.um.asio.service.comparators.aggregators.SimilarityCache;
+import es.um.asio.service.comparators.aggregators.SimilarityEnsemble;
+import es.um.asio.service.comparators.aggregators.SimilarityProfiles;
+import org.javatuples.Pair;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The aggregated string similarity for each profile, with the similarity cache disabled so that every operation is a
+ * cold comparison: complete, bounded by the manual threshold and one query against a batch of candidates.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AccordSimilarityBenchmark {
+
+    private static final int PAIRS = 256;
+    private static final int BATCH = 16;
+    private static final float THRESHOLD = 0.7f;
+
+    @Param({SimilarityEnsemble.FULL, SimilarityEnsemble.FAST})
+    public String profile;
+
+    @Param({"8", "32", "128"})
+    public int length;
+
+    private SimilarityEnsemble ensemble;
+    private String[] first;
+    private String[] second;
+    private List<List<String>> candidates;
+    private float[] out;
+    private int index;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        SimilarityCache.configure(false, SimilarityCache.DEFAULT_MAXIMUM_SIZE);
+        ensemble = SimilarityProfiles.get(profile);
+        List<Pair<String,String>> pairs = BenchmarkData.stringPairs(length, PAIRS);
+        first = new String[PAIRS];
+        second = new String[PAIRS];
+        candidates = new ArrayList<>(PAIRS);
+        for (int i = 0; i < PAIRS; i++) {
+            first[i] = pairs.get(i).getValue0();
+            second[i] = pairs.get(i).getValue1();
+        }
+        for (int i = 0; i < PAIRS; i++) {
+            List<String> batch = new ArrayList<>(BATCH);
+            for (int j = 0; j < BATCH; j++) {
+                batch.add(second[(i + j) & (PAIRS - 1)]);
+            }
+            candidates.add(batch);
+        }
+        out = new float[BATCH];
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        SimilarityCache.configure(true, SimilarityCache.DEFAULT_MAXIMUM_SIZE);
+    }
+
+    @Benchmark
+    public float calculateAccordSimilarity() {
+        int i = next();
+        return AccordSimilarity.calculateAccordSimilarity(ensemble, first[i], second[i], 0f);
+    }
+
+    @Benchmark
+    public float calculateAccordSimilarityBounded() {
+        int i = next();
+        return AccordSimilarity.calculateAccordSimilarity(ensemble, first[i], second[i], THRESHOLD);
+    }
+
+    /*
+     * Una consulta contra BATCH candidatos; el resultado se expresa por par para compararlo con los anteriores
+     */
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public float[] calculateAccordSimilarityOneToMany() {
+        int i = next();
+        AccordSimilarity.calculateAccordSimilarity(ensemble, first[i], candidates.get(i), null, out);
+        return out;
+    }
+
+    private int next() {
+        index = (index + 1) & (PAIRS - 1);
+        return index;
+    }
+}
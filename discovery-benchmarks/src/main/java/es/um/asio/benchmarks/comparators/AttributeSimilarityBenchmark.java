@@ -0,0 +1,125 @@
+package es.um.asio.benchmarks.comparators;
+
+import es.um.asio.benchmarks.BenchmarkData;
+import es.um.asio.service.comparators.aggregators.SimilarityCache;
+import es.um.asio.service.comparators.aggregators.SimilarityProfiles;
+import es.um.asio.service.comparators.attribute.AttributeSimilarity;
+import es.um.asio.service.comparators.entities.SimilarityValue;
+import es.um.asio.service.model.TypedValue;
+import org.javatuples.Pair;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link AttributeSimilarity#compare(List, List, float)} for each branch of the type detection. The length only changes
+ * the string and list values; narrow the run with {@code -p type=string} when measuring one branch.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AttributeSimilarityBenchmark {
+
+    private static final int PAIRS = 256;
+    private static final int LIST_SIZE = 4;
+    private static final float WEIGHT = 0.5f;
+
+    @Param({"int", "long", "float", "double", "boolean", "date", "string", "list"})
+    public String type;
+
+    @Param({"8", "32", "128"})
+    public int length;
+
+    private List<List<Object>> first;
+    private List<List<Object>> second;
+    private List<List<TypedValue>> typedFirst;
+    private List<List<TypedValue>> typedSecond;
+    private int index;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        SimilarityCache.configure(false, SimilarityCache.DEFAULT_MAXIMUM_SIZE);
+        Random random = new Random(PAIRS);
+        List<Pair<String,String>> strings = BenchmarkData.stringPairs(length, PAIRS * LIST_SIZE);
+        first = new ArrayList<>(PAIRS);
+        second = new ArrayList<>(PAIRS);
+        for (int i = 0; i < PAIRS; i++) {
+            switch (type) {
+                case "int":
+                    add(random.nextInt(1000), random.nextInt(1000));
+                    break;
+                case "long":
+                    add(Integer.MAX_VALUE + 1L + random.nextInt(1000), Integer.MAX_VALUE + 1L + random.nextInt(1000));
+                    break;
+                case "float":
+                    add(random.nextInt(1000) + 0.25f, random.nextInt(1000) + 0.25f);
+                    break;
+                case "double":
+                    // Solo los numeros que no caben en long ni tienen forma de float se comparan como double
+                    add((random.nextInt(9) + 1) + "0000000000000000000", (random.nextInt(9) + 1) + "0000000000000000000");
+                    break;
+                case "boolean":
+                    add(random.nextBoolean() ? "true" : "false", random.nextBoolean() ? "true" : "false");
+                    break;
+                case "date":
+                    add(String.format("2020-%02d-%02d", random.nextInt(12) + 1, random.nextInt(28) + 1), String.format("2020-%02d-%02d", random.nextInt(12) + 1, random.nextInt(28) + 1));
+                    break;
+                case "string":
+                    add(strings.get(i).getValue0(), strings.get(i).getValue1());
+                    break;
+                case "list":
+                    List<Object> l1 = new ArrayList<>();
+                    List<Object> l2 = new ArrayList<>();
+                    for (int j = 0; j < LIST_SIZE; j++) {
+                        l1.add(strings.get(i * LIST_SIZE + j).getValue0());
+                        l2.add(strings.get(i * LIST_SIZE + j).getValue1());
+                    }
+                    first.add(l1);
+                    second.add(l2);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown type " + type);
+            }
+        }
+        typedFirst = new ArrayList<>(PAIRS);
+        typedSecond = new ArrayList<>(PAIRS);
+        for (int i = 0; i < PAIRS; i++) {
+            typedFirst.add(TypedValue.of(first.get(i)));
+            typedSecond.add(TypedValue.of(second.get(i)));
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        SimilarityCache.configure(true, SimilarityCache.DEFAULT_MAXIMUM_SIZE);
+    }
+
+    @Benchmark
+    public SimilarityValue compare() {
+        int i = next();
+        return AttributeSimilarity.compare(first.get(i), second.get(i), WEIGHT);
+    }
+
+    /*
+     * Valores tipados de antemano, como los de TripleObject.getTypedValueFromFlattenAttributes
+     */
+    @Benchmark
+    public SimilarityValue compareTyped() {
+        int i = next();
+        return AttributeSimilarity.compareTyped(typedFirst.get(i), typedSecond.get(i), WEIGHT, 0f, SimilarityProfiles.getDefault());
+    }
+
+    private void add(Object a1, Object a2) {
+        first.add(Collections.singletonList(a1));
+        second.add(Collections.singletonList(a2));
+    }
+
+    private int next() {
+        index = (index + 1) & (PAIRS - 1);
+        return index;
+    }
+}
@@ -0,0 +1,94 @@
+package es.um.asio.benchmarks.comparators;
+
+import es.um.asio.benchmarks.BenchmarkData;
+import es.um.asio.service.comparators.aggregators.SimilarityCache;
+import es.um.asio.service.comparators.entities.EntityComparator;
+import es.um.asio.service.comparators.entities.EntitySimilarityObj;
+import es.um.asio.service.model.TripleObject;
+import es.um.asio.service.model.stats.StatsHandler;
+import org.javatuples.Pair;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link EntityComparator#compare} over the flattened attributes, weighted with the relevant attributes of the class
+ * so the compiled plan is reused as in the entity link jobs: complete, bounded by the manual threshold and one entity
+ * against a batch.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EntityComparatorBenchmark {
+
+    private static final int PAIRS = 64;
+    private static final int BATCH = 16;
+    private static final float THRESHOLD = 0.7f;
+
+    @Param({"8", "32"})
+    public int length;
+
+    @Param({"0", "1", "3"})
+    public int nesting;
+
+    private TripleObject[] first;
+    private TripleObject[] second;
+    private List<List<TripleObject>> candidates;
+    private StatsHandler.RelevantAttributes stats;
+    private int index;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        SimilarityCache.configure(false, SimilarityCache.DEFAULT_MAXIMUM_SIZE);
+        List<Pair<TripleObject,TripleObject>> pairs = BenchmarkData.entityPairs(length, nesting, PAIRS);
+        stats = BenchmarkData.cache(pairs).getStatsHandler().getRelevantAttributes(BenchmarkData.NODE, BenchmarkData.TRIPLE_STORE, BenchmarkData.CLASS_NAME);
+        first = new TripleObject[PAIRS];
+        second = new TripleObject[PAIRS];
+        candidates = new ArrayList<>(PAIRS);
+        for (int i = 0; i < PAIRS; i++) {
+            first[i] = pairs.get(i).getValue0();
+            second[i] = pairs.get(i).getValue1();
+        }
+        for (int i = 0; i < PAIRS; i++) {
+            List<TripleObject> batch = new ArrayList<>(BATCH);
+            for (int j = 0; j < BATCH; j++) {
+                batch.add(second[(i + j) & (PAIRS - 1)]);
+            }
+            candidates.add(batch);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        SimilarityCache.configure(true, SimilarityCache.DEFAULT_MAXIMUM_SIZE);
+    }
+
+    @Benchmark
+    public EntitySimilarityObj compare() {
+        int i = next();
+        return EntityComparator.compare(first[i], second[i], stats);
+    }
+
+    @Benchmark
+    public EntitySimilarityObj compareBounded() {
+        int i = next();
+        return EntityComparator.compare(first[i], second[i], stats, THRESHOLD);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public List<EntitySimilarityObj> compareOneToMany() {
+        int i = next();
+        return EntityComparator.compare(first[i], candidates.get(i), stats, THRESHOLD);
+    }
+
+    private int next() {
+        index = (index + 1) & (PAIRS - 1);
+        return index;
+    }
+}
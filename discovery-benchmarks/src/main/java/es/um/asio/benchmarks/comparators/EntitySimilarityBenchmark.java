@@ -0,0 +1,87 @@
+package es.um.asio.benchmarks.comparators;
+
+import com.google.gson.Gson;
+import es.um.asio.benchmarks.BenchmarkData;
+import es.um.asio.service.comparators.aggregators.SimilarityCache;
+import es.um.asio.service.comparators.entities.EntitySimilarity;
+import es.um.asio.service.comparators.entities.EntitySimilarityObj;
+import es.um.asio.service.model.TripleObject;
+import es.um.asio.service.model.stats.AttributeStats;
+import es.um.asio.service.model.stats.EntityStats;
+import org.javatuples.Pair;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link EntitySimilarity#compare} over the raw attribute trees, with the attribute stats of the class as the LOD
+ * link search uses it.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EntitySimilarityBenchmark {
+
+    private static final int PAIRS = 64;
+    private static final Gson GSON = new Gson();
+
+    @Param({"8", "32"})
+    public int length;
+
+    @Param({"0", "1", "3"})
+    public int nesting;
+
+    private TripleObject[] first;
+    private TripleObject[] second;
+    private Map<String, AttributeStats> attributesMap;
+    private int index;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        SimilarityCache.configure(false, SimilarityCache.DEFAULT_MAXIMUM_SIZE);
+        List<Pair<TripleObject,TripleObject>> pairs = BenchmarkData.entityPairs(length, nesting, PAIRS);
+        EntityStats entityStats = BenchmarkData.cache(pairs).getStatsHandler().getAttributesMap(BenchmarkData.NODE, BenchmarkData.TRIPLE_STORE, BenchmarkData.CLASS_NAME);
+        attributesMap = new HashMap<>(entityStats.getAttValues());
+        first = new TripleObject[PAIRS];
+        second = new TripleObject[PAIRS];
+        for (int i = 0; i < PAIRS; i++) {
+            first[i] = pairs.get(i).getValue0();
+            second[i] = pairs.get(i).getValue1();
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        SimilarityCache.configure(true, SimilarityCache.DEFAULT_MAXIMUM_SIZE);
+    }
+
+    @Benchmark
+    public EntitySimilarityObj compare() {
+        int i = next();
+        return EntitySimilarity.compare(second[i], attributesMap, first[i].getAttributes(), second[i].getAttributes());
+    }
+
+    /*
+     * Referencia: compare precedido de la copia por JSON que antes se hacia en cada nivel (aqui solo la del primero), para ver la
+     * diferencia de memoria asignada por operacion
+     */
+    @Benchmark
+    public EntitySimilarityObj compareJsonCopy() {
+        int i = next();
+        Object o1 = GSON.fromJson(GSON.toJson(first[i].getAttributes()), LinkedHashMap.class);
+        Object o2 = GSON.fromJson(GSON.toJson(second[i].getAttributes()), LinkedHashMap.class);
+        return EntitySimilarity.compare(second[i], attributesMap, o1, o2);
+    }
+
+    private int next() {
+        index = (index + 1) & (PAIRS - 1);
+        return index;
+    }
+}
@@ -0,0 +1,127 @@
+package es.um.asio.benchmarks.comparators;
+
+import es.um.asio.benchmarks.BenchmarkData;
+import es.um.asio.service.comparators.aggregators.SimilarityCache;
+import es.um.asio.service.comparators.blocking.MinHashLshIndex;
+import es.um.asio.service.comparators.entities.EntityComparator;
+import es.um.asio.service.model.TripleObject;
+import es.um.asio.service.model.stats.StatsHandler;
+import org.javatuples.Pair;
+import org.openjdk.jmh.annotations.*;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link MinHashLshIndex} as candidate generator of a class: build time, query throughput and recall.
+ * <p>
+ * The footprint of the index is the allocation of {@code build} ({@code gc.alloc.rate.norm}), next to the estimate
+ * logged at setup. Elasticsearch can not run inside the benchmark, so recall is measured against the pairs that the
+ * comparison itself keeps: for every entity whose partner reaches the manual threshold with
+ * {@link EntityComparator#compare}, {@code recall} counts whether the partner is among the top-k candidates. The ratio
+ * {@code found / relevant} of its counters is the recall of the index at that k.
+ */
+@State(Scope.Thread)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MinHashLshIndexBenchmark {
+
+    private static final int TOP_K = 50;
+    private static final float THRESHOLD = 0.7f;
+
+    @Param({"1000", "10000"})
+    public int size;
+
+    @Param({"8", "32"})
+    public int length;
+
+    private final Logger logger = LoggerFactory.getLogger(MinHashLshIndexBenchmark.class);
+    private List<TripleObject> entities;
+    private TripleObject[] partners;
+    private boolean[] relevant;
+    private MinHashLshIndex index;
+    private int position;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        SimilarityCache.configure(false, SimilarityCache.DEFAULT_MAXIMUM_SIZE);
+        List<Pair<TripleObject,TripleObject>> pairs = BenchmarkData.entityPairs(length, 0, size / 2);
+        StatsHandler.RelevantAttributes stats = BenchmarkData.cache(pairs).getStatsHandler().getRelevantAttributes(BenchmarkData.NODE, BenchmarkData.TRIPLE_STORE, BenchmarkData.CLASS_NAME);
+        entities = new ArrayList<>(size);
+        partners = new TripleObject[size];
+        relevant = new boolean[size];
+        for (Pair<TripleObject,TripleObject> pair : pairs) {
+            boolean similar = EntityComparator.compare(pair.getValue0(), pair.getValue1(), stats).getSimilarity() >= THRESHOLD;
+            partners[entities.size()] = pair.getValue1();
+            relevant[entities.size()] = similar;
+            entities.add(pair.getValue0());
+            partners[entities.size()] = pair.getValue0();
+            relevant[entities.size()] = similar;
+            entities.add(pair.getValue1());
+        }
+        index = MinHashLshIndex.build(entities);
+        logger.info("LSH index [size: {}, length: {}]: ~{} KB", size, length, index.getEstimatedMemoryBytes() / 1024);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        SimilarityCache.configure(true, SimilarityCache.DEFAULT_MAXIMUM_SIZE);
+    }
+
+    /*
+     * Contadores de recall: pares relevantes consultados y de ellos, encontrados entre los topK candidatos
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Recall {
+        public long relevant;
+        public long found;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            relevant = 0;
+            found = 0;
+        }
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public MinHashLshIndex build() {
+        return MinHashLshIndex.build(entities);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.SECONDS)
+    public List<MinHashLshIndex.Candidate> query() {
+        return index.query(entities.get(next()), TOP_K);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.SECONDS)
+    public List<MinHashLshIndex.Candidate> recall(Recall recall) {
+        int i = next();
+        List<MinHashLshIndex.Candidate> candidates = index.query(entities.get(i), TOP_K);
+        if (relevant[i]) {
+            recall.relevant++;
+            for (MinHashLshIndex.Candidate candidate : candidates) {
+                if (candidate.getTripleObject() == partners[i]) {
+                    recall.found++;
+                    break;
+                }
+            }
+        }
+        return candidates;
+    }
+
+    private int next() {
+        position = (position + 1 == entities.size()) ? 0 : position + 1;
+        return position;
+    }
+}
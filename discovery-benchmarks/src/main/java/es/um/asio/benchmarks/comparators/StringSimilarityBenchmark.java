@@ -0,0 +1,76 @@
+package es.um.asio.benchmarks.comparators;
+
+import es.um.asio.benchmarks.BenchmarkData;
+import es.um.asio.service.comparators.strings.PreparedString;
+import es.um.asio.service.comparators.strings.Similarity;
+import org.javatuples.Pair;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Every string metric of {@code comparators.strings}, on raw strings (preparation included) and on already prepared
+ * strings (kernel only).
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StringSimilarityBenchmark {
+
+    private static final int PAIRS = 256;
+
+    @Param({"BlockDistanceSimilarityImp", "CosineSimilarityImp", "DiceDistanceSimilarityImp",
+            "EuclideanDistanceSimilarityImp", "GeneralizedJaccardSimilarityImp", "JaccardSimilarityImp",
+            "JaroSimilarityImp", "JaroWinklerSimilarityImp", "LevenshteinSimilarityImp",
+            "LongestCommonSubStringSimilarityImp", "LongestCommonSubsequenceSimilarityImp",
+            "NeedlemanWunchSimilarityImp", "OverlapCoefficientSimilarityImp", "SimonWhiteSimilarityImp",
+            "SmithWetermanGotohSimilarityImp", "SmithWetermanSimilarityImp"})
+    public String algorithm;
+
+    @Param({"8", "32", "128"})
+    public int length;
+
+    private Similarity similarity;
+    private String[] first;
+    private String[] second;
+    private PreparedString[] preparedFirst;
+    private PreparedString[] preparedSecond;
+    private int index;
+
+    @Setup(Level.Trial)
+    public void setUp() throws ReflectiveOperationException {
+        similarity = (Similarity) Class.forName(Similarity.class.getPackage().getName() + "." + algorithm).getDeclaredConstructor().newInstance();
+        List<Pair<String,String>> pairs = BenchmarkData.stringPairs(length, PAIRS);
+        first = new String[PAIRS];
+        second = new String[PAIRS];
+        preparedFirst = new PreparedString[PAIRS];
+        preparedSecond = new PreparedString[PAIRS];
+        for (int i = 0; i < PAIRS; i++) {
+            first[i] = pairs.get(i).getValue0();
+            second[i] = pairs.get(i).getValue1();
+            preparedFirst[i] = PreparedString.of(first[i]);
+            preparedSecond[i] = PreparedString.of(second[i]);
+        }
+    }
+
+    @Benchmark
+    public float calculateSimilarity() {
+        int i = next();
+        return similarity.calculateSimilarity(first[i], second[i]);
+    }
+
+    @Benchmark
+    public float calculateSimilarityPrepared() {
+        int i = next();
+        return similarity.calculateSimilarity(preparedFirst[i], preparedSecond[i]);
+    }
+
+    private int next() {
+        index = (index + 1) & (PAIRS - 1);
+        return index;
+    }
+}
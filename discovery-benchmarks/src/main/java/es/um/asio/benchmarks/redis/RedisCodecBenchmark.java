@@ -0,0 +1,92 @@
+package es.um.asio.benchmarks.redis;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonObject;
+import com.google.gson.reflect.TypeToken;
+import es.um.asio.benchmarks.BenchmarkData;
+import es.um.asio.service.model.TripleObject;
+import es.um.asio.service.repository.redis.RedisCodec;
+import org.openjdk.jmh.annotations.*;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Encoding and decoding of the instances of a class as stored in Redis with every {@link RedisCodec} format and
+ * compression, against the JSON written before the codecs.
+ * <p>
+ * {@code legacy} is what {@code RedisServiceHelper.setTripleMap} did: pretty-printed JSON of the class, parsed again and
+ * written as a compact string. The other values of {@link #codec} are a format and a compression. The size of the value
+ * of each one is logged at setup, the network transfer is not measured.
+ */
+@State(Scope.Benchmark)
+@Fork(value = 1, jvmArgs = {"-Xms2g", "-Xmx2g"})
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class RedisCodecBenchmark {
+
+    private static final String LEGACY = "legacy";
+
+    @Param({"10000"})
+    public int size;
+
+    @Param({LEGACY, "JSON:NONE", "JSON:DEFLATE", "JSON:LZ4", "CBOR:NONE", "CBOR:DEFLATE", "CBOR:LZ4", "SMILE:NONE", "SMILE:DEFLATE", "SMILE:LZ4"})
+    public String codec;
+
+    private final Logger logger = LoggerFactory.getLogger(RedisCodecBenchmark.class);
+    private final Type type = new TypeToken<Map<String, TripleObject>>() {}.getType();
+    private Gson gson;
+    private Gson legacyGson;
+    private RedisCodec redisCodec;
+    private Map<String, TripleObject> instances;
+    private byte[] value;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        gson = new GsonBuilder()
+                .excludeFieldsWithoutExposeAnnotation()
+                .create();
+        legacyGson = new GsonBuilder()
+                .setPrettyPrinting()
+                .excludeFieldsWithoutExposeAnnotation()
+                .create();
+        if (!codec.equals(LEGACY)) {
+            String[] parts = codec.split(":");
+            redisCodec = new RedisCodec(RedisCodec.Format.valueOf(parts[0]), RedisCodec.Compression.valueOf(parts[1]));
+        } else {
+            // Los valores sin cabecera se leen como JSON con cualquier codec
+            redisCodec = new RedisCodec(RedisCodec.Format.JSON, RedisCodec.Compression.NONE);
+        }
+        Random random = new Random(size);
+        instances = new LinkedHashMap<>();
+        for (int i = 0; i < size; i++) {
+            TripleObject to = BenchmarkData.cachedEntity(i, BenchmarkData.CLASS_NAME, random);
+            instances.put(to.getId(), to);
+        }
+        value = encode();
+        logger.info("{}: {} bytes", codec, value.length);
+    }
+
+    @Benchmark
+    public byte[] encode() {
+        if (codec.equals(LEGACY)) {
+            JsonObject json = legacyGson.fromJson(legacyGson.toJson(instances), JsonObject.class);
+            return json.toString().getBytes(StandardCharsets.UTF_8);
+        }
+        return redisCodec.encode(gson, instances, type);
+    }
+
+    @Benchmark
+    public Map<String, TripleObject> decode() {
+        return redisCodec.decode(gson, value, type);
+    }
+}
@@ -0,0 +1,60 @@
+package es.um.asio.benchmarks.stats;
+
+import es.um.asio.benchmarks.BenchmarkData;
+import es.um.asio.service.model.TripleObject;
+import es.um.asio.service.model.stats.StatsHandler;
+import org.javatuples.Pair;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Full build of the attribute stats of a class: one {@link StatsHandler#addAttributes} per entity, as the cold start
+ * used to do, against the parallel {@link StatsHandler#build}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StatsHandlerBenchmark {
+
+    @Param({"10000", "100000"})
+    public int size;
+
+    @Param({"0", "2"})
+    public int nesting;
+
+    private Map<String, Map<String, Map<String, Map<String, TripleObject>>>> triplesMap;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        Map<String, TripleObject> instances = new HashMap<>();
+        for (Pair<TripleObject,TripleObject> pair : BenchmarkData.entityPairs(8, nesting, size / 2)) {
+            instances.put(pair.getValue0().getId(), pair.getValue0());
+            instances.put(pair.getValue1().getId(), pair.getValue1());
+        }
+        triplesMap = new HashMap<>();
+        triplesMap.computeIfAbsent(BenchmarkData.NODE, k -> new HashMap<>())
+                .computeIfAbsent(BenchmarkData.TRIPLE_STORE, k -> new HashMap<>())
+                .put(BenchmarkData.CLASS_NAME, instances);
+    }
+
+    @Benchmark
+    public StatsHandler sequential() {
+        StatsHandler statsHandler = new StatsHandler();
+        for (TripleObject to : triplesMap.get(BenchmarkData.NODE).get(BenchmarkData.TRIPLE_STORE).get(BenchmarkData.CLASS_NAME).values()) {
+            statsHandler.addAttributes(BenchmarkData.NODE, BenchmarkData.TRIPLE_STORE, to);
+        }
+        return statsHandler;
+    }
+
+    @Benchmark
+    public StatsHandler parallel() {
+        return StatsHandler.build(triplesMap);
+    }
+}
@@ -5,66 +5,131 @@ import es.um.asio.service.comparators.strings.*;
 import es.um.asio.service.util.Utils;
 
 import java.util.*;
-import java.util.stream.Collectors;
 
 public class AccordSimilarity {
 
     private AccordSimilarity() {}
 
-    static Map<String, Similarity> algorithms;
+    // Se construye al cargar la clase y no cambia: los hilos de comparacion lo leen sin sincronizar
+    static final Map<String, Similarity> algorithms = buildAlgorithms();
 
     public static float calculateAccordSimilarity(String str1, String str2) {
-        str1 = Utils.normalize(str1);
-        str2 = Utils.normalize(str2);
-        Map<String,Float> metrics = new HashMap<>();
-        for (Map.Entry<String, Similarity> e : getAlgorithms().entrySet()) {
-            metrics.put(e.getKey(), e.getValue().calculateSimilarity(str1,str2));
-        }
-        List<Float> lMetrics = new ArrayList<>(metrics.values());
-        List<Float> filtered = lMetrics.stream().filter(m-> m >= 0.6f).collect(Collectors.toList());
-        if (filtered.size() >=5 )
-            Collections.sort(lMetrics,Collections.reverseOrder());
-        else
-            Collections.sort(lMetrics);
-        return getDescendantWeightMean(lMetrics,(1f/3f));
+        return calculateAccordSimilarity(SimilarityProfiles.getDefault(), str1, str2, 0f);
     }
 
+    /*
+     * Las cadenas deben estar ya normalizadas. Las formas simplificadas de cada cadena se calculan una sola vez y se
+     * comparten entre todos los algoritmos
+     */
+    public static float calculateAccordSimilarity(PreparedString str1, PreparedString str2) {
+        return SimilarityProfiles.getDefault().calculateSimilarity(str1, str2);
+    }
 
+    public static float calculateAccordSimilarity(String str1, String str2, float threshold) {
+        return calculateAccordSimilarity(SimilarityProfiles.getDefault(), str1, str2, threshold);
+    }
 
-    public static Map<String,Similarity>  getAlgorithms() {
-        if (algorithms != null)
-            return algorithms;
-        else {
-            algorithms = new HashMap<>();
-            algorithms.put("BlockDistanceSimilarityImp",new BlockDistanceSimilarityImp());
-            algorithms.put("CosineSimilarityImp",new CosineSimilarityImp());
-            algorithms.put("DiceDistanceSimilarityImp",new DiceDistanceSimilarityImp());
-            algorithms.put("EuclideanDistanceSimilarityImp",new EuclideanDistanceSimilarityImp());
-            algorithms.put("GeneralizedJaccardSimilarityImp",new GeneralizedJaccardSimilarityImp());
-            algorithms.put("JaccardSimilarityImp",new JaccardSimilarityImp());
-            algorithms.put("JaroWinklerSimilarityImp",new JaroWinklerSimilarityImp());
-            algorithms.put("LevenshteinSimilarityImp",new LevenshteinSimilarityImp());
-            algorithms.put("LongestCommonSubsequenceSimilarityImp",new LongestCommonSubsequenceSimilarityImp());
-            algorithms.put("LongestCommonSubStringSimilarityImp",new LongestCommonSubStringSimilarityImp());
-            algorithms.put("OverlapCoefificientSimilarityImp",new OverlapCoefficientSimilarityImp());
-            algorithms.put("SimonWhiteSimilarityImp",new SimonWhiteSimilarityImp());
-            algorithms.put("SmithWetermanGotohSimilarityImp",new SmithWetermanGotohSimilarityImp());
-            algorithms.put("SmithWetermanSimilarityImp",new SmithWetermanSimilarityImp());
-            return algorithms;
+    /*
+     * Similitud con el conjunto de algoritmos indicado (ver SimilarityProfiles.resolve). Por debajo de threshold el
+     * valor puede ser solo una cota superior menor que threshold
+     */
+    public static float calculateAccordSimilarity(SimilarityEnsemble ensemble, String str1, String str2, float threshold) {
+        String normalized1 = Utils.normalize(str1);
+        String normalized2 = Utils.normalize(str2);
+        Float cached = SimilarityCache.get(ensemble.getName(), normalized1, normalized2);
+        if (cached != null)
+            return cached;
+        float similarity = ensemble.calculateSimilarity(PreparedString.of(normalized1), PreparedString.of(normalized2), threshold);
+        // Por debajo del umbral el valor puede ser solo una cota, y en ese caso no se guarda
+        if (threshold <= 0f || similarity >= threshold)
+            SimilarityCache.put(ensemble.getName(), normalized1, normalized2, similarity);
+        return similarity;
+    }
+
+    /*
+     * Similitud de una cadena contra muchas. La consulta se normaliza y se prepara una sola vez para todos los
+     * candidatos; out[i] recibe lo mismo que calculateAccordSimilarity(query, candidates.get(i))
+     */
+    public static void calculateAccordSimilarity(String query, List<String> candidates, float[] out) {
+        calculateAccordSimilarity(SimilarityProfiles.getDefault(), query, candidates, null, out);
+    }
+
+    public static void calculateAccordSimilarity(String query, List<String> candidates, float[] thresholds, float[] out) {
+        calculateAccordSimilarity(SimilarityProfiles.getDefault(), query, candidates, thresholds, out);
+    }
+
+    /*
+     * Igual que la anterior con un umbral por candidato (o null para evaluar todos completos). Por debajo de su umbral,
+     * out[i] puede ser solo una cota superior, igual que en calculateAccordSimilarity(String, String, float)
+     */
+    public static void calculateAccordSimilarity(SimilarityEnsemble ensemble, String query, List<String> candidates, float[] thresholds, float[] out) {
+        String normalizedQuery = Utils.normalize(query);
+        PreparedString preparedQuery = null;
+        for (int i = 0; i < candidates.size(); i++) {
+            String normalized = Utils.normalize(candidates.get(i));
+            Float cached = SimilarityCache.get(ensemble.getName(), normalizedQuery, normalized);
+            if (cached != null) {
+                out[i] = cached;
+                continue;
+            }
+            if (preparedQuery == null)
+                preparedQuery = PreparedString.of(normalizedQuery);
+            float threshold = (thresholds == null) ? 0f : thresholds[i];
+            out[i] = ensemble.calculateSimilarity(preparedQuery, PreparedString.of(normalized), threshold);
+            if (threshold <= 0f || out[i] >= threshold)
+                SimilarityCache.put(ensemble.getName(), normalizedQuery, normalized, out[i]);
         }
     }
 
+    /*
+     * Evaluacion acotada con el conjunto de algoritmos por defecto
+     */
+    public static float calculateAccordSimilarity(PreparedString str1, PreparedString str2, float threshold) {
+        return SimilarityProfiles.getDefault().calculateSimilarity(str1, str2, threshold);
+    }
+
+    public static Map<String,Similarity>  getAlgorithms() {
+        return algorithms;
+    }
+
+    private static Map<String,Similarity> buildAlgorithms() {
+        Map<String,Similarity> algorithms = new HashMap<>();
+        algorithms.put("BlockDistanceSimilarityImp",new BlockDistanceSimilarityImp());
+        algorithms.put("CosineSimilarityImp",new CosineSimilarityImp());
+        algorithms.put("DiceDistanceSimilarityImp",new DiceDistanceSimilarityImp());
+        algorithms.put("EuclideanDistanceSimilarityImp",new EuclideanDistanceSimilarityImp());
+        algorithms.put("GeneralizedJaccardSimilarityImp",new GeneralizedJaccardSimilarityImp());
+        algorithms.put("JaccardSimilarityImp",new JaccardSimilarityImp());
+        algorithms.put("JaroWinklerSimilarityImp",new JaroWinklerSimilarityImp());
+        algorithms.put("LevenshteinSimilarityImp",new LevenshteinSimilarityImp());
+        algorithms.put("LongestCommonSubsequenceSimilarityImp",new LongestCommonSubsequenceSimilarityImp());
+        algorithms.put("LongestCommonSubStringSimilarityImp",new LongestCommonSubStringSimilarityImp());
+        algorithms.put("OverlapCoefificientSimilarityImp",new OverlapCoefficientSimilarityImp());
+        algorithms.put("SimonWhiteSimilarityImp",new SimonWhiteSimilarityImp());
+        algorithms.put("SmithWetermanGotohSimilarityImp",new SmithWetermanGotohSimilarityImp());
+        algorithms.put("SmithWetermanSimilarityImp",new SmithWetermanSimilarityImp());
+        return Collections.unmodifiableMap(algorithms);
+    }
+
     public static float getDescendantWeightMean(List<Float> l, float ratio) {
+        float[] values = new float[l.size()];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = l.get(i);
+        }
+        return getDescendantWeightMean(values, ratio);
+    }
+
+    public static float getDescendantWeightMean(float[] l, float ratio) {
         float mean = 0f;
         float w = 1f;
         float p = 0f;
-        for (int i = 0; i < l.size()-2 ; i++) {
+        for (int i = 0; i < l.length-2 ; i++) {
             p = w*ratio;
             w = w-p;
-            mean += l.get(i) * p;
+            mean += l[i] * p;
         }
-        mean +=  l.get(l.size()-2) * p;
-        mean +=  l.get(l.size()-2) * p;
+        mean +=  l[l.length-2] * p;
+        mean +=  l[l.length-2] * p;
         return mean;
     }
 
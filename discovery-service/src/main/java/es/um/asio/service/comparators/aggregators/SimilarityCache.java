@@ -0,0 +1,98 @@
+package es.um.asio.service.comparators.aggregators;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
+/**
+ * Bounded, concurrent memo of {@link AccordSimilarity} results keyed on the similarity profile and the normalized pair
+ * of strings.
+ * <p>
+ * The similarity is symmetric, so the key does not depend on the order of the strings. Eviction is delegated to
+ * Caffeine (Window TinyLFU), which keeps the frequent values of the data (codes, types, organisations...) even when a
+ * class job streams many values seen only once. Hits, misses and evictions are recorded so they can be exposed as
+ * metrics.
+ */
+public final class SimilarityCache {
+
+    public static final long DEFAULT_MAXIMUM_SIZE = 100000L;
+
+    private static volatile Cache<Key, Float> cache = build(DEFAULT_MAXIMUM_SIZE);
+    private static volatile boolean enabled = true;
+
+    private SimilarityCache() {}
+
+    public static void configure(boolean enabled, long maximumSize) {
+        SimilarityCache.cache = build(maximumSize);
+        SimilarityCache.enabled = enabled;
+    }
+
+    public static Float get(String profile, String normalized1, String normalized2) {
+        if (!enabled)
+            return null;
+        return cache.getIfPresent(new Key(profile, normalized1, normalized2));
+    }
+
+    public static void put(String profile, String normalized1, String normalized2, float similarity) {
+        if (enabled)
+            cache.put(new Key(profile, normalized1, normalized2), similarity);
+    }
+
+    public static void invalidateAll() {
+        cache.invalidateAll();
+    }
+
+    public static Cache<Key, Float> getCache() {
+        return cache;
+    }
+
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    private static Cache<Key, Float> build(long maximumSize) {
+        return Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .recordStats()
+                .build();
+    }
+
+    /*
+     * Perfil y par de cadenas normalizadas sin orden
+     */
+    public static final class Key {
+        private final String profile;
+        private final String first;
+        private final String second;
+        private final int hash;
+
+        Key(String profile, String a, String b) {
+            this.profile = profile;
+            if (a.compareTo(b) <= 0) {
+                this.first = a;
+                this.second = b;
+            } else {
+                this.first = b;
+                this.second = a;
+            }
+            this.hash = 31 * (31 * profile.hashCode() + first.hashCode()) + second.hashCode();
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            Key key = (Key) o;
+            return hash == key.hash && profile.equals(key.profile) && first.equals(key.first) && second.equals(key.second);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public String toString() {
+            return profile + "(" + first + ", " + second + ")";
+        }
+    }
+}
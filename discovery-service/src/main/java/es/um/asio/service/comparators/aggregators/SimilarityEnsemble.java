@@ -0,0 +1,176 @@
+package es.um.asio.service.comparators.aggregators;
+
+import es.um.asio.service.comparators.strings.PreparedString;
+import es.um.asio.service.comparators.strings.Similarity;
+
+import java.util.*;
+
+/**
+ * Set of string metrics and the way their values are combined into one similarity.
+ * <p>
+ * The {@link Aggregation#ACCORD} aggregation is the historical one: the values are sorted and combined with a
+ * descending weighted mean, so the weight of a metric depends on its rank and the configured weights are ignored.
+ * {@link Aggregation#WEIGHTED_MEAN} combines the values with the configured weights. Both are monotone in every
+ * metric, which is what the threshold bounded evaluation relies on.
+ */
+public final class SimilarityEnsemble {
+
+    public static final String FULL = "full";
+    public static final String FAST = "fast";
+
+    public enum Aggregation {
+        ACCORD, WEIGHTED_MEAN
+    }
+
+    private final String name;
+    private final Aggregation aggregation;
+    private final String[] metricNames;
+    private final Similarity[] similarities;
+    private final float[] weights;
+    private final float sumWeights;
+
+    /*
+     * metrics: nombre del algoritmo (clave de AccordSimilarity.getAlgorithms()) -> peso
+     */
+    public SimilarityEnsemble(String name, Aggregation aggregation, Map<String, Float> metrics) {
+        Map<String, Similarity> algorithms = AccordSimilarity.getAlgorithms();
+        if (metrics == null || metrics.isEmpty())
+            throw new IllegalArgumentException(String.format("Similarity profile %s has no metrics", name));
+        if (aggregation == Aggregation.ACCORD && metrics.size() < 2)
+            throw new IllegalArgumentException(String.format("Similarity profile %s needs at least two metrics to use the accord aggregation", name));
+        this.name = name;
+        this.aggregation = aggregation;
+        this.metricNames = new String[metrics.size()];
+        this.similarities = new Similarity[metrics.size()];
+        this.weights = new float[metrics.size()];
+        float sum = 0f;
+        int i = 0;
+        for (Map.Entry<String, Float> metric : metrics.entrySet()) {
+            Similarity similarity = algorithms.get(metric.getKey());
+            if (similarity == null)
+                throw new IllegalArgumentException(String.format("Unknown similarity metric %s in profile %s", metric.getKey(), name));
+            float weight = (metric.getValue() == null) ? 1f : metric.getValue();
+            if (weight < 0f)
+                throw new IllegalArgumentException(String.format("Negative weight for metric %s in profile %s", metric.getKey(), name));
+            metricNames[i] = metric.getKey();
+            similarities[i] = similarity;
+            weights[i] = weight;
+            sum += weight;
+            i++;
+        }
+        if (aggregation == Aggregation.WEIGHTED_MEAN && sum <= 0f)
+            throw new IllegalArgumentException(String.format("Similarity profile %s has no positive weight", name));
+        this.sumWeights = sum;
+    }
+
+    /*
+     * Los 14 algoritmos con la agregacion de siempre
+     */
+    public static SimilarityEnsemble full() {
+        Map<String, Float> metrics = new LinkedHashMap<>();
+        for (String algorithm : AccordSimilarity.getAlgorithms().keySet()) {
+            metrics.put(algorithm, 1f);
+        }
+        return new SimilarityEnsemble(FULL, Aggregation.ACCORD, metrics);
+    }
+
+    /*
+     * Tres algoritmos de caracteres, bit paralelos en cadenas cortas y aplicados por palabras (Monge Elkan) cuando hay
+     * varias, por lo que tambien toleran palabras desordenadas
+     */
+    public static SimilarityEnsemble fast() {
+        Map<String, Float> metrics = new LinkedHashMap<>();
+        metrics.put("JaroWinklerSimilarityImp", 1f);
+        metrics.put("LevenshteinSimilarityImp", 1f);
+        metrics.put("LongestCommonSubsequenceSimilarityImp", 1f);
+        return new SimilarityEnsemble(FAST, Aggregation.WEIGHTED_MEAN, metrics);
+    }
+
+    public float calculateSimilarity(PreparedString str1, PreparedString str2) {
+        float[] metrics = new float[similarities.length];
+        for (int i = 0; i < similarities.length; i++) {
+            metrics[i] = similarities[i].calculateSimilarity(str1, str2);
+        }
+        return aggregate(metrics, new float[metrics.length]);
+    }
+
+    /*
+     * Evaluacion acotada: si la similitud es mayor o igual que el umbral, el resultado es identico al de la evaluacion
+     * completa. Si no, se devuelve un valor menor que el umbral (una cota superior de la similitud real), sin llegar a
+     * calcular los algoritmos costosos cuya cota ya descarta el par
+     */
+    public float calculateSimilarity(PreparedString str1, PreparedString str2, float threshold) {
+        if (threshold <= 0f)
+            return calculateSimilarity(str1, str2);
+        float[] metrics = new float[similarities.length];
+        boolean[] pending = new boolean[similarities.length];
+        int pendingCount = 0;
+        for (int i = 0; i < similarities.length; i++) {
+            if (similarities[i].isExpensive()) {
+                metrics[i] = similarities[i].calculateUpperBound(str1, str2);
+                pending[i] = true;
+                pendingCount++;
+            } else {
+                metrics[i] = similarities[i].calculateSimilarity(str1, str2);
+            }
+        }
+        float[] sorted = new float[metrics.length];
+        for (int i = 0; i < similarities.length && pendingCount > 0; i++) {
+            if (!pending[i])
+                continue;
+            // La agregacion es monotona en cada metrica, luego con cotas en lugar de valores se obtiene una cota
+            float upperBound = aggregate(metrics, sorted);
+            if (upperBound < threshold)
+                return upperBound;
+            metrics[i] = similarities[i].calculateSimilarity(str1, str2);
+            pending[i] = false;
+            pendingCount--;
+        }
+        return aggregate(metrics, sorted);
+    }
+
+    private float aggregate(float[] metrics, float[] sorted) {
+        if (aggregation == Aggregation.WEIGHTED_MEAN) {
+            float sum = 0f;
+            for (int i = 0; i < metrics.length; i++) {
+                sum += weights[i] * metrics[i];
+            }
+            return sum / sumWeights;
+        }
+        int filtered = 0;
+        for (int i = 0; i < metrics.length; i++) {
+            sorted[i] = metrics[i];
+            if (metrics[i] >= 0.6f)
+                filtered++;
+        }
+        Arrays.sort(sorted);
+        if (filtered >= 5)
+            reverse(sorted);
+        return AccordSimilarity.getDescendantWeightMean(sorted, (1f/3f));
+    }
+
+    private static void reverse(float[] values) {
+        for (int i = 0, j = values.length - 1; i < j; i++, j--) {
+            float aux = values[i];
+            values[i] = values[j];
+            values[j] = aux;
+        }
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public Aggregation getAggregation() {
+        return aggregation;
+    }
+
+    public List<String> getMetricNames() {
+        return Collections.unmodifiableList(Arrays.asList(metricNames));
+    }
+
+    @Override
+    public String toString() {
+        return name + Arrays.toString(metricNames);
+    }
+}
@@ -0,0 +1,142 @@
+package es.um.asio.service.comparators.aggregators;
+
+import es.um.asio.service.comparators.strings.PreparedString;
+import es.um.asio.service.util.Utils;
+import lombok.Getter;
+import org.javatuples.Pair;
+
+import java.util.*;
+
+/**
+ * Evaluates a {@link SimilarityEnsemble} against labelled sets of string pairs.
+ * <p>
+ * A pair is accepted when its similarity reaches the threshold. Pairs of the positive sets should be accepted and pairs
+ * of the negative sets rejected, which gives the precision and recall of the ensemble. The throughput counts the
+ * normalization and preparation of both strings, bypassing the {@link SimilarityCache}, so that profiles can be compared
+ * on the cost of a cold comparison.
+ */
+public final class SimilarityEnsembleEvaluator {
+
+    private SimilarityEnsembleEvaluator() {}
+
+    public static Report evaluate(SimilarityEnsemble ensemble, Map<String, List<Pair<String, String>>> positives, Map<String, List<Pair<String, String>>> negatives, float threshold) {
+        Report report = new Report(ensemble.getName(), threshold);
+        for (Map.Entry<String, List<Pair<String, String>>> set : positives.entrySet()) {
+            report.add(evaluateSet(ensemble, set.getKey(), true, set.getValue(), threshold));
+        }
+        for (Map.Entry<String, List<Pair<String, String>>> set : negatives.entrySet()) {
+            report.add(evaluateSet(ensemble, set.getKey(), false, set.getValue(), threshold));
+        }
+        return report;
+    }
+
+    private static SetReport evaluateSet(SimilarityEnsemble ensemble, String name, boolean positive, List<Pair<String, String>> pairs, float threshold) {
+        int accepted = 0;
+        double sum = 0;
+        long start = System.nanoTime();
+        for (Pair<String, String> pair : pairs) {
+            PreparedString a = PreparedString.of(Utils.normalize(pair.getValue0()));
+            PreparedString b = PreparedString.of(Utils.normalize(pair.getValue1()));
+            float similarity = ensemble.calculateSimilarity(a, b);
+            sum += similarity;
+            if (similarity >= threshold)
+                accepted++;
+        }
+        long elapsed = System.nanoTime() - start;
+        return new SetReport(name, positive, pairs.size(), accepted, pairs.isEmpty() ? 0 : sum / pairs.size(), elapsed);
+    }
+
+    /*
+     * Resultado de un conjunto de pares
+     */
+    @Getter
+    public static final class SetReport {
+        private final String name;
+        private final boolean positive;
+        private final int pairs;
+        private final int accepted;
+        private final double meanSimilarity;
+        private final long elapsedNanos;
+
+        SetReport(String name, boolean positive, int pairs, int accepted, double meanSimilarity, long elapsedNanos) {
+            this.name = name;
+            this.positive = positive;
+            this.pairs = pairs;
+            this.accepted = accepted;
+            this.meanSimilarity = meanSimilarity;
+            this.elapsedNanos = elapsedNanos;
+        }
+
+        public double getAcceptedRatio() {
+            return (pairs == 0) ? 0 : (double) accepted / pairs;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s[%s]: pairs=%d, accepted=%.3f, mean=%.3f", name, positive ? "+" : "-", pairs, getAcceptedRatio(), meanSimilarity);
+        }
+    }
+
+    /*
+     * Resultado de todos los conjuntos de un perfil
+     */
+    @Getter
+    public static final class Report {
+        private final String profile;
+        private final float threshold;
+        private final List<SetReport> sets = new ArrayList<>();
+        private int truePositives;
+        private int falsePositives;
+        private int falseNegatives;
+        private int trueNegatives;
+        private long elapsedNanos;
+
+        Report(String profile, float threshold) {
+            this.profile = profile;
+            this.threshold = threshold;
+        }
+
+        void add(SetReport set) {
+            sets.add(set);
+            if (set.isPositive()) {
+                truePositives += set.getAccepted();
+                falseNegatives += set.getPairs() - set.getAccepted();
+            } else {
+                falsePositives += set.getAccepted();
+                trueNegatives += set.getPairs() - set.getAccepted();
+            }
+            elapsedNanos += set.getElapsedNanos();
+        }
+
+        public int getPairs() {
+            return truePositives + falsePositives + falseNegatives + trueNegatives;
+        }
+
+        public double getPrecision() {
+            int acceptedPairs = truePositives + falsePositives;
+            return (acceptedPairs == 0) ? 1 : (double) truePositives / acceptedPairs;
+        }
+
+        public double getRecall() {
+            int positivePairs = truePositives + falseNegatives;
+            return (positivePairs == 0) ? 1 : (double) truePositives / positivePairs;
+        }
+
+        /*
+         * Pares comparados por segundo
+         */
+        public double getThroughput() {
+            return (elapsedNanos == 0) ? 0 : getPairs() / (elapsedNanos / 1e9);
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder sb = new StringBuilder();
+            sb.append(String.format("Profile %s (threshold %.2f): precision=%.3f, recall=%.3f, throughput=%.0f pairs/s", profile, threshold, getPrecision(), getRecall(), getThroughput()));
+            for (SetReport set : sets) {
+                sb.append(System.lineSeparator()).append("    ").append(set);
+            }
+            return sb.toString();
+        }
+    }
+}
@@ -0,0 +1,122 @@
+package es.um.asio.service.comparators.aggregators;
+
+import java.util.*;
+
+/**
+ * Registry of the similarity ensembles by profile name and of the profile that applies to each class and attribute.
+ * <p>
+ * The built-in {@link SimilarityEnsemble#FULL} and {@link SimilarityEnsemble#FAST} profiles are always available and
+ * can be redefined by configuration. An attribute override of a class wins over the class override, which wins over
+ * the default profile. The registry is replaced as a whole on each configuration, so readers never see it half built.
+ */
+public final class SimilarityProfiles {
+
+    private static volatile Registry registry = new Registry(builtIn(), SimilarityEnsemble.FULL, Collections.emptyMap(), Collections.emptyMap(), 0L);
+
+    private SimilarityProfiles() {}
+
+    /*
+     * profiles: perfiles adicionales o que redefinen los incluidos. classProfiles: clase -> perfil. attributeProfiles:
+     * clase -> (atributo -> perfil). Si un perfil no existe se lanza IllegalArgumentException y no se cambia nada
+     */
+    public static void configure(Collection<SimilarityEnsemble> profiles, String defaultProfile, Map<String, String> classProfiles, Map<String, Map<String, String>> attributeProfiles) {
+        Map<String, SimilarityEnsemble> ensembles = builtIn();
+        if (profiles != null) {
+            for (SimilarityEnsemble ensemble : profiles) {
+                ensembles.put(ensemble.getName(), ensemble);
+            }
+        }
+        String defaultName = (defaultProfile == null) ? SimilarityEnsemble.FULL : defaultProfile;
+        checkProfile(ensembles, defaultName);
+        Map<String, String> classes = new HashMap<>();
+        if (classProfiles != null) {
+            for (Map.Entry<String, String> classProfile : classProfiles.entrySet()) {
+                checkProfile(ensembles, classProfile.getValue());
+                classes.put(classProfile.getKey(), classProfile.getValue());
+            }
+        }
+        Map<String, Map<String, String>> attributes = new HashMap<>();
+        if (attributeProfiles != null) {
+            for (Map.Entry<String, Map<String, String>> classAttributes : attributeProfiles.entrySet()) {
+                for (String profile : classAttributes.getValue().values()) {
+                    checkProfile(ensembles, profile);
+                }
+                attributes.put(classAttributes.getKey(), new HashMap<>(classAttributes.getValue()));
+            }
+        }
+        registry = new Registry(ensembles, defaultName, classes, attributes, registry.version + 1);
+        // Un mismo nombre de perfil puede haber cambiado de algoritmos
+        SimilarityCache.invalidateAll();
+    }
+
+    public static void reset() {
+        configure(null, SimilarityEnsemble.FULL, null, null);
+    }
+
+    public static SimilarityEnsemble getDefault() {
+        return registry.defaultEnsemble;
+    }
+
+    public static SimilarityEnsemble get(String profile) {
+        SimilarityEnsemble ensemble = registry.ensembles.get(profile);
+        if (ensemble == null)
+            throw new IllegalArgumentException(String.format("Unknown similarity profile %s", profile));
+        return ensemble;
+    }
+
+    /*
+     * Cambia en cada configuracion, para que quien guarde conjuntos ya resueltos sepa cuando dejan de valer
+     */
+    public static long getVersion() {
+        return registry.version;
+    }
+
+    public static Set<String> getProfileNames() {
+        return Collections.unmodifiableSet(registry.ensembles.keySet());
+    }
+
+    /*
+     * Conjunto de algoritmos para un atributo de una clase. className y attribute pueden ser null
+     */
+    public static SimilarityEnsemble resolve(String className, String attribute) {
+        Registry current = registry;
+        if (className == null)
+            return current.defaultEnsemble;
+        if (attribute != null) {
+            Map<String, String> attributes = current.attributeProfiles.get(className);
+            String profile = (attributes == null) ? null : attributes.get(attribute);
+            if (profile != null)
+                return current.ensembles.get(profile);
+        }
+        String profile = current.classProfiles.get(className);
+        return (profile == null) ? current.defaultEnsemble : current.ensembles.get(profile);
+    }
+
+    private static Map<String, SimilarityEnsemble> builtIn() {
+        Map<String, SimilarityEnsemble> ensembles = new HashMap<>();
+        ensembles.put(SimilarityEnsemble.FULL, SimilarityEnsemble.full());
+        ensembles.put(SimilarityEnsemble.FAST, SimilarityEnsemble.fast());
+        return ensembles;
+    }
+
+    private static void checkProfile(Map<String, SimilarityEnsemble> ensembles, String profile) {
+        if (!ensembles.containsKey(profile))
+            throw new IllegalArgumentException(String.format("Unknown similarity profile %s", profile));
+    }
+
+    private static final class Registry {
+        private final Map<String, SimilarityEnsemble> ensembles;
+        private final SimilarityEnsemble defaultEnsemble;
+        private final Map<String, String> classProfiles;
+        private final Map<String, Map<String, String>> attributeProfiles;
+        private final long version;
+
+        Registry(Map<String, SimilarityEnsemble> ensembles, String defaultProfile, Map<String, String> classProfiles, Map<String, Map<String, String>> attributeProfiles, long version) {
+            this.ensembles = ensembles;
+            this.defaultEnsemble = ensembles.get(defaultProfile);
+            this.classProfiles = classProfiles;
+            this.attributeProfiles = attributeProfiles;
+            this.version = version;
+        }
+    }
+}
@@ -1,7 +1,11 @@
 package es.um.asio.service.comparators.attribute;
 
 import es.um.asio.service.comparators.aggregators.AccordSimilarity;
+import es.um.asio.service.comparators.aggregators.SimilarityEnsemble;
+import es.um.asio.service.comparators.aggregators.SimilarityProfiles;
 import es.um.asio.service.comparators.entities.SimilarityValue;
+import es.um.asio.service.comparators.lists.ListMatcher;
+import es.um.asio.service.model.TypedValue;
 import es.um.asio.service.util.Utils;
 
 import java.util.*;
@@ -105,11 +109,25 @@ public class AttributeSimilarity {
     }
 
     public static SimilarityValue compareString(String a1, String a2, float weight) {
+        return compareString(a1, a2, weight, 0f);
+    }
+
+    /*
+     * Si la similitud no alcanza threshold, el valor devuelto es solo una cota superior menor que threshold
+     */
+    public static SimilarityValue compareString(String a1, String a2, float weight, float threshold) {
+        return compareString(a1, a2, weight, threshold, SimilarityProfiles.getDefault());
+    }
+
+    /*
+     * ensemble: algoritmos a aplicar, normalmente los del perfil de la clase y el atributo
+     */
+    public static SimilarityValue compareString(String a1, String a2, float weight, float threshold, SimilarityEnsemble ensemble) {
         float similarity = 0;
         if (a1.toLowerCase().strip().equals(a2.toLowerCase().strip())) {
             similarity = 1;
         } else {
-            similarity = AccordSimilarity.calculateAccordSimilarity(a1,a2);
+            similarity = AccordSimilarity.calculateAccordSimilarity(ensemble,a1,a2,threshold);
         }
         return new SimilarityValue(similarity,weight);
     }
@@ -122,83 +140,160 @@ public class AttributeSimilarity {
     }
 
     public static SimilarityValue compareList(List<Object> a1, List<Object> a2, float weight) {
-        List<Object> l1;
-        List<Object> l2;
-        Set<Integer> usedIndex = new HashSet<>();
-        List<SimilarityValue> similarities = new ArrayList<>();
-        if (a1.isEmpty() && a2.isEmpty()) { // Si ambos tienen las listas vacías, la similaridad es 1
-            similarities.add(new SimilarityValue(1f,weight));
-        } else { // Si no estan vacias
-            if (a1.size()>=a2.size()) { // Pongo primero la lista mayor
-                l1 = a1;
-                l2 = a2;
-            } else {
-                l1 = a2;
-                l2 = a1;
-            }
-            Collections.sort(l1, new SpecialComparator());
-            Collections.sort(l2, new SpecialComparator());
-
-            for (int i = 0; i < l1.size() ; i++) {
-                int maxSimilarityIndex = Integer.MIN_VALUE;
-                SimilarityValue maxSimilarity = null;
-                for (int j = 0; j < l1.size() ; j++) {
-                    if (!usedIndex.contains(j)) {
-                        SimilarityValue sv = compare(Arrays.asList(l1.get(i)),Arrays.asList(l2.get(j)),weight);
-                        if (maxSimilarity == null || (sv.getWeightedSimilarity() > maxSimilarity.getWeightedSimilarity()) ) {
-                            maxSimilarity = sv;
-                            maxSimilarityIndex = j;
-                        }
-                        if (maxSimilarity.getSimilarity() == 1f)
-                            break;
-                    }
-                }
-                if (maxSimilarity!=null) {
-                    similarities.add(maxSimilarity);
-                    usedIndex.add(maxSimilarityIndex);
-                }
-            }
-        }
+        return compareList(a1, a2, weight, SimilarityProfiles.getDefault());
+    }
+
+    public static SimilarityValue compareList(List<Object> a1, List<Object> a2, float weight, SimilarityEnsemble ensemble) {
+        return compareTypedList(TypedValue.of(a1), TypedValue.of(a2), weight, ensemble);
+    }
+
+    /*
+     * Media de la similitud ponderada de los valores emparejados por ListMatcher, sobre tantos pares como valores tiene
+     * la lista menor. Las listas no se modifican
+     */
+    public static SimilarityValue compareTypedList(List<TypedValue> a1, List<TypedValue> a2, float weight, SimilarityEnsemble ensemble) {
+        if (a1.isEmpty() && a2.isEmpty()) // Si ambos tienen las listas vacías, la similaridad es 1
+            return new SimilarityValue(1f,weight);
+        int pairs = Math.min(a1.size(), a2.size());
+        if (pairs == 0)
+            return new SimilarityValue(0f,weight);
+        ListMatcher.Matching matching = ListMatcher.match(a1, a2, (v1, v2) -> compareTypedValue(v1, v2, weight, 0f, ensemble).getWeightedSimilarity());
         // Agrego las similitudes
-        float sumSimilarities = similarities.stream().map(SimilarityValue::getWeightedSimilarity).reduce(0f, Float::sum);
-        return new SimilarityValue(0,weight,sumSimilarities/similarities.size());
+        float sumSimilarities = 0f;
+        for (int i = 0; i < matching.getRows(); i++) {
+            sumSimilarities += matching.getMatchedSimilarity(i);
+        }
+        return new SimilarityValue(0,weight,sumSimilarities/pairs);
     }
 
     public static SimilarityValue compare(List<Object> o1,List<Object> o2, float weight) {
-        Object a1;
-        Object a2;
+        return compare(o1, o2, weight, 0f);
+    }
+
+    /*
+     * Evaluacion acotada: threshold es la similitud minima que interesa para el atributo. Por debajo de ella, el valor
+     * devuelto puede ser una cota superior en lugar de la similitud exacta
+     */
+    public static SimilarityValue compare(List<Object> o1,List<Object> o2, float weight, float threshold) {
+        return compare(o1, o2, weight, threshold, SimilarityProfiles.getDefault());
+    }
+
+    /*
+     * Los valores se tipan en cada llamada; las entidades ya los tienen tipados en TripleObject.getTypedValueFromFlattenAttributes
+     */
+    public static SimilarityValue compare(List<Object> o1,List<Object> o2, float weight, float threshold, SimilarityEnsemble ensemble) {
+        return compareTyped(TypedValue.of(o1), TypedValue.of(o2), weight, threshold, ensemble);
+    }
+
+    public static SimilarityValue compareTyped(List<TypedValue> o1,List<TypedValue> o2, float weight, float threshold, SimilarityEnsemble ensemble) {
         if (o1 == null && o2 == null) {
             return new SimilarityValue(1,weight);
         } else if ((o1 == null ) || (o2 == null)) {
             return new SimilarityValue(0,weight);
         }
         if (o1.size() == 1 && o2.size() == 1) {
-            a1 = o1.get(0);
-            a2 = o2.get(0);
+            return compareTypedValue(o1.get(0), o2.get(0), weight, threshold, ensemble);
         } else {
-            a1 = o1;
-            a2 = o2;
+            return compareTypedList(o1, o2, weight, ensemble);
+        }
+    }
+
+    /*
+     * Se decide el tipo solo con las etiquetas calculadas al tipar los valores, sin expresiones regulares ni parseos
+     */
+    public static SimilarityValue compareTypedValue(TypedValue a1, TypedValue a2, float weight, float threshold, SimilarityEnsemble ensemble) {
+        switch (TypedValue.commonType(a1, a2)) {
+            case INTEGER:
+                return compareInteger((int) a1.getLongValue(),(int) a2.getLongValue(),weight);
+            case LONG:
+                return compareLong(a1.getLongValue(),a2.getLongValue(),weight);
+            case FLOAT:
+                return compareFloat(a1.getFloatValue(),a2.getFloatValue(),weight);
+            case DOUBLE:
+                return compareDouble(a1.getDoubleValue(),a2.getDoubleValue(),weight);
+            case BOOLEAN:
+                return compareBoolean(a1.isBooleanValue(),a2.isBooleanValue(),weight);
+            case DATE:
+                return compareDate(a1,a2,weight);
+            default:
+                return compareTypedString(a1,a2,weight,threshold,ensemble);
         }
-        String c = getClassOffAttributes(a1,a2);
-        if (c.equalsIgnoreCase(INTEGER)) {
-            return compareInteger(Integer.parseInt(a1.toString()),Integer.parseInt(a2.toString()),weight);
-        } else if (c.equalsIgnoreCase(LONG)) {
-            return compareLong(Long.parseLong(a1.toString()),Long.parseLong(a2.toString()),weight);
-        } else if (c.equalsIgnoreCase(FLOAT)) {
-            return compareFloat(Float.parseFloat(a1.toString()),Float.parseFloat(a2.toString()),weight);
-        } else if (c.equalsIgnoreCase(DOUBLE)) {
-            return compareDouble(Double.parseDouble(a1.toString()),Double.parseDouble(a2.toString()),weight);
-        }  else if (c.equalsIgnoreCase(BOOLEAN)) {
-            return compareBoolean(Utils.getBoolean(a1.toString()),Utils.getBoolean(a2.toString()),weight);
-        } else if (c.equalsIgnoreCase(DATE)) {
-            return compareDate( getDate(a1),getDate(a2),weight);
-        } else if (c.equalsIgnoreCase(LIST)) {
-            return compareList((List<Object>) a1,(List<Object>) a2,weight);
+    }
+
+    /*
+     * Igual que compareDate(Date, Date, float) con el instante y el dia calculados al tipar
+     */
+    private static SimilarityValue compareDate(TypedValue a1, TypedValue a2, float weight) {
+        float similarity = (a1.getEpochMillis() == a2.getEpochMillis() || a1.getDay() == a2.getDay()) ? 1 : 0;
+        return new SimilarityValue(similarity,weight);
+    }
+
+    private static SimilarityValue compareTypedString(TypedValue a1, TypedValue a2, float weight, float threshold, SimilarityEnsemble ensemble) {
+        float similarity = 0;
+        if (a1.getComparableValue().equals(a2.getComparableValue())) {
+            similarity = 1;
         } else {
-            return compareString((String) a1,(String) a2,weight);
+            similarity = AccordSimilarity.calculateAccordSimilarity(ensemble,a1.getStringValue(),a2.getStringValue(),threshold);
+        }
+        return new SimilarityValue(similarity,weight);
+    }
+
+    /*
+     * Comparacion de los valores de un atributo de una entidad contra los de muchas candidatas. out[i] recibe lo mismo
+     * que compare(query, candidates.get(i), weights[i], thresholds[i]); thresholds puede ser null. Los pares de cadenas
+     * se agrupan para que la consulta se normalice y prepare una sola vez
+     */
+    public static void compare(List<Object> query, List<List<Object>> candidates, float[] weights, float[] thresholds, SimilarityValue[] out) {
+        compare(query, candidates, weights, thresholds, SimilarityProfiles.getDefault(), out);
+    }
+
+    public static void compare(List<Object> query, List<List<Object>> candidates, float[] weights, float[] thresholds, SimilarityEnsemble ensemble, SimilarityValue[] out) {
+        List<List<TypedValue>> typedCandidates = new ArrayList<>(candidates.size());
+        for (List<Object> candidate : candidates) {
+            typedCandidates.add(TypedValue.of(candidate));
         }
+        compareTyped(TypedValue.of(query), typedCandidates, weights, thresholds, ensemble, out);
     }
 
+    public static void compareTyped(List<TypedValue> query, List<List<TypedValue>> candidates, float[] weights, float[] thresholds, SimilarityEnsemble ensemble, SimilarityValue[] out) {
+        int size = candidates.size();
+        int[] stringIndexes = new int[size];
+        List<String> stringCandidates = new ArrayList<>();
+        TypedValue stringQuery = null;
+        for (int i = 0; i < size; i++) {
+            List<TypedValue> candidate = candidates.get(i);
+            float threshold = (thresholds == null) ? 0f : thresholds[i];
+            if (query == null || candidate == null || query.size() != 1 || candidate.size() != 1
+                    || TypedValue.commonType(query.get(0), candidate.get(0)) != TypedValue.Type.STRING) {
+                out[i] = compareTyped(query, candidate, weights[i], threshold, ensemble);
+                continue;
+            }
+            stringQuery = query.get(0);
+            TypedValue value = candidate.get(0);
+            if (stringQuery.getComparableValue().equals(value.getComparableValue())) {
+                out[i] = new SimilarityValue(1,weights[i]);
+            } else {
+                stringIndexes[stringCandidates.size()] = i;
+                stringCandidates.add(value.getStringValue());
+            }
+        }
+        if (stringCandidates.isEmpty())
+            return;
+        float[] stringThresholds = new float[stringCandidates.size()];
+        float[] stringSimilarities = new float[stringCandidates.size()];
+        for (int k = 0; k < stringCandidates.size(); k++) {
+            stringThresholds[k] = (thresholds == null) ? 0f : thresholds[stringIndexes[k]];
+        }
+        AccordSimilarity.calculateAccordSimilarity(ensemble, stringQuery.getStringValue(), stringCandidates, stringThresholds, stringSimilarities);
+        for (int k = 0; k < stringCandidates.size(); k++) {
+            int i = stringIndexes[k];
+            out[i] = new SimilarityValue(stringSimilarities[k],weights[i]);
+        }
+    }
+
+    public static void compare(List<Object> query, List<List<Object>> candidates, float[] weights, SimilarityValue[] out) {
+        compare(query, candidates, weights, null, out);
+    }
 
     public static boolean isNumber(Object o) {
         return Utils.isValidNumber(o.toString());
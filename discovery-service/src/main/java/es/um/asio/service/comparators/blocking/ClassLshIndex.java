@@ -0,0 +1,118 @@
+package es.um.asio.service.comparators.blocking;
+
+import es.um.asio.service.model.TripleObject;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * {@link MinHashLshIndex} of a class that follows the changes of the cache without being rebuilt on every change.
+ * <p>
+ * The base index is built from the instances of a generation of the cache. The writers of the class do not discard it:
+ * they record the id of every instance they change, with the number of changes of the cache after the change. The index
+ * for a later generation takes the ids changed after the base, looks them up in that generation and applies them on
+ * top of the base with {@link MinHashLshIndex#withChanges}, so every job queries the index of the generation it pinned
+ * whatever happens in the cache meanwhile. When the changed ids are too many compared with the index, the base is built
+ * again from the requested generation and the ids it already includes are forgotten.
+ * <p>
+ * The changes made before the index is created are not recorded, so a base is only kept when it is built from a
+ * generation that includes all of them ({@code since}). Indexes for older generations are built for the caller and not
+ * kept as base.
+ */
+public final class ClassLshIndex {
+
+    // Cambios a partir de los que se reconstruye el indice base: el maximo de un minimo fijo y una fraccion del indice
+    private static final int MIN_REBUILD_CHANGES = 64;
+    private static final double REBUILD_RATIO = 0.1;
+
+    private final int bands;
+    private final int rows;
+    private final int shingleSize;
+    private final long since;
+    private final Map<String, Long> changes = new ConcurrentHashMap<>(); // id --> Numero de cambios de la cache tras el cambio
+    private MinHashLshIndex base;
+    private long baseGeneration;
+    private MinHashLshIndex current;
+    private long currentGeneration;
+
+    /*
+     * Indice vacio con los parametros de MinHashLshIndex. since es el numero de cambios de la cache al crearlo, despues de
+     * que lo vean los escritores
+     */
+    public ClassLshIndex(int bands, int rows, int shingleSize, long since) {
+        this.bands = bands;
+        this.rows = rows;
+        this.shingleSize = shingleSize;
+        this.since = since;
+    }
+
+    public boolean hasParameters(int bands, int rows, int shingleSize) {
+        return this.bands == bands && this.rows == rows && this.shingleSize == shingleSize;
+    }
+
+    /*
+     * Anota el cambio de una instancia. Lo llaman los escritores de la clase despues de cambiarla, con el numero de
+     * cambios de la cache leido despues del cambio
+     */
+    public void changed(String id, long generation) {
+        changes.merge(id, generation, Math::max);
+    }
+
+    /*
+     * Ids cambiados y numero de cambios de la cache tras su ultimo cambio. Para no perder ningun cambio ya visible en la
+     * generacion que se pide, se leen sin escritores de la clase a medias
+     */
+    public Map<String, Long> getChanges() {
+        return new HashMap<>(changes);
+    }
+
+    /*
+     * Indice de las instancias de la clase en una generacion de la cache, con los cambios leidos con getChanges. El
+     * ultimo indice devuelto se guarda mientras no se pida otra generacion
+     */
+    public synchronized MinHashLshIndex get(Map<String, TripleObject> instances, long generation, Map<String, Long> changed) {
+        if (current != null && currentGeneration == generation)
+            return current;
+        MinHashLshIndex index;
+        if (base == null || generation < baseGeneration) {
+            index = MinHashLshIndex.build(instances.values(), bands, rows, shingleSize);
+            if (base == null && generation >= since)
+                setBase(index, generation);
+        } else {
+            Map<String, TripleObject> delta = new HashMap<>();
+            for (Map.Entry<String, Long> change : changed.entrySet()) {
+                if (change.getValue() > baseGeneration)
+                    delta.put(change.getKey(), instances.get(change.getKey()));
+            }
+            if (delta.size() > Math.max(MIN_REBUILD_CHANGES, REBUILD_RATIO * base.size())) {
+                index = MinHashLshIndex.build(instances.values(), bands, rows, shingleSize);
+                setBase(index, generation);
+            } else {
+                index = delta.isEmpty() ? base : base.withChanges(delta);
+            }
+        }
+        current = index;
+        currentGeneration = generation;
+        return index;
+    }
+
+    /*
+     * Numero de ids cambiados desde el indice base que aun no se han olvidado
+     */
+    public int getPendingChanges() {
+        return changes.size();
+    }
+
+    /*
+     * Nuevo indice base. Se olvidan los cambios que ya incluye, salvo que otro escritor los haya vuelto a anotar
+     */
+    private void setBase(MinHashLshIndex index, long generation) {
+        base = index;
+        baseGeneration = generation;
+        for (Map.Entry<String, Long> change : changes.entrySet()) {
+            if (change.getValue() <= generation)
+                changes.remove(change.getKey(), change.getValue());
+        }
+    }
+}
@@ -0,0 +1,345 @@
+package es.um.asio.service.comparators.blocking;
+
+import es.um.asio.service.model.TripleObject;
+import es.um.asio.service.model.TypedValue;
+
+import java.util.*;
+import java.util.stream.IntStream;
+
+/**
+ * In-memory locality-sensitive hashing index over the entities of a class, used as candidate generator instead of the
+ * Elasticsearch query.
+ * <p>
+ * Every entity is reduced to the set of character shingles of its flattened values, each one qualified with the
+ * attribute path, and summarised with a MinHash signature of {@code bands * rows} values. Two entities share the bucket
+ * of a band when the {@code rows} values of the band are equal, which happens with a probability that grows steeply with
+ * the Jaccard similarity of their shingles. A query collects the entities that share at least one bucket and returns
+ * the best {@code k} by the similarity estimated from the signatures. The buckets of each band are kept as a sorted
+ * array of {@code (bucket, entity)} pairs packed in longs, so the index is built with primitive sorts and looked up by
+ * binary search. The index is immutable and can be queried from several threads.
+ * <p>
+ * {@link #withChanges} gives an index with some entities replaced or removed without rebuilding it: the arrays of the
+ * base index are shared, its changed entities are hidden and the new versions are kept apart with their signatures and
+ * compared band by band in every query. It is meant for changes that are small compared with the index.
+ */
+public final class MinHashLshIndex {
+
+    public static final int DEFAULT_BANDS = 16;
+    public static final int DEFAULT_ROWS = 4;
+    public static final int DEFAULT_SHINGLE_SIZE = 3;
+
+    private static final long SEED = 0x2545F4914F6CDD1DL;
+
+    private final TripleObject[] entities;
+    private final int bands;
+    private final int rows;
+    private final int shingleSize;
+    private final long[] seeds;
+    // Firma de cada entidad en el bloque [i * hashes, (i + 1) * hashes); las entidades sin valores no se indexan
+    private final int[] signatures;
+    private final boolean[] indexed;
+    // Por banda, pares (cubeta << 32 | entidad) ordenados
+    private final long[][] buckets;
+    // Cambios sobre el indice base: ids de sus entidades ocultas y entidades añadidas, con sus firmas
+    private final Set<String> hidden;
+    private final TripleObject[] added;
+    private final int[] addedSignatures;
+    private final boolean[] addedIndexed;
+    private final int size;
+
+    private MinHashLshIndex(TripleObject[] entities, int bands, int rows, int shingleSize) {
+        this.entities = entities;
+        this.bands = bands;
+        this.rows = rows;
+        this.shingleSize = shingleSize;
+        this.seeds = seeds(bands * rows);
+        int hashes = bands * rows;
+        this.signatures = new int[entities.length * hashes];
+        this.indexed = new boolean[entities.length];
+        // Cada entidad escribe solo su bloque de la firma, por lo que se calculan en paralelo
+        IntStream.range(0, entities.length).parallel().forEach(i -> {
+            int[] signature = new int[hashes];
+            if (signature(entities[i], signature)) {
+                System.arraycopy(signature, 0, signatures, i * hashes, hashes);
+                indexed[i] = true;
+            }
+        });
+        int count = 0;
+        for (boolean isIndexed : indexed) {
+            if (isIndexed)
+                count++;
+        }
+        this.buckets = new long[bands][];
+        for (int band = 0; band < bands; band++) {
+            long[] pairs = new long[count];
+            int p = 0;
+            for (int i = 0; i < entities.length; i++) {
+                if (indexed[i])
+                    pairs[p++] = ((long) bucket(signatures, i * hashes + band * rows) << 32) | i;
+            }
+            Arrays.sort(pairs);
+            buckets[band] = pairs;
+        }
+        this.hidden = Collections.emptySet();
+        this.added = new TripleObject[0];
+        this.addedSignatures = new int[0];
+        this.addedIndexed = new boolean[0];
+        this.size = entities.length;
+    }
+
+    private MinHashLshIndex(MinHashLshIndex base, Map<String, TripleObject> changes) {
+        this.entities = base.entities;
+        this.bands = base.bands;
+        this.rows = base.rows;
+        this.shingleSize = base.shingleSize;
+        this.seeds = base.seeds;
+        this.signatures = base.signatures;
+        this.indexed = base.indexed;
+        this.buckets = base.buckets;
+        this.hidden = new HashSet<>(changes.keySet());
+        List<TripleObject> tos = new ArrayList<>();
+        for (TripleObject to : changes.values()) {
+            if (to != null)
+                tos.add(to);
+        }
+        this.added = tos.toArray(new TripleObject[0]);
+        int hashes = bands * rows;
+        this.addedSignatures = new int[added.length * hashes];
+        this.addedIndexed = new boolean[added.length];
+        int[] signature = new int[hashes];
+        for (int i = 0; i < added.length; i++) {
+            if (signature(added[i], signature)) {
+                System.arraycopy(signature, 0, addedSignatures, i * hashes, hashes);
+                addedIndexed[i] = true;
+            }
+        }
+        int visible = added.length;
+        for (TripleObject to : entities) {
+            if (!hidden.contains(to.getId()))
+                visible++;
+        }
+        this.size = visible;
+    }
+
+    public static MinHashLshIndex build(Collection<TripleObject> entities) {
+        return build(entities, DEFAULT_BANDS, DEFAULT_ROWS, DEFAULT_SHINGLE_SIZE);
+    }
+
+    /*
+     * bands * rows es el tamaño de la firma. Con mas filas por banda solo se agrupan entidades mas parecidas; con mas
+     * bandas se encuentran mas candidatos
+     */
+    public static MinHashLshIndex build(Collection<TripleObject> entities, int bands, int rows, int shingleSize) {
+        if (bands < 1 || rows < 1 || shingleSize < 1)
+            throw new IllegalArgumentException(String.format("Invalid LSH parameters [bands: %d, rows: %d, shingleSize: %d]", bands, rows, shingleSize));
+        return new MinHashLshIndex(entities.toArray(new TripleObject[0]), bands, rows, shingleSize);
+    }
+
+    /*
+     * Indice con los cambios aplicados sobre el indice base (sin los cambios anteriores, si este ya los tenia): cada id
+     * de changes sustituye a la entidad del indice con ese id, o la quita si el valor es null. Solo se calculan las
+     * firmas de las entidades cambiadas
+     */
+    public MinHashLshIndex withChanges(Map<String, TripleObject> changes) {
+        return new MinHashLshIndex(this, changes);
+    }
+
+    /*
+     * Las k entidades del indice mas parecidas a la dada, de mayor a menor similitud estimada (a igual similitud, por
+     * orden en el indice). La propia entidad no se devuelve
+     */
+    public List<Candidate> query(TripleObject to, int k) {
+        int hashes = bands * rows;
+        int[] signature = new int[hashes];
+        if (k <= 0 || !signature(to, signature))
+            return new ArrayList<>();
+        int[] found = new int[16];
+        int size = 0;
+        int[] queryBuckets = new int[bands];
+        for (int band = 0; band < bands; band++) {
+            long[] pairs = buckets[band];
+            int bucket = bucket(signature, band * rows);
+            queryBuckets[band] = bucket;
+            for (int p = lowerBound(pairs, (long) bucket << 32); p < pairs.length && (int) (pairs[p] >> 32) == bucket; p++) {
+                if (size == found.length)
+                    found = Arrays.copyOf(found, size * 2);
+                found[size++] = (int) pairs[p];
+            }
+        }
+        Arrays.sort(found, 0, size);
+        List<Candidate> candidates = new ArrayList<>();
+        for (int c = 0; c < size; c++) {
+            int i = found[c];
+            if ((c > 0 && found[c - 1] == i) || isSame(to, entities[i]) || hidden.contains(entities[i].getId()))
+                continue;
+            candidates.add(new Candidate(entities[i], i, similarity(signatures, i * hashes, signature)));
+        }
+        // Las entidades cambiadas no estan en las cubetas: se comparan sus cubetas banda a banda
+        for (int a = 0; a < added.length; a++) {
+            if (!addedIndexed[a] || isSame(to, added[a]))
+                continue;
+            for (int band = 0; band < bands; band++) {
+                if (bucket(addedSignatures, a * hashes + band * rows) == queryBuckets[band]) {
+                    candidates.add(new Candidate(added[a], entities.length + a, similarity(addedSignatures, a * hashes, signature)));
+                    break;
+                }
+            }
+        }
+        candidates.sort(Comparator.comparing(Candidate::getSimilarity).reversed().thenComparingInt(candidate -> candidate.position));
+        return (candidates.size() > k) ? new ArrayList<>(candidates.subList(0, k)) : candidates;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int getBands() {
+        return bands;
+    }
+
+    public int getRows() {
+        return rows;
+    }
+
+    public int getShingleSize() {
+        return shingleSize;
+    }
+
+    /*
+     * Memoria aproximada de las estructuras del indice, sin contar las entidades
+     */
+    public long getEstimatedMemoryBytes() {
+        long bytes = 4L * signatures.length + indexed.length + 8L * entities.length + 8L * seeds.length
+                + 4L * addedSignatures.length + addedIndexed.length + 8L * added.length;
+        for (long[] pairs : buckets) {
+            bytes += 8L * pairs.length;
+        }
+        return bytes;
+    }
+
+    /*
+     * Fraccion de valores iguales en las firmas
+     */
+    private float similarity(int[] signatures, int offset, int[] signature) {
+        int hashes = signature.length;
+        int equal = 0;
+        for (int h = 0; h < hashes; h++) {
+            if (signatures[offset + h] == signature[h])
+                equal++;
+        }
+        return (float) equal / hashes;
+    }
+
+    private boolean isSame(TripleObject to, TripleObject other) {
+        return to == other || (Objects.equals(to.getId(), other.getId())
+                && Objects.equals(to.getClassName(), other.getClassName())
+                && Objects.equals(to.getTripleStore(), other.getTripleStore()));
+    }
+
+    /*
+     * Firma MinHash: minimo de cada funcion hash sobre las tejas (atributo, fragmento de valor). Devuelve false si la
+     * entidad no tiene ningun valor
+     */
+    private boolean signature(TripleObject to, int[] signature) {
+        Arrays.fill(signature, Integer.MAX_VALUE);
+        if (to.getTypedFlattenAttributes() == null)
+            to.buildFlattenAttributes();
+        Map<String, List<TypedValue>> attributes = to.getTypedFlattenAttributes();
+        if (attributes == null)
+            return false;
+        boolean any = false;
+        for (Map.Entry<String, List<TypedValue>> attribute : attributes.entrySet()) {
+            long attributeHash = mix(attribute.getKey().hashCode() * 0x9E3779B97F4A7C15L);
+            for (TypedValue value : attribute.getValue()) {
+                String s = value.getComparableValue();
+                if (s.isEmpty())
+                    continue;
+                any = true;
+                if (s.length() <= shingleSize) {
+                    update(signature, attributeHash + s.hashCode());
+                } else {
+                    for (int start = 0; start + shingleSize <= s.length(); start++) {
+                        int h = 0;
+                        for (int c = start; c < start + shingleSize; c++) {
+                            h = 31 * h + s.charAt(c);
+                        }
+                        update(signature, attributeHash + h);
+                    }
+                }
+            }
+        }
+        return any;
+    }
+
+    private void update(int[] signature, long shingle) {
+        long base = mix(shingle);
+        for (int h = 0; h < signature.length; h++) {
+            int value = (int) (mix(base ^ seeds[h]) >>> 33);
+            if (value < signature[h])
+                signature[h] = value;
+        }
+    }
+
+    private int bucket(int[] signature, int offset) {
+        long h = rows;
+        for (int r = 0; r < rows; r++) {
+            h = h * 0x9E3779B97F4A7C15L + signature[offset + r];
+        }
+        return (int) (mix(h) >>> 32);
+    }
+
+    private static int lowerBound(long[] pairs, long key) {
+        int low = 0;
+        int high = pairs.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (pairs[mid] < key)
+                low = mid + 1;
+            else
+                high = mid;
+        }
+        return low;
+    }
+
+    private static long[] seeds(int n) {
+        long[] seeds = new long[n];
+        long state = SEED;
+        for (int i = 0; i < n; i++) {
+            state += 0x9E3779B97F4A7C15L;
+            seeds[i] = mix(state);
+        }
+        return seeds;
+    }
+
+    /*
+     * Finalizador de SplitMix64
+     */
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    /*
+     * Entidad candidata y su similitud estimada (fraccion de valores iguales en las firmas)
+     */
+    public static final class Candidate {
+        private final TripleObject tripleObject;
+        private final int position;
+        private final float similarity;
+
+        Candidate(TripleObject tripleObject, int position, float similarity) {
+            this.tripleObject = tripleObject;
+            this.position = position;
+            this.similarity = similarity;
+        }
+
+        public TripleObject getTripleObject() {
+            return tripleObject;
+        }
+
+        public float getSimilarity() {
+            return similarity;
+        }
+    }
+}
@@ -0,0 +1,315 @@
+package es.um.asio.service.comparators.entities;
+
+import es.um.asio.service.comparators.aggregators.SimilarityEnsemble;
+import es.um.asio.service.comparators.aggregators.SimilarityProfiles;
+import es.um.asio.service.comparators.attribute.AttributeSimilarity;
+import es.um.asio.service.model.TripleObject;
+import es.um.asio.service.model.TypedValue;
+import es.um.asio.service.model.stats.StatsHandler;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Comparison of the entities of a class compiled once for a version of its relevant attributes.
+ * <p>
+ * The plan keeps the attributes ordered by descending weight (ties by name), the flattened path used to read each one,
+ * the similarity ensemble resolved for it and the weight that remains after each position, so comparing two entities is
+ * a flat loop over arrays. Weights are normalised per pair over the attributes that at least one of both entities has,
+ * as before. With a threshold the loop stops as soon as the remaining weight can not take the similarity to it.
+ * <p>
+ * Attributes are evaluated by descending weight, but the weights and the similarities are added in the order the
+ * comparator used before the plan (a {@link HashMap} of the present attributes), so the similarity is the same to the
+ * last bit; if it reaches the threshold the bounded result is identical too. Plans are cached by node, triple store,
+ * class and {@link StatsHandler} version in a bounded LRU and recompiled when the similarity profiles change.
+ */
+public final class ComparisonPlan {
+
+    // Margen para absorber el redondeo de las sumas en float al decidir que una entidad no alcanza el umbral
+    private static final float BOUND_EPSILON = 1e-4f;
+    private static final int MAX_CACHED_PLANS = 1024;
+    // Combinaciones de atributos presentes cuyo orden de suma se guarda en cada plan
+    private static final int MAX_CACHED_ORDERS = 256;
+    // Planes por (nodo, triple store, clase, version de sus estadisticas); al llenarse se descarta el usado hace mas tiempo
+    private static final Map<List<Object>, ComparisonPlan> PLANS = Collections.synchronizedMap(
+            new LinkedHashMap<List<Object>, ComparisonPlan>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<List<Object>, ComparisonPlan> eldest) {
+                    return size() > MAX_CACHED_PLANS;
+                }
+            });
+
+    private final String className;
+    private final long profilesVersion;
+    private final Map<String, Float> stats;
+    private final String[] attributes;
+    private final float[] weights;
+    // Peso de los atributos posteriores a cada posicion: lo maximo que aun se puede sumar si la entidad los tiene todos
+    private final float[] maxRemaining;
+    private final SimilarityEnsemble[] ensembles;
+    // Posicion en el plan de cada atributo, en el orden del mapa recibido
+    private final int[] sourceOrder;
+    // Orden de suma por combinacion de atributos presentes
+    private final Map<BitSet, int[]> sumOrders = new ConcurrentHashMap<>();
+    private volatile ComparisonPlan withoutId;
+
+    private ComparisonPlan(String className, Map<String, Float> stats) {
+        this.className = className;
+        this.profilesVersion = SimilarityProfiles.getVersion();
+        this.stats = new LinkedHashMap<>(stats);
+        List<Map.Entry<String, Float>> ordered = new ArrayList<>(this.stats.entrySet());
+        ordered.sort(Map.Entry.<String, Float>comparingByValue().reversed().thenComparing(Map.Entry.comparingByKey()));
+        int n = ordered.size();
+        this.attributes = new String[n];
+        this.weights = new float[n];
+        this.maxRemaining = new float[n];
+        this.ensembles = new SimilarityEnsemble[n];
+        for (int i = 0; i < n; i++) {
+            attributes[i] = ordered.get(i).getKey();
+            weights[i] = ordered.get(i).getValue();
+            ensembles[i] = SimilarityProfiles.resolve(className, attributes[i]);
+        }
+        float remaining = 0f;
+        for (int i = n - 1; i >= 0; i--) {
+            maxRemaining[i] = remaining;
+            remaining += weights[i];
+        }
+        Map<String, Integer> positions = new HashMap<>();
+        for (int i = 0; i < n; i++) {
+            positions.put(attributes[i], i);
+        }
+        this.sourceOrder = this.stats.keySet().stream().mapToInt(positions::get).toArray();
+    }
+
+    /*
+     * Plan de la clase para una version de sus atributos relevantes, compilado la primera vez que se pide
+     */
+    public static ComparisonPlan of(String className, StatsHandler.RelevantAttributes relevant) {
+        return of(relevant.getNode(), relevant.getTripleStore(), className, relevant.getVersion(), relevant.getWeights());
+    }
+
+    /*
+     * Plan de la clase del nodo y triple store para el mapa de atributos relevantes de la version statsVersion de sus
+     * estadisticas. La clave es la version, no el contenido del mapa: una version no se repite entre instancias de
+     * StatsHandler, pero la version base la comparten todas las clases sin cambios, por eso la clave incluye la clase
+     * completa (nodo, triple store y nombre)
+     */
+    public static ComparisonPlan of(String node, String tripleStore, String className, long statsVersion, Map<String, Float> stats) {
+        List<Object> key = Arrays.asList(node, tripleStore, className, statsVersion);
+        ComparisonPlan plan = PLANS.get(key);
+        if (plan != null && plan.profilesVersion == SimilarityProfiles.getVersion())
+            return plan;
+        plan = new ComparisonPlan(className, stats);
+        PLANS.put(key, plan);
+        return plan;
+    }
+
+    /*
+     * Plan para un mapa de atributos sin version. No se guarda: se compila en cada llamada
+     */
+    public static ComparisonPlan of(String className, Map<String, Float> stats) {
+        return new ComparisonPlan(className, stats);
+    }
+
+    /*
+     * El mismo plan sin el atributo id, para comparar una entidad sin id con candidatas que lo tienen. Se compila una vez
+     * por plan, en orden alfabetico como el mapa con el que se comparaba antes
+     */
+    public ComparisonPlan withoutId() {
+        ComparisonPlan plan = withoutId;
+        if (plan == null) {
+            Map<String, Float> statsWithoutId = new TreeMap<>();
+            for (Map.Entry<String, Float> statsEntry : stats.entrySet()) {
+                if (!statsEntry.getKey().equalsIgnoreCase("id"))
+                    statsWithoutId.put(statsEntry.getKey(), statsEntry.getValue());
+            }
+            plan = new ComparisonPlan(className, statsWithoutId);
+            withoutId = plan;
+        }
+        return plan;
+    }
+
+    public static void invalidateAll() {
+        PLANS.clear();
+    }
+
+    public String getClassName() {
+        return className;
+    }
+
+    public List<String> getAttributes() {
+        return Collections.unmodifiableList(Arrays.asList(attributes));
+    }
+
+    public EntitySimilarityObj compare(TripleObject o1, TripleObject o2) {
+        return compare(o1, o2, 0f);
+    }
+
+    public EntitySimilarityObj compare(TripleObject o1, TripleObject o2, float threshold) {
+        int n = attributes.length;
+        List<TypedValue>[] values1 = values(o1);
+        List<TypedValue>[] values2 = values(o2);
+        float[] remaining = remaining(values1, values2);
+        int[] order = sumOrder(values1, values2);
+        float present = present(order);
+        boolean bounded = threshold > 0f;
+        float target = threshold - BOUND_EPSILON;
+        float accumulated = 0f;
+        SimilarityValue[] evaluated = new SimilarityValue[n];
+        EntitySimilarityObj eso = new EntitySimilarityObj(o2);
+        for (int i = 0; i < n; i++) {
+            if (values1[i] == null && values2[i] == null)
+                continue;
+            float weight = weights[i] / present;
+            float rest = remaining[i] / present;
+            // Similitud minima que necesita el atributo para que la entidad aun pueda alcanzar el umbral
+            float required = (bounded && weight > 0f) ? (target - accumulated - rest) / weight : 0f;
+            evaluated[i] = AttributeSimilarity.compareTyped(values1[i], values2[i], weight, required, ensembles[i]);
+            accumulated += evaluated[i].getWeightedSimilarity();
+            if (bounded && accumulated + rest < target) {
+                eso.setUpperBound(accumulated + rest);
+                break;
+            }
+        }
+        addSimilarities(eso, evaluated, order);
+        return eso;
+    }
+
+    /*
+     * Una entidad contra muchas, por atributo en lugar de por candidata: el valor de o1 se obtiene y se prepara una sola
+     * vez para todas. El elemento i es identico al de compare(o1, others.get(i), threshold)
+     */
+    public List<EntitySimilarityObj> compare(TripleObject o1, List<TripleObject> others, float threshold) {
+        int n = attributes.length;
+        int size = others.size();
+        boolean bounded = threshold > 0f;
+        float target = threshold - BOUND_EPSILON;
+        List<TypedValue>[] values1 = values(o1);
+        List<List<TypedValue>[]> values2 = new ArrayList<>(size);
+        float[][] remaining = new float[size][];
+        int[][] orders = new int[size][];
+        float[] present = new float[size];
+        float[] accumulated = new float[size];
+        boolean[] discarded = new boolean[size];
+        SimilarityValue[][] evaluated = new SimilarityValue[size][n];
+        List<EntitySimilarityObj> similarities = new ArrayList<>(size);
+        for (int c = 0; c < size; c++) {
+            List<TypedValue>[] values = values(others.get(c));
+            values2.add(values);
+            remaining[c] = remaining(values1, values);
+            orders[c] = sumOrder(values1, values);
+            present[c] = present(orders[c]);
+            similarities.add(new EntitySimilarityObj(others.get(c)));
+        }
+        int[] indexes = new int[size];
+        float[] candidateWeights = new float[size];
+        float[] required = new float[size];
+        SimilarityValue[] out = new SimilarityValue[size];
+        List<List<TypedValue>> candidateValues = new ArrayList<>(size);
+        for (int i = 0; i < n; i++) {
+            candidateValues.clear();
+            for (int c = 0; c < size; c++) {
+                List<TypedValue> value = values2.get(c)[i];
+                if (discarded[c] || (values1[i] == null && value == null))
+                    continue;
+                float weight = weights[i] / present[c];
+                int k = candidateValues.size();
+                indexes[k] = c;
+                candidateWeights[k] = weight;
+                required[k] = (bounded && weight > 0f) ? (target - accumulated[c] - remaining[c][i] / present[c]) / weight : 0f;
+                candidateValues.add(value);
+            }
+            if (candidateValues.isEmpty())
+                continue;
+            AttributeSimilarity.compareTyped(values1[i], candidateValues, candidateWeights, required, ensembles[i], out);
+            for (int k = 0; k < candidateValues.size(); k++) {
+                int c = indexes[k];
+                evaluated[c][i] = out[k];
+                accumulated[c] += out[k].getWeightedSimilarity();
+                if (bounded && accumulated[c] + remaining[c][i] / present[c] < target) {
+                    similarities.get(c).setUpperBound(accumulated[c] + remaining[c][i] / present[c]);
+                    discarded[c] = true;
+                }
+            }
+        }
+        for (int c = 0; c < size; c++) {
+            addSimilarities(similarities.get(c), evaluated[c], orders[c]);
+        }
+        return similarities;
+    }
+
+    /*
+     * Añade las similitudes evaluadas en el orden de suma, para que la similitud acumulada sea la de antes del plan
+     */
+    private void addSimilarities(EntitySimilarityObj eso, SimilarityValue[] evaluated, int[] order) {
+        for (int i : order) {
+            if (evaluated[i] != null)
+                eso.addSimilarity(attributes[i], evaluated[i]);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<TypedValue>[] values(TripleObject to) {
+        List<TypedValue>[] values = new List[attributes.length];
+        for (int i = 0; i < attributes.length; i++) {
+            values[i] = to.getTypedValueFromFlattenAttributes(attributes[i]);
+        }
+        return values;
+    }
+
+    /*
+     * Suma de los pesos de los atributos que tiene alguna de las dos entidades, con la que se normalizan
+     */
+    private float present(int[] order) {
+        float present = 0f;
+        for (int i : order) {
+            present += weights[i];
+        }
+        return present;
+    }
+
+    /*
+     * Posiciones de los atributos que tiene alguna de las dos entidades en el orden en que se sumaban antes del plan: el
+     * de un HashMap con esos atributos insertados en el orden del mapa recibido
+     */
+    private int[] sumOrder(List<TypedValue>[] values1, List<TypedValue>[] values2) {
+        BitSet presence = new BitSet(attributes.length);
+        for (int i = 0; i < attributes.length; i++) {
+            if (values1[i] != null || values2[i] != null)
+                presence.set(i);
+        }
+        int[] order = sumOrders.get(presence);
+        if (order != null)
+            return order;
+        Map<String, Integer> present = new HashMap<>();
+        for (int i : sourceOrder) {
+            if (presence.get(i))
+                present.put(attributes[i], i);
+        }
+        order = present.values().stream().mapToInt(Integer::intValue).toArray();
+        if (sumOrders.size() < MAX_CACHED_ORDERS)
+            sumOrders.put(presence, order);
+        return order;
+    }
+
+    /*
+     * Peso restante tras cada posicion. Si el par tiene todos los atributos es el del plan; si no, se descuentan los
+     * que no tiene
+     */
+    private float[] remaining(List<TypedValue>[] values1, List<TypedValue>[] values2) {
+        boolean complete = true;
+        for (int i = 0; i < attributes.length && complete; i++) {
+            complete = values1[i] != null || values2[i] != null;
+        }
+        if (complete)
+            return maxRemaining;
+        float[] remaining = new float[attributes.length];
+        float rest = 0f;
+        for (int i = attributes.length - 1; i >= 0; i--) {
+            remaining[i] = rest;
+            if (values1[i] != null || values2[i] != null)
+                rest += weights[i];
+        }
+        return remaining;
+    }
+}
@@ -1,37 +1,53 @@
 package es.um.asio.service.comparators.entities;
 
-import es.um.asio.service.comparators.attribute.AttributeSimilarity;
 import es.um.asio.service.model.TripleObject;
+import es.um.asio.service.model.stats.StatsHandler;
 
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
+import java.util.*;
 
+/*
+ * Las comparaciones se ejecutan con el plan compilado de la clase de o1. Con los atributos relevantes de StatsHandler el
+ * plan se guarda por version de las estadisticas; con un mapa sin version se compila en cada llamada
+ */
 public class EntityComparator {
 
     private EntityComparator(){}
 
     public static EntitySimilarityObj compare(TripleObject o1, TripleObject o2, Map<String, Float> stats) {
-        stats = cleanStat(o1,o2,stats);
-        EntitySimilarityObj eso = new EntitySimilarityObj(o2);
-        for (Map.Entry<String, Float> eStat : stats.entrySet()) {
-            List<Object> vo1 =o1.getValueFromFlattenAttributes(eStat.getKey());
-            List<Object> vo2 =o2.getValueFromFlattenAttributes(eStat.getKey());
-            SimilarityValue simVal = AttributeSimilarity.compare(vo1, vo2, eStat.getValue());
-            eso.addSimilarity(eStat.getKey(),simVal);
-        }
-        return eso;
+        return ComparisonPlan.of(o1.getClassName(), stats).compare(o1, o2);
     }
 
-    private static Map<String, Float> cleanStat(TripleObject to1,TripleObject to2,Map<String, Float> stats) {
-        Map<String,Float> statAux = new HashMap<>();
-        for (Map.Entry<String, Float> statEntry: stats.entrySet()) {
-            if (to1.checkIfHasAttribute(statEntry.getKey())  || to2.checkIfHasAttribute(statEntry.getKey())) {
-                statAux.put(statEntry.getKey(),statEntry.getValue());
-            }
-        }
-        float sumStats = statAux.values().stream().reduce(0f, Float::sum);
-        statAux.replaceAll((k, v) -> v/sumStats);
-        return statAux;
+    public static EntitySimilarityObj compare(TripleObject o1, TripleObject o2, StatsHandler.RelevantAttributes relevant) {
+        return ComparisonPlan.of(o1.getClassName(), relevant).compare(o1, o2);
+    }
+
+    /*
+     * Evaluacion acotada por el umbral (normalmente el manual). Los atributos se evaluan por peso descendente y se deja
+     * de evaluar en cuanto el peso restante no puede llevar la similitud al umbral. Si la similitud alcanza el umbral,
+     * el resultado es identico al de compare sin umbral; si no, la similitud devuelta es menor que el umbral
+     */
+    public static EntitySimilarityObj compare(TripleObject o1, TripleObject o2, Map<String, Float> stats, float threshold) {
+        return ComparisonPlan.of(o1.getClassName(), stats).compare(o1, o2, threshold);
+    }
+
+    public static EntitySimilarityObj compare(TripleObject o1, TripleObject o2, StatsHandler.RelevantAttributes relevant, float threshold) {
+        return ComparisonPlan.of(o1.getClassName(), relevant).compare(o1, o2, threshold);
+    }
+
+    public static List<EntitySimilarityObj> compare(TripleObject o1, List<TripleObject> others, Map<String, Float> stats) {
+        return compare(o1, others, stats, 0f);
+    }
+
+    /*
+     * Comparacion de una entidad contra muchas. Se recorre por atributo en lugar de por candidata, de forma que el valor
+     * de o1 se obtiene y se prepara una sola vez para todas. El elemento i es identico al de compare(o1, others.get(i),
+     * stats, threshold); con umbral, las candidatas que ya no pueden alcanzarlo dejan de evaluarse
+     */
+    public static List<EntitySimilarityObj> compare(TripleObject o1, List<TripleObject> others, Map<String, Float> stats, float threshold) {
+        return ComparisonPlan.of(o1.getClassName(), stats).compare(o1, others, threshold);
+    }
+
+    public static List<EntitySimilarityObj> compare(TripleObject o1, List<TripleObject> others, StatsHandler.RelevantAttributes relevant, float threshold) {
+        return ComparisonPlan.of(o1.getClassName(), relevant).compare(o1, others, threshold);
     }
 }
@@ -2,6 +2,9 @@ package es.um.asio.service.comparators.entities;
 
 import com.google.gson.Gson;
 import es.um.asio.service.comparators.aggregators.AccordSimilarity;
+import es.um.asio.service.comparators.aggregators.SimilarityEnsemble;
+import es.um.asio.service.comparators.aggregators.SimilarityProfiles;
+import es.um.asio.service.comparators.lists.ListMatcher;
 import es.um.asio.service.model.TripleObject;
 import es.um.asio.service.model.stats.AttributeStats;
 import es.um.asio.service.util.Utils;
@@ -16,29 +19,34 @@ public class EntitySimilarity {
 
     private EntitySimilarity() {}
 
+    private static final Gson GSON = new Gson();
+
+    /*
+     * Los objetos se recorren directamente, sin serializarlos. Los valores se ven como los veria el modelo JSON de Gson
+     * (numeros como Double, sin las claves con valor nulo), que es como se comparaban antes al pasar por JSON, por lo
+     * que la similitud es la misma
+     */
     public static EntitySimilarityObj compare(TripleObject to, Map<String, AttributeStats> attributeStatsMap, Object obj1, Object obj2) {
-        Gson gson = new Gson();
         EntitySimilarityObj eso  = new EntitySimilarityObj(to);
         Set<String> allKeys = new HashSet<>();
-        LinkedHashMap<String,Object> o1 = gson.fromJson(gson.toJson(obj1),LinkedHashMap.class);
-        LinkedHashMap<String,Object>  o2 = gson.fromJson(gson.toJson(obj2),LinkedHashMap.class);
-        allKeys.addAll(o1.keySet());
-        for (String key : new ArrayList<String>(o2.keySet())) {
-            if (!allKeys.contains(key))
-                allKeys.add(key);
-        }
+        Map<String,Object> o1 = toObject(obj1);
+        Map<String,Object> o2 = toObject(obj2);
+        addKeys(allKeys, o1);
+        addKeys(allKeys, o2);
         Set<String> intersectionKeys = new HashSet<>();
         List<Float> similarityMetrics = new ArrayList<>();
         float weightAggregate = 0f;
         for (String key : allKeys) {
-            if (o1.containsKey(key) && o2.containsKey(key)) {
+            Object a1 = o1.get(key);
+            Object a2 = o2.get(key);
+            if (a1 != null && a2 != null) {
                 intersectionKeys.add(key);
                 float weight = 1;
                 if (attributeStatsMap!=null && attributeStatsMap.containsKey(key)) {
                     weight = attributeStatsMap.get(key).getRelativeImportanceRatio();
                 }
                 weightAggregate += weight;
-                float sim = compareAtt(to,attributeStatsMap, key, o1.get(key),o2.get(key));
+                float sim = compareAtt(to,attributeStatsMap, key, toJsonAttribute(a1),toJsonAttribute(a2));
                 eso.getSimilarities().put(key,new SimilarityValue(sim,weight));
                 similarityMetrics.add(weight*sim);
             } else {
@@ -62,7 +70,7 @@ public class EntitySimilarity {
         } else if (isObject(a1) && isObject(a2)){
             return  EntitySimilarity.compare(to,attributeStatsMap,a1,a2).getSimilarity();
         } else
-            return compareNumberAtt(String.valueOf(a1.toString()), String.valueOf(a2.toString()));
+            return compareNumberAtt(toJsonString(a1), toJsonString(a2), SimilarityProfiles.resolve(to.getClassName(), key));
 
     }
 
@@ -87,10 +95,14 @@ public class EntitySimilarity {
     }
 
     public static float compareNumberAtt(String a1, String a2) {
+        return compareNumberAtt(a1, a2, SimilarityProfiles.getDefault());
+    }
+
+    public static float compareNumberAtt(String a1, String a2, SimilarityEnsemble ensemble) {
         if (a1.trim().equalsIgnoreCase(a2.trim()))
             return 1.0f;
         else
-            return AccordSimilarity.calculateAccordSimilarity(String.valueOf(a1),String.valueOf(a2));
+            return AccordSimilarity.calculateAccordSimilarity(ensemble,String.valueOf(a1),String.valueOf(a2),0f);
     }
 
     public static boolean isNumber(Object o) {
@@ -109,40 +121,111 @@ public class EntitySimilarity {
         return o instanceof List;
     }
 
+    /*
+     * Similitud de cada valor de la lista mayor con su pareja de la menor (0 si no la tiene). Las parejas se eligen con
+     * ListMatcher, sin modificar las listas
+     */
     public static List<Float> compareLists(TripleObject to,Map<String, AttributeStats> attributeStatsMap,List<Object> ls1, List<Object> ls2) {
-        List<Object> l1 = (ls1.size() >= ls2.size())?ls1:ls2;
-        List<Object> l2 = (ls1.size() >= ls2.size())?ls2:ls1;
-        List<Float> returns = new ArrayList<>();
-        if (l2.isEmpty()) { // Si la 2 lista esta vacia he terminado
-            for (int i = 0 ; i<l1.size() ; i++) {
-                returns.add(0f);
-            }
-        } else {
-            int indexMaxSimilarityL1 = -1;
-            int indexMaxSimilarityL2 = -1;
-            float maxSimilarity = 0;
-            int indexL1 = 0;
-            int indexL2 = 0;
-            for ( Object o1 : l1) { // Para todos los objetos de l1
-                for ( Object o2 : l2) { // Para todos los objetos de l2
-                    float similarity = compareAtt(to, attributeStatsMap, null,o1,o2);
-                    if (similarity > maxSimilarity) {
-                        maxSimilarity = similarity;
-                        indexMaxSimilarityL1 = indexL1;
-                        indexMaxSimilarityL2 = indexL2;
-                    }
-                    indexL2++;
-                }
-                indexL1++;
-            }
-            l1.remove(indexMaxSimilarityL1);
-            l2.remove(indexMaxSimilarityL2);
-            returns.add(maxSimilarity);
-            if (!l1.isEmpty())
-                returns.addAll(compareLists(to,attributeStatsMap,l1,l2));
+        List<Object> l1 = toJsonList((ls1.size() >= ls2.size())?ls1:ls2);
+        List<Object> l2 = toJsonList((ls1.size() >= ls2.size())?ls2:ls1);
+        ListMatcher.Matching matching = ListMatcher.match(l1, l2, (o1, o2) -> compareAtt(to, attributeStatsMap, null, o1, o2));
+        List<Float> returns = new ArrayList<>(l1.size());
+        for (int i = 0; i < l1.size(); i++) {
+            returns.add(matching.getMatchedSimilarity(i));
         }
         return returns;
     }
 
+    /*
+     * Vista como objeto JSON: los mapas con claves String se usan tal cual y el resto pasa por Gson, como antes
+     */
+    private static Map<String,Object> toObject(Object obj) {
+        if (obj instanceof Map && hasStringKeys((Map<?,?>) obj))
+            return (Map<String,Object>) obj;
+        return GSON.fromJson(GSON.toJson(obj),LinkedHashMap.class);
+    }
+
+    private static boolean hasStringKeys(Map<?,?> map) {
+        for (Object key : map.keySet()) {
+            if (!(key instanceof String))
+                return false;
+        }
+        return true;
+    }
+
+    /*
+     * Gson no serializa las claves con valor nulo
+     */
+    private static void addKeys(Set<String> keys, Map<String,Object> object) {
+        for (Map.Entry<String,Object> entry : object.entrySet()) {
+            if (entry.getValue() != null)
+                keys.add(entry.getKey());
+        }
+    }
+
+    /*
+     * Como toJsonValue, pero las listas se dejan sin copiar: compareLists normaliza sus elementos
+     */
+    private static Object toJsonAttribute(Object value) {
+        return (value instanceof List) ? value : toJsonValue(value);
+    }
+
+    private static List<Object> toJsonList(List<Object> values) {
+        List<Object> list = new ArrayList<>(values.size());
+        for (Object value : values) {
+            list.add(toJsonAttribute(value));
+        }
+        return list;
+    }
+
+    /*
+     * Valor tal y como quedaria tras serializarlo y leerlo con Gson. Los objetos se dejan como estan (se recorren al
+     * compararlos) y las listas se copian con sus valores normalizados
+     */
+    private static Object toJsonValue(Object value) {
+        if (value == null || value instanceof String || value instanceof Boolean || value instanceof Double || value instanceof Map)
+            return value;
+        if (value instanceof Number)
+            return Double.valueOf(value.toString());
+        if (value instanceof Character)
+            return value.toString();
+        if (value instanceof Collection || value instanceof Object[]) {
+            Collection<?> values = (value instanceof Collection) ? (Collection<?>) value : Arrays.asList((Object[]) value);
+            List<Object> list = new ArrayList<>(values.size());
+            for (Object item : values) {
+                list.add(toJsonValue(item));
+            }
+            return list;
+        }
+        return GSON.fromJson(GSON.toJson(value),Object.class);
+    }
+
+    /*
+     * Texto del valor en el modelo JSON; solo los objetos y las listas necesitan construirse completos
+     */
+    private static String toJsonString(Object value) {
+        if (value instanceof Map || value instanceof Collection || value instanceof Object[])
+            return String.valueOf(toJsonTree(value));
+        return String.valueOf(value);
+    }
+
+    private static Object toJsonTree(Object value) {
+        if (value instanceof Map && hasStringKeys((Map<?,?>) value)) {
+            Map<String,Object> tree = new LinkedHashMap<>();
+            for (Map.Entry<String,Object> entry : ((Map<String,Object>) value).entrySet()) {
+                if (entry.getValue() != null)
+                    tree.put(entry.getKey(), toJsonTree(entry.getValue()));
+            }
+            return tree;
+        } else if (value instanceof Map) {
+            return GSON.fromJson(GSON.toJson(value),Object.class);
+        }
+        Object jsonValue = toJsonValue(value);
+        if (jsonValue instanceof List) {
+            List<Object> list = (List<Object>) jsonValue;
+            list.replaceAll(EntitySimilarity::toJsonTree);
+        }
+        return jsonValue;
+    }
 
 }
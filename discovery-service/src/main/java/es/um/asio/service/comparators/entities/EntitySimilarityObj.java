@@ -1,5 +1,6 @@
 package es.um.asio.service.comparators.entities;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import es.um.asio.service.model.TripleObject;
 import lombok.AllArgsConstructor;
 import lombok.Getter;
@@ -19,6 +20,8 @@ public class EntitySimilarityObj {
     private String dataSource;
     private float similarity;
     private Map<String, SimilarityValue> similarities; // Att -> Value
+    // Cota superior de la similitud cuando la evaluacion acotada se detuvo antes de comparar todos los atributos
+    private transient Float upperBound;
 
     public EntitySimilarityObj(TripleObject to) {
         this.tripleObject = to;
@@ -32,6 +35,14 @@ public class EntitySimilarityObj {
         return similarity;
     }
 
+    /*
+     * Lo maximo que podria valer la similitud: la propia similitud si se evaluaron todos los atributos
+     */
+    @JsonIgnore
+    public float getUpperBound() {
+        return (upperBound != null) ? upperBound : getSimilarity();
+    }
+
     public void addSimilarity(String name, SimilarityValue similarityValue) {
         if (!similarities.containsKey(name)) {
             similarity += similarityValue.getWeightedSimilarity();
@@ -0,0 +1,120 @@
+package es.um.asio.service.comparators.entities;
+
+import es.um.asio.service.model.SimilarityResult;
+import es.um.asio.service.model.TripleObject;
+import es.um.asio.service.util.UnionFind;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Transitive clustering of the results of a class job, built while the job scores its entities.
+ * <p>
+ * Every automatic similarity joins the entity of the result with the similar entity in a union-find, so duplicates
+ * found from different entities end up in the same cluster. The job asks {@link #isClustered} before searching the
+ * candidates of an entity: only entities that are not in a cluster yet search, so each cluster is searched from its
+ * representative and its members are not queried again. Results are added by one thread. Each cluster gives a single {@link SimilarityResult}: its
+ * representative is the first entity of the cluster in the order of the results, the automatic similarities are the
+ * rest of members (each with the best similarity that linked it) and the manual similarities are those of any member
+ * that point outside the cluster. Entities are identified by node, triple store and id.
+ */
+public class SimilarityClustering {
+
+    private final UnionFind<List<String>> clusters = new UnionFind<>();
+    private final Map<List<String>, TripleObject> entities = new HashMap<>();
+    // Mejor similitud automatica de cada entidad (como EntitySimilarityObj de esa entidad)
+    private final Map<List<String>, EntitySimilarityObj> links = new HashMap<>();
+    private final List<SimilarityResult> similarities = new ArrayList<>();
+    // Entidades de algun grupo, que se consultan desde las tareas de puntuacion mientras se añaden resultados
+    private final Set<List<String>> clustered = ConcurrentHashMap.newKeySet();
+
+    public static List<SimilarityResult> cluster(Collection<SimilarityResult> similarities) {
+        SimilarityClustering clustering = new SimilarityClustering();
+        for (SimilarityResult similarity : similarities) {
+            clustering.add(similarity);
+        }
+        return clustering.getClusters();
+    }
+
+    /*
+     * Si la entidad ya esta en un grupo, por haberse buscado o por ser similitud automatica de un miembro: no hace falta
+     * buscar sus candidatos. Se puede llamar desde otros hilos mientras se añaden resultados
+     */
+    public boolean isClustered(TripleObject to) {
+        return clustered.contains(key(to));
+    }
+
+    public void add(SimilarityResult similarity) {
+        similarities.add(similarity);
+        List<String> key = key(similarity.getTripleObject());
+        entities.putIfAbsent(key, similarity.getTripleObject());
+        clusters.add(key);
+        clustered.add(key);
+        for (EntitySimilarityObj eso : similarity.getAutomatic()) {
+            List<String> other = key(eso.getTripleObject());
+            entities.putIfAbsent(other, eso.getTripleObject());
+            clusters.union(key, other);
+            clustered.add(other);
+            keepBest(links, other, eso);
+            // El enlace tambien sirve para la entidad del resultado, si acaba sin ser representante
+            EntitySimilarityObj reverse = new EntitySimilarityObj(similarity.getTripleObject());
+            reverse.setSimilarities(eso.getSimilarities());
+            reverse.setSimilarity(eso.getSimilarity());
+            keepBest(links, key, reverse);
+        }
+    }
+
+    /*
+     * Un resultado por grupo, en el orden en el que se añadieron sus representantes
+     */
+    public List<SimilarityResult> getClusters() {
+        Map<List<String>, List<EntitySimilarityObj>> manuals = new HashMap<>();
+        for (SimilarityResult similarity : similarities) {
+            List<String> root = clusters.find(key(similarity.getTripleObject()));
+            for (EntitySimilarityObj eso : similarity.getManual()) {
+                manuals.computeIfAbsent(root, k -> new ArrayList<>()).add(eso);
+            }
+        }
+        List<SimilarityResult> results = new ArrayList<>();
+        for (Map.Entry<List<String>, List<List<String>>> cluster : clusters.groups().entrySet()) {
+            SimilarityResult sr = new SimilarityResult(entities.get(cluster.getKey()));
+            Set<List<String>> members = new HashSet<>(cluster.getValue());
+            List<EntitySimilarityObj> automatics = new ArrayList<>();
+            for (List<String> member : cluster.getValue()) {
+                if (!member.equals(cluster.getKey()))
+                    automatics.add(links.get(member));
+            }
+            Map<List<String>, EntitySimilarityObj> clusterManuals = new LinkedHashMap<>();
+            for (EntitySimilarityObj eso : manuals.getOrDefault(cluster.getKey(), Collections.emptyList())) {
+                List<String> other = key(eso.getTripleObject());
+                if (!members.contains(other))
+                    keepBest(clusterManuals, other, eso);
+            }
+            sr.addAutomatics(automatics);
+            sr.addManuals(new ArrayList<>(clusterManuals.values()));
+            results.add(sr);
+        }
+        return results;
+    }
+
+    public int size() {
+        return similarities.size();
+    }
+
+    private static void keepBest(Map<List<String>, EntitySimilarityObj> best, List<String> key, EntitySimilarityObj eso) {
+        EntitySimilarityObj current = best.get(key);
+        if (current == null || eso.getSimilarity() > current.getSimilarity())
+            best.put(key, eso);
+    }
+
+    private static List<String> key(TripleObject to) {
+        String node = null;
+        String tripleStore = null;
+        if (to.getTripleStore() != null) {
+            tripleStore = to.getTripleStore().getName();
+            if (to.getTripleStore().getNode() != null)
+                node = to.getTripleStore().getNode().getNodeName();
+        }
+        return Arrays.asList(node, tripleStore, to.getId());
+    }
+}
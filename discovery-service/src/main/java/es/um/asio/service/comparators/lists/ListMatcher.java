@@ -0,0 +1,263 @@
+package es.um.asio.service.comparators.lists;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.IntStream;
+
+/**
+ * Matches the values of two lists one to one, maximising the similarity of the matched pairs.
+ * <p>
+ * The pairwise similarities are computed once into a matrix, in parallel when the lists are large. Up to
+ * {@link Settings#getHungarianCutoff()} values per list the assignment is solved exactly with the Hungarian algorithm;
+ * beyond it, pairs are taken greedily from a priority queue by descending similarity (ties by position), which is the
+ * matching the comparators used to do. Pairs with no similarity are left unmatched. The source lists are never modified.
+ */
+public final class ListMatcher {
+
+    public static final int DEFAULT_HUNGARIAN_CUTOFF = 64;
+    public static final int DEFAULT_PARALLEL_THRESHOLD = 4096;
+
+    public enum Strategy {
+        GREEDY, HUNGARIAN, AUTO
+    }
+
+    /*
+     * Similitud entre un valor de la primera lista y uno de la segunda. Con el relleno en paralelo se llama desde varios
+     * hilos
+     */
+    @FunctionalInterface
+    public interface PairSimilarity<T> {
+        float similarity(T a, T b);
+    }
+
+    private static volatile Settings settings = new Settings(DEFAULT_HUNGARIAN_CUTOFF, DEFAULT_PARALLEL_THRESHOLD);
+
+    private ListMatcher() {}
+
+    /*
+     * hungarianCutoff: tamaño maximo de lista que se resuelve con el algoritmo hungaro. parallelThreshold: numero de
+     * pares a partir del cual la matriz se rellena en paralelo (0 para no hacerlo nunca)
+     */
+    public static void configure(int hungarianCutoff, int parallelThreshold) {
+        ListMatcher.settings = new Settings(hungarianCutoff, parallelThreshold);
+    }
+
+    public static Settings getSettings() {
+        return settings;
+    }
+
+    public static <T> Matching match(List<? extends T> l1, List<? extends T> l2, PairSimilarity<T> similarity) {
+        return match(l1, l2, similarity, Strategy.AUTO);
+    }
+
+    public static <T> Matching match(List<? extends T> l1, List<? extends T> l2, PairSimilarity<T> similarity, Strategy strategy) {
+        Settings current = settings;
+        int rows = l1.size();
+        int columns = l2.size();
+        float[] matrix = fill(l1, l2, similarity, current);
+        if (strategy == Strategy.AUTO)
+            strategy = (Math.max(rows, columns) <= current.hungarianCutoff) ? Strategy.HUNGARIAN : Strategy.GREEDY;
+        int[] assignment = (strategy == Strategy.HUNGARIAN) ? hungarian(matrix, rows, columns) : greedy(matrix, rows, columns);
+        return new Matching(matrix, rows, columns, assignment);
+    }
+
+    private static <T> float[] fill(List<? extends T> l1, List<? extends T> l2, PairSimilarity<T> similarity, Settings current) {
+        int rows = l1.size();
+        int columns = l2.size();
+        float[] matrix = new float[rows * columns];
+        IntStream indexes = IntStream.range(0, rows);
+        if (current.parallelThreshold > 0 && (long) rows * columns >= current.parallelThreshold)
+            indexes = indexes.parallel();
+        indexes.forEach(i -> {
+            T a = l1.get(i);
+            for (int j = 0; j < columns; j++) {
+                matrix[i * columns + j] = similarity.similarity(a, l2.get(j));
+            }
+        });
+        return matrix;
+    }
+
+    /*
+     * Toma los pares por similitud descendente; a igual similitud, el de menor fila y despues menor columna
+     */
+    static int[] greedy(float[] matrix, int rows, int columns) {
+        int[] assignment = new int[rows];
+        Arrays.fill(assignment, -1);
+        // Clave: similitud en los 32 bits altos (no negativa, luego sus bits se ordenan igual) y posicion invertida
+        long[] heap = new long[matrix.length];
+        int size = 0;
+        for (int index = 0; index < matrix.length; index++) {
+            if (matrix[index] > 0f)
+                heap[size++] = ((long) Float.floatToIntBits(matrix[index]) << 32) | (Integer.MAX_VALUE - index);
+        }
+        for (int k = size / 2 - 1; k >= 0; k--) {
+            siftDown(heap, k, size);
+        }
+        boolean[] usedColumns = new boolean[columns];
+        int pending = Math.min(rows, columns);
+        while (size > 0 && pending > 0) {
+            int index = Integer.MAX_VALUE - (int) heap[0];
+            heap[0] = heap[--size];
+            siftDown(heap, 0, size);
+            int i = index / columns;
+            int j = index % columns;
+            if (assignment[i] == -1 && !usedColumns[j]) {
+                assignment[i] = j;
+                usedColumns[j] = true;
+                pending--;
+            }
+        }
+        return assignment;
+    }
+
+    private static void siftDown(long[] heap, int k, int size) {
+        long key = heap[k];
+        while (true) {
+            int child = 2 * k + 1;
+            if (child >= size)
+                break;
+            if (child + 1 < size && heap[child + 1] > heap[child])
+                child++;
+            if (heap[child] <= key)
+                break;
+            heap[k] = heap[child];
+            k = child;
+        }
+        heap[k] = key;
+    }
+
+    /*
+     * Algoritmo hungaro (Kuhn-Munkres con potenciales, O(n^3)) sobre la matriz cuadrada de costes 1 - similitud,
+     * completada con pares ficticios de similitud 0
+     */
+    static int[] hungarian(float[] matrix, int rows, int columns) {
+        int n = Math.max(rows, columns);
+        double[] u = new double[n + 1];
+        double[] v = new double[n + 1];
+        int[] p = new int[n + 1];
+        int[] way = new int[n + 1];
+        double[] minv = new double[n + 1];
+        boolean[] used = new boolean[n + 1];
+        for (int i = 1; i <= n; i++) {
+            p[0] = i;
+            int j0 = 0;
+            Arrays.fill(minv, Double.POSITIVE_INFINITY);
+            Arrays.fill(used, false);
+            do {
+                used[j0] = true;
+                int i0 = p[j0];
+                double delta = Double.POSITIVE_INFINITY;
+                int j1 = 0;
+                for (int j = 1; j <= n; j++) {
+                    if (!used[j]) {
+                        double cur = cost(matrix, rows, columns, i0 - 1, j - 1) - u[i0] - v[j];
+                        if (cur < minv[j]) {
+                            minv[j] = cur;
+                            way[j] = j0;
+                        }
+                        if (minv[j] < delta) {
+                            delta = minv[j];
+                            j1 = j;
+                        }
+                    }
+                }
+                for (int j = 0; j <= n; j++) {
+                    if (used[j]) {
+                        u[p[j]] += delta;
+                        v[j] -= delta;
+                    } else {
+                        minv[j] -= delta;
+                    }
+                }
+                j0 = j1;
+            } while (p[j0] != 0);
+            do {
+                int j1 = way[j0];
+                p[j0] = p[j1];
+                j0 = j1;
+            } while (j0 != 0);
+        }
+        int[] assignment = new int[rows];
+        Arrays.fill(assignment, -1);
+        for (int j = 1; j <= n; j++) {
+            int i = p[j] - 1;
+            if (i < rows && j - 1 < columns && matrix[i * columns + j - 1] > 0f)
+                assignment[i] = j - 1;
+        }
+        return assignment;
+    }
+
+    private static double cost(float[] matrix, int rows, int columns, int i, int j) {
+        return (i < rows && j < columns) ? 1d - matrix[i * columns + j] : 1d;
+    }
+
+    /*
+     * Resultado: columna asignada a cada fila (-1 si ninguna) y la matriz de similitudes
+     */
+    public static final class Matching {
+        private final float[] matrix;
+        private final int rows;
+        private final int columns;
+        private final int[] assignment;
+
+        Matching(float[] matrix, int rows, int columns, int[] assignment) {
+            this.matrix = matrix;
+            this.rows = rows;
+            this.columns = columns;
+            this.assignment = assignment;
+        }
+
+        public int getRows() {
+            return rows;
+        }
+
+        public int getColumns() {
+            return columns;
+        }
+
+        public int getColumn(int row) {
+            return assignment[row];
+        }
+
+        public float getSimilarity(int row, int column) {
+            return matrix[row * columns + column];
+        }
+
+        /*
+         * Similitud del par de la fila, 0 si no tiene pareja
+         */
+        public float getMatchedSimilarity(int row) {
+            return (assignment[row] == -1) ? 0f : matrix[row * columns + assignment[row]];
+        }
+
+        public int getMatchedCount() {
+            int count = 0;
+            for (int column : assignment) {
+                if (column != -1)
+                    count++;
+            }
+            return count;
+        }
+    }
+
+    /*
+     * Configuracion inmutable, reemplazada entera en configure
+     */
+    public static final class Settings {
+        private final int hungarianCutoff;
+        private final int parallelThreshold;
+
+        Settings(int hungarianCutoff, int parallelThreshold) {
+            this.hungarianCutoff = hungarianCutoff;
+            this.parallelThreshold = parallelThreshold;
+        }
+
+        public int getHungarianCutoff() {
+            return hungarianCutoff;
+        }
+
+        public int getParallelThreshold() {
+            return parallelThreshold;
+        }
+    }
+}
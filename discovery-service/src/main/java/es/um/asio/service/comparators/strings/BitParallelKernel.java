@@ -0,0 +1,276 @@
+package es.um.asio.service.comparators.strings;
+
+import java.util.Arrays;
+
+/**
+ * Bit parallel versions of the character metrics of {@link StringKernel} for strings that fit in a machine word.
+ * <p>
+ * Levenshtein uses the Myers / Hyyrö algorithm, the longest common subsequence the Allison-Dix / Hyyrö algorithm and
+ * Jaro finds the common characters inside the matching window with bit masks. All of them compute the same integer
+ * quantities as the dynamic programming versions, so the similarities are bit identical. Callers must check that the
+ * strings are not longer than {@link #MAX_LENGTH}.
+ */
+public final class BitParallelKernel {
+
+    public static final int MAX_LENGTH = Long.SIZE;
+
+    private static final ThreadLocal<PatternMask[]> MASKS = ThreadLocal.withInitial(() -> new PatternMask[] { new PatternMask(), new PatternMask() });
+
+    private BitParallelKernel() {}
+
+    /*
+     * Distancia de Levenshtein. pattern no puede tener mas de MAX_LENGTH caracteres, text puede tener cualquier longitud
+     */
+    public static int levenshteinDistance(char[] pattern, char[] text) {
+        if (pattern.length == 0)
+            return text.length;
+        PatternMask peq = MASKS.get()[0].build(pattern);
+        int distance = levenshteinDistance(peq, pattern.length, text);
+        peq.clear();
+        return distance;
+    }
+
+    public static int levenshteinDistance(CharMask pattern, char[] text) {
+        if (pattern.length() == 0)
+            return text.length;
+        return levenshteinDistance(pattern, pattern.length(), text);
+    }
+
+    private static int levenshteinDistance(PatternEq peq, int m, char[] text) {
+        long last = 1L << (m - 1);
+        long pv = -1L;
+        long mv = 0L;
+        int score = m;
+        for (char c : text) {
+            long eq = peq.get(c);
+            long xv = eq | mv;
+            long xh = (((eq & pv) + pv) ^ pv) | eq;
+            long ph = mv | ~(xh | pv);
+            long mh = pv & xh;
+            if ((ph & last) != 0)
+                score++;
+            else if ((mh & last) != 0)
+                score--;
+            ph = (ph << 1) | 1L;
+            mh = mh << 1;
+            pv = mh | ~(xv | ph);
+            mv = ph & xv;
+        }
+        return score;
+    }
+
+    /*
+     * Longitud de la subsecuencia comun mas larga. pattern no puede tener mas de MAX_LENGTH caracteres
+     */
+    public static int longestCommonSubsequenceLength(char[] pattern, char[] text) {
+        if (pattern.length == 0)
+            return 0;
+        PatternMask peq = MASKS.get()[0].build(pattern);
+        int length = longestCommonSubsequenceLength(peq, pattern.length, text);
+        peq.clear();
+        return length;
+    }
+
+    public static int longestCommonSubsequenceLength(CharMask pattern, char[] text) {
+        if (pattern.length() == 0)
+            return 0;
+        return longestCommonSubsequenceLength(pattern, pattern.length(), text);
+    }
+
+    private static int longestCommonSubsequenceLength(PatternEq peq, int m, char[] text) {
+        long v = -1L;
+        for (char c : text) {
+            long u = v & peq.get(c);
+            v = (v + u) | (v - u);
+        }
+        long mask = (m == MAX_LENGTH) ? -1L : (1L << m) - 1L;
+        return Long.bitCount(~v & mask);
+    }
+
+    /*
+     * Jaro con la misma seleccion voraz de caracteres comunes que la version por programacion dinamica: para cada
+     * caracter se toma la primera posicion libre dentro de la ventana. Ninguna cadena puede superar MAX_LENGTH
+     */
+    public static float jaro(char[] a, char[] b) {
+        if (a.length == 0 && b.length == 0)
+            return 1.0f;
+        if (a.length == 0 || b.length == 0)
+            return 0.0f;
+        PatternMask[] masks = MASKS.get();
+        PatternMask peqA = masks[0].build(a);
+        PatternMask peqB = masks[1].build(b);
+        float jaro = jaro(a, peqA, b, peqB);
+        peqA.clear();
+        peqB.clear();
+        return jaro;
+    }
+
+    public static float jaro(char[] a, CharMask maskA, char[] b, CharMask maskB) {
+        if (a.length == 0 && b.length == 0)
+            return 1.0f;
+        if (a.length == 0 || b.length == 0)
+            return 0.0f;
+        return jaro(a, (PatternEq) maskA, b, maskB);
+    }
+
+    private static float jaro(char[] a, PatternEq peqA, char[] b, PatternEq peqB) {
+        int halfLength = Math.max(0, Math.max(a.length, b.length) / 2 - 1);
+        // Posiciones de cada cadena cuyos caracteres, en orden, forman su cadena de caracteres comunes
+        long commonA = commonPositions(a, peqB, b.length, halfLength);
+        long commonB = commonPositions(b, peqA, a.length, halfLength);
+        int commonALength = Long.bitCount(commonA);
+        int commonBLength = Long.bitCount(commonB);
+        if (commonALength == 0 || commonBLength == 0)
+            return 0.0f;
+        if (commonALength != commonBLength)
+            return 0.0f;
+        int transpositions = 0;
+        while (commonA != 0) {
+            if (a[Long.numberOfTrailingZeros(commonA)] != b[Long.numberOfTrailingZeros(commonB)])
+                transpositions++;
+            commonA &= commonA - 1;
+            commonB &= commonB - 1;
+        }
+        float aCommonRatio = commonALength / (float) a.length;
+        float bCommonRatio = commonBLength / (float) b.length;
+        float transpositionRatio = (commonALength - (transpositions / 2.0f)) / commonALength;
+        return (aCommonRatio + bCommonRatio + transpositionRatio) / 3.0f;
+    }
+
+    /*
+     * Posiciones de a que encuentran pareja libre en b dentro de la ventana. El candidato es la posicion libre mas baja
+     * de la ventana, igual que en el recorrido secuencial
+     */
+    private static long commonPositions(char[] a, PatternEq peqB, int bLength, int separation) {
+        long matchedB = 0L;
+        long common = 0L;
+        for (int i = 0; i < a.length; i++) {
+            int from = Math.max(0, i - separation);
+            int to = Math.min(i + separation + 1, bLength);
+            if (from >= to)
+                continue;
+            long candidates = peqB.get(a[i]) & ~matchedB & range(from, to);
+            if (candidates != 0) {
+                matchedB |= Long.lowestOneBit(candidates);
+                common |= 1L << i;
+            }
+        }
+        return common;
+    }
+
+    /*
+     * Mascara con los bits [from, to) activos, con 0 <= from < to <= MAX_LENGTH
+     */
+    private static long range(int from, int to) {
+        long upTo = (to == MAX_LENGTH) ? -1L : (1L << to) - 1L;
+        return upTo & (-1L << from);
+    }
+
+    /*
+     * Mascara de posiciones de cada caracter de un patron
+     */
+    private interface PatternEq {
+        long get(char c);
+    }
+
+    /**
+     * Immutable position masks of a pattern, built once and kept by {@link PreparedString} so that a string compared
+     * against many others does not rebuild them on every comparison.
+     */
+    public static final class CharMask implements PatternEq {
+        private final char[] chars;
+        private final long[] masks;
+        private final int length;
+
+        private CharMask(char[] chars, long[] masks, int length) {
+            this.chars = chars;
+            this.masks = masks;
+            this.length = length;
+        }
+
+        public static CharMask of(char[] pattern) {
+            if (pattern.length > MAX_LENGTH)
+                throw new IllegalArgumentException("Pattern longer than " + MAX_LENGTH + " characters");
+            char[] sorted = pattern.clone();
+            Arrays.sort(sorted);
+            int distinct = 0;
+            for (int i = 0; i < sorted.length; i++) {
+                if (i == 0 || sorted[i] != sorted[i - 1])
+                    sorted[distinct++] = sorted[i];
+            }
+            char[] chars = Arrays.copyOf(sorted, distinct);
+            long[] masks = new long[distinct];
+            for (int i = 0; i < pattern.length; i++) {
+                masks[Arrays.binarySearch(chars, pattern[i])] |= 1L << i;
+            }
+            return new CharMask(chars, masks, pattern.length);
+        }
+
+        public int length() {
+            return length;
+        }
+
+        @Override
+        public long get(char c) {
+            int k = Arrays.binarySearch(chars, c);
+            return (k < 0) ? 0L : masks[k];
+        }
+    }
+
+    /*
+     * Mascaras de posiciones de cada caracter del patron reutilizadas por cada hilo. Los caracteres Latin-1 se
+     * resuelven con un array y el resto con una busqueda lineal, ya que un patron tiene como mucho MAX_LENGTH
+     * caracteres distintos
+     */
+    private static final class PatternMask implements PatternEq {
+        private final long[] latin = new long[256];
+        private final char[] extended = new char[MAX_LENGTH];
+        private final long[] extendedMasks = new long[MAX_LENGTH];
+        private int extendedSize;
+        private char[] pattern;
+
+        PatternMask build(char[] pattern) {
+            this.pattern = pattern;
+            for (int i = 0; i < pattern.length; i++) {
+                char c = pattern[i];
+                if (c < 256) {
+                    latin[c] |= 1L << i;
+                } else {
+                    int k = indexOf(c);
+                    if (k < 0) {
+                        k = extendedSize++;
+                        extended[k] = c;
+                        extendedMasks[k] = 0L;
+                    }
+                    extendedMasks[k] |= 1L << i;
+                }
+            }
+            return this;
+        }
+
+        @Override
+        public long get(char c) {
+            if (c < 256)
+                return latin[c];
+            int k = indexOf(c);
+            return (k < 0) ? 0L : extendedMasks[k];
+        }
+
+        void clear() {
+            for (char c : pattern) {
+                if (c < 256)
+                    latin[c] = 0L;
+            }
+            extendedSize = 0;
+            pattern = null;
+        }
+
+        private int indexOf(char c) {
+            for (int k = 0; k < extendedSize; k++) {
+                if (extended[k] == c)
+                    return k;
+            }
+            return -1;
+        }
+    }
+}
@@ -1,14 +1,5 @@
 package es.um.asio.service.comparators.strings;
 
-import org.simmetrics.StringMetric;
-import org.simmetrics.metrics.JaroWinkler;
-import org.simmetrics.metrics.MongeElkan;
-import org.simmetrics.simplifiers.Simplifiers;
-
-import java.util.Arrays;
-
-import static org.simmetrics.builders.StringMetricBuilder.with;
-
 public class JaroWinklerSimilarityImp implements Similarity {
 
     /*
@@ -17,13 +8,7 @@ public class JaroWinklerSimilarityImp implements Similarity {
      * Inconvenientes: Funciona mal con las abreviaturas o cambios de caracteres
      */
     @Override
-    public float calculateSimilarity(String str1, String str2) {
-        StringMetric metric =
-                with(new JaroWinkler())
-                        .simplify(Simplifiers.toLowerCase())
-                        .simplify(Simplifiers.removeDiacritics())
-                        .build();
-        return Math.max(new MongeElkan(metric).compare(Arrays.asList(str1.split(" " )), Arrays.asList(str2.split(" " ))),metric.compare(str1,str2));
+    public float calculateSimilarity(PreparedString str1, PreparedString str2) {
+        return StringKernel.mongeElkanOrWhole(str1, str2, StringKernel::jaroWinkler);
     }
-
 }
@@ -1,14 +1,5 @@
 package es.um.asio.service.comparators.strings;
 
-import org.simmetrics.StringMetric;
-import org.simmetrics.metrics.LongestCommonSubsequence;
-import org.simmetrics.metrics.MongeElkan;
-import org.simmetrics.simplifiers.Simplifiers;
-
-import java.util.Arrays;
-
-import static org.simmetrics.builders.StringMetricBuilder.with;
-
 public class LongestCommonSubsequenceSimilarityImp implements Similarity {
 
     /*
@@ -17,13 +8,17 @@ public class LongestCommonSubsequenceSimilarityImp implements Similarity {
      * Inconvenientes: Mal en el resto de casos
      */
     @Override
-    public float calculateSimilarity(String str1, String str2) {
-        StringMetric metric =
-                with(new LongestCommonSubsequence())
-                        .simplify(Simplifiers.toLowerCase())
-                        .simplify(Simplifiers.removeDiacritics())
-                        .build();
-        return Math.max(new MongeElkan(metric).compare(Arrays.asList(str1.split(" " )), Arrays.asList(str2.split(" " ))),metric.compare(str1,str2));
+    public float calculateSimilarity(PreparedString str1, PreparedString str2) {
+        return StringKernel.mongeElkanOrWhole(str1, str2, StringKernel::longestCommonSubsequence);
+    }
+
+    @Override
+    public float calculateUpperBound(PreparedString str1, PreparedString str2) {
+        return StringKernel.mongeElkanOrWhole(str1, str2, StringKernel::longestCommonSubsequenceUpperBound);
     }
 
+    @Override
+    public boolean isExpensive() {
+        return true;
+    }
 }
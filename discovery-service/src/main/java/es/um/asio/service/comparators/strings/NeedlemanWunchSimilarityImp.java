@@ -1,14 +1,5 @@
 package es.um.asio.service.comparators.strings;
 
-import org.simmetrics.StringMetric;
-import org.simmetrics.metrics.MongeElkan;
-import org.simmetrics.metrics.NeedlemanWunch;
-import org.simmetrics.simplifiers.Simplifiers;
-
-import java.util.Arrays;
-
-import static org.simmetrics.builders.StringMetricBuilder.with;
-
 public class NeedlemanWunchSimilarityImp implements Similarity {
 
     /*
@@ -17,13 +8,17 @@ public class NeedlemanWunchSimilarityImp implements Similarity {
      * Inconvenientes: Funciona mal con las abreviaturas o cambios de caracteres
      */
     @Override
-    public float calculateSimilarity(String str1, String str2) {
-        StringMetric metric =
-                with(new NeedlemanWunch())
-                        .simplify(Simplifiers.toLowerCase())
-                        .simplify(Simplifiers.replaceNonWord())
-                        .build();
-        return Math.max(new MongeElkan(metric).compare(Arrays.asList(str1.split(" " )), Arrays.asList(str2.split(" " ))),metric.compare(str1,str2));
+    public float calculateSimilarity(PreparedString str1, PreparedString str2) {
+        return StringKernel.mongeElkanOrWhole(str1, str2, (a, b) -> StringKernel.needlemanWunch(a.getWords(), b.getWords()));
+    }
+
+    @Override
+    public float calculateUpperBound(PreparedString str1, PreparedString str2) {
+        return StringKernel.mongeElkanOrWhole(str1, str2, StringKernel::needlemanWunchUpperBound);
     }
 
+    @Override
+    public boolean isExpensive() {
+        return true;
+    }
 }
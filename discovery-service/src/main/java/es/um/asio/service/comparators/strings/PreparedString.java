@@ -0,0 +1,164 @@
+package es.um.asio.service.comparators.strings;
+
+import java.text.Normalizer;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.regex.Pattern;
+
+/**
+ * String prepared once to be compared by every {@link Similarity} implementation.
+ * <p>
+ * Holds the simplified forms used by the metrics (lower case without diacritics and lower case with non word characters
+ * replaced), their whitespace token bags, the q-gram bag, the bit parallel position masks and the parts of the raw
+ * string split by blank used by the Monge Elkan aggregation. Every form is built lazily and only once, so the same instance can be passed to all the
+ * metrics of an ensemble. Instances are not thread safe and must not be shared between threads.
+ */
+public final class PreparedString {
+
+    public static final int Q_GRAM_SIZE = 2;
+
+    private static final Pattern DIACRITICS = Pattern.compile("[\\p{InCombiningDiacriticalMarks}\\p{IsLm}\\p{IsSk}]+");
+    private static final Pattern NON_WORD = Pattern.compile("\\W");
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+
+    private final String raw;
+    private PreparedString[] parts;
+    private char[] diacriticFree;
+    private char[] words;
+    private char[] sortedDiacriticFree;
+    private char[] sortedWords;
+    private BitParallelKernel.CharMask diacriticFreeMask;
+    private TokenBag diacriticFreeTokens;
+    private TokenBag wordTokens;
+    private TokenBag qGrams;
+
+    private PreparedString(String raw) {
+        this.raw = raw;
+    }
+
+    public static PreparedString of(String raw) {
+        return new PreparedString(raw);
+    }
+
+    public String getRaw() {
+        return raw;
+    }
+
+    /*
+     * Partes de la cadena original separadas por espacio (equivalente a raw.split(" "))
+     */
+    public PreparedString[] getParts() {
+        if (parts == null) {
+            if (raw.indexOf(' ') < 0) {
+                parts = new PreparedString[] { this };
+            } else {
+                String[] split = raw.split(" ");
+                parts = new PreparedString[split.length];
+                for (int i = 0; i < split.length; i++) {
+                    parts[i] = new PreparedString(split[i]);
+                }
+            }
+        }
+        return parts;
+    }
+
+    /*
+     * Minusculas y sin signos diacriticos
+     */
+    public char[] getDiacriticFree() {
+        if (diacriticFree == null) {
+            String lower = raw.toLowerCase(Locale.getDefault());
+            diacriticFree = DIACRITICS.matcher(Normalizer.normalize(lower, Normalizer.Form.NFD)).replaceAll("").toCharArray();
+        }
+        return diacriticFree;
+    }
+
+    /*
+     * Minusculas y caracteres que no forman palabras sustituidos por espacios
+     */
+    public char[] getWords() {
+        if (words == null) {
+            words = NON_WORD.matcher(raw.toLowerCase(Locale.getDefault())).replaceAll(" ").toCharArray();
+        }
+        return words;
+    }
+
+    /*
+     * Mascaras de posiciones de la forma sin diacriticos para los algoritmos bit paralelos. Solo existe si la forma no
+     * supera BitParallelKernel.MAX_LENGTH caracteres
+     */
+    public BitParallelKernel.CharMask getDiacriticFreeMask() {
+        if (diacriticFreeMask == null && getDiacriticFree().length <= BitParallelKernel.MAX_LENGTH) {
+            diacriticFreeMask = BitParallelKernel.CharMask.of(getDiacriticFree());
+        }
+        return diacriticFreeMask;
+    }
+
+    /*
+     * Caracteres de la forma sin diacriticos ordenados, para calcular cotas por conteo de caracteres
+     */
+    public char[] getSortedDiacriticFree() {
+        if (sortedDiacriticFree == null) {
+            sortedDiacriticFree = getDiacriticFree().clone();
+            Arrays.sort(sortedDiacriticFree);
+        }
+        return sortedDiacriticFree;
+    }
+
+    /*
+     * Caracteres de la forma con palabras ordenados, para calcular cotas por conteo de caracteres
+     */
+    public char[] getSortedWords() {
+        if (sortedWords == null) {
+            sortedWords = getWords().clone();
+            Arrays.sort(sortedWords);
+        }
+        return sortedWords;
+    }
+
+    public TokenBag getDiacriticFreeTokens() {
+        if (diacriticFreeTokens == null) {
+            diacriticFreeTokens = TokenBag.of(whitespaceTokens(getDiacriticFree()));
+        }
+        return diacriticFreeTokens;
+    }
+
+    public TokenBag getWordTokens() {
+        if (wordTokens == null) {
+            wordTokens = TokenBag.of(whitespaceTokens(getWords()));
+        }
+        return wordTokens;
+    }
+
+    /*
+     * Multiconjunto de q-gramas de la forma sin diacriticos
+     */
+    public TokenBag getQGrams() {
+        if (qGrams == null) {
+            char[] chars = getDiacriticFree();
+            int n = Math.max(0, chars.length - Q_GRAM_SIZE + 1);
+            String[] grams = new String[n];
+            for (int i = 0; i < n; i++) {
+                grams[i] = new String(chars, i, Q_GRAM_SIZE);
+            }
+            qGrams = TokenBag.of(grams);
+        }
+        return qGrams;
+    }
+
+    private static String[] whitespaceTokens(char[] chars) {
+        if (chars.length == 0) {
+            return new String[0];
+        }
+        String[] tokens = WHITESPACE.split(new String(chars));
+        if (tokens.length > 0 && tokens[0].isEmpty()) {
+            tokens = Arrays.copyOfRange(tokens, 1, tokens.length);
+        }
+        return tokens;
+    }
+
+    @Override
+    public String toString() {
+        return raw;
+    }
+}
@@ -1,5 +1,45 @@
 package es.um.asio.service.comparators.strings;
 
+import java.util.List;
+
 public interface Similarity {
-    public float calculateSimilarity(String a, String b);
+
+    public default float calculateSimilarity(String a, String b) {
+        return calculateSimilarity(PreparedString.of(a), PreparedString.of(b));
+    }
+
+    /*
+     * Similitud sobre cadenas ya preparadas, de forma que las formas simplificadas se calculan una sola vez aunque se
+     * apliquen varios algoritmos sobre el mismo par
+     */
+    public float calculateSimilarity(PreparedString a, PreparedString b);
+
+    /*
+     * Similitud de una cadena contra muchas: la consulta se prepara una sola vez (tokens, q-gramas y mascaras de bits) y
+     * se reutiliza con todos los candidatos. out[i] recibe la similitud con candidates.get(i)
+     */
+    public default void calculateSimilarity(String query, List<String> candidates, float[] out) {
+        calculateSimilarity(PreparedString.of(query), candidates, out);
+    }
+
+    public default void calculateSimilarity(PreparedString query, List<String> candidates, float[] out) {
+        for (int i = 0; i < candidates.size(); i++) {
+            out[i] = calculateSimilarity(query, PreparedString.of(candidates.get(i)));
+        }
+    }
+
+    /*
+     * Cota superior de calculateSimilarity para el par. Los algoritmos costosos la sobrescriben con una cota barata, que
+     * permite descartar pares que no pueden alcanzar un umbral sin calcular la similitud completa
+     */
+    public default float calculateUpperBound(PreparedString a, PreparedString b) {
+        return 1.0f;
+    }
+
+    /*
+     * Indica si el algoritmo es lo bastante costoso como para evaluar antes su cota superior
+     */
+    public default boolean isExpensive() {
+        return false;
+    }
 }
@@ -0,0 +1,616 @@
+package es.um.asio.service.comparators.strings;
+
+import java.util.Arrays;
+
+/**
+ * Allocation free implementations of the string metrics used by the {@link Similarity} implementations.
+ * <p>
+ * Every kernel returns the same value as the equivalent simmetrics metric, but works over the forms already computed
+ * in {@link PreparedString} and reuses per thread dynamic programming buffers instead of allocating new arrays on each
+ * call. Levenshtein, the longest common subsequence and Jaro use {@link BitParallelKernel} when the strings fit in a
+ * machine word.
+ */
+public final class StringKernel {
+
+    private static final ThreadLocal<Buffers> BUFFERS = ThreadLocal.withInitial(Buffers::new);
+
+    private static final float NEEDLEMAN_WUNCH_GAP = -2.0f;
+    private static final float NEEDLEMAN_WUNCH_MATCH = 0.0f;
+    private static final float NEEDLEMAN_WUNCH_MISMATCH = -1.0f;
+    private static final float SMITH_WATERMAN_GAP_START = -5.0f;
+    private static final float SMITH_WATERMAN_GAP_EXTEND = -1.0f;
+    private static final float SMITH_WATERMAN_MATCH = 5.0f;
+    private static final float SMITH_WATERMAN_MISMATCH = -3.0f;
+    private static final float SMITH_WATERMAN_GOTOH_GAP = -0.5f;
+    private static final float SMITH_WATERMAN_GOTOH_MATCH = 1.0f;
+    private static final float SMITH_WATERMAN_GOTOH_MISMATCH = -2.0f;
+    private static final float JARO_WINKLER_PREFIX_SCALE = 0.1f;
+    private static final int JARO_WINKLER_MAX_PREFIX = 4;
+
+    private StringKernel() {}
+
+    /*
+     * Metrica sobre dos cadenas ya preparadas
+     */
+    @FunctionalInterface
+    public interface PreparedMetric {
+        float compare(PreparedString a, PreparedString b);
+    }
+
+    /*
+     * Maximo entre Monge Elkan sobre las partes de las cadenas y la metrica sobre las cadenas completas
+     */
+    public static float mongeElkanOrWhole(PreparedString a, PreparedString b, PreparedMetric metric) {
+        return Math.max(mongeElkan(a.getParts(), b.getParts(), metric), metric.compare(a, b));
+    }
+
+    public static float mongeElkan(PreparedString[] a, PreparedString[] b, PreparedMetric metric) {
+        if (a.length == 0 && b.length == 0)
+            return 1.0f;
+        if (a.length == 0 || b.length == 0)
+            return 0.0f;
+        return (float) Math.sqrt(mongeElkanDirected(a, b, metric) * mongeElkanDirected(b, a, metric));
+    }
+
+    private static float mongeElkanDirected(PreparedString[] a, PreparedString[] b, PreparedMetric metric) {
+        float sum = 0.0f;
+        for (PreparedString s : a) {
+            float max = 0.0f;
+            for (PreparedString q : b) {
+                max = Math.max(max, metric.compare(s, q));
+            }
+            sum += max;
+        }
+        return sum / (float) a.length;
+    }
+
+    /* Metricas sobre caracteres */
+
+    public static float levenshtein(char[] a, char[] b) {
+        if (a.length == 0 && b.length == 0)
+            return 1.0f;
+        return 1.0f - levenshteinDistance(a, b) / (1.0f * (float) Math.max(a.length, b.length));
+    }
+
+    public static float levenshteinDistance(char[] s, char[] t) {
+        if (s.length == 0)
+            return t.length;
+        if (t.length == 0)
+            return s.length;
+        if (Arrays.equals(s, t))
+            return 0.0f;
+        if (s.length <= BitParallelKernel.MAX_LENGTH)
+            return BitParallelKernel.levenshteinDistance(s, t);
+        if (t.length <= BitParallelKernel.MAX_LENGTH)
+            return BitParallelKernel.levenshteinDistance(t, s);
+        return dynamicLevenshteinDistance(s, t);
+    }
+
+    static float dynamicLevenshteinDistance(char[] s, char[] t) {
+        Buffers buffers = BUFFERS.get();
+        float[] v0 = buffers.floats(0, t.length + 1);
+        float[] v1 = buffers.floats(1, t.length + 1);
+        for (int i = 0; i <= t.length; i++) {
+            v0[i] = i;
+        }
+        for (int i = 0; i < s.length; i++) {
+            v1[0] = (float) (i + 1);
+            for (int j = 0; j < t.length; j++) {
+                v1[j + 1] = min(v1[j] + 1.0f, v0[j + 1] + 1.0f, v0[j] + (s[i] == t[j] ? 0.0f : 1.0f));
+            }
+            float[] swap = v0;
+            v0 = v1;
+            v1 = swap;
+        }
+        return v0[t.length];
+    }
+
+    public static float longestCommonSubsequence(char[] a, char[] b) {
+        if (a.length == 0 && b.length == 0)
+            return 1.0f;
+        if (a.length == 0 || b.length == 0)
+            return 0.0f;
+        return (float) longestCommonSubsequenceLength(a, b) / (float) Math.max(a.length, b.length);
+    }
+
+    public static int longestCommonSubsequenceLength(char[] a, char[] b) {
+        if (a.length <= BitParallelKernel.MAX_LENGTH)
+            return BitParallelKernel.longestCommonSubsequenceLength(a, b);
+        if (b.length <= BitParallelKernel.MAX_LENGTH)
+            return BitParallelKernel.longestCommonSubsequenceLength(b, a);
+        return dynamicLongestCommonSubsequenceLength(a, b);
+    }
+
+    static int dynamicLongestCommonSubsequenceLength(char[] a, char[] b) {
+        Buffers buffers = BUFFERS.get();
+        int m = b.length;
+        int[] v0 = buffers.ints(0, m + 1);
+        int[] v1 = buffers.ints(1, m + 1);
+        Arrays.fill(v0, 0, m + 1, 0);
+        Arrays.fill(v1, 0, m + 1, 0);
+        for (int i = 1; i <= a.length; i++) {
+            for (int j = 1; j <= m; j++) {
+                v1[j] = a[i - 1] == b[j - 1] ? v0[j - 1] + 1 : Math.max(v1[j - 1], v0[j]);
+            }
+            int[] swap = v0;
+            v0 = v1;
+            v1 = swap;
+        }
+        return v0[m];
+    }
+
+    /*
+     * Versiones sobre cadenas preparadas: si una forma cabe en una palabra, se usan las mascaras que ya guarda
+     */
+    public static float levenshtein(PreparedString a, PreparedString b) {
+        char[] s = a.getDiacriticFree();
+        char[] t = b.getDiacriticFree();
+        if (s.length == 0 && t.length == 0)
+            return 1.0f;
+        float distance;
+        if (s.length == 0 || t.length == 0 || Arrays.equals(s, t))
+            distance = levenshteinDistance(s, t);
+        else if (s.length <= BitParallelKernel.MAX_LENGTH)
+            distance = BitParallelKernel.levenshteinDistance(a.getDiacriticFreeMask(), t);
+        else if (t.length <= BitParallelKernel.MAX_LENGTH)
+            distance = BitParallelKernel.levenshteinDistance(b.getDiacriticFreeMask(), s);
+        else
+            distance = dynamicLevenshteinDistance(s, t);
+        return 1.0f - distance / (1.0f * (float) Math.max(s.length, t.length));
+    }
+
+    public static float longestCommonSubsequence(PreparedString a, PreparedString b) {
+        char[] s = a.getDiacriticFree();
+        char[] t = b.getDiacriticFree();
+        if (s.length == 0 && t.length == 0)
+            return 1.0f;
+        if (s.length == 0 || t.length == 0)
+            return 0.0f;
+        int length;
+        if (s.length <= BitParallelKernel.MAX_LENGTH)
+            length = BitParallelKernel.longestCommonSubsequenceLength(a.getDiacriticFreeMask(), t);
+        else if (t.length <= BitParallelKernel.MAX_LENGTH)
+            length = BitParallelKernel.longestCommonSubsequenceLength(b.getDiacriticFreeMask(), s);
+        else
+            length = dynamicLongestCommonSubsequenceLength(s, t);
+        return (float) length / (float) Math.max(s.length, t.length);
+    }
+
+    public static float jaro(PreparedString a, PreparedString b) {
+        char[] s = a.getDiacriticFree();
+        char[] t = b.getDiacriticFree();
+        if (s.length <= BitParallelKernel.MAX_LENGTH && t.length <= BitParallelKernel.MAX_LENGTH)
+            return BitParallelKernel.jaro(s, a.getDiacriticFreeMask(), t, b.getDiacriticFreeMask());
+        return dynamicJaro(s, t);
+    }
+
+    public static float jaroWinkler(PreparedString a, PreparedString b) {
+        return jaroWinkler(jaro(a, b), a.getDiacriticFree(), b.getDiacriticFree());
+    }
+
+    public static float longestCommonSubstring(char[] a, char[] b) {
+        if (a.length == 0 && b.length == 0)
+            return 1.0f;
+        if (a.length == 0 || b.length == 0)
+            return 0.0f;
+        Buffers buffers = BUFFERS.get();
+        int n = b.length;
+        int[] v0 = buffers.ints(0, n);
+        int[] v1 = buffers.ints(1, n);
+        int z = 0;
+        for (int i = 0; i < a.length; i++) {
+            for (int j = 0; j < n; j++) {
+                if (a[i] == b[j]) {
+                    v1[j] = (i == 0 || j == 0) ? 1 : v0[j - 1] + 1;
+                    if (v1[j] > z)
+                        z = v1[j];
+                } else {
+                    v1[j] = 0;
+                }
+            }
+            int[] swap = v0;
+            v0 = v1;
+            v1 = swap;
+        }
+        return (float) z / (float) Math.max(a.length, b.length);
+    }
+
+    public static float jaro(char[] a, char[] b) {
+        if (a.length <= BitParallelKernel.MAX_LENGTH && b.length <= BitParallelKernel.MAX_LENGTH)
+            return BitParallelKernel.jaro(a, b);
+        return dynamicJaro(a, b);
+    }
+
+    static float dynamicJaro(char[] a, char[] b) {
+        if (a.length == 0 && b.length == 0)
+            return 1.0f;
+        if (a.length == 0 || b.length == 0)
+            return 0.0f;
+        Buffers buffers = BUFFERS.get();
+        int halfLength = Math.max(0, Math.max(a.length, b.length) / 2 - 1);
+        int[] commonA = buffers.ints(0, a.length);
+        int[] commonB = buffers.ints(1, b.length);
+        int commonALength = commonCharacters(a, b, halfLength, commonA, buffers.booleans(0, b.length));
+        int commonBLength = commonCharacters(b, a, halfLength, commonB, buffers.booleans(1, a.length));
+        if (commonALength == 0 || commonBLength == 0)
+            return 0.0f;
+        if (commonALength != commonBLength)
+            return 0.0f;
+        int transpositions = 0;
+        for (int i = 0; i < commonALength; i++) {
+            if (commonA[i] != commonB[i])
+                transpositions++;
+        }
+        float aCommonRatio = commonALength / (float) a.length;
+        float bCommonRatio = commonBLength / (float) b.length;
+        float transpositionRatio = (commonALength - (transpositions / 2.0f)) / commonALength;
+        return (aCommonRatio + bCommonRatio + transpositionRatio) / 3.0f;
+    }
+
+    /*
+     * Caracteres de a que aparecen en b dentro de la ventana indicada, en orden. Devuelve cuantos se han encontrado
+     */
+    private static int commonCharacters(char[] a, char[] b, int separation, int[] common, boolean[] matched) {
+        Arrays.fill(matched, 0, b.length, false);
+        int commonIndex = 0;
+        for (int i = 0; i < a.length; i++) {
+            char character = a[i];
+            int to = Math.min(i + separation + 1, b.length);
+            for (int j = Math.max(0, i - separation); j < to; j++) {
+                if (b[j] == character && !matched[j]) {
+                    common[commonIndex++] = character;
+                    matched[j] = true;
+                    break;
+                }
+            }
+        }
+        return commonIndex;
+    }
+
+    public static float jaroWinkler(char[] a, char[] b) {
+        return jaroWinkler(jaro(a, b), a, b);
+    }
+
+    /*
+     * Como new JaroWinkler() de simmetrics: el prefijo comun se bonifica siempre, sin umbral minimo de Jaro
+     */
+    private static float jaroWinkler(float jaroScore, char[] a, char[] b) {
+        int prefixLength = Math.min(commonPrefixLength(a, b), JARO_WINKLER_MAX_PREFIX);
+        return jaroScore + (float) prefixLength * JARO_WINKLER_PREFIX_SCALE * (1.0f - jaroScore);
+    }
+
+    private static int commonPrefixLength(char[] a, char[] b) {
+        int max = Math.min(a.length, b.length);
+        int p = 0;
+        while (p < max && a[p] == b[p]) {
+            p++;
+        }
+        if (isSurrogatePairAt(a, p - 1) || isSurrogatePairAt(b, p - 1))
+            p--;
+        return p;
+    }
+
+    private static boolean isSurrogatePairAt(char[] s, int index) {
+        return index >= 0 && index <= s.length - 2 && Character.isHighSurrogate(s[index]) && Character.isLowSurrogate(s[index + 1]);
+    }
+
+    public static float needlemanWunch(char[] a, char[] b) {
+        if (a.length == 0 && b.length == 0)
+            return 1.0f;
+        float maxDistance = (float) Math.max(a.length, b.length) * Math.max(NEEDLEMAN_WUNCH_MATCH, NEEDLEMAN_WUNCH_GAP);
+        float minDistance = (float) Math.max(a.length, b.length) * Math.min(NEEDLEMAN_WUNCH_MISMATCH, NEEDLEMAN_WUNCH_GAP);
+        return (-needlemanWunchCost(a, b) - minDistance) / (maxDistance - minDistance);
+    }
+
+    private static float needlemanWunchCost(char[] s, char[] t) {
+        if (Arrays.equals(s, t))
+            return 0.0f;
+        if (s.length == 0)
+            return -NEEDLEMAN_WUNCH_GAP * (float) t.length;
+        if (t.length == 0)
+            return -NEEDLEMAN_WUNCH_GAP * (float) s.length;
+        Buffers buffers = BUFFERS.get();
+        int m = t.length;
+        float[] v0 = buffers.floats(0, m + 1);
+        float[] v1 = buffers.floats(1, m + 1);
+        for (int j = 0; j <= m; j++) {
+            v0[j] = j;
+        }
+        for (int i = 1; i <= s.length; i++) {
+            v1[0] = i;
+            for (int j = 1; j <= m; j++) {
+                float substitution = s[i - 1] == t[j - 1] ? NEEDLEMAN_WUNCH_MATCH : NEEDLEMAN_WUNCH_MISMATCH;
+                v1[j] = min(v0[j] - NEEDLEMAN_WUNCH_GAP, v1[j - 1] - NEEDLEMAN_WUNCH_GAP, v0[j - 1] - substitution);
+            }
+            float[] swap = v0;
+            v0 = v1;
+            v1 = swap;
+        }
+        return v0[m];
+    }
+
+    public static float smithWaterman(char[] a, char[] b) {
+        if (a.length == 0 && b.length == 0)
+            return 1.0f;
+        if (a.length == 0 || b.length == 0)
+            return 0.0f;
+        float maxDistance = (float) Math.min(a.length, b.length) * Math.max(SMITH_WATERMAN_MATCH, Float.NEGATIVE_INFINITY);
+        return smithWatermanScore(a, b) / maxDistance;
+    }
+
+    /*
+     * Smith Waterman con gap afin (-5, -1) y ventana ilimitada. El maximo sobre todas las longitudes de gap se mantiene
+     * de forma incremental por fila y por columna, con lo que el coste baja de O(n*m*(n+m)) a O(n*m). Todas las
+     * puntuaciones son enteros representables de forma exacta, por lo que el resultado es identico al calculo directo.
+     * Como en la implementacion original, la fila y la columna 0 nunca actuan como origen de un gap.
+     */
+    private static float smithWatermanScore(char[] a, char[] b) {
+        Buffers buffers = BUFFERS.get();
+        int n = a.length;
+        int m = b.length;
+        float[] prev = buffers.floats(0, m);
+        float[] cur = buffers.floats(1, m);
+        float[] verticalGap = buffers.floats(2, m);
+        Arrays.fill(verticalGap, 0, m, Float.NEGATIVE_INFINITY);
+
+        prev[0] = Math.max(0.0f, smithWatermanSubstitution(a[0], b[0]));
+        float max = prev[0];
+        float horizontalGap = Float.NEGATIVE_INFINITY;
+        for (int j = 1; j < m; j++) {
+            if (j >= 2)
+                horizontalGap = Math.max(prev[j - 1] + SMITH_WATERMAN_GAP_START, horizontalGap + SMITH_WATERMAN_GAP_EXTEND);
+            prev[j] = max(0.0f, Math.max(0.0f, horizontalGap), smithWatermanSubstitution(a[0], b[j]));
+            max = Math.max(max, prev[j]);
+        }
+        for (int i = 1; i < n; i++) {
+            if (i >= 2) {
+                for (int j = 0; j < m; j++) {
+                    verticalGap[j] = Math.max(prev[j] + SMITH_WATERMAN_GAP_START, verticalGap[j] + SMITH_WATERMAN_GAP_EXTEND);
+                }
+            }
+            cur[0] = max(0.0f, Math.max(0.0f, verticalGap[0]), smithWatermanSubstitution(a[i], b[0]));
+            max = Math.max(max, cur[0]);
+            horizontalGap = Float.NEGATIVE_INFINITY;
+            for (int j = 1; j < m; j++) {
+                if (j >= 2)
+                    horizontalGap = Math.max(cur[j - 1] + SMITH_WATERMAN_GAP_START, horizontalGap + SMITH_WATERMAN_GAP_EXTEND);
+                float gap = Math.max(0.0f, Math.max(verticalGap[j], horizontalGap));
+                cur[j] = max(0.0f, gap, prev[j - 1] + smithWatermanSubstitution(a[i], b[j]));
+                max = Math.max(max, cur[j]);
+            }
+            float[] swap = prev;
+            prev = cur;
+            cur = swap;
+        }
+        return max;
+    }
+
+    private static float smithWatermanSubstitution(char a, char b) {
+        return a == b ? SMITH_WATERMAN_MATCH : SMITH_WATERMAN_MISMATCH;
+    }
+
+    public static float smithWatermanGotoh(char[] a, char[] b) {
+        if (a.length == 0 && b.length == 0)
+            return 1.0f;
+        if (a.length == 0 || b.length == 0)
+            return 0.0f;
+        float maxDistance = (float) Math.min(a.length, b.length) * Math.max(SMITH_WATERMAN_GOTOH_MATCH, SMITH_WATERMAN_GOTOH_GAP);
+        return smithWatermanGotohScore(a, b) / maxDistance;
+    }
+
+    private static float smithWatermanGotohScore(char[] s, char[] t) {
+        Buffers buffers = BUFFERS.get();
+        int m = t.length;
+        float[] v0 = buffers.floats(0, m);
+        float[] v1 = buffers.floats(1, m);
+        v0[0] = max(0.0f, SMITH_WATERMAN_GOTOH_GAP, smithWatermanGotohSubstitution(s[0], t[0]));
+        float max = v0[0];
+        for (int j = 1; j < m; j++) {
+            v0[j] = max(0.0f, v0[j - 1] + SMITH_WATERMAN_GOTOH_GAP, smithWatermanGotohSubstitution(s[0], t[j]));
+            max = Math.max(max, v0[j]);
+        }
+        for (int i = 1; i < s.length; i++) {
+            v1[0] = max(0.0f, v0[0] + SMITH_WATERMAN_GOTOH_GAP, smithWatermanGotohSubstitution(s[i], t[0]));
+            max = Math.max(max, v1[0]);
+            for (int j = 1; j < m; j++) {
+                v1[j] = Math.max(max(0.0f, v0[j] + SMITH_WATERMAN_GOTOH_GAP, v1[j - 1] + SMITH_WATERMAN_GOTOH_GAP), v0[j - 1] + smithWatermanGotohSubstitution(s[i], t[j]));
+                max = Math.max(max, v1[j]);
+            }
+            float[] swap = v0;
+            v0 = v1;
+            v1 = swap;
+        }
+        return max;
+    }
+
+    private static float smithWatermanGotohSubstitution(char a, char b) {
+        return a == b ? SMITH_WATERMAN_GOTOH_MATCH : SMITH_WATERMAN_GOTOH_MISMATCH;
+    }
+
+    /* Metricas sobre multiconjuntos de tokens */
+
+    public static float blockDistance(TokenBag a, TokenBag b) {
+        if (a.isEmpty() && b.isEmpty())
+            return 1.0f;
+        if (a.isEmpty() || b.isEmpty())
+            return 0.0f;
+        return 1.0f - a.blockDistance(b) / (float) (a.size() + b.size());
+    }
+
+    public static float cosine(TokenBag a, TokenBag b) {
+        if (a.isEmpty() && b.isEmpty())
+            return 1.0f;
+        if (a.isEmpty() || b.isEmpty())
+            return 0.0f;
+        return (float) ((double) a.dotProduct(b) / (Math.sqrt(a.squaredMagnitude()) * Math.sqrt(b.squaredMagnitude())));
+    }
+
+    public static float euclidean(TokenBag a, TokenBag b) {
+        if (a.isEmpty() && b.isEmpty())
+            return 1.0f;
+        float maxDistance = (float) Math.sqrt(a.size() * a.size() + b.size() * b.size());
+        return 1.0f - (float) Math.sqrt(a.squaredDistance(b)) / maxDistance;
+    }
+
+    public static float generalizedJaccard(TokenBag a, TokenBag b) {
+        if (a.isEmpty() && b.isEmpty())
+            return 1.0f;
+        if (a.isEmpty() || b.isEmpty())
+            return 0.0f;
+        int intersection = a.multisetIntersection(b);
+        return (float) intersection / (float) (a.size() + b.size() - intersection);
+    }
+
+    public static float simonWhite(TokenBag a, TokenBag b) {
+        if (a.isEmpty() && b.isEmpty())
+            return 1.0f;
+        if (a.isEmpty() || b.isEmpty())
+            return 0.0f;
+        return 2.0f * (float) a.multisetIntersection(b) / (float) (a.size() + b.size());
+    }
+
+    /* Metricas sobre conjuntos de tokens */
+
+    public static float dice(TokenBag a, TokenBag b) {
+        if (a.isEmpty() && b.isEmpty())
+            return 1.0f;
+        if (a.isEmpty() || b.isEmpty())
+            return 0.0f;
+        return 2.0f * (float) a.setIntersection(b) / (float) (a.distinct() + b.distinct());
+    }
+
+    public static float jaccard(TokenBag a, TokenBag b) {
+        if (a.isEmpty() && b.isEmpty())
+            return 1.0f;
+        if (a.isEmpty() || b.isEmpty())
+            return 0.0f;
+        int intersection = a.setIntersection(b);
+        return (float) intersection / (float) (a.distinct() + b.distinct() - intersection);
+    }
+
+    public static float overlapCoefficient(TokenBag a, TokenBag b) {
+        if (a.isEmpty() && b.isEmpty())
+            return 1.0f;
+        if (a.isEmpty() || b.isEmpty())
+            return 0.0f;
+        return (float) a.setIntersection(b) / (float) Math.min(a.distinct(), b.distinct());
+    }
+
+    /* Cotas superiores baratas */
+
+    /*
+     * Cota de Levenshtein: la distancia es al menos la diferencia de longitudes y, por el filtro de conteo de q-gramas,
+     * al menos (max(|Qa|, |Qb|) - |Qa ∩ Qb|) / q
+     */
+    public static float levenshteinUpperBound(PreparedString a, PreparedString b) {
+        char[] ca = a.getDiacriticFree();
+        char[] cb = b.getDiacriticFree();
+        if (ca.length == 0 && cb.length == 0)
+            return 1.0f;
+        TokenBag qa = a.getQGrams();
+        TokenBag qb = b.getQGrams();
+        int missingGrams = Math.max(qa.size(), qb.size()) - qa.multisetIntersection(qb);
+        int minDistance = Math.max(Math.abs(ca.length - cb.length), (missingGrams + PreparedString.Q_GRAM_SIZE - 1) / PreparedString.Q_GRAM_SIZE);
+        return 1.0f - (float) minDistance / (1.0f * (float) Math.max(ca.length, cb.length));
+    }
+
+    /*
+     * Cota de la subsecuencia comun: no puede ser mas larga que los caracteres comunes (conteo) ni que la cadena menor
+     */
+    public static float longestCommonSubsequenceUpperBound(PreparedString a, PreparedString b) {
+        char[] ca = a.getSortedDiacriticFree();
+        char[] cb = b.getSortedDiacriticFree();
+        if (ca.length == 0 && cb.length == 0)
+            return 1.0f;
+        if (ca.length == 0 || cb.length == 0)
+            return 0.0f;
+        return (float) characterOverlap(ca, cb) / (float) Math.max(ca.length, cb.length);
+    }
+
+    /*
+     * Cota de Needleman Wunch: cada paso fuera de la diagonal cuesta al menos 1 y solo los caracteres comunes pueden
+     * alinearse sin coste, luego el coste es al menos max(n, m) - caracteres comunes
+     */
+    public static float needlemanWunchUpperBound(PreparedString a, PreparedString b) {
+        char[] ca = a.getSortedWords();
+        char[] cb = b.getSortedWords();
+        if (ca.length == 0 && cb.length == 0)
+            return 1.0f;
+        int length = Math.max(ca.length, cb.length);
+        float minCost = (float) (length - characterOverlap(ca, cb));
+        float maxDistance = (float) length * Math.max(NEEDLEMAN_WUNCH_MATCH, NEEDLEMAN_WUNCH_GAP);
+        float minDistance = (float) length * Math.min(NEEDLEMAN_WUNCH_MISMATCH, NEEDLEMAN_WUNCH_GAP);
+        return (-minCost - minDistance) / (maxDistance - minDistance);
+    }
+
+    /*
+     * Cota de Smith Waterman Gotoh: la puntuacion de un alineamiento local no supera el numero de caracteres que pueden
+     * coincidir
+     */
+    public static float smithWatermanGotohUpperBound(PreparedString a, PreparedString b) {
+        char[] ca = a.getSortedDiacriticFree();
+        char[] cb = b.getSortedDiacriticFree();
+        if (ca.length == 0 && cb.length == 0)
+            return 1.0f;
+        if (ca.length == 0 || cb.length == 0)
+            return 0.0f;
+        float maxDistance = (float) Math.min(ca.length, cb.length) * Math.max(SMITH_WATERMAN_GOTOH_MATCH, SMITH_WATERMAN_GOTOH_GAP);
+        return (float) characterOverlap(ca, cb) * SMITH_WATERMAN_GOTOH_MATCH / maxDistance;
+    }
+
+    /*
+     * Tamaño de la interseccion como multiconjunto de dos arrays de caracteres ordenados
+     */
+    static int characterOverlap(char[] a, char[] b) {
+        int i = 0;
+        int j = 0;
+        int overlap = 0;
+        while (i < a.length && j < b.length) {
+            if (a[i] == b[j]) {
+                overlap++;
+                i++;
+                j++;
+            } else if (a[i] < b[j]) {
+                i++;
+            } else {
+                j++;
+            }
+        }
+        return overlap;
+    }
+
+    private static float min(float a, float b, float c) {
+        return Math.min(Math.min(a, b), c);
+    }
+
+    private static float max(float a, float b, float c) {
+        return Math.max(Math.max(a, b), c);
+    }
+
+    /*
+     * Buffers de programacion dinamica reutilizados por cada hilo. Solo crecen.
+     */
+    private static final class Buffers {
+        private final float[][] floats = new float[3][16];
+        private final int[][] ints = new int[2][16];
+        private final boolean[][] booleans = new boolean[2][16];
+
+        float[] floats(int slot, int size) {
+            if (floats[slot].length < size)
+                floats[slot] = new float[Math.max(size, floats[slot].length * 2)];
+            return floats[slot];
+        }
+
+        int[] ints(int slot, int size) {
+            if (ints[slot].length < size)
+                ints[slot] = new int[Math.max(size, ints[slot].length * 2)];
+            return ints[slot];
+        }
+
+        boolean[] booleans(int slot, int size) {
+            if (booleans[slot].length < size)
+                booleans[slot] = new boolean[Math.max(size, booleans[slot].length * 2)];
+            return booleans[slot];
+        }
+    }
+}
@@ -0,0 +1,187 @@
+package es.um.asio.service.comparators.strings;
+
+import java.util.Arrays;
+
+/**
+ * Immutable multiset of tokens stored as sorted distinct tokens and their counts, so set and multiset metrics can be
+ * computed with a single merge pass and without hashing.
+ */
+public final class TokenBag {
+
+    private static final TokenBag EMPTY = new TokenBag(new String[0], new int[0], 0);
+
+    private final String[] tokens;
+    private final int[] counts;
+    private final int size;
+
+    private TokenBag(String[] tokens, int[] counts, int size) {
+        this.tokens = tokens;
+        this.counts = counts;
+        this.size = size;
+    }
+
+    public static TokenBag of(String[] values) {
+        if (values.length == 0)
+            return EMPTY;
+        String[] sorted = values.clone();
+        Arrays.sort(sorted);
+        int distinct = 1;
+        for (int i = 1; i < sorted.length; i++) {
+            if (!sorted[i].equals(sorted[i - 1]))
+                distinct++;
+        }
+        String[] tokens = new String[distinct];
+        int[] counts = new int[distinct];
+        int k = 0;
+        tokens[0] = sorted[0];
+        counts[0] = 1;
+        for (int i = 1; i < sorted.length; i++) {
+            if (sorted[i].equals(tokens[k])) {
+                counts[k]++;
+            } else {
+                tokens[++k] = sorted[i];
+                counts[k] = 1;
+            }
+        }
+        return new TokenBag(tokens, counts, sorted.length);
+    }
+
+    /*
+     * Numero total de tokens (cardinalidad del multiconjunto)
+     */
+    public int size() {
+        return size;
+    }
+
+    /*
+     * Numero de tokens distintos (cardinalidad del conjunto)
+     */
+    public int distinct() {
+        return tokens.length;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public String getToken(int i) {
+        return tokens[i];
+    }
+
+    public int getCount(int i) {
+        return counts[i];
+    }
+
+    /*
+     * Tamaño de la interseccion como multiconjunto (suma de minimos)
+     */
+    public int multisetIntersection(TokenBag other) {
+        int i = 0;
+        int j = 0;
+        int intersection = 0;
+        while (i < tokens.length && j < other.tokens.length) {
+            int c = tokens[i].compareTo(other.tokens[j]);
+            if (c == 0) {
+                intersection += Math.min(counts[i++], other.counts[j++]);
+            } else if (c < 0) {
+                i++;
+            } else {
+                j++;
+            }
+        }
+        return intersection;
+    }
+
+    /*
+     * Tamaño de la interseccion como conjunto (tokens distintos comunes)
+     */
+    public int setIntersection(TokenBag other) {
+        int i = 0;
+        int j = 0;
+        int intersection = 0;
+        while (i < tokens.length && j < other.tokens.length) {
+            int c = tokens[i].compareTo(other.tokens[j]);
+            if (c == 0) {
+                intersection++;
+                i++;
+                j++;
+            } else if (c < 0) {
+                i++;
+            } else {
+                j++;
+            }
+        }
+        return intersection;
+    }
+
+    /*
+     * Suma sobre la union de |countA - countB|
+     */
+    public float blockDistance(TokenBag other) {
+        float distance = 0f;
+        int i = 0;
+        int j = 0;
+        while (i < tokens.length || j < other.tokens.length) {
+            float ca = 0f;
+            float cb = 0f;
+            int c = (i == tokens.length) ? 1 : (j == other.tokens.length) ? -1 : tokens[i].compareTo(other.tokens[j]);
+            if (c <= 0)
+                ca = counts[i++];
+            if (c >= 0)
+                cb = other.counts[j++];
+            distance += Math.abs(ca - cb);
+        }
+        return distance;
+    }
+
+    /*
+     * Suma sobre la union de (countA - countB)^2
+     */
+    public float squaredDistance(TokenBag other) {
+        float distance = 0f;
+        int i = 0;
+        int j = 0;
+        while (i < tokens.length || j < other.tokens.length) {
+            float ca = 0f;
+            float cb = 0f;
+            int c = (i == tokens.length) ? 1 : (j == other.tokens.length) ? -1 : tokens[i].compareTo(other.tokens[j]);
+            if (c <= 0)
+                ca = counts[i++];
+            if (c >= 0)
+                cb = other.counts[j++];
+            distance += (ca - cb) * (ca - cb);
+        }
+        return distance;
+    }
+
+    /*
+     * Producto escalar de los vectores de frecuencias
+     */
+    public float dotProduct(TokenBag other) {
+        float dot = 0f;
+        int i = 0;
+        int j = 0;
+        while (i < tokens.length && j < other.tokens.length) {
+            int c = tokens[i].compareTo(other.tokens[j]);
+            if (c == 0) {
+                dot += (float) counts[i++] * (float) other.counts[j++];
+            } else if (c < 0) {
+                i++;
+            } else {
+                j++;
+            }
+        }
+        return dot;
+    }
+
+    /*
+     * Suma de los cuadrados de las frecuencias
+     */
+    public float squaredMagnitude() {
+        float magnitude = 0f;
+        for (int count : counts) {
+            magnitude += (float) count * (float) count;
+        }
+        return magnitude;
+    }
+}
@@ -0,0 +1,29 @@
+package es.um.asio.service.config;
+
+import es.um.asio.service.model.stats.StatsHandler;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+public class AttributeStatsConfig {
+
+    /*
+     * Publica los aciertos y fallos del memo de atributos relevantes por clase
+     */
+    @Bean
+    public MeterBinder relevantAttributesMetrics() {
+        return registry -> {
+            FunctionCounter.builder("stats.relevantAttributes.requests", StatsHandler.class, c -> StatsHandler.getRelevantAttributesHits())
+                    .tag("result", "hit")
+                    .description("Relevant attributes maps served from the memo")
+                    .register(registry);
+            FunctionCounter.builder("stats.relevantAttributes.requests", StatsHandler.class, c -> StatsHandler.getRelevantAttributesMisses())
+                    .tag("result", "miss")
+                    .description("Relevant attributes maps computed from the stats")
+                    .register(registry);
+        };
+    }
+
+}
@@ -1,5 +1,6 @@
 package es.um.asio.service.config;
 
+import es.um.asio.service.repository.redis.RedisCodec;
 import lombok.*;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.context.annotation.Configuration;
@@ -55,6 +56,9 @@ public class DataProperties {
         private String host;
         private int port;
         private String password;
+        // Codificacion de los valores que se escriben; los valores se leen con la que diga su cabecera
+        private RedisCodec.Format format = RedisCodec.Format.JSON;
+        private RedisCodec.Compression compression = RedisCodec.Compression.NONE;
     }
 
     @AllArgsConstructor
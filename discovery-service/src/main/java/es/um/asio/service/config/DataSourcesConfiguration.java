@@ -1,5 +1,10 @@
 package es.um.asio.service.config;
 
+import es.um.asio.service.comparators.aggregators.SimilarityEnsemble;
+import es.um.asio.service.comparators.blocking.MinHashLshIndex;
+import es.um.asio.service.comparators.lists.ListMatcher;
+import es.um.asio.service.model.stats.AttributeStats;
+import es.um.asio.service.util.HyperLogLog;
 import es.um.asio.service.util.Utils;
 import lombok.AllArgsConstructor;
 import lombok.Getter;
@@ -9,7 +14,10 @@ import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.stereotype.Component;
 
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 @Component
 @ConfigurationProperties("data-sources") // prefix app, find app.* values
@@ -21,6 +29,9 @@ public class DataSourcesConfiguration {
 
     private boolean useCachedData;
     private Thresholds thresholds;
+    private Similarity similarity = new Similarity();
+    private Stats stats = new Stats();
+    private CacheStorage cache = new CacheStorage();
     private List<Node> nodes = new ArrayList<>();
     private String urisFactoryHost;
 
@@ -45,9 +56,162 @@ public class DataSourcesConfiguration {
         private double elasticSearchAttributesNumberRatioComplex;
         private double elasticSearchMaxDesirableNumbersOfResults;
         private double elasticSearchCutOffAccordPercentile;
+        private boolean boundedEvaluation = true;
 
     }
 
+    /*
+     * Estadisticas de los atributos de cada clase, de las que salen los pesos de la comparacion: valores distintos
+     * exactos o estimados con HyperLogLog de la precision indicada (2^precision registros de un byte por atributo). Las
+     * exactas cuentan las repeticiones de cada valor para poder quitarlos, con una entrada mas por valor repetido
+     */
+    @AllArgsConstructor
+    @NoArgsConstructor
+    @Getter
+    @Setter
+    public static class Stats {
+        private AttributeStats.Cardinality cardinality = AttributeStats.Cardinality.EXACT;
+        private int precision = HyperLogLog.DEFAULT_PRECISION;
+        private boolean repeatsCounted = true;
+    }
+
+    /*
+     * Representacion de las instancias en la cache: objetos TripleObject o almacen columnar por clase, con los nombres y
+     * valores en diccionario
+     */
+    @AllArgsConstructor
+    @NoArgsConstructor
+    @Getter
+    @Setter
+    public static class CacheStorage {
+        private boolean columnar = false;
+        private LocalFile file = new LocalFile();
+
+        /*
+         * Copia binaria de la cache en disco local, que es la primera fuente al arrancar. Se escribe cada interval minutos
+         * (0, solo al parar) si la cache ha cambiado
+         */
+        @AllArgsConstructor
+        @NoArgsConstructor
+        @Getter
+        @Setter
+        public static class LocalFile {
+            private boolean enabled = false;
+            private String path = "cache/triples-map.bin";
+            private long interval = 30;
+        }
+    }
+
+    @AllArgsConstructor
+    @NoArgsConstructor
+    @Getter
+    @Setter
+    public static class Similarity {
+        private Cache cache = new Cache();
+        private String profile = SimilarityEnsemble.FULL;
+        private Map<String, Profile> profiles = new HashMap<>();
+        private Map<String, ClassProfile> classes = new HashMap<>();
+        private ListMatching listMatching = new ListMatching();
+        private Scoring scoring = new Scoring();
+        private Candidates candidates = new Candidates();
+        private Clustering clustering = new Clustering();
+
+        @AllArgsConstructor
+        @NoArgsConstructor
+        @Getter
+        @Setter
+        public static class Cache {
+            private boolean enabled = true;
+            private long maximumSize = 100000L;
+        }
+
+        /*
+         * Emparejamiento de atributos multivaluados: tamaño de lista hasta el que se usa el algoritmo hungaro (por encima,
+         * voraz) y numero de pares a partir del cual la matriz de similitudes se calcula en paralelo (0 nunca)
+         */
+        @AllArgsConstructor
+        @NoArgsConstructor
+        @Getter
+        @Setter
+        public static class ListMatching {
+            private int hungarianCutoff = ListMatcher.DEFAULT_HUNGARIAN_CUTOFF;
+            private int parallelThreshold = ListMatcher.DEFAULT_PARALLEL_THRESHOLD;
+        }
+
+        /*
+         * Busqueda de similitudes de una clase completa: numero de hilos del pool dedicado en el que se puntuan las
+         * entidades (0 o negativo, uno por procesador)
+         */
+        @AllArgsConstructor
+        @NoArgsConstructor
+        @Getter
+        @Setter
+        public static class Scoring {
+            private int parallelism = 0;
+
+            public int getEffectiveParallelism() {
+                return (parallelism > 0) ? parallelism : Runtime.getRuntime().availableProcessors();
+            }
+        }
+
+        /*
+         * Generacion de candidatos: consulta a Elasticsearch por entidad o indice LSH en memoria por clase (tamaño de la
+         * firma bands * rows, tejas de shingleSize caracteres y los topK candidatos mas parecidos)
+         */
+        @AllArgsConstructor
+        @NoArgsConstructor
+        @Getter
+        @Setter
+        public static class Candidates {
+            private Mode mode = Mode.ELASTICSEARCH;
+            private int bands = MinHashLshIndex.DEFAULT_BANDS;
+            private int rows = MinHashLshIndex.DEFAULT_ROWS;
+            private int shingleSize = MinHashLshIndex.DEFAULT_SHINGLE_SIZE;
+            private int topK = 50;
+
+            public enum Mode {
+                ELASTICSEARCH, LSH
+            }
+        }
+
+        /*
+         * Agrupacion transitiva de las similitudes automaticas de una clase: un resultado (y una fusion) por grupo de
+         * duplicados en lugar de uno por entidad consultada
+         */
+        @AllArgsConstructor
+        @NoArgsConstructor
+        @Getter
+        @Setter
+        public static class Clustering {
+            private boolean enabled = false;
+        }
+
+        /*
+         * Algoritmos (nombre de AccordSimilarity.getAlgorithms() -> peso) y forma de agregarlos. Con ACCORD los pesos
+         * se ignoran, ya que el peso de cada algoritmo depende de la posicion de su valor
+         */
+        @AllArgsConstructor
+        @NoArgsConstructor
+        @Getter
+        @Setter
+        public static class Profile {
+            private SimilarityEnsemble.Aggregation aggregation = SimilarityEnsemble.Aggregation.WEIGHTED_MEAN;
+            private Map<String, Float> metrics = new LinkedHashMap<>();
+        }
+
+        /*
+         * Perfil de una clase y de alguno de sus atributos (atributo -> perfil)
+         */
+        @AllArgsConstructor
+        @NoArgsConstructor
+        @Getter
+        @Setter
+        public static class ClassProfile {
+            private String profile;
+            private Map<String, String> attributes = new HashMap<>();
+        }
+    }
+
     @AllArgsConstructor
     @NoArgsConstructor
     @Getter
@@ -1,5 +1,6 @@
 package es.um.asio.service.config;
 
+import es.um.asio.service.repository.redis.RedisCodec;
 import es.um.asio.service.repository.redis.StringRedisRepository;
 import org.springframework.boot.autoconfigure.EnableAutoConfiguration;
 import org.springframework.boot.autoconfigure.domain.EntityScan;
@@ -37,4 +38,9 @@ public class RedisConfig {
     StringRedisRepository stringRedisRepository(StringRedisTemplate template) {
         return new StringRedisRepository(template);
     }
+
+    @Bean
+    RedisCodec redisCodec(DataProperties dataProperties) {
+        return new RedisCodec(dataProperties.getRedis().getFormat(), dataProperties.getRedis().getCompression());
+    }
 }
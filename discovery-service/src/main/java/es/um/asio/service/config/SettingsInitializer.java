@@ -0,0 +1,86 @@
+package es.um.asio.service.config;
+
+import es.um.asio.service.comparators.aggregators.SimilarityCache;
+import es.um.asio.service.comparators.aggregators.SimilarityEnsemble;
+import es.um.asio.service.comparators.aggregators.SimilarityProfiles;
+import es.um.asio.service.comparators.lists.ListMatcher;
+import es.um.asio.service.model.stats.AttributeStats;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Applies the configured settings to the static utilities shared by the comparators and the stats, in one place and
+ * before any service uses them.
+ * <p>
+ * These utilities are static because they are used from objects that are not Spring beans, so they keep their defaults
+ * until this component is created. The beans that depend on the configured values declare
+ * {@code @DependsOn(SettingsInitializer.NAME)} instead of relying on the order in which configuration classes are
+ * processed.
+ */
+@Component(SettingsInitializer.NAME)
+public class SettingsInitializer {
+
+    public static final String NAME = "settingsInitializer";
+
+    @Autowired
+    DataSourcesConfiguration dataSourcesConfiguration;
+
+    @PostConstruct
+    public void initialize() {
+        applySimilarityCache();
+        applySimilarityProfiles();
+        applyListMatching();
+        applyAttributeStats();
+    }
+
+    /*
+     * Tamaño y activacion de la cache de similitudes
+     */
+    private void applySimilarityCache() {
+        DataSourcesConfiguration.Similarity.Cache cacheConfiguration = dataSourcesConfiguration.getSimilarity().getCache();
+        SimilarityCache.configure(cacheConfiguration.isEnabled(), cacheConfiguration.getMaximumSize());
+    }
+
+    /*
+     * Perfiles de similitud configurados, perfil por defecto y perfiles de cada clase y atributo
+     */
+    private void applySimilarityProfiles() {
+        DataSourcesConfiguration.Similarity similarity = dataSourcesConfiguration.getSimilarity();
+        List<SimilarityEnsemble> profiles = new ArrayList<>();
+        for (Map.Entry<String, DataSourcesConfiguration.Similarity.Profile> profile : similarity.getProfiles().entrySet()) {
+            profiles.add(new SimilarityEnsemble(profile.getKey(), profile.getValue().getAggregation(), profile.getValue().getMetrics()));
+        }
+        Map<String, String> classProfiles = new HashMap<>();
+        Map<String, Map<String, String>> attributeProfiles = new HashMap<>();
+        for (Map.Entry<String, DataSourcesConfiguration.Similarity.ClassProfile> classProfile : similarity.getClasses().entrySet()) {
+            if (classProfile.getValue().getProfile() != null)
+                classProfiles.put(classProfile.getKey(), classProfile.getValue().getProfile());
+            if (!classProfile.getValue().getAttributes().isEmpty())
+                attributeProfiles.put(classProfile.getKey(), classProfile.getValue().getAttributes());
+        }
+        SimilarityProfiles.configure(profiles, similarity.getProfile(), classProfiles, attributeProfiles);
+    }
+
+    /*
+     * Emparejamiento de listas de los comparadores
+     */
+    private void applyListMatching() {
+        DataSourcesConfiguration.Similarity.ListMatching listMatching = dataSourcesConfiguration.getSimilarity().getListMatching();
+        ListMatcher.configure(listMatching.getHungarianCutoff(), listMatching.getParallelThreshold());
+    }
+
+    /*
+     * Como cuentan los valores distintos las estadisticas de atributos (exacto o HyperLogLog)
+     */
+    private void applyAttributeStats() {
+        DataSourcesConfiguration.Stats stats = dataSourcesConfiguration.getStats();
+        AttributeStats.configure(stats.getCardinality(), stats.getPrecision(), stats.isRepeatsCounted());
+    }
+
+}
@@ -0,0 +1,23 @@
+package es.um.asio.service.config;
+
+import es.um.asio.service.comparators.aggregators.SimilarityCache;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.DependsOn;
+
+@Configuration
+public class SimilarityCacheConfig {
+
+    /*
+     * Publica los contadores de la cache de similitudes (aciertos, fallos y expulsiones) como metricas. Depende del
+     * inicializador para monitorizar la cache ya configurada y no la de por defecto
+     */
+    @Bean
+    @DependsOn(SettingsInitializer.NAME)
+    public MeterBinder similarityCacheMetrics() {
+        return registry -> CaffeineCacheMetrics.monitor(registry, SimilarityCache.getCache(), "accordSimilarity");
+    }
+
+}
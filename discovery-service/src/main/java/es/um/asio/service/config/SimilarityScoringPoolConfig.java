@@ -0,0 +1,29 @@
+package es.um.asio.service.config;
+
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.atomic.AtomicInteger;
+
+@Configuration
+public class SimilarityScoringPoolConfig {
+
+    public static final String SIMILARITY_SCORING_POOL = "similarityScoringPool";
+
+    /*
+     * Pool dedicado a puntuar las entidades de una clase, separado del pool comun para que un trabajo largo no lo acapare
+     */
+    @Bean(name = SIMILARITY_SCORING_POOL, destroyMethod = "shutdown")
+    public ForkJoinPool similarityScoringPool(DataSourcesConfiguration dataSourcesConfiguration) {
+        AtomicInteger counter = new AtomicInteger();
+        ForkJoinPool.ForkJoinWorkerThreadFactory factory = pool -> {
+            ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+            thread.setName("DiscoverySimilarity-" + counter.incrementAndGet());
+            return thread;
+        };
+        return new ForkJoinPool(dataSourcesConfiguration.getSimilarity().getScoring().getEffectiveParallelism(), factory, null, false);
+    }
+
+}
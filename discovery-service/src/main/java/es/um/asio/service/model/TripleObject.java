@@ -62,6 +62,8 @@ public class TripleObject {
     @JsonIgnore
     private Map<String,List<Object>> flattenAttributes;
     @JsonIgnore
+    private Map<String,List<TypedValue>> typedFlattenAttributes;
+    @JsonIgnore
     private Set<TripleObjectLink> tripleObjectLink;
 
     public TripleObject(TripleObjectES toES) {
@@ -154,14 +156,15 @@ public class TripleObject {
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
-        if (o == null || getClass() != o.getClass()) return false;
+        // Las vistas del almacen columnar son iguales a la entidad que representan
+        if (!(o instanceof TripleObject)) return false;
         TripleObject that = (TripleObject) o;
         return
-                Objects.equals(id, that.id) &&
-                Objects.equals(className, that.className) &&
-                Objects.equals(lastModification, that.lastModification) &&
-                Objects.equals(tripleStore, that.tripleStore) &&
-                equalAttributes(that.attributes);
+                Objects.equals(getId(), that.getId()) &&
+                Objects.equals(getClassName(), that.getClassName()) &&
+                Objects.equals(getLastModification(), that.getLastModification()) &&
+                Objects.equals(getTripleStore(), that.getTripleStore()) &&
+                equalAttributes(that.getAttributes());
     }
 
     @Override
@@ -171,13 +174,14 @@ public class TripleObject {
 
     private boolean equalAttributes(LinkedTreeMap<String,Object> other) {
         try {
-            Set<String> allKeys = this.attributes.keySet();
+            LinkedTreeMap<String,Object> attributes = getAttributes();
+            Set<String> allKeys = attributes.keySet();
             for (String oKey : other.keySet()) {
                 if (!allKeys.contains(oKey))
                     allKeys.add(oKey);
             }
             for (String key : allKeys) {
-                Object thisAtt = this.attributes.containsKey(key) ? this.attributes.get(key) : null;
+                Object thisAtt = attributes.containsKey(key) ? attributes.get(key) : null;
                 Object otherAtt = other.containsKey(key) ? other.get(key) : null;
                 if ((thisAtt == null && otherAtt == null))
                     return true;
@@ -297,7 +301,7 @@ public class TripleObject {
     }
 
     public boolean checkIfHasAttribute(String att) {
-        if (this.flattenAttributes.isEmpty())
+        if (this.flattenAttributes == null || this.flattenAttributes.isEmpty())
             buildFlattenAttributes();
         return this.flattenAttributes.containsKey(att);
     }
@@ -306,11 +310,23 @@ public class TripleObject {
         try {
             this.flattenAttributes = new HashMap<>();
             handleFlattenAttributes(null,getAttributes(),this.flattenAttributes);
+            buildTypedFlattenAttributes();
         } catch (Exception e) {
             logger.error(e.getMessage());
         }
     }
 
+    /*
+     * Tipa una sola vez los valores de los atributos aplanados, para que los comparadores no tengan que detectar el tipo
+     * en cada comparacion
+     */
+    private void buildTypedFlattenAttributes() {
+        this.typedFlattenAttributes = new HashMap<>();
+        for (Map.Entry<String, List<Object>> flatten : this.flattenAttributes.entrySet()) {
+            this.typedFlattenAttributes.put(flatten.getKey(), Collections.unmodifiableList(TypedValue.of(flatten.getValue())));
+        }
+    }
+
     private void handleFlattenAttributes(String p, Object att, Map<String,List<Object>> flattens) {
         p = !Utils.isValidString(p)?"":p;
         if (att!=null) {
@@ -346,6 +362,12 @@ public class TripleObject {
         return this.flattenAttributes.get(key);
     }
 
+    public List<TypedValue> getTypedValueFromFlattenAttributes(String key){
+        if (this.typedFlattenAttributes == null || this.flattenAttributes == null || this.flattenAttributes.size() == 0)
+            buildFlattenAttributes();
+        return this.typedFlattenAttributes.get(key);
+    }
+
     public LinkedTreeMap<String,Object> getAttributesChangedByMapper(Map<String,String> mapper, LinkedTreeMap<String,Object> attributesMap) {
         LinkedTreeMap <String,Object> attributesAux = new LinkedTreeMap<>();
         attributesAux.putAll(attributesMap);
@@ -409,7 +431,7 @@ public class TripleObject {
 
     public boolean checkIsSimpleObject() {
         boolean isSimple = true;
-        for (Object att: attributes.values()) {
+        for (Object att: getAttributes().values()) {
             if (!Utils.isPrimitive(att)) {
                 isSimple = false;
                 break;
@@ -0,0 +1,131 @@
+package es.um.asio.service.model;
+
+import es.um.asio.service.util.Utils;
+import lombok.Getter;
+
+import java.util.*;
+
+/**
+ * Value of a flattened attribute with its type resolved once.
+ * <p>
+ * The type tag is the narrowest type that {@code AttributeSimilarity} would detect for the value with the checks of
+ * {@link Utils} (number, then boolean, then date) and the value is kept already parsed for that type, so that comparing
+ * two values only has to combine both tags. A date that matches the date pattern but can not be parsed is kept as a
+ * string.
+ */
+@Getter
+public final class TypedValue {
+
+    public enum Type {
+        INTEGER, LONG, FLOAT, DOUBLE, BOOLEAN, DATE, STRING;
+
+        public boolean isNumber() {
+            return this == INTEGER || this == LONG || this == FLOAT || this == DOUBLE;
+        }
+    }
+
+    private final Object value;
+    private final Type type;
+    private final String stringValue;
+    // Cadena en minusculas y sin espacios en los extremos, para la comparacion exacta de cadenas
+    private final String comparableValue;
+    private final long longValue;
+    private final float floatValue;
+    private final double doubleValue;
+    private final boolean booleanValue;
+    private final long epochMillis;
+    // yyyyMMdd en el calendario por defecto
+    private final int day;
+
+    private TypedValue(Object value, Type type, long longValue, float floatValue, double doubleValue, boolean booleanValue, Date date) {
+        this.value = value;
+        this.type = type;
+        this.stringValue = value.toString();
+        this.comparableValue = stringValue.toLowerCase().strip();
+        this.longValue = longValue;
+        this.floatValue = floatValue;
+        this.doubleValue = doubleValue;
+        this.booleanValue = booleanValue;
+        if (date != null) {
+            Calendar c = Calendar.getInstance();
+            c.setTime(date);
+            this.epochMillis = date.getTime();
+            this.day = c.get(Calendar.YEAR) * 10000 + c.get(Calendar.MONTH) * 100 + c.get(Calendar.DAY_OF_MONTH);
+        } else {
+            this.epochMillis = 0;
+            this.day = 0;
+        }
+    }
+
+    public static TypedValue of(Object value) {
+        String s = value.toString();
+        if (Utils.isValidNumber(s)) {
+            double d = Double.parseDouble(s);
+            if (Utils.checkIfInt(s) || Utils.checkIfLong(s)) {
+                long l = Long.parseLong(s);
+                Type type = (l >= Integer.MIN_VALUE && l <= Integer.MAX_VALUE) ? Type.INTEGER : Type.LONG;
+                return new TypedValue(value, type, l, 0f, d, false, null);
+            } else if (Utils.checkIfFloat(s)) {
+                return new TypedValue(value, Type.FLOAT, 0L, Float.parseFloat(s), d, false, null);
+            } else {
+                return new TypedValue(value, Type.DOUBLE, 0L, 0f, d, false, null);
+            }
+        } else if (Utils.isBoolean(s)) {
+            return new TypedValue(value, Type.BOOLEAN, 0L, 0f, 0d, Utils.getBoolean(s), null);
+        } else if (Utils.isDate(s)) {
+            Date date = Utils.getDate(s);
+            if (date != null)
+                return new TypedValue(value, Type.DATE, 0L, 0f, 0d, false, date);
+        }
+        return new TypedValue(value, Type.STRING, 0L, 0f, 0d, false, null);
+    }
+
+    public static List<TypedValue> of(List<Object> values) {
+        if (values == null)
+            return null;
+        List<TypedValue> typed = new ArrayList<>(values.size());
+        for (Object value : values) {
+            typed.add(of(value));
+        }
+        return typed;
+    }
+
+    /*
+     * Tipo con el que se comparan dos valores: el mas estrecho que admiten ambos
+     */
+    public static Type commonType(TypedValue v1, TypedValue v2) {
+        Type t1 = v1.type;
+        Type t2 = v2.type;
+        if (t1.isNumber() && t2.isNumber()) {
+            if (t1 == Type.INTEGER && t2 == Type.INTEGER)
+                return Type.INTEGER;
+            else if ((t1 == Type.INTEGER || t1 == Type.LONG) && (t2 == Type.INTEGER || t2 == Type.LONG))
+                return Type.LONG;
+            else if (t1 == Type.FLOAT && t2 == Type.FLOAT)
+                return Type.FLOAT;
+            else
+                return Type.DOUBLE;
+        } else if (t1 == t2 && (t1 == Type.BOOLEAN || t1 == Type.DATE)) {
+            return t1;
+        } else {
+            return Type.STRING;
+        }
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        return Objects.equals(value, ((TypedValue) o).value);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hashCode(value);
+    }
+
+    @Override
+    public String toString() {
+        return type + ":" + stringValue;
+    }
+}
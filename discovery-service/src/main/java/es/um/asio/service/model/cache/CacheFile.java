@@ -0,0 +1,432 @@
+package es.um.asio.service.model.cache;
+
+import com.google.gson.internal.LinkedTreeMap;
+import es.um.asio.service.model.TripleObject;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.stream.Collectors;
+import java.util.zip.CRC32;
+
+/**
+ * Binary copy of the cache on local disk, to start without reading and parsing the JSON of every class from Redis.
+ * <p>
+ * The file is a header (magic, format version, generation of the cache and number of classes) followed by one block
+ * per class: the length of the block, its CRC32 and the block itself, with the node, triple store and class name and,
+ * for each instance, its id, local URI, last modification and attributes. Strings are written once per class and then
+ * referenced by their position, so the names of the attributes and the repeated values take a few bytes each.
+ * Attributes keep the types Gson gives them (String, Double, Boolean, maps and lists) and also Integer and Long; any
+ * other number is written as a Double and any other value as its string.
+ * <p>
+ * The file is written from a pinned {@link CacheSnapshot}, so it is a consistent image of the cache without stopping
+ * the writers, into a temporary file that then replaces the previous one. It is read by mapping each block in memory,
+ * checking the checksums of all the blocks and then decoding the classes in parallel. Every block is checked and decoded
+ * before read returns or fails, so no decoder touches the mapped pages afterwards; a file replaced by a later write is a
+ * new file, and the mapping of the previous one stays valid. A file of another version, truncated or with a wrong
+ * checksum is rejected as a whole with an {@link IOException}, and the caller can go to another source.
+ */
+public final class CacheFile {
+
+    public static final int VERSION = 1;
+
+    private static final int MAGIC = 0x49424443; // "IBDC"
+    private static final int HEADER_SIZE = 4 + 4 + 8 + 4;
+    private static final int BLOCK_HEADER_SIZE = 4 + 4;
+
+    private static final byte NULL = 0;
+    private static final byte STRING = 1;
+    private static final byte DOUBLE = 2;
+    private static final byte INTEGER = 3;
+    private static final byte LONG = 4;
+    private static final byte TRUE = 5;
+    private static final byte FALSE = 6;
+    private static final byte MAP = 7;
+    private static final byte LIST = 8;
+
+    private CacheFile() {}
+
+    /*
+     * Escribe la generacion fijada en el fichero, sustituyendo al anterior solo cuando esta completo. Devuelve su tamaño
+     */
+    public static long write(CacheSnapshot snapshot, Path path) throws IOException {
+        Path absolute = path.toAbsolutePath();
+        Files.createDirectories(absolute.getParent());
+        Path temporary = absolute.resolveSibling(absolute.getFileName() + ".tmp");
+        List<ClassKey> classes = new ArrayList<>(snapshot.getClasses());
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            header.putInt(MAGIC).putInt(VERSION).putLong(snapshot.getGeneration()).putInt(classes.size());
+            writeFully(channel, header);
+            for (ClassKey key : classes) {
+                Encoder encoder = new Encoder();
+                encoder.encodeClass(key, snapshot.getTripleObjects(key.getNode(), key.getTripleStore(), key.getClassName()));
+                writeFully(channel, encoder.toBlock());
+            }
+            channel.force(true);
+        }
+        try {
+            Files.move(temporary, absolute, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            Files.deleteIfExists(temporary);
+            throw e;
+        }
+        return Files.size(absolute);
+    }
+
+    /*
+     * Lee el fichero como mapa anidado nodo -> triple store -> clase -> id, decodificando las clases en paralelo
+     */
+    public static Map<String, Map<String, Map<String, Map<String, TripleObject>>>> read(Path path) throws IOException {
+        List<Block> blocks = new ArrayList<>();
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long fileSize = channel.size();
+            if (fileSize < HEADER_SIZE)
+                throw new IOException(String.format("Truncated cache file [file: %s, size: %d]", path, fileSize));
+            ByteBuffer header = readFully(channel, 0, HEADER_SIZE);
+            if (header.getInt() != MAGIC)
+                throw new IOException(String.format("Not a cache file [file: %s]", path));
+            int version = header.getInt();
+            if (version != VERSION)
+                throw new IOException(String.format("Unsupported cache file version [file: %s, version: %d, supported: %d]", path, version, VERSION));
+            header.getLong(); // Generacion de la que se escribio, solo informativa
+            int classCount = header.getInt();
+            long position = HEADER_SIZE;
+            for (int i = 0; i < classCount; i++) {
+                if (position + BLOCK_HEADER_SIZE > fileSize)
+                    throw new IOException(String.format("Truncated cache file [file: %s, classes: %d of %d]", path, i, classCount));
+                ByteBuffer blockHeader = readFully(channel, position, BLOCK_HEADER_SIZE);
+                int length = blockHeader.getInt();
+                int checksum = blockHeader.getInt();
+                position += BLOCK_HEADER_SIZE;
+                if (length < 0 || position + length > fileSize)
+                    throw new IOException(String.format("Truncated cache file [file: %s, classes: %d of %d]", path, i, classCount));
+                // La proyeccion sigue siendo valida al cerrar el canal
+                blocks.add(new Block(channel.map(FileChannel.MapMode.READ_ONLY, position, length), checksum));
+                position += length;
+            }
+            if (position != fileSize)
+                throw new IOException(String.format("Unexpected data at the end of the cache file [file: %s, position: %d, size: %d]", path, position, fileSize));
+        }
+
+        // Se comprueban todos los bloques antes de decodificar ninguno, y ninguna de las dos pasadas se corta con el primer
+        // error: al volver no queda ningun hilo leyendo la proyeccion
+        List<Boolean> valid = blocks.parallelStream().map(Block::hasValidChecksum).collect(Collectors.toList());
+        if (valid.contains(Boolean.FALSE))
+            throw new IOException(String.format("Corrupt cache file [file: %s]: Wrong checksum of a class block", path));
+        List<DecodedClass> decoded = blocks.parallelStream().map(Block::decode).collect(Collectors.toList());
+        for (DecodedClass decodedClass : decoded) {
+            if (decodedClass.error != null)
+                throw new IOException(String.format("Corrupt cache file [file: %s]: %s", path, decodedClass.error.getMessage()), decodedClass.error);
+        }
+        Map<String, Map<String, Map<String, Map<String, TripleObject>>>> triplesMap = new HashMap<>();
+        for (DecodedClass decodedClass : decoded) {
+            ClassKey key = decodedClass.key;
+            triplesMap.computeIfAbsent(key.getNode(), k -> new HashMap<>())
+                    .computeIfAbsent(key.getTripleStore(), k -> new HashMap<>())
+                    .put(key.getClassName(), decodedClass.instances);
+        }
+        return triplesMap;
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    private static ByteBuffer readFully(FileChannel channel, long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0)
+                throw new IOException("Unexpected end of the cache file");
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    /**
+     * Block of a class mapped in memory, with the checksum written for it.
+     */
+    private static final class Block {
+
+        private final ByteBuffer buffer;
+        private final int checksum;
+
+        private Block(ByteBuffer buffer, int checksum) {
+            this.buffer = buffer;
+            this.checksum = checksum;
+        }
+
+        private boolean hasValidChecksum() {
+            CRC32 crc = new CRC32();
+            crc.update(buffer.duplicate());
+            return (int) crc.getValue() == checksum;
+        }
+
+        /*
+         * Clase del bloque, o el error si esta mal formado, para que un bloque no corte la decodificacion de los demas
+         */
+        private DecodedClass decode() {
+            try {
+                return new Decoder(buffer.duplicate()).decodeClass();
+            } catch (BufferUnderflowException | IllegalStateException | IndexOutOfBoundsException | NegativeArraySizeException e) {
+                return new DecodedClass(new IOException("Malformed class block", e));
+            }
+        }
+    }
+
+    private static final class DecodedClass {
+
+        private final ClassKey key;
+        private final Map<String, TripleObject> instances;
+
+        private final IOException error;
+
+        private DecodedClass(ClassKey key, Map<String, TripleObject> instances) {
+            this.key = key;
+            this.instances = instances;
+            this.error = null;
+        }
+
+        private DecodedClass(IOException error) {
+            this.key = null;
+            this.instances = null;
+            this.error = error;
+        }
+    }
+
+    /**
+     * Writes a class block in a growing array. Strings go through a dictionary: the first time as a literal and then as
+     * a reference to its position.
+     */
+    private static final class Encoder {
+
+        private byte[] bytes = new byte[8192];
+        private int size = BLOCK_HEADER_SIZE;
+        private final Map<String, Integer> dictionary = new HashMap<>();
+
+        private void encodeClass(ClassKey key, Map<String, TripleObject> instances) {
+            putString(key.getNode());
+            putString(key.getTripleStore());
+            putString(key.getClassName());
+            putVarint(instances.size());
+            for (Map.Entry<String, TripleObject> instance : instances.entrySet()) {
+                TripleObject to = instance.getValue();
+                putString(instance.getKey());
+                putString(to.getLocalURI());
+                putLong(to.getLastModification());
+                putValue(to.getAttributes());
+            }
+        }
+
+        /*
+         * Bloque listo para escribir: longitud y CRC32 del contenido, y el contenido
+         */
+        private ByteBuffer toBlock() {
+            CRC32 crc = new CRC32();
+            crc.update(bytes, BLOCK_HEADER_SIZE, size - BLOCK_HEADER_SIZE);
+            ByteBuffer block = ByteBuffer.wrap(bytes, 0, size);
+            block.putInt(size - BLOCK_HEADER_SIZE).putInt((int) crc.getValue());
+            block.position(size);
+            return block;
+        }
+
+        private void putValue(Object value) {
+            if (value == null) {
+                put(NULL);
+            } else if (value instanceof String) {
+                put(STRING);
+                putString((String) value);
+            } else if (value instanceof Integer) {
+                put(INTEGER);
+                int i = (Integer) value;
+                putVarint((i << 1) ^ (i >> 31));
+            } else if (value instanceof Long) {
+                put(LONG);
+                putLong((Long) value);
+            } else if (value instanceof Number) {
+                put(DOUBLE);
+                putLong(Double.doubleToRawLongBits(((Number) value).doubleValue()));
+            } else if (value instanceof Boolean) {
+                put((Boolean) value ? TRUE : FALSE);
+            } else if (value instanceof Map) {
+                Map<?, ?> map = (Map<?, ?>) value;
+                put(MAP);
+                putVarint(map.size());
+                for (Map.Entry<?, ?> entry : map.entrySet()) {
+                    putString(String.valueOf(entry.getKey()));
+                    putValue(entry.getValue());
+                }
+            } else if (value instanceof List) {
+                List<?> list = (List<?>) value;
+                put(LIST);
+                putVarint(list.size());
+                for (Object item : list) {
+                    putValue(item);
+                }
+            } else {
+                put(STRING);
+                putString(String.valueOf(value));
+            }
+        }
+
+        /*
+         * 0 es null, 1 una cadena nueva (longitud y UTF-8) y n > 1 la cadena n - 2 del diccionario
+         */
+        private void putString(String value) {
+            if (value == null) {
+                putVarint(0);
+                return;
+            }
+            Integer index = dictionary.get(value);
+            if (index != null) {
+                putVarint(index + 2);
+                return;
+            }
+            dictionary.put(value, dictionary.size());
+            byte[] utf8 = value.getBytes(StandardCharsets.UTF_8);
+            putVarint(1);
+            putVarint(utf8.length);
+            ensure(utf8.length);
+            System.arraycopy(utf8, 0, bytes, size, utf8.length);
+            size += utf8.length;
+        }
+
+        private void putVarint(int value) {
+            ensure(5);
+            while ((value & ~0x7F) != 0) {
+                bytes[size++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            bytes[size++] = (byte) value;
+        }
+
+        private void putLong(long value) {
+            ensure(8);
+            for (int shift = 56; shift >= 0; shift -= 8) {
+                bytes[size++] = (byte) (value >>> shift);
+            }
+        }
+
+        private void put(byte value) {
+            ensure(1);
+            bytes[size++] = value;
+        }
+
+        private void ensure(int length) {
+            if (size + length > bytes.length)
+                bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, size + length));
+        }
+    }
+
+    /**
+     * Reads a class block, rebuilding the dictionary of strings as it goes.
+     */
+    private static final class Decoder {
+
+        private final ByteBuffer buffer;
+        private final List<String> dictionary = new ArrayList<>();
+
+        private Decoder(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        private DecodedClass decodeClass() {
+            String node = getString();
+            String tripleStore = getString();
+            String className = getString();
+            int count = getVarint();
+            Map<String, TripleObject> instances = new HashMap<>(Math.max(16, (int) (count / 0.75f) + 1));
+            for (int i = 0; i < count; i++) {
+                String id = getString();
+                String localURI = getString();
+                long lastModification = buffer.getLong();
+                Object attributes = getValue();
+                TripleObject to = new TripleObject(node, tripleStore, className, (attributes instanceof LinkedTreeMap) ? castAttributes(attributes) : null);
+                to.setId(id);
+                to.setLocalURI(localURI);
+                to.setLastModification(lastModification);
+                instances.put(id, to);
+            }
+            if (buffer.hasRemaining())
+                throw new IllegalStateException("Unexpected data at the end of a class block");
+            return new DecodedClass(ClassKey.of(node, tripleStore, className), instances);
+        }
+
+        @SuppressWarnings("unchecked")
+        private static LinkedTreeMap<String, Object> castAttributes(Object attributes) {
+            return (LinkedTreeMap<String, Object>) attributes;
+        }
+
+        private Object getValue() {
+            byte tag = buffer.get();
+            switch (tag) {
+                case NULL:
+                    return null;
+                case STRING:
+                    return getString();
+                case DOUBLE:
+                    return Double.longBitsToDouble(buffer.getLong());
+                case INTEGER:
+                    int zigzag = getVarint();
+                    return (zigzag >>> 1) ^ -(zigzag & 1);
+                case LONG:
+                    return buffer.getLong();
+                case TRUE:
+                    return Boolean.TRUE;
+                case FALSE:
+                    return Boolean.FALSE;
+                case MAP:
+                    int entries = getVarint();
+                    LinkedTreeMap<String, Object> map = new LinkedTreeMap<>();
+                    for (int i = 0; i < entries; i++) {
+                        String key = getString();
+                        map.put(key, getValue());
+                    }
+                    return map;
+                case LIST:
+                    int items = getVarint();
+                    List<Object> list = new ArrayList<>(items);
+                    for (int i = 0; i < items; i++) {
+                        list.add(getValue());
+                    }
+                    return list;
+                default:
+                    throw new IllegalStateException("Unknown value tag " + tag);
+            }
+        }
+
+        private String getString() {
+            int code = getVarint();
+            if (code == 0)
+                return null;
+            if (code > 1)
+                return dictionary.get(code - 2);
+            byte[] utf8 = new byte[getVarint()];
+            buffer.get(utf8);
+            String value = new String(utf8, StandardCharsets.UTF_8);
+            dictionary.add(value);
+            return value;
+        }
+
+        private int getVarint() {
+            int value = 0;
+            for (int shift = 0; shift < 32; shift += 7) {
+                byte b = buffer.get();
+                value |= (b & 0x7F) << shift;
+                if ((b & 0x80) == 0)
+                    return value;
+            }
+            throw new IllegalStateException("Malformed varint");
+        }
+    }
+}
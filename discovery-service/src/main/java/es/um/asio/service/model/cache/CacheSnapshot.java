@@ -0,0 +1,193 @@
+package es.um.asio.service.model.cache;
+
+import es.um.asio.service.model.TripleObject;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Immutable view of the cache as it was at a generation, pinned by a job until it is closed.
+ * <p>
+ * Once a generation has been pinned, every change of a {@link TripleObjectIndex} publishes a new one: the instances of
+ * each class are kept in a {@link PersistentHashMap}, and a generation is the map of those class maps, so a new one only
+ * copies the path to the changed instance and shares the rest with the previous generation. A job pins the current
+ * generation with {@link TripleObjectIndex#pin()}, which builds it from the index the first time, and reads it for as
+ * long as it runs, whatever the writers do meanwhile; reading never locks. The index only keeps the current generation
+ * and the pinned ones, so a closed generation is reclaimed by the garbage collector except for what it shares with newer
+ * ones. Use it with try-with-resources.
+ */
+public final class CacheSnapshot implements AutoCloseable {
+
+    private final TripleObjectIndex index;
+    private final Generation generation;
+    private final AtomicBoolean closed = new AtomicBoolean();
+
+    CacheSnapshot(TripleObjectIndex index, Generation generation) {
+        this.index = index;
+        this.generation = generation;
+    }
+
+    public long getGeneration() {
+        return generation.number;
+    }
+
+    /*
+     * Si la generacion es del indice, y no de uno anterior sustituido al cargar la cache
+     */
+    public boolean isOf(TripleObjectIndex index) {
+        return this.index == index;
+    }
+
+    /*
+     * Instancias de la clase en la generacion, o null si la clase no estaba en la cache. Las vistas del almacen columnar
+     * se crean al leerlas, asi lo que decodifique el trabajo no se queda en la generacion
+     */
+    public Map<String, TripleObject> getTripleObjects(String node, String tripleStore, String className) {
+        PersistentHashMap<String, TripleObject> instances = generation.classes.get(ClassKey.lookup(node, tripleStore, className));
+        return (instances == null) ? null : new Instances(instances);
+    }
+
+    public TripleObject getTripleObject(String node, String tripleStore, String className, String id) {
+        Map<String, TripleObject> instances = getTripleObjects(node, tripleStore, className);
+        return (instances == null || id == null) ? null : instances.get(id);
+    }
+
+    public Set<ClassKey> getClasses() {
+        return generation.classes.keySet();
+    }
+
+    public Set<String> getNodes() {
+        Set<String> nodes = new HashSet<>();
+        for (ClassKey key : generation.classes.keySet()) {
+            nodes.add(key.getNode());
+        }
+        return nodes;
+    }
+
+    /*
+     * Numero total de instancias en la generacion
+     */
+    public long size() {
+        long size = 0;
+        for (Map<String, TripleObject> instances : generation.classes.values()) {
+            size += instances.size();
+        }
+        return size;
+    }
+
+    public boolean isClosed() {
+        return closed.get();
+    }
+
+    /*
+     * Libera la generacion. Cerrar mas de una vez no tiene efecto
+     */
+    @Override
+    public void close() {
+        if (closed.compareAndSet(false, true))
+            index.release(generation);
+    }
+
+    /**
+     * A generation of the cache: its number and the instances of every class. Generations are never changed, a change
+     * creates the next one.
+     */
+    static final class Generation {
+
+        final long number;
+        final PersistentHashMap<ClassKey, PersistentHashMap<String, TripleObject>> classes;
+        final AtomicInteger pins = new AtomicInteger();
+
+        Generation(long number, PersistentHashMap<ClassKey, PersistentHashMap<String, TripleObject>> classes) {
+            this.number = number;
+            this.classes = classes;
+        }
+
+        /*
+         * Siguiente generacion con la instancia añadida o sustituida (o quitada, si to es null)
+         */
+        Generation with(ClassKey key, String id, TripleObject to) {
+            PersistentHashMap<String, TripleObject> instances = classes.get(key);
+            if (instances == null)
+                instances = PersistentHashMap.empty();
+            PersistentHashMap<String, TripleObject> changed = (to == null) ? instances.minus(id) : instances.plus(id, to);
+            return new Generation(number + 1, classes.plus(key, changed));
+        }
+
+        /*
+         * Siguiente generacion con las instancias de la clase sustituidas
+         */
+        Generation withClass(ClassKey key, PersistentHashMap<String, TripleObject> instances) {
+            return new Generation(number + 1, classes.plus(key, instances));
+        }
+
+        Generation cleared() {
+            return new Generation(number + 1, PersistentHashMap.empty());
+        }
+    }
+
+    /**
+     * Read-only instances of a class in a generation. Views of a {@link ClassColumnStore} are handed out as new views of
+     * the same row, so the attributes a job decodes are kept by its own objects and not by the shared generation.
+     */
+    private static final class Instances extends AbstractMap<String, TripleObject> {
+
+        private final PersistentHashMap<String, TripleObject> instances;
+
+        private Instances(PersistentHashMap<String, TripleObject> instances) {
+            this.instances = instances;
+        }
+
+        @Override
+        public TripleObject get(Object id) {
+            return detached(instances.get(id));
+        }
+
+        @Override
+        public boolean containsKey(Object id) {
+            return instances.containsKey(id);
+        }
+
+        @Override
+        public int size() {
+            return instances.size();
+        }
+
+        @Override
+        public Set<Map.Entry<String, TripleObject>> entrySet() {
+            return new AbstractSet<Map.Entry<String, TripleObject>>() {
+                @Override
+                public Iterator<Map.Entry<String, TripleObject>> iterator() {
+                    Iterator<Map.Entry<String, TripleObject>> entries = instances.entrySet().iterator();
+                    return new Iterator<Map.Entry<String, TripleObject>>() {
+                        @Override
+                        public boolean hasNext() {
+                            return entries.hasNext();
+                        }
+
+                        @Override
+                        public Map.Entry<String, TripleObject> next() {
+                            Map.Entry<String, TripleObject> entry = entries.next();
+                            return new SimpleImmutableEntry<>(entry.getKey(), detached(entry.getValue()));
+                        }
+                    };
+                }
+
+                @Override
+                public int size() {
+                    return instances.size();
+                }
+            };
+        }
+
+        private static TripleObject detached(TripleObject to) {
+            return (to instanceof TripleObjectView) ? ((TripleObjectView) to).detached() : to;
+        }
+    }
+}
@@ -0,0 +1,214 @@
+package es.um.asio.service.model.cache;
+
+import es.um.asio.service.model.TripleObject;
+
+import java.util.*;
+import java.util.function.Consumer;
+
+/**
+ * Read-only view of the cached instances of a node, triple store and class, where a null filter matches any value
+ * (a view with no filters is the whole cache).
+ * <p>
+ * The view does not copy the instances: iterating or streaming it goes through the segments of the
+ * {@link TripleObjectIndex} as they are at that moment, so a full scan allocates the same whatever the size of the
+ * cache. Its {@link Spliterator} splits first by class and then inside the instances of a class, which lets
+ * {@code parallelStream()} spread a scan over the cores. As the segments, the view is weakly consistent: instances
+ * added or removed while it is being read may or may not be seen, and it never fails because of them.
+ */
+public class CacheView extends AbstractCollection<TripleObject> {
+
+    private final TripleObjectIndex index;
+    private final String node;
+    private final String tripleStore;
+    private final String className;
+
+    CacheView(TripleObjectIndex index, String node, String tripleStore, String className) {
+        this.index = index;
+        this.node = node;
+        this.tripleStore = tripleStore;
+        this.className = className;
+    }
+
+    public boolean matches(ClassKey key) {
+        return (node == null || node.equals(key.getNode())) &&
+                (tripleStore == null || tripleStore.equals(key.getTripleStore())) &&
+                (className == null || className.equals(key.getClassName()));
+    }
+
+    /*
+     * Segmentos (clases) de la vista, con sus instancias de solo lectura
+     */
+    public Map<ClassKey, Map<String, TripleObject>> segments() {
+        Map<ClassKey, Map<String, TripleObject>> segments = new LinkedHashMap<>();
+        if (node != null && tripleStore != null && className != null) { // Una sola clase, sin recorrer el indice
+            Map<String, TripleObject> segment = index.getSegment(node, tripleStore, className);
+            if (segment != null)
+                segments.put(ClassKey.of(node, tripleStore, className), Collections.unmodifiableMap(segment));
+            return segments;
+        }
+        for (Map.Entry<ClassKey, Map<String, TripleObject>> segment : index.segments()) {
+            if (matches(segment.getKey()))
+                segments.put(segment.getKey(), Collections.unmodifiableMap(segment.getValue()));
+        }
+        return segments;
+    }
+
+    /*
+     * La vista como mapa anidado nodo -> triple store -> clase -> id. Solo se crean los niveles superiores
+     */
+    public Map<String, Map<String, Map<String, Map<String, TripleObject>>>> asNestedMap() {
+        Map<String, Map<String, Map<String, Map<String, TripleObject>>>> nested = new HashMap<>();
+        for (Map.Entry<ClassKey, Map<String, TripleObject>> segment : segments().entrySet()) {
+            ClassKey key = segment.getKey();
+            nested.computeIfAbsent(key.getNode(), k -> new HashMap<>())
+                    .computeIfAbsent(key.getTripleStore(), k -> new HashMap<>())
+                    .put(key.getClassName(), segment.getValue());
+        }
+        return nested;
+    }
+
+    @Override
+    public Iterator<TripleObject> iterator() {
+        Iterator<Map<String, TripleObject>> segments = segments().values().iterator();
+        return new Iterator<TripleObject>() {
+            private Iterator<TripleObject> current = Collections.emptyIterator();
+
+            @Override
+            public boolean hasNext() {
+                while (!current.hasNext() && segments.hasNext()) {
+                    current = segments.next().values().iterator();
+                }
+                return current.hasNext();
+            }
+
+            @Override
+            public TripleObject next() {
+                if (!hasNext())
+                    throw new NoSuchElementException();
+                return current.next();
+            }
+        };
+    }
+
+    @Override
+    public Spliterator<TripleObject> spliterator() {
+        return new SegmentSpliterator(new ArrayList<>(segments().values()), 0);
+    }
+
+    /*
+     * Numero de instancias, sumando el tamaño de cada clase
+     */
+    @Override
+    public int size() {
+        long size = 0;
+        for (Map<String, TripleObject> segment : segments().values()) {
+            size += segment.size();
+        }
+        return (int) Math.min(size, Integer.MAX_VALUE);
+    }
+
+    @Override
+    public boolean isEmpty() {
+        for (Map<String, TripleObject> segment : segments().values()) {
+            if (!segment.isEmpty())
+                return false;
+        }
+        return true;
+    }
+
+    /*
+     * Busca la instancia por id en cada clase de la vista, sin recorrer las instancias
+     */
+    @Override
+    public boolean contains(Object o) {
+        if (!(o instanceof TripleObject) || ((TripleObject) o).getId() == null)
+            return false;
+        TripleObject to = (TripleObject) o;
+        for (Map<String, TripleObject> segment : segments().values()) {
+            TripleObject cached = segment.get(to.getId());
+            if (cached != null && cached.equals(to))
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * Spliterator over the instances of a list of segments. While there is more than one segment left it splits the
+     * segments in halves; with one left it splits the spliterator of the segment itself.
+     */
+    private static final class SegmentSpliterator implements Spliterator<TripleObject> {
+
+        private final List<Map<String, TripleObject>> segments;
+        private int next;
+        private final int fence;
+        private Spliterator<TripleObject> current;
+
+        private SegmentSpliterator(List<Map<String, TripleObject>> segments, int next) {
+            this(segments, next, segments.size());
+        }
+
+        private SegmentSpliterator(List<Map<String, TripleObject>> segments, int next, int fence) {
+            this.segments = segments;
+            this.next = next;
+            this.fence = fence;
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super TripleObject> action) {
+            while (true) {
+                if (current != null) {
+                    if (current.tryAdvance(action))
+                        return true;
+                    current = null;
+                }
+                if (next >= fence)
+                    return false;
+                current = segments.get(next++).values().spliterator();
+            }
+        }
+
+        @Override
+        public void forEachRemaining(Consumer<? super TripleObject> action) {
+            if (current != null) {
+                current.forEachRemaining(action);
+                current = null;
+            }
+            while (next < fence) {
+                segments.get(next++).values().forEach(action);
+            }
+        }
+
+        @Override
+        public Spliterator<TripleObject> trySplit() {
+            int remaining = fence - next;
+            if (current != null && remaining > 0) { // Se cede el resto de segmentos y se sigue con el actual
+                Spliterator<TripleObject> split = new SegmentSpliterator(segments, next, fence);
+                next = fence;
+                return split;
+            }
+            if (current == null && remaining > 1) {
+                int middle = next + remaining / 2;
+                Spliterator<TripleObject> split = new SegmentSpliterator(segments, next, middle);
+                next = middle;
+                return split;
+            }
+            if (current == null && remaining == 1)
+                current = segments.get(next++).values().spliterator();
+            return (current == null) ? null : current.trySplit();
+        }
+
+        @Override
+        public long estimateSize() {
+            long size = (current == null) ? 0 : current.estimateSize();
+            for (int i = next; i < fence && size < Long.MAX_VALUE; i++) {
+                size += segments.get(i).size();
+            }
+            return (size < 0) ? Long.MAX_VALUE : size;
+        }
+
+        @Override
+        public int characteristics() {
+            return Spliterator.NONNULL;
+        }
+    }
+}
@@ -0,0 +1,494 @@
+package es.um.asio.service.model.cache;
+
+import com.google.gson.internal.LinkedTreeMap;
+import es.um.asio.service.model.TripleObject;
+import es.um.asio.service.model.TripleStore;
+import es.um.asio.service.model.TypedValue;
+import es.um.asio.service.model.rdf.TripleObjectLink;
+import es.um.asio.service.util.Utils;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Columnar, dictionary-encoded storage of the cached instances of one class of a node and triple store.
+ * <p>
+ * Instead of a {@link TripleObject} per instance, with its attributes map, its flattened copy and its typed values, the
+ * store keeps one row per instance in a few arrays shared by all of them: ids, local URIs and modification dates in
+ * parallel arrays, and the attributes as a stream of int tokens that follows the original map (keys, objects and lists
+ * with their number of items, and values). Attribute names and string values are dictionary-encoded, so every distinct
+ * string is kept once per class and its typed value (number, date...) is resolved once; numbers go to primitive arrays,
+ * or inside the token if they are small whole numbers.
+ * <p>
+ * The store is a {@code Map<String, TripleObject>} by id, so it can replace the map of instances of a class anywhere in
+ * the cache. Reads return {@link TripleObjectView} flyweights that decode the attributes only when they are asked for.
+ * Rows are never modified once written: updates append a new row and removed rows are dropped, re-encoding the live
+ * ones, when they are the majority. Views keep the arrays they were created from, so they stay valid after updates and
+ * compactions. Writes are synchronized and reads do not lock.
+ */
+public class ClassColumnStore extends AbstractMap<String, TripleObject> {
+
+    // Etiqueta del token en los 4 bits altos, el dato (numero de elementos o posicion) en el resto
+    static final int MAP = 0;
+    static final int KEY = 1;
+    static final int LIST = 2;
+    static final int STRING = 3;
+    static final int SMALL_DOUBLE = 4;
+    static final int DOUBLE = 5;
+    static final int SMALL_INTEGER = 6;
+    static final int INTEGER = 7;
+    static final int LONG = 8;
+    static final int BOOLEAN = 9;
+    static final int NULL = 10;
+    static final int OTHER = 11;
+    private static final int TAG_SHIFT = 28;
+    private static final int PAYLOAD_MASK = (1 << TAG_SHIFT) - 1;
+
+    private static final int INITIAL_CAPACITY = 16;
+    private static final int MIN_REMOVED_TO_COMPACT = 64;
+
+    private final String className;
+    private TripleStore tripleStore;
+    private volatile Segment segment = new Segment();
+    // Enlaces LOD de las pocas instancias que los tienen
+    private final Map<String, Set<TripleObjectLink>> links = new ConcurrentHashMap<>();
+
+    public ClassColumnStore(String node, String tripleStore, String className) {
+        this.className = className;
+        this.tripleStore = new TripleStore(tripleStore, node);
+    }
+
+    /*
+     * Almacen con las instancias del mapa
+     */
+    public static ClassColumnStore of(String node, String tripleStore, String className, Map<String, TripleObject> instances) {
+        ClassColumnStore store = new ClassColumnStore(node, tripleStore, className);
+        if (instances != null)
+            store.putAll(instances);
+        return store;
+    }
+
+    public String getClassName() {
+        return className;
+    }
+
+    @Override
+    public int size() {
+        return segment.rows.size();
+    }
+
+    @Override
+    public boolean containsKey(Object id) {
+        return id != null && segment.rows.containsKey(id);
+    }
+
+    @Override
+    public TripleObject get(Object id) {
+        if (id == null)
+            return null;
+        Segment s = segment;
+        Integer row = s.rows.get(id);
+        return (row == null) ? null : view(s.columns, row);
+    }
+
+    /*
+     * Codifica la instancia en una fila nueva. Si ya habia una con el id, se marca como borrada y se devuelve su vista
+     */
+    @Override
+    public synchronized TripleObject put(String id, TripleObject to) {
+        Objects.requireNonNull(id, "id");
+        Objects.requireNonNull(to, "tripleObject");
+        if (to.getTripleStore() != null && to.getTripleStore().getNode() != null)
+            tripleStore = to.getTripleStore();
+        Segment s = segment;
+        int row = s.append(id, to.getLocalURI(), to.getLastModification(), to.getAttributes());
+        Integer previous = s.rows.put(id, row);
+        if (to.getTripleObjectLink() != null)
+            links.put(id, to.getTripleObjectLink());
+        else
+            links.remove(id);
+        TripleObject old = (previous == null) ? null : view(s.columns, previous);
+        compactIfNeeded();
+        return old;
+    }
+
+    @Override
+    public synchronized TripleObject remove(Object id) {
+        if (id == null)
+            return null;
+        Segment s = segment;
+        Integer row = s.rows.remove(id);
+        if (row == null)
+            return null;
+        TripleObject old = view(s.columns, row);
+        links.remove(id);
+        compactIfNeeded();
+        return old;
+    }
+
+    @Override
+    public synchronized void clear() {
+        segment = new Segment();
+        links.clear();
+    }
+
+    @Override
+    public Set<Entry<String, TripleObject>> entrySet() {
+        return new AbstractSet<Entry<String, TripleObject>>() {
+            @Override
+            public Iterator<Entry<String, TripleObject>> iterator() {
+                Segment s = segment;
+                Iterator<Entry<String, Integer>> rows = s.rows.entrySet().iterator();
+                return new Iterator<Entry<String, TripleObject>>() {
+                    private String last;
+
+                    @Override
+                    public boolean hasNext() {
+                        return rows.hasNext();
+                    }
+
+                    @Override
+                    public Entry<String, TripleObject> next() {
+                        Entry<String, Integer> row = rows.next();
+                        last = row.getKey();
+                        return new SimpleImmutableEntry<>(row.getKey(), view(s.columns, row.getValue()));
+                    }
+
+                    @Override
+                    public void remove() {
+                        if (last == null)
+                            throw new IllegalStateException();
+                        ClassColumnStore.this.remove(last);
+                        last = null;
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return ClassColumnStore.this.size();
+            }
+        };
+    }
+
+    /*
+     * Filas ocupadas, incluidas las borradas que aun no se han compactado
+     */
+    public int getRowCount() {
+        return segment.rowCount;
+    }
+
+    private TripleObjectView view(Columns columns, int row) {
+        String id = columns.ids[row];
+        return new TripleObjectView(id, columns.localURIs[row], className, columns.lastModifications[row], tripleStore, links.get(id), columns, row);
+    }
+
+    /*
+     * Cuando las filas borradas son mayoria se vuelven a codificar las vivas en un segmento nuevo, lo que tambien
+     * descarta los valores del diccionario que ya no se usan
+     */
+    private void compactIfNeeded() {
+        Segment s = segment;
+        int removed = s.rowCount - s.rows.size();
+        if (removed < MIN_REMOVED_TO_COMPACT || removed <= s.rows.size())
+            return;
+        Segment compacted = new Segment();
+        Columns columns = s.columns;
+        for (Entry<String, Integer> entry : s.rows.entrySet()) {
+            int row = entry.getValue();
+            int newRow = compacted.append(entry.getKey(), columns.localURIs[row], columns.lastModifications[row], columns.decodeAttributes(row));
+            compacted.rows.put(entry.getKey(), newRow);
+        }
+        segment = compacted;
+    }
+
+    static int token(int tag, int payload) {
+        if (payload < 0 || payload > PAYLOAD_MASK)
+            throw new IllegalStateException(String.format("Class store full [payload: %d, max: %d]", payload, PAYLOAD_MASK));
+        return (tag << TAG_SHIFT) | payload;
+    }
+
+    static int tag(int token) {
+        return token >>> TAG_SHIFT;
+    }
+
+    static int payload(int token) {
+        return token & PAYLOAD_MASK;
+    }
+
+    /**
+     * Rows written so far and the state needed to append more: the dictionary and the used length of every array. Only
+     * the writer touches it, except for the ids map and the arrays, which it publishes through {@link #columns}.
+     */
+    private static final class Segment {
+        private final Map<String, Integer> rows = new ConcurrentHashMap<>();
+        private final Map<String, Integer> dictionary = new HashMap<>();
+        private volatile Columns columns = new Columns();
+        private int rowCount;
+        private int tokenCount;
+        private int stringCount;
+        private int doubleCount;
+        private int longCount;
+        private int otherCount;
+
+        private int append(String id, String localURI, long lastModification, Map<String, Object> attributes) {
+            Columns c = columns;
+            if (rowCount + 1 >= c.rowStarts.length)
+                c = c.growRows(rowCount + 2);
+            int row = rowCount;
+            c.ids[row] = id;
+            c.localURIs[row] = localURI;
+            c.lastModifications[row] = lastModification;
+            c.rowStarts[row] = tokenCount;
+            c = appendValue(c, attributes);
+            c.rowStarts[row + 1] = tokenCount;
+            rowCount++;
+            // La escritura volatil publica la fila a quien lea columns despues de ver su id
+            columns = c;
+            return row;
+        }
+
+        private Columns appendValue(Columns c, Object value) {
+            if (value == null)
+                return appendToken(c, token(NULL, 0));
+            if (value instanceof String)
+                return appendToken(c, token(STRING, 0), (String) value);
+            if (value instanceof Double) {
+                double d = (Double) value;
+                // Los enteros pequeños (años, cantidades) caben en el propio token
+                if (d >= 0d && d <= PAYLOAD_MASK && d == Math.rint(d) && Double.doubleToRawLongBits(d) != Double.doubleToRawLongBits(-0d))
+                    return appendToken(c, token(SMALL_DOUBLE, (int) d));
+                if (doubleCount == c.doubles.length)
+                    c = c.withDoubles(Arrays.copyOf(c.doubles, doubleCount * 2));
+                c.doubles[doubleCount] = d;
+                return appendToken(c, token(DOUBLE, doubleCount++));
+            }
+            if (value instanceof Integer && (Integer) value >= 0)
+                return appendToken(c, token(SMALL_INTEGER, (Integer) value));
+            if (value instanceof Integer || value instanceof Long) {
+                if (longCount == c.longs.length)
+                    c = c.withLongs(Arrays.copyOf(c.longs, longCount * 2));
+                c.longs[longCount] = ((Number) value).longValue();
+                return appendToken(c, token((value instanceof Integer) ? INTEGER : LONG, longCount++));
+            }
+            if (value instanceof Boolean)
+                return appendToken(c, token(BOOLEAN, (Boolean) value ? 1 : 0));
+            if (value instanceof Map) {
+                Map<?, ?> map = (Map<?, ?>) value;
+                c = appendToken(c, token(MAP, map.size()));
+                for (Map.Entry<?, ?> entry : map.entrySet()) {
+                    c = appendToken(c, token(KEY, 0), String.valueOf(entry.getKey()));
+                    c = appendValue(c, entry.getValue());
+                }
+                return c;
+            }
+            if (value instanceof List) {
+                List<?> list = (List<?>) value;
+                c = appendToken(c, token(LIST, list.size()));
+                for (Object item : list) {
+                    c = appendValue(c, item);
+                }
+                return c;
+            }
+            // Cualquier otro valor (Float, Character...) se guarda tal cual para no cambiar su tipo
+            if (otherCount == c.others.length)
+                c = c.withOthers(Arrays.copyOf(c.others, otherCount * 2));
+            c.others[otherCount] = value;
+            return appendToken(c, token(OTHER, otherCount++));
+        }
+
+        /*
+         * Token de cadena: el dato es la posicion de la cadena en el diccionario, que se añade si no estaba
+         */
+        private Columns appendToken(Columns c, int token, String value) {
+            Integer index = dictionary.get(value);
+            if (index == null) {
+                if (stringCount == c.strings.length)
+                    c = c.withStrings(Arrays.copyOf(c.strings, stringCount * 2), Arrays.copyOf(c.typedStrings, stringCount * 2));
+                index = stringCount++;
+                c.strings[index] = value;
+                dictionary.put(value, index);
+            }
+            return appendToken(c, token | token(0, index));
+        }
+
+        private Columns appendToken(Columns c, int token) {
+            if (tokenCount == c.tokens.length)
+                c = c.withTokens(Arrays.copyOf(c.tokens, tokenCount * 2));
+            c.tokens[tokenCount++] = token;
+            return c;
+        }
+    }
+
+    /**
+     * Arrays of a segment. A grown array gives a new instance that shares the rest, and rows are never rewritten, so an
+     * instance can be read without locks for every row written before it was published.
+     */
+    static final class Columns {
+        private final String[] ids;
+        private final String[] localURIs;
+        private final long[] lastModifications;
+        // Primer token de cada fila; el final de la fila es el primero de la siguiente
+        private final int[] rowStarts;
+        private final int[] tokens;
+        private final String[] strings;
+        // Valor tipado de cada cadena del diccionario, resuelto la primera vez que se pide
+        private final TypedValue[] typedStrings;
+        private final double[] doubles;
+        private final long[] longs;
+        private final Object[] others;
+
+        private Columns() {
+            this(new String[INITIAL_CAPACITY], new String[INITIAL_CAPACITY], new long[INITIAL_CAPACITY], new int[INITIAL_CAPACITY + 1],
+                    new int[INITIAL_CAPACITY * 8], new String[INITIAL_CAPACITY * 4], new TypedValue[INITIAL_CAPACITY * 4],
+                    new double[INITIAL_CAPACITY], new long[INITIAL_CAPACITY], new Object[INITIAL_CAPACITY]);
+        }
+
+        private Columns(String[] ids, String[] localURIs, long[] lastModifications, int[] rowStarts, int[] tokens, String[] strings,
+                        TypedValue[] typedStrings, double[] doubles, long[] longs, Object[] others) {
+            this.ids = ids;
+            this.localURIs = localURIs;
+            this.lastModifications = lastModifications;
+            this.rowStarts = rowStarts;
+            this.tokens = tokens;
+            this.strings = strings;
+            this.typedStrings = typedStrings;
+            this.doubles = doubles;
+            this.longs = longs;
+            this.others = others;
+        }
+
+        private Columns growRows(int minimum) {
+            int capacity = Math.max(minimum, ids.length * 2);
+            return new Columns(Arrays.copyOf(ids, capacity), Arrays.copyOf(localURIs, capacity), Arrays.copyOf(lastModifications, capacity),
+                    Arrays.copyOf(rowStarts, capacity + 1), tokens, strings, typedStrings, doubles, longs, others);
+        }
+
+        private Columns withTokens(int[] tokens) {
+            return new Columns(ids, localURIs, lastModifications, rowStarts, tokens, strings, typedStrings, doubles, longs, others);
+        }
+
+        private Columns withStrings(String[] strings, TypedValue[] typedStrings) {
+            return new Columns(ids, localURIs, lastModifications, rowStarts, tokens, strings, typedStrings, doubles, longs, others);
+        }
+
+        private Columns withDoubles(double[] doubles) {
+            return new Columns(ids, localURIs, lastModifications, rowStarts, tokens, strings, typedStrings, doubles, longs, others);
+        }
+
+        private Columns withLongs(long[] longs) {
+            return new Columns(ids, localURIs, lastModifications, rowStarts, tokens, strings, typedStrings, doubles, longs, others);
+        }
+
+        private Columns withOthers(Object[] others) {
+            return new Columns(ids, localURIs, lastModifications, rowStarts, tokens, strings, typedStrings, doubles, longs, others);
+        }
+
+        /*
+         * Atributos de la fila como los deja Gson: mapas LinkedTreeMap y listas ArrayList, en el orden original
+         */
+        @SuppressWarnings("unchecked")
+        LinkedTreeMap<String, Object> decodeAttributes(int row) {
+            int start = rowStarts[row];
+            if (tag(tokens[start]) != MAP)
+                return null;
+            int[] position = {start};
+            return (LinkedTreeMap<String, Object>) decode(position);
+        }
+
+        private Object decode(int[] position) {
+            int token = tokens[position[0]++];
+            int payload = payload(token);
+            switch (tag(token)) {
+                case MAP:
+                    LinkedTreeMap<String, Object> map = new LinkedTreeMap<>();
+                    for (int i = 0; i < payload; i++) {
+                        String key = strings[payload(tokens[position[0]++])];
+                        map.put(key, decode(position));
+                    }
+                    return map;
+                case LIST:
+                    List<Object> list = new ArrayList<>(payload);
+                    for (int i = 0; i < payload; i++) {
+                        list.add(decode(position));
+                    }
+                    return list;
+                default:
+                    return value(token);
+            }
+        }
+
+        private Object value(int token) {
+            int payload = payload(token);
+            switch (tag(token)) {
+                case STRING:
+                    return strings[payload];
+                case SMALL_DOUBLE:
+                    return (double) payload;
+                case DOUBLE:
+                    return doubles[payload];
+                case SMALL_INTEGER:
+                    return payload;
+                case INTEGER:
+                    return (int) longs[payload];
+                case LONG:
+                    return longs[payload];
+                case BOOLEAN:
+                    return payload == 1;
+                case OTHER:
+                    return others[payload];
+                default:
+                    return null;
+            }
+        }
+
+        /*
+         * Atributos aplanados de la fila ("a.b.c" -> valores), igual que TripleObject.buildFlattenAttributes pero sin
+         * decodificar los objetos, y con los valores tipados de las cadenas compartidos por todas las filas
+         */
+        void flatten(int row, Map<String, List<Object>> flatten, Map<String, List<TypedValue>> typed) {
+            int[] position = {rowStarts[row]};
+            if (tag(tokens[position[0]]) == MAP)
+                flatten(position, "", flatten, typed);
+            for (Map.Entry<String, List<TypedValue>> entry : typed.entrySet()) {
+                entry.setValue(Collections.unmodifiableList(entry.getValue()));
+            }
+        }
+
+        private void flatten(int[] position, String path, Map<String, List<Object>> flatten, Map<String, List<TypedValue>> typed) {
+            int token = tokens[position[0]++];
+            int payload = payload(token);
+            switch (tag(token)) {
+                case MAP:
+                    for (int i = 0; i < payload; i++) {
+                        String key = strings[payload(tokens[position[0]++])];
+                        flatten(position, path.isEmpty() ? key : path + "." + key, flatten, typed);
+                    }
+                    break;
+                case LIST:
+                    for (int i = 0; i < payload; i++) {
+                        flatten(position, path, flatten, typed);
+                    }
+                    break;
+                case NULL:
+                    break;
+                default:
+                    Object value = value(token);
+                    if (!Utils.isPrimitive(value))
+                        break;
+                    flatten.computeIfAbsent(path, k -> new ArrayList<>()).add(value);
+                    typed.computeIfAbsent(path, k -> new ArrayList<>()).add((tag(token) == STRING) ? typedString(payload) : TypedValue.of(value));
+            }
+        }
+
+        private TypedValue typedString(int index) {
+            TypedValue typed = typedStrings[index];
+            if (typed == null) {
+                // Si dos lectores lo resuelven a la vez el resultado es el mismo
+                typed = TypedValue.of(strings[index]);
+                typedStrings[index] = typed;
+            }
+            return typed;
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package es.um.asio.service.model.cache;
+
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Key of a class of the cache: node, triple store and class name.
+ * <p>
+ * Keys are interned, so there is a single instance per class that can be kept in other maps (LSH indexes, stats...)
+ * without repeating the strings, and the hash is computed once. Lookups may use a key built with {@link #lookup}, which
+ * is equal to the interned one but is not added to the pool.
+ */
+public final class ClassKey {
+
+    private static final Map<ClassKey, ClassKey> INTERNED = new ConcurrentHashMap<>();
+
+    private final String node;
+    private final String tripleStore;
+    private final String className;
+    private final int hash;
+
+    private ClassKey(String node, String tripleStore, String className) {
+        this.node = node;
+        this.tripleStore = tripleStore;
+        this.className = className;
+        this.hash = Objects.hash(node, tripleStore, className);
+    }
+
+    /*
+     * Instancia unica de la clave
+     */
+    public static ClassKey of(String node, String tripleStore, String className) {
+        ClassKey key = new ClassKey(node, tripleStore, className);
+        ClassKey interned = INTERNED.putIfAbsent(key, key);
+        return (interned != null) ? interned : key;
+    }
+
+    /*
+     * Clave para buscar, sin añadirla a las internadas
+     */
+    public static ClassKey lookup(String node, String tripleStore, String className) {
+        return new ClassKey(node, tripleStore, className);
+    }
+
+    public String getNode() {
+        return node;
+    }
+
+    public String getTripleStore() {
+        return tripleStore;
+    }
+
+    public String getClassName() {
+        return className;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        ClassKey that = (ClassKey) o;
+        return hash == that.hash &&
+                Objects.equals(node, that.node) &&
+                Objects.equals(tripleStore, that.tripleStore) &&
+                Objects.equals(className, that.className);
+    }
+
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+
+    @Override
+    public String toString() {
+        return node + "." + tripleStore + "." + className;
+    }
+}
@@ -0,0 +1,158 @@
+package es.um.asio.service.model.cache;
+
+import es.um.asio.service.model.TripleObject;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+
+/**
+ * Instances of a class ordered by last modification (epoch millis).
+ * <p>
+ * The index keeps a (last modification, id) stamp per instance in a skip list, so the instances modified since a date
+ * are found in O(log n + k) without going through the class, and looks them up by id in the map of instances of the
+ * class when they are asked for. It keeps no reference to the instances themselves: with the columnar storage the
+ * views are created on demand, so the index does not retain their decoded attributes or the arrays of the store they
+ * were read from. Each id is in the index once, with the last modification of the instance that was put last. Readers
+ * do not lock and iterate weakly consistent views; writers of a class are expected to be serialized (the cache does it
+ * with the lock of the class), and an instance that is being updated may be seen twice by a reader, but is never missed.
+ */
+public class ModificationIndex {
+
+    private final Map<String, TripleObject> instances;
+    private final ConcurrentSkipListSet<Stamp> byModification = new ConcurrentSkipListSet<>();
+    private final Map<String, Stamp> stamps = new ConcurrentHashMap<>();
+
+    /*
+     * Indice vacio de las instancias del mapa, donde se buscan por id al consultarlo
+     */
+    public ModificationIndex(Map<String, TripleObject> instances) {
+        this.instances = instances;
+    }
+
+    /*
+     * Indice con las instancias del mapa. Se descartan las instancias sin id
+     */
+    public static ModificationIndex of(Map<String, TripleObject> instances) {
+        ModificationIndex index = new ModificationIndex(instances);
+        for (TripleObject to : instances.values()) {
+            index.put(to);
+        }
+        return index;
+    }
+
+    /*
+     * Añade la instancia o la mueve a su nueva fecha de modificacion. Primero se añade la nueva posicion y luego se
+     * quita la anterior, para que un lector no deje de verla
+     */
+    public void put(TripleObject to) {
+        if (to == null || to.getId() == null)
+            return;
+        Stamp stamp = new Stamp(to.getLastModification(), to.getId());
+        byModification.add(stamp);
+        Stamp previous = stamps.put(to.getId(), stamp);
+        if (previous != null && !previous.equals(stamp))
+            byModification.remove(previous);
+    }
+
+    public void remove(String id) {
+        if (id == null)
+            return;
+        Stamp previous = stamps.remove(id);
+        if (previous != null)
+            byModification.remove(previous);
+    }
+
+    /*
+     * Instancias modificadas en la fecha dada o despues, por orden de modificacion. Se leen del mapa de la clase, y no
+     * se devuelven las que ya no estan o han pasado a una fecha anterior
+     */
+    public Collection<TripleObject> modifiedSince(long since) {
+        List<TripleObject> modified = new ArrayList<>();
+        for (Stamp stamp : byModification.tailSet(new Stamp(since, null), true)) {
+            TripleObject to = instances.get(stamp.id);
+            if (to != null && to.getLastModification() >= since)
+                modified.add(to);
+        }
+        return Collections.unmodifiableList(modified);
+    }
+
+    /*
+     * Ids de las instancias modificadas en la fecha dada o despues segun el indice, sin leerlas del mapa de la clase
+     */
+    public List<String> modifiedIdsSince(long since) {
+        List<String> ids = new ArrayList<>();
+        for (Stamp stamp : byModification.tailSet(new Stamp(since, null), true)) {
+            ids.add(stamp.id);
+        }
+        return ids;
+    }
+
+    /*
+     * Instancias modificadas en la fecha dada o despues, por id
+     */
+    public Map<String, TripleObject> modifiedSinceById(long since) {
+        Map<String, TripleObject> modified = new HashMap<>();
+        for (TripleObject to : modifiedSince(since)) {
+            modified.put(to.getId(), to);
+        }
+        return modified;
+    }
+
+    /*
+     * Ultima fecha de modificacion de la clase, o null si no hay instancias
+     */
+    public Long getLastModification() {
+        Iterator<Stamp> last = byModification.descendingIterator();
+        return last.hasNext() ? last.next().lastModification : null;
+    }
+
+    public int size() {
+        return stamps.size();
+    }
+
+    public void clear() {
+        stamps.clear();
+        byModification.clear();
+    }
+
+    /**
+     * Position of an instance: last modification, then id. A null id sorts before any other id of the same date, so it
+     * is used to look for the first instance modified at a date.
+     */
+    private static final class Stamp implements Comparable<Stamp> {
+
+        private final long lastModification;
+        private final String id;
+
+        private Stamp(long lastModification, String id) {
+            this.lastModification = lastModification;
+            this.id = id;
+        }
+
+        @Override
+        public int compareTo(Stamp other) {
+            int compare = Long.compare(lastModification, other.lastModification);
+            if (compare != 0)
+                return compare;
+            if (id == null)
+                return (other.id == null) ? 0 : -1;
+            if (other.id == null)
+                return 1;
+            return id.compareTo(other.id);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            Stamp that = (Stamp) o;
+            return lastModification == that.lastModification && Objects.equals(id, that.id);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(lastModification, id);
+        }
+    }
+}
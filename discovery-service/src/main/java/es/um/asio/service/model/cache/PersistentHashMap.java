@@ -0,0 +1,438 @@
+package es.um.asio.service.model.cache;
+
+import java.util.*;
+
+/**
+ * Immutable hash map (hash array mapped trie) that is changed by creating new versions.
+ * <p>
+ * {@link #plus} and {@link #minus} return a new map that shares everything with the previous one except the path from
+ * the root to the changed entry (at most 7 nodes of up to 32 entries), so keeping old versions costs only what changed
+ * since them. Reads never lock and see a map that does not change. The map is a read-only {@link Map}: the mutators of
+ * the interface throw {@link UnsupportedOperationException}. Null keys and values are not allowed. Large maps are built
+ * with a {@link Builder}, which changes its own nodes in place instead of copying them on every entry.
+ */
+public final class PersistentHashMap<K, V> extends AbstractMap<K, V> {
+
+    private static final PersistentHashMap<?, ?> EMPTY = new PersistentHashMap<>(null, 0);
+
+    private final Node root;
+    private final int size;
+
+    private PersistentHashMap(Node root, int size) {
+        this.root = root;
+        this.size = size;
+    }
+
+    @SuppressWarnings("unchecked")
+    public static <K, V> PersistentHashMap<K, V> empty() {
+        return (PersistentHashMap<K, V>) EMPTY;
+    }
+
+    /*
+     * Mapa con las entradas dadas. Las entradas con clave o valor nulo se descartan
+     */
+    public static <K, V> PersistentHashMap<K, V> of(Map<? extends K, ? extends V> map) {
+        Builder<K, V> builder = new Builder<>();
+        for (Map.Entry<? extends K, ? extends V> entry : map.entrySet()) {
+            if (entry.getKey() != null && entry.getValue() != null)
+                builder.put(entry.getKey(), entry.getValue());
+        }
+        return builder.build();
+    }
+
+    /*
+     * Nueva version del mapa con la entrada añadida o sustituida
+     */
+    public PersistentHashMap<K, V> plus(K key, V value) {
+        Objects.requireNonNull(key);
+        Objects.requireNonNull(value);
+        Box added = new Box();
+        Node newRoot = ((root == null) ? BitmapNode.EMPTY : root).assoc(null, 0, hash(key), key, value, added);
+        if (newRoot == root)
+            return this;
+        return new PersistentHashMap<>(newRoot, added.value ? size + 1 : size);
+    }
+
+    /*
+     * Nueva version del mapa sin la clave
+     */
+    public PersistentHashMap<K, V> minus(Object key) {
+        if (key == null || root == null)
+            return this;
+        Box removed = new Box();
+        Node newRoot = root.without(null, 0, hash(key), key, removed);
+        if (!removed.value)
+            return this;
+        return (newRoot == null) ? empty() : new PersistentHashMap<>(newRoot, size - 1);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public V get(Object key) {
+        if (key == null || root == null)
+            return null;
+        return (V) root.find(0, hash(key), key);
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return get(key) != null;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    @Override
+    public Set<Map.Entry<K, V>> entrySet() {
+        return new AbstractSet<Map.Entry<K, V>>() {
+            @Override
+            public Iterator<Map.Entry<K, V>> iterator() {
+                return new EntryIterator<>(root);
+            }
+
+            @Override
+            public int size() {
+                return size;
+            }
+
+            @Override
+            public boolean contains(Object o) {
+                if (!(o instanceof Map.Entry))
+                    return false;
+                Object value = get(((Map.Entry<?, ?>) o).getKey());
+                return value != null && value.equals(((Map.Entry<?, ?>) o).getValue());
+            }
+        };
+    }
+
+    private static int hash(Object key) {
+        int h = key.hashCode();
+        return h ^ (h >>> 16);
+    }
+
+    private static int bit(int hash, int shift) {
+        return 1 << ((hash >>> shift) & 31);
+    }
+
+    /**
+     * Builds a map changing its nodes in place: the nodes created by a builder carry its edit token and are only copied
+     * when they belong to another map. Once built, the map is as immutable as any other.
+     */
+    public static final class Builder<K, V> {
+
+        private Object edit = new Object();
+        private Node root;
+        private int size;
+
+        public Builder<K, V> put(K key, V value) {
+            Objects.requireNonNull(key);
+            Objects.requireNonNull(value);
+            if (edit == null)
+                throw new IllegalStateException("The map is already built");
+            Box added = new Box();
+            root = ((root == null) ? BitmapNode.EMPTY : root).assoc(edit, 0, hash(key), key, value, added);
+            if (added.value)
+                size++;
+            return this;
+        }
+
+        public PersistentHashMap<K, V> build() {
+            edit = null;
+            return (root == null) ? empty() : new PersistentHashMap<>(root, size);
+        }
+    }
+
+    private static final class Box {
+        private boolean value;
+    }
+
+    private abstract static class Node {
+
+        abstract Node assoc(Object edit, int shift, int hash, Object key, Object value, Box added);
+
+        abstract Node without(Object edit, int shift, int hash, Object key, Box removed);
+
+        abstract Object find(int shift, int hash, Object key);
+
+        /*
+         * Clave y valor si el nodo solo tiene una entrada (sin hijos), o null
+         */
+        abstract Object[] singleEntry();
+    }
+
+    /**
+     * Node with up to 32 slots selected by 5 bits of the hash. A slot holds a key and its value, or (with a null key) the
+     * node for the next 5 bits.
+     */
+    private static final class BitmapNode extends Node {
+
+        private static final BitmapNode EMPTY = new BitmapNode(null, 0, new Object[0]);
+
+        private final Object edit;
+        private int bitmap;
+        private Object[] array;
+
+        private BitmapNode(Object edit, int bitmap, Object[] array) {
+            this.edit = edit;
+            this.bitmap = bitmap;
+            this.array = array;
+        }
+
+        @Override
+        Object[] singleEntry() {
+            return (Integer.bitCount(bitmap) == 1 && array[0] != null) ? new Object[]{array[0], array[1]} : null;
+        }
+
+        private int index(int bit) {
+            return Integer.bitCount(bitmap & (bit - 1));
+        }
+
+        @Override
+        Object find(int shift, int hash, Object key) {
+            int bit = bit(hash, shift);
+            if ((bitmap & bit) == 0)
+                return null;
+            int idx = index(bit);
+            Object k = array[2 * idx];
+            Object v = array[2 * idx + 1];
+            if (k == null)
+                return ((Node) v).find(shift + 5, hash, key);
+            return key.equals(k) ? v : null;
+        }
+
+        @Override
+        Node assoc(Object edit, int shift, int hash, Object key, Object value, Box added) {
+            int bit = bit(hash, shift);
+            int idx = index(bit);
+            if ((bitmap & bit) != 0) {
+                Object k = array[2 * idx];
+                Object v = array[2 * idx + 1];
+                if (k == null) {
+                    Node n = ((Node) v).assoc(edit, shift + 5, hash, key, value, added);
+                    return (n == v) ? this : set(edit, 2 * idx + 1, n);
+                }
+                if (key.equals(k))
+                    return (v == value) ? this : set(edit, 2 * idx + 1, value);
+                added.value = true;
+                Node n = createNode(edit, shift + 5, k, v, hash, key, value);
+                BitmapNode node = set(edit, 2 * idx, null);
+                node.array[2 * idx + 1] = n;
+                return node;
+            }
+            added.value = true;
+            int n = Integer.bitCount(bitmap);
+            Object[] newArray = new Object[2 * (n + 1)];
+            System.arraycopy(array, 0, newArray, 0, 2 * idx);
+            newArray[2 * idx] = key;
+            newArray[2 * idx + 1] = value;
+            System.arraycopy(array, 2 * idx, newArray, 2 * (idx + 1), 2 * (n - idx));
+            if (isEditable(edit)) {
+                bitmap |= bit;
+                array = newArray;
+                return this;
+            }
+            return new BitmapNode(edit, bitmap | bit, newArray);
+        }
+
+        @Override
+        Node without(Object edit, int shift, int hash, Object key, Box removed) {
+            int bit = bit(hash, shift);
+            if ((bitmap & bit) == 0)
+                return this;
+            int idx = index(bit);
+            Object k = array[2 * idx];
+            Object v = array[2 * idx + 1];
+            if (k == null) {
+                Node n = ((Node) v).without(edit, shift + 5, hash, key, removed);
+                if (n == v)
+                    return this;
+                if (n == null)
+                    return removeSlot(edit, bit, idx);
+                // Un hijo con una sola entrada se sube a este nivel, para que el arbol no se quede con ramas vacias
+                Object[] single = n.singleEntry();
+                if (single != null) {
+                    BitmapNode node = set(edit, 2 * idx, single[0]);
+                    node.array[2 * idx + 1] = single[1];
+                    return node;
+                }
+                return set(edit, 2 * idx + 1, n);
+            }
+            if (!key.equals(k))
+                return this;
+            removed.value = true;
+            return removeSlot(edit, bit, idx);
+        }
+
+        private Node removeSlot(Object edit, int bit, int idx) {
+            if (bitmap == bit)
+                return null;
+            int n = Integer.bitCount(bitmap);
+            Object[] newArray = new Object[2 * (n - 1)];
+            System.arraycopy(array, 0, newArray, 0, 2 * idx);
+            System.arraycopy(array, 2 * (idx + 1), newArray, 2 * idx, 2 * (n - idx - 1));
+            if (isEditable(edit)) {
+                bitmap ^= bit;
+                array = newArray;
+                return this;
+            }
+            return new BitmapNode(edit, bitmap ^ bit, newArray);
+        }
+
+        private boolean isEditable(Object edit) {
+            return edit != null && this.edit == edit;
+        }
+
+        private BitmapNode set(Object edit, int i, Object o) {
+            if (isEditable(edit)) {
+                array[i] = o;
+                return this;
+            }
+            Object[] newArray = array.clone();
+            newArray[i] = o;
+            return new BitmapNode(edit, bitmap, newArray);
+        }
+    }
+
+    /**
+     * Entries whose keys have the same hash.
+     */
+    private static final class CollisionNode extends Node {
+
+        private final int hash;
+        private final Object[] array;
+
+        private CollisionNode(int hash, Object[] array) {
+            this.hash = hash;
+            this.array = array;
+        }
+
+        @Override
+        Object[] singleEntry() {
+            return (array.length == 2) ? new Object[]{array[0], array[1]} : null;
+        }
+
+        private int indexOf(Object key) {
+            for (int i = 0; i < array.length; i += 2) {
+                if (key.equals(array[i]))
+                    return i;
+            }
+            return -1;
+        }
+
+        @Override
+        Object find(int shift, int hash, Object key) {
+            int i = indexOf(key);
+            return (i < 0) ? null : array[i + 1];
+        }
+
+        @Override
+        Node assoc(Object edit, int shift, int hash, Object key, Object value, Box added) {
+            if (hash != this.hash) // Se anida en un nodo con los bits en los que difieren
+                return new BitmapNode(edit, bit(this.hash, shift), new Object[]{null, this}).assoc(edit, shift, hash, key, value, added);
+            int i = indexOf(key);
+            if (i >= 0) {
+                if (array[i + 1] == value)
+                    return this;
+                Object[] newArray = array.clone();
+                newArray[i + 1] = value;
+                return new CollisionNode(hash, newArray);
+            }
+            added.value = true;
+            Object[] newArray = Arrays.copyOf(array, array.length + 2);
+            newArray[array.length] = key;
+            newArray[array.length + 1] = value;
+            return new CollisionNode(hash, newArray);
+        }
+
+        @Override
+        Node without(Object edit, int shift, int hash, Object key, Box removed) {
+            int i = indexOf(key);
+            if (i < 0)
+                return this;
+            removed.value = true;
+            if (array.length == 2)
+                return null;
+            Object[] newArray = new Object[array.length - 2];
+            System.arraycopy(array, 0, newArray, 0, i);
+            System.arraycopy(array, i + 2, newArray, i, array.length - i - 2);
+            return new CollisionNode(hash, newArray);
+        }
+    }
+
+    /*
+     * Nodo para dos entradas que coinciden en los bits anteriores a shift
+     */
+    private static Node createNode(Object edit, int shift, Object k1, Object v1, int h2, Object k2, Object v2) {
+        int h1 = hash(k1);
+        if (h1 == h2)
+            return new CollisionNode(h1, new Object[]{k1, v1, k2, v2});
+        Box added = new Box();
+        return new BitmapNode(edit, 0, new Object[0])
+                .assoc(edit, shift, h1, k1, v1, added)
+                .assoc(edit, shift, h2, k2, v2, added);
+    }
+
+    /**
+     * Depth-first iterator over the entries, with a stack of the nodes being visited.
+     */
+    private static final class EntryIterator<K, V> implements Iterator<Map.Entry<K, V>> {
+
+        private final Deque<Object[]> arrays = new ArrayDeque<>();
+        private final Deque<Integer> positions = new ArrayDeque<>();
+        private Map.Entry<K, V> next;
+
+        private EntryIterator(Node root) {
+            if (root != null)
+                push(root);
+            advance();
+        }
+
+        private void push(Node node) {
+            arrays.push((node instanceof BitmapNode) ? ((BitmapNode) node).array : ((CollisionNode) node).array);
+            positions.push(0);
+        }
+
+        @SuppressWarnings("unchecked")
+        private void advance() {
+            next = null;
+            while (!arrays.isEmpty()) {
+                Object[] array = arrays.peek();
+                int position = positions.pop();
+                if (position >= array.length) {
+                    arrays.pop();
+                    continue;
+                }
+                positions.push(position + 2);
+                Object k = array[position];
+                Object v = array[position + 1];
+                if (k == null) {
+                    push((Node) v);
+                } else {
+                    next = new AbstractMap.SimpleImmutableEntry<>((K) k, (V) v);
+                    return;
+                }
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return next != null;
+        }
+
+        @Override
+        public Map.Entry<K, V> next() {
+            if (next == null)
+                throw new NoSuchElementException();
+            Map.Entry<K, V> entry = next;
+            advance();
+            return entry;
+        }
+    }
+}
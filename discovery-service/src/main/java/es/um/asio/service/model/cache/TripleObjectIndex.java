@@ -0,0 +1,464 @@
+package es.um.asio.service.model.cache;
+
+import es.um.asio.service.model.TripleObject;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.UnaryOperator;
+
+/**
+ * Concurrent index of the cached instances by class and id.
+ * <p>
+ * Every (node, triple store, class) is a segment of a single {@link ConcurrentHashMap} keyed by its interned
+ * {@link ClassKey}, and each segment is a concurrent map of the instances by id: a {@link ConcurrentHashMap}, or a
+ * {@link ClassColumnStore} when the index is created with columnar storage. A lookup is two hash lookups, readers never
+ * lock and iterating a segment or the index while writers change it is weakly consistent (no
+ * {@link ConcurrentModificationException}). Segments are created atomically the first time an instance of the class
+ * is added; keeping the instances and the stats of a class consistent is up to the writer, which can lock the segment.
+ * <p>
+ * Each segment has a {@link ModificationIndex} of its instances by last modification, created with the segment. Writers
+ * change instances with {@link #put} and {@link #remove}, which keep the segment, its modification index and the
+ * generations of the index up to date.
+ * <p>
+ * Jobs pin an immutable generation of the whole index with {@link #pin()} (see {@link CacheSnapshot}) to work on a
+ * stable copy of the cache while it keeps changing. The first pin builds the current generation from the segments and
+ * the index keeps it from then on: every change publishes a new one that shares everything but the changed path, so a
+ * pin only takes the current generation and its cost, like the cost of each change, does not depend on the size of the
+ * cache. The generation shares the instances with the segments (the views, with columnar storage); what it adds is the
+ * structure of its persistent maps. Building it takes the generation lock exclusively for a moment; writers share that
+ * lock, so no change falls between the copy of the segments and its publication.
+ * <p>
+ * The modification index is the live one, so to find the instances modified since a date in a pinned generation the
+ * index also records, per class, the ids changed after the oldest pinned generation with the number of the generation
+ * that includes their last change. {@link #modifiedSince(CacheSnapshot, String, String, String, long)} takes the ids of
+ * the modification index and the ids changed after the pinned generation and reads both in the generation, which is
+ * {@code O(log n + k)} plus the changes made since it was pinned. The record is trimmed when generations are pinned and
+ * released.
+ */
+public class TripleObjectIndex {
+
+    private final Map<ClassKey, Map<String, TripleObject>> segments = new ConcurrentHashMap<>();
+    private final Map<ClassKey, ModificationIndex> modifications = new ConcurrentHashMap<>();
+    // Numero de cambios. La generacion actual es null hasta que se fija la primera
+    private final AtomicLong changes = new AtomicLong();
+    private final AtomicReference<CacheSnapshot.Generation> generation = new AtomicReference<>();
+    private final ReadWriteLock generationLock = new ReentrantReadWriteLock();
+    private final Set<CacheSnapshot.Generation> pinned = new HashSet<>();
+    // Por clase, id --> generacion que incluye su ultimo cambio (Long.MAX_VALUE mientras se cambia)
+    private final Map<ClassKey, Map<String, Long>> changed = new ConcurrentHashMap<>();
+    // Por clase, generacion en la que se sustituyo entera, y generacion en la que se vacio el indice
+    private final Map<ClassKey, Long> replaced = new ConcurrentHashMap<>();
+    private volatile long cleared = -1;
+    private final boolean columnar;
+
+    public TripleObjectIndex() {
+        this(false);
+    }
+
+    /*
+     * Indice vacio. Con columnar, las instancias de cada clase se guardan en un ClassColumnStore
+     */
+    public TripleObjectIndex(boolean columnar) {
+        this.columnar = columnar;
+    }
+
+    public static TripleObjectIndex of(Map<String, Map<String, Map<String, Map<String, TripleObject>>>> triplesMap) {
+        return of(triplesMap, false);
+    }
+
+    /*
+     * Indice con las instancias del mapa anidado (nodo -> triple store -> clase -> id). Se descartan las instancias sin id
+     */
+    public static TripleObjectIndex of(Map<String, Map<String, Map<String, Map<String, TripleObject>>>> triplesMap, boolean columnar) {
+        TripleObjectIndex index = new TripleObjectIndex(columnar);
+        if (triplesMap == null)
+            return index;
+        for (Map.Entry<String, Map<String, Map<String, Map<String, TripleObject>>>> node : triplesMap.entrySet()) {
+            if (node.getValue() == null)
+                continue;
+            for (Map.Entry<String, Map<String, Map<String, TripleObject>>> tripleStore : node.getValue().entrySet()) {
+                if (tripleStore.getValue() == null)
+                    continue;
+                for (Map.Entry<String, Map<String, TripleObject>> className : tripleStore.getValue().entrySet()) {
+                    if (className.getValue() != null)
+                        index.putSegment(ClassKey.of(node.getKey(), tripleStore.getKey(), className.getKey()), className.getValue());
+                }
+            }
+        }
+        return index;
+    }
+
+    public Map<String, TripleObject> getSegment(String node, String tripleStore, String className) {
+        return segments.get(ClassKey.lookup(node, tripleStore, className));
+    }
+
+    public Map<String, TripleObject> getSegment(ClassKey key) {
+        return segments.get(key);
+    }
+
+    /*
+     * Segmento de la clase, que se crea vacio si no existe
+     */
+    public Map<String, TripleObject> getOrCreateSegment(String node, String tripleStore, String className) {
+        Map<String, TripleObject> segment = segments.get(ClassKey.lookup(node, tripleStore, className));
+        if (segment != null)
+            return segment;
+        // El indice por fecha se publica antes que el segmento, asi existe siempre que exista el segmento
+        Lock lock = generationLock.readLock();
+        lock.lock();
+        try {
+            return segments.computeIfAbsent(ClassKey.of(node, tripleStore, className), key -> {
+                Map<String, TripleObject> created = newSegment(key);
+                modifications.put(key, new ModificationIndex(created));
+                publish(g -> g.withClass(key, PersistentHashMap.empty()));
+                return created;
+            });
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /*
+     * Sustituye el segmento de la clase por uno nuevo con las instancias dadas, y su indice por fecha
+     */
+    public void putSegment(ClassKey key, Map<String, TripleObject> instances) {
+        Map<String, TripleObject> segment = newSegment(key);
+        for (Map.Entry<String, TripleObject> instance : instances.entrySet()) {
+            if (instance.getKey() != null && instance.getValue() != null)
+                segment.put(instance.getKey(), instance.getValue());
+        }
+        ClassKey interned = ClassKey.of(key.getNode(), key.getTripleStore(), key.getClassName());
+        ModificationIndex modificationIndex = ModificationIndex.of(segment);
+        Lock lock = generationLock.readLock();
+        lock.lock();
+        try {
+            modifications.put(interned, modificationIndex);
+            // Solo se copia la clase a la generacion si ya existe
+            if (generation.get() != null) {
+                PersistentHashMap<String, TripleObject> published = PersistentHashMap.of(segment);
+                replaced.put(interned, publish(g -> g.withClass(interned, published)));
+            } else {
+                publish(null);
+            }
+            segments.put(interned, segment);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /*
+     * Añade o sustituye la instancia en su segmento, en el indice por fecha y en una nueva generacion. Devuelve la
+     * instancia que habia. Los escritores de una misma clase deben serializarse (con el cerrojo del segmento)
+     */
+    public TripleObject put(String node, String tripleStore, TripleObject to) {
+        Map<String, TripleObject> segment = getOrCreateSegment(node, tripleStore, to.getClassName());
+        ClassKey key = ClassKey.of(node, tripleStore, to.getClassName());
+        Lock lock = generationLock.readLock();
+        lock.lock();
+        try {
+            // Con generaciones, el cambio se anota antes de hacerlo, para que quien lea el indice por fecha lo vea
+            Map<String, Long> classChanges = changesOf(key);
+            if (classChanges != null)
+                classChanges.put(to.getId(), Long.MAX_VALUE);
+            TripleObject previous = segment.put(to.getId(), to);
+            // El indice por fecha solo guarda el id. La generacion, si la hay, guarda la vista de la nueva fila y no la
+            // entidad recibida, que el llamador puede seguir cambiando
+            modifications.get(key).put(to);
+            long number = publish(g -> g.with(key, to.getId(), (segment instanceof ClassColumnStore) ? segment.get(to.getId()) : to));
+            if (classChanges != null)
+                classChanges.put(to.getId(), number);
+            return previous;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /*
+     * Quita la instancia de su segmento, del indice por fecha y de una nueva generacion. Devuelve la instancia que habia
+     */
+    public TripleObject remove(String node, String tripleStore, String className, String id) {
+        Map<String, TripleObject> segment = getSegment(node, tripleStore, className);
+        if (segment == null || id == null)
+            return null;
+        Lock lock = generationLock.readLock();
+        lock.lock();
+        try {
+            ClassKey key = ClassKey.of(node, tripleStore, className);
+            Map<String, Long> classChanges = changesOf(key);
+            Long before = (classChanges != null) ? classChanges.put(id, Long.MAX_VALUE) : null;
+            TripleObject removed = segment.remove(id);
+            if (removed != null) {
+                modifications.get(key).remove(id);
+                long number = publish(g -> g.with(key, id, null));
+                if (classChanges != null)
+                    classChanges.put(id, number);
+            } else if (classChanges != null) { // No habia nada que quitar
+                if (before != null)
+                    classChanges.put(id, before);
+                else
+                    classChanges.remove(id, Long.MAX_VALUE);
+            }
+            return removed;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /*
+     * Instancias de la clase modificadas en la fecha dada o despues, tal como estan en la generacion fijada, o null si la
+     * clase no estaba en ella. Se leen en la generacion los ids del indice por fecha actual y los cambiados despues de
+     * fijarla, que son los que el indice puede tener con otra fecha o no tener. Si la clase se sustituyo entera despues,
+     * o la generacion es de otro indice, se recorre la clase en la generacion
+     */
+    public Map<String, TripleObject> modifiedSince(CacheSnapshot snapshot, String node, String tripleStore, String className, long since) {
+        Map<String, TripleObject> instances = snapshot.getTripleObjects(node, tripleStore, className);
+        if (instances == null)
+            return null;
+        ClassKey key = ClassKey.lookup(node, tripleStore, className);
+        ModificationIndex modificationIndex = modifications.get(key);
+        long number = snapshot.getGeneration();
+        Long replacedAt = replaced.get(key);
+        Map<String, TripleObject> modified = new HashMap<>();
+        if (!snapshot.isOf(this) || modificationIndex == null || number < cleared || (replacedAt != null && number < replacedAt)) {
+            for (TripleObject to : instances.values()) {
+                if (to.getLastModification() >= since)
+                    modified.put(to.getId(), to);
+            }
+            return modified;
+        }
+        // Los cambios se leen despues del indice por fecha: todo cambio que ya este en el indice esta anotado
+        List<String> ids = modificationIndex.modifiedIdsSince(since);
+        Map<String, Long> classChanges = changed.getOrDefault(key, Collections.emptyMap());
+        for (String id : ids) {
+            addIfModifiedSince(modified, instances.get(id), since);
+        }
+        for (Map.Entry<String, Long> change : classChanges.entrySet()) {
+            if (change.getValue() > number)
+                addIfModifiedSince(modified, instances.get(change.getKey()), since);
+        }
+        return modified;
+    }
+
+    private static void addIfModifiedSince(Map<String, TripleObject> modified, TripleObject to, long since) {
+        if (to != null && to.getLastModification() >= since)
+            modified.put(to.getId(), to);
+    }
+
+    /*
+     * Indice por fecha de modificacion de la clase, o null si la clase no esta
+     */
+    public ModificationIndex getModifications(String node, String tripleStore, String className) {
+        return modifications.get(ClassKey.lookup(node, tripleStore, className));
+    }
+
+    /*
+     * Vista de solo lectura, sin copias, de las instancias del nodo, triple store y clase (null es cualquiera)
+     */
+    public CacheView view(String node, String tripleStore, String className) {
+        return new CacheView(this, node, tripleStore, className);
+    }
+
+    public TripleObject get(String node, String tripleStore, String className, String id) {
+        Map<String, TripleObject> segment = getSegment(node, tripleStore, className);
+        return (segment == null || id == null) ? null : segment.get(id);
+    }
+
+    /*
+     * Segmentos del indice. La iteracion no falla si otros hilos añaden clases o instancias a la vez
+     */
+    public Set<Map.Entry<ClassKey, Map<String, TripleObject>>> segments() {
+        return Collections.unmodifiableMap(segments).entrySet();
+    }
+
+    public Set<String> getNodes() {
+        Set<String> nodes = new HashSet<>();
+        for (ClassKey key : segments.keySet()) {
+            nodes.add(key.getNode());
+        }
+        return nodes;
+    }
+
+    public Set<String> getTripleStores(String node) {
+        Set<String> tripleStores = new HashSet<>();
+        for (ClassKey key : segments.keySet()) {
+            if (Objects.equals(key.getNode(), node))
+                tripleStores.add(key.getTripleStore());
+        }
+        return tripleStores;
+    }
+
+    public boolean isEmpty() {
+        return segments.isEmpty();
+    }
+
+    /*
+     * Numero total de instancias
+     */
+    public long size() {
+        long size = 0;
+        for (Map<String, TripleObject> segment : segments.values()) {
+            size += segment.size();
+        }
+        return size;
+    }
+
+    public void clear() {
+        Lock lock = generationLock.readLock();
+        lock.lock();
+        try {
+            segments.clear();
+            modifications.clear();
+            long number = publish(CacheSnapshot.Generation::cleared);
+            if (generation.get() != null)
+                cleared = number;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /*
+     * Fija la generacion actual para un trabajo, que debe cerrarla al terminar. La primera vez se construye desde los
+     * segmentos con los escritores detenidos; despues se mantiene con cada cambio
+     */
+    public CacheSnapshot pin() {
+        synchronized (pinned) {
+            CacheSnapshot.Generation current = generation.get();
+            if (current == null) {
+                Lock lock = generationLock.writeLock();
+                lock.lock();
+                try {
+                    current = buildGeneration();
+                    generation.set(current);
+                } finally {
+                    lock.unlock();
+                }
+            }
+            current.pins.incrementAndGet();
+            pinned.add(current);
+            trimChanges();
+            return new CacheSnapshot(this, current);
+        }
+    }
+
+    /*
+     * Libera una generacion fijada. La generacion actual se mantiene aunque no quede ninguna fijada
+     */
+    void release(CacheSnapshot.Generation released) {
+        synchronized (pinned) {
+            if (released.pins.decrementAndGet() == 0)
+                pinned.remove(released);
+            trimChanges();
+        }
+    }
+
+    /*
+     * Numero de la generacion actual, que crece con cada cambio aunque no haya generaciones fijadas
+     */
+    public long getGeneration() {
+        return changes.get();
+    }
+
+    /*
+     * Si la generacion actual existe, porque ya se ha fijado alguna
+     */
+    boolean hasGeneration() {
+        return generation.get() != null;
+    }
+
+    /*
+     * Generaciones fijadas por algun trabajo, de la mas antigua a la mas nueva
+     */
+    public List<Long> getPinnedGenerations() {
+        List<Long> numbers = new ArrayList<>();
+        synchronized (pinned) {
+            for (CacheSnapshot.Generation pinnedGeneration : pinned) {
+                numbers.add(pinnedGeneration.number);
+            }
+        }
+        Collections.sort(numbers);
+        return numbers;
+    }
+
+    /*
+     * Mapa anidado nodo -> triple store -> clase -> id, para quien lo necesita en ese formato (Redis, estadisticas...).
+     * Los niveles superiores son una copia, los mapas de instancias son los propios segmentos
+     */
+    public Map<String, Map<String, Map<String, Map<String, TripleObject>>>> toNestedMap() {
+        Map<String, Map<String, Map<String, Map<String, TripleObject>>>> nested = new HashMap<>();
+        for (Map.Entry<ClassKey, Map<String, TripleObject>> segment : segments.entrySet()) {
+            ClassKey key = segment.getKey();
+            nested.computeIfAbsent(key.getNode(), k -> new HashMap<>())
+                    .computeIfAbsent(key.getTripleStore(), k -> new HashMap<>())
+                    .put(key.getClassName(), segment.getValue());
+        }
+        return nested;
+    }
+
+    /*
+     * Cuenta el cambio y lo aplica a la generacion actual, si la hay. Devuelve el numero de la generacion que incluye el
+     * cambio. Se llama con el cerrojo de generaciones compartido
+     */
+    private long publish(UnaryOperator<CacheSnapshot.Generation> change) {
+        long number = changes.incrementAndGet();
+        if (change != null) {
+            CacheSnapshot.Generation published = generation.updateAndGet(g -> (g == null) ? null : change.apply(g));
+            if (published != null)
+                return published.number;
+        }
+        return number;
+    }
+
+    /*
+     * Cambios anotados de la clase, o null si aun no hay generaciones y no hace falta anotarlos. Se llama con el cerrojo
+     * de generaciones compartido, asi la generacion no aparece a mitad del cambio
+     */
+    private Map<String, Long> changesOf(ClassKey key) {
+        if (generation.get() == null)
+            return null;
+        return changed.computeIfAbsent(key, k -> new ConcurrentHashMap<>());
+    }
+
+    /*
+     * Olvida los cambios que incluyen todas las generaciones fijadas y las que se fijen despues. Se llama con el
+     * bloqueo de las generaciones fijadas
+     */
+    private void trimChanges() {
+        CacheSnapshot.Generation current = generation.get();
+        if (current == null)
+            return;
+        long oldest = current.number;
+        for (CacheSnapshot.Generation pinnedGeneration : pinned) {
+            oldest = Math.min(oldest, pinnedGeneration.number);
+        }
+        long trimmed = oldest;
+        for (Map<String, Long> classChanges : changed.values()) {
+            classChanges.values().removeIf(number -> number <= trimmed);
+        }
+    }
+
+    /*
+     * Generacion con las instancias de todos los segmentos. Se llama con el cerrojo de generaciones exclusivo
+     */
+    private CacheSnapshot.Generation buildGeneration() {
+        PersistentHashMap.Builder<ClassKey, PersistentHashMap<String, TripleObject>> classes = new PersistentHashMap.Builder<>();
+        for (Map.Entry<ClassKey, Map<String, TripleObject>> segment : segments.entrySet()) {
+            classes.put(segment.getKey(), PersistentHashMap.of(segment.getValue()));
+        }
+        return new CacheSnapshot.Generation(changes.get(), classes.build());
+    }
+
+    public boolean isColumnar() {
+        return columnar;
+    }
+
+    private Map<String, TripleObject> newSegment(ClassKey key) {
+        if (columnar)
+            return new ClassColumnStore(key.getNode(), key.getTripleStore(), key.getClassName());
+        return new ConcurrentHashMap<>();
+    }
+}
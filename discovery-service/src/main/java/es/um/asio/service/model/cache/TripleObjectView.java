@@ -0,0 +1,130 @@
+package es.um.asio.service.model.cache;
+
+import com.google.gson.Gson;
+import com.google.gson.TypeAdapter;
+import com.google.gson.TypeAdapterFactory;
+import com.google.gson.annotations.JsonAdapter;
+import com.google.gson.internal.LinkedTreeMap;
+import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+import es.um.asio.service.model.TripleObject;
+import es.um.asio.service.model.TripleStore;
+import es.um.asio.service.model.TypedValue;
+import es.um.asio.service.model.rdf.TripleObjectLink;
+
+import java.io.IOException;
+import java.util.*;
+
+/**
+ * Flyweight {@link TripleObject} over a row of a {@link ClassColumnStore}.
+ * <p>
+ * Id, class, dates and triple store are set when the view is created (they are shared with the store); the attributes
+ * map and the flattened attributes are decoded from the row the first time they are asked for and kept by the view, so
+ * the comparators can use it as any other triple object. The view is detached from the store: changing it does not
+ * change the cache, which has to be updated with a new put. Gson writes it as a plain triple object.
+ */
+@JsonAdapter(TripleObjectView.GsonAdapterFactory.class)
+public class TripleObjectView extends TripleObject {
+
+    private final transient ClassColumnStore.Columns columns;
+    private final transient int row;
+
+    TripleObjectView(String id, String localURI, String className, long lastModification, TripleStore tripleStore,
+                     Set<TripleObjectLink> tripleObjectLink, ClassColumnStore.Columns columns, int row) {
+        super();
+        setId(id);
+        setLocalURI(localURI);
+        setClassName(className);
+        setLastModification(lastModification);
+        setTripleStore(tripleStore);
+        setTripleObjectLink(tripleObjectLink);
+        this.columns = columns;
+        this.row = row;
+    }
+
+    @Override
+    public LinkedTreeMap<String, Object> getAttributes() {
+        LinkedTreeMap<String, Object> attributes = super.getAttributes();
+        if (attributes == null) {
+            attributes = columns.decodeAttributes(row);
+            setAttributes(attributes);
+        }
+        return attributes;
+    }
+
+    @Override
+    public Map<String, List<Object>> getFlattenAttributes() {
+        if (super.getFlattenAttributes() == null)
+            buildFlattenAttributes();
+        return super.getFlattenAttributes();
+    }
+
+    @Override
+    public Map<String, List<TypedValue>> getTypedFlattenAttributes() {
+        if (super.getTypedFlattenAttributes() == null)
+            buildFlattenAttributes();
+        return super.getTypedFlattenAttributes();
+    }
+
+    /*
+     * Aplana directamente desde la fila, salvo que ya se hayan decodificado los atributos (que pueden haber cambiado)
+     */
+    @Override
+    public void buildFlattenAttributes() {
+        if (super.getAttributes() != null) {
+            super.buildFlattenAttributes();
+            return;
+        }
+        Map<String, List<Object>> flatten = new HashMap<>();
+        Map<String, List<TypedValue>> typed = new HashMap<>();
+        columns.flatten(row, flatten, typed);
+        setFlattenAttributes(flatten);
+        setTypedFlattenAttributes(typed);
+    }
+
+    /*
+     * Vista nueva de la misma fila, sin los atributos que esta haya decodificado
+     */
+    TripleObjectView detached() {
+        return new TripleObjectView(getId(), getLocalURI(), getClassName(), getLastModification(), getTripleStore(), getTripleObjectLink(), columns, row);
+    }
+
+    /*
+     * Copia independiente del almacen, con los atributos decodificados
+     */
+    public TripleObject toTripleObject() {
+        TripleObject to = new TripleObject();
+        to.setId(getId());
+        to.setLocalURI(getLocalURI());
+        to.setClassName(getClassName());
+        to.setLastModification(getLastModification());
+        to.setTripleStore(getTripleStore());
+        to.setAttributes(getAttributes());
+        to.setTripleObjectLink(getTripleObjectLink());
+        return to;
+    }
+
+    /**
+     * Writes views with the adapter of {@link TripleObject}, since the attributes of a view may not be decoded yet.
+     */
+    static final class GsonAdapterFactory implements TypeAdapterFactory {
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public <T> TypeAdapter<T> create(Gson gson, TypeToken<T> type) {
+            TypeAdapter<TripleObject> delegate = gson.getAdapter(TripleObject.class);
+            return (TypeAdapter<T>) new TypeAdapter<TripleObject>() {
+                @Override
+                public void write(JsonWriter out, TripleObject value) throws IOException {
+                    delegate.write(out, (value instanceof TripleObjectView) ? ((TripleObjectView) value).toTripleObject() : value);
+                }
+
+                @Override
+                public TripleObject read(JsonReader in) throws IOException {
+                    return delegate.read(in);
+                }
+            };
+        }
+    }
+}
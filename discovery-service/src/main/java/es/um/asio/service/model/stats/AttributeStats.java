@@ -1,12 +1,15 @@
 package es.um.asio.service.model.stats;
 
+import es.um.asio.service.util.HyperLogLog;
 import es.um.asio.service.util.Utils;
 import lombok.AllArgsConstructor;
 import lombok.Getter;
 import lombok.NoArgsConstructor;
 import lombok.Setter;
 
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
 
@@ -16,12 +19,35 @@ import java.util.Set;
 @NoArgsConstructor
 public class AttributeStats extends ObjectStat{
 
+    private static volatile Settings settings = new Settings(Cardinality.EXACT, HyperLogLog.DEFAULT_PRECISION, true);
+
+    // Valores quitados sin saber si eran la ultima aparicion, sobre el contador, a partir de los que hay que reconstruir
+    // unas estadisticas exactas
+    private static final double UNCOUNTED_REMOVALS_RATIO = 0.01;
+
+    // Valores distintos (EXACT) o sketch que estima cuantos hay (HYPERLOGLOG): solo uno de los dos es distinto de null
     Set<Object> values;
+    HyperLogLog sketch;
+    // EXACT con repeticiones contadas: apariciones de mas de cada valor que se repite, para poder quitar valores sin
+    // perder los distintos. Ocupa una entrada por valor repetido ademas de la de values; sin contarlas no se crea
+    boolean repeatsCounted;
+    Map<Object, Integer> repeated;
+    // Valores quitados que el sketch, o values sin repeticiones contadas, no han podido olvidar
+    int removed;
+    // Apariciones del atributo, tambien con valores nulos o no validos que no cuentan en counter. Las estadisticas se
+    // mantienen mientras el atributo aparezca, igual que al construirlas de nuevo
+    int occurrences;
 
     public AttributeStats(String name) {
         setName(name);
         setCounter(0);
-        values = new HashSet<>();
+        Settings current = settings;
+        if (current.getCardinality() == Cardinality.HYPERLOGLOG) {
+            sketch = new HyperLogLog(current.getPrecision());
+        } else {
+            values = new HashSet<>();
+            repeatsCounted = current.isRepeatsCounted();
+        }
     }
 
     public AttributeStats(String name, Object value) {
@@ -30,15 +56,162 @@ public class AttributeStats extends ObjectStat{
     }
 
     public void addValue(Object value) {
+        occurrences++;
         if (value!=null && (!(value instanceof String) || Utils.isValidString(value.toString()))) {
             setCounter(getCounter() + 1);
-            getValues().add(value);
+            if (sketch != null)
+                sketch.add(value);
+            else if (!getValues().add(value) && repeatsCounted)
+                getRepeated().merge(value, 1, Integer::sum);
+        }
+    }
+
+    /*
+     * Quita una aparicion del valor. Con valores exactos y repeticiones contadas el valor deja de contar como distinto
+     * al quitar la ultima aparicion; con sketch o sin repeticiones contadas solo baja el contador. Devuelve false si el
+     * valor no se contaba
+     */
+    public boolean removeValue(Object value) {
+        if (occurrences > 0)
+            occurrences--;
+        if (value==null || getCounter() == 0 || (value instanceof String && !Utils.isValidString(value.toString())))
+            return false;
+        if (sketch != null) {
+            removed++;
+        } else if (!repeatsCounted) {
+            if (getValues() == null || !getValues().contains(value))
+                return false;
+            removed++;
+        } else {
+            Integer extra = getRepeated().get(value);
+            if (extra != null) {
+                if (extra > 1)
+                    getRepeated().put(value, extra - 1);
+                else
+                    getRepeated().remove(value);
+            } else if (getValues() == null || !getValues().remove(value)) {
+                return false;
+            }
+        }
+        setCounter(getCounter() - 1);
+        return true;
+    }
+
+    /*
+     * Sin ninguna aparicion del atributo. Las estadisticas guardadas antes de contar las apariciones solo tienen counter
+     */
+    public boolean isEmpty() {
+        return occurrences <= 0 && getCounter() <= 0;
+    }
+
+    /*
+     * true si se han quitado tantos valores que no se han podido olvidar que los distintos pueden haberse desviado mas
+     * que el error tipico del sketch, o que UNCOUNTED_REMOVALS_RATIO sin repeticiones contadas: hay que reconstruir las
+     * estadisticas a partir de los valores actuales
+     */
+    public boolean isStale() {
+        if (sketch != null)
+            return removed > getCounter() * sketch.getStandardError();
+        return removed > getCounter() * UNCOUNTED_REMOVALS_RATIO;
+    }
+
+    public Map<Object, Integer> getRepeated() {
+        if (repeated == null)
+            repeated = new HashMap<>();
+        return repeated;
+    }
+
+    /*
+     * Numero de valores distintos, exacto o estimado por el sketch. Nunca mayor que el numero de valores
+     */
+    public long getCardinality() {
+        if (sketch != null)
+            return Math.min(sketch.cardinality(), getCounter());
+        return (getValues() != null) ? getValues().size() : 0;
+    }
+
+    /*
+     * Añade los valores de otras estadisticas del mismo atributo, construidas en paralelo. Ambas deben ser del mismo
+     * tipo (exactas o con sketch de la misma precision)
+     */
+    public void merge(AttributeStats other) {
+        if ((sketch == null) != (other.getSketch() == null))
+            throw new IllegalArgumentException(String.format("Can not merge exact and estimated stats of attribute %s", getName()));
+        if (sketch == null && repeatsCounted != other.isRepeatsCounted())
+            throw new IllegalArgumentException(String.format("Can not merge stats of attribute %s with and without repeats counted", getName()));
+        setCounter(getCounter() + other.getCounter());
+        occurrences += other.getOccurrences();
+        removed += other.getRemoved();
+        if (sketch != null) {
+            sketch.merge(other.getSketch());
+        } else if (!repeatsCounted) {
+            getValues().addAll(other.getValues());
+        } else {
+            for (Object value : other.getValues()) {
+                int extra = other.getRepeated().getOrDefault(value, 0) + (getValues().add(value) ? 0 : 1);
+                if (extra > 0)
+                    getRepeated().merge(value, extra, Integer::sum);
+            }
         }
     }
 
     @Override
     public float getRelativeImportanceRatio() {
-        return Float.valueOf(getValues().size())/Float.valueOf(getCounter());
+        return Float.valueOf(getCardinality())/Float.valueOf(getCounter());
+    }
+
+    /*
+     * Tipo de AttributeStats que se crea a partir de ahora: exacto, contando las repeticiones, o con sketch de la
+     * precision indicada
+     */
+    public static void configure(Cardinality cardinality, int precision) {
+        configure(cardinality, precision, true);
+    }
+
+    /*
+     * Como configure(cardinality, precision), indicando si las exactas cuentan las repeticiones de cada valor. Sin
+     * contarlas ocupan solo el conjunto de valores distintos, pero al quitar un valor no se sabe si era el ultimo y la
+     * clase se reconstruye cuando se han quitado demasiados
+     */
+    public static void configure(Cardinality cardinality, int precision, boolean repeatsCounted) {
+        if (cardinality == Cardinality.HYPERLOGLOG && (precision < HyperLogLog.MIN_PRECISION || precision > HyperLogLog.MAX_PRECISION))
+            throw new IllegalArgumentException(String.format("Invalid HyperLogLog precision [precision: %d, min: %d, max: %d]", precision, HyperLogLog.MIN_PRECISION, HyperLogLog.MAX_PRECISION));
+        AttributeStats.settings = new Settings(cardinality, precision, repeatsCounted);
+    }
+
+    public static Settings getSettings() {
+        return settings;
+    }
+
+    public enum Cardinality {
+        EXACT, HYPERLOGLOG
+    }
+
+    /*
+     * Configuracion inmutable, reemplazada entera en configure
+     */
+    public static final class Settings {
+        private final Cardinality cardinality;
+        private final int precision;
+        private final boolean repeatsCounted;
+
+        Settings(Cardinality cardinality, int precision, boolean repeatsCounted) {
+            this.cardinality = (cardinality != null) ? cardinality : Cardinality.EXACT;
+            this.precision = precision;
+            this.repeatsCounted = repeatsCounted;
+        }
+
+        public Cardinality getCardinality() {
+            return cardinality;
+        }
+
+        public int getPrecision() {
+            return precision;
+        }
+
+        public boolean isRepeatsCounted() {
+            return repeatsCounted;
+        }
     }
 
 
@@ -15,9 +15,13 @@ public class EntityStats extends ObjectStat{
 
     Map<String,AttributeStats> attValues;
     Map<String,EntityStats> objValues;
+    // Apariciones como objeto anidado, tambien vacio. Se mantiene mientras aparezca, igual que al construirlas de nuevo
+    int occurrences;
 
     private final Logger logger = LoggerFactory.getLogger(EntityStats.class);
 
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
     public EntityStats(String name) {
         setName(name);
         setCounter(0);
@@ -55,9 +59,9 @@ public class EntityStats extends ObjectStat{
             entityStats = objValues.get(name);
         try {
             if (!(value instanceof List)) { // Si no es una lista
-                Map<String, Object> attrs = new ObjectMapper().convertValue(value, Map.class); // Obtengo los atributos
-                for (Map.Entry<String, Object> att : attrs.entrySet()) { // Por cada atributo
-                    entityStats.addValue(att.getKey(),att.getValue());
+                entityStats.occurrences++;
+                for (Map.Entry<?, ?> att : attributesOf(value).entrySet()) { // Por cada atributo
+                    entityStats.addValue(String.valueOf(att.getKey()),att.getValue());
                 }
                 objValues.put(entityStats.getName(),entityStats);
             } else { // Si es una lista
@@ -70,6 +74,105 @@ public class EntityStats extends ObjectStat{
         }
     }
 
+    /*
+     * Deshace addValue: quita el valor de las estadisticas del atributo o de la entidad anidada, eliminando las que ya
+     * no aparecen en ningun valor, como si se construyesen de nuevo
+     */
+    public void removeValue(String name,Object value) {
+        setCounter(getCounter()-1);
+        if (Utils.isPrimitive(value)) { // Si es primitivo
+            removeAttValue(name,value);
+        } else { // Si es un objeto
+            removeObjValue(name,value);
+        }
+    }
+
+    private void removeAttValue(String name,Object value) {
+        setCounter(getCounter()-1);
+        AttributeStats attributeStats = attValues.get(name);
+        if (attributeStats != null) {
+            attributeStats.removeValue(value);
+            if (attributeStats.isEmpty())
+                attValues.remove(name);
+        }
+    }
+
+    private void removeObjValue(String name,Object value) {
+        setCounter(getCounter()-1);
+        try {
+            if (!(value instanceof List)) { // Si no es una lista
+                EntityStats entityStats = objValues.get(name);
+                if (entityStats == null)
+                    return;
+                if (entityStats.occurrences > 0)
+                    entityStats.occurrences--;
+                for (Map.Entry<?, ?> att : attributesOf(value).entrySet()) { // Por cada atributo
+                    entityStats.removeValue(String.valueOf(att.getKey()),att.getValue());
+                }
+                // Las guardadas antes de contar las apariciones solo se quitan al quedarse vacias
+                if (entityStats.occurrences <= 0 && entityStats.isEmpty())
+                    objValues.remove(name);
+            } else { // Si es una lista
+                for (Object v : (List) value) {
+                    removeValue(name,v);
+                }
+            }
+        } catch (Exception e) {
+            logger.error(e.getMessage());
+        }
+    }
+
+    /*
+     * Atributos de un objeto anidado. Los de la cache son LinkedTreeMap de Gson y se recorren directamente; solo otros
+     * objetos se convierten con Jackson
+     */
+    private static Map<?, ?> attributesOf(Object value) {
+        if (value instanceof Map)
+            return (Map<?, ?>) value;
+        return OBJECT_MAPPER.convertValue(value, Map.class);
+    }
+
+    /*
+     * Añade las estadisticas de otra construccion parcial de la misma clase (p.e. de otro hilo). Las estadisticas de
+     * other pasan a formar parte de estas, por lo que no debe usarse despues
+     */
+    public void merge(EntityStats other) {
+        setCounter(getCounter() + other.getCounter());
+        occurrences += other.getOccurrences();
+        for (Map.Entry<String, AttributeStats> att : other.getAttValues().entrySet()) {
+            AttributeStats attributeStats = attValues.putIfAbsent(att.getKey(), att.getValue());
+            if (attributeStats != null)
+                attributeStats.merge(att.getValue());
+        }
+        for (Map.Entry<String, EntityStats> obj : other.getObjValues().entrySet()) {
+            EntityStats entityStats = objValues.putIfAbsent(obj.getKey(), obj.getValue());
+            if (entityStats != null)
+                entityStats.merge(obj.getValue());
+        }
+    }
+
+    /*
+     * Sin valores en ningun atributo ni entidad anidada
+     */
+    public boolean isEmpty() {
+        return attValues.isEmpty() && objValues.isEmpty();
+    }
+
+    /*
+     * true si alguna estadistica con sketch se ha desviado por los valores quitados y hay que reconstruir la clase
+     */
+    public boolean isStale() {
+        for (AttributeStats attributeStats : attValues.values()) {
+            if (attributeStats.isStale())
+                return true;
+        }
+        for (EntityStats entityStats : objValues.values()) {
+            if (entityStats.isStale())
+                return true;
+        }
+        return false;
+    }
+
     @Override
     public float getRelativeImportanceRatio() {
         float maxAtt = getAttRelativeImportanceRatio();
@@ -1,12 +1,25 @@
 package es.um.asio.service.model.stats;
 
 import es.um.asio.service.model.TripleObject;
+import lombok.AccessLevel;
 import lombok.AllArgsConstructor;
 import lombok.Getter;
 import lombok.Setter;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 @Getter
 @Setter
@@ -14,14 +27,73 @@ import java.util.Map;
 public class StatsHandler {
 
 
+    private static final LongAdder RELEVANT_ATTRIBUTES_HITS = new LongAdder();
+    private static final LongAdder RELEVANT_ATTRIBUTES_MISSES = new LongAdder();
+
     // node -> tiple -> class -> EntityStat
     private Map<String ,Map<String, Map<String,EntityStats>>> stats;
 
+    // Las versiones salen de un contador comun a todas las instancias: una version identifica unas estadisticas aunque
+    // el StatsHandler se sustituya (por ejemplo, al leerlo de Redis), y se puede usar como clave fuera de el
+    private static final AtomicLong VERSION_COUNTER = new AtomicLong();
+
+    // Version de cada clase (node, triple, class), que cambia con cada modificacion de sus estadisticas. Las clases que
+    // no se han modificado desde el ultimo cambio completo (setStats, cleanStats) tienen la version base
+    @Getter(AccessLevel.NONE)
+    private final Map<List<String>, Long> versions = new ConcurrentHashMap<>();
+    @Getter(AccessLevel.NONE)
+    private final AtomicLong baseVersion = new AtomicLong(VERSION_COUNTER.incrementAndGet());
+    // Atributos relevantes de cada clase, validos mientras no cambia su version
+    @Getter(AccessLevel.NONE)
+    private final Map<List<String>, RelevantAttributes> relevantAttributes = new ConcurrentHashMap<>();
+
     public StatsHandler() {
         stats = new HashMap<>();
     }
 
-    public void addAttributes(String node, String triple, TripleObject to) {
+    /*
+     * Construye en paralelo las estadisticas de toda la cache (node -> triple -> class -> id -> TripleObject). Cada
+     * clase se construye por separado y, dentro de ella, cada hilo acumula sus entidades en su propio EntityStats, que
+     * al final se fusionan: no se comparte nada mutable entre hilos
+     */
+    public static StatsHandler build(Map<String, Map<String, Map<String, Map<String, TripleObject>>>> triplesMap) {
+        List<List<String>> partitions = new ArrayList<>();
+        List<Collection<TripleObject>> instances = new ArrayList<>();
+        for (Map.Entry<String, Map<String, Map<String, Map<String, TripleObject>>>> nodeEntry : triplesMap.entrySet()) { // Node
+            for (Map.Entry<String, Map<String, Map<String, TripleObject>>> tripleEntry : nodeEntry.getValue().entrySet()) { // Triple
+                for (Map.Entry<String, Map<String, TripleObject>> classEntry : tripleEntry.getValue().entrySet()) { // Class
+                    if (classEntry.getValue() != null && !classEntry.getValue().isEmpty()) {
+                        partitions.add(Arrays.asList(nodeEntry.getKey(), tripleEntry.getKey(), classEntry.getKey()));
+                        instances.add(classEntry.getValue().values());
+                    }
+                }
+            }
+        }
+        List<EntityStats> built = IntStream.range(0, partitions.size()).parallel()
+                .mapToObj(i -> buildClass(partitions.get(i).get(2), instances.get(i)))
+                .collect(Collectors.toList());
+        StatsHandler statsHandler = new StatsHandler();
+        for (int i = 0; i < partitions.size(); i++) {
+            List<String> partition = partitions.get(i);
+            statsHandler.getStats()
+                    .computeIfAbsent(partition.get(0), k -> new HashMap<>())
+                    .computeIfAbsent(partition.get(1), k -> new HashMap<>())
+                    .put(partition.get(2), built.get(i));
+        }
+        return statsHandler;
+    }
+
+    /*
+     * Estadisticas de una clase con sus entidades, acumuladas en paralelo por hilo y fusionadas al final
+     */
+    public static EntityStats buildClass(String className, Collection<TripleObject> tos) {
+        return tos.parallelStream().collect(
+                () -> new EntityStats(className),
+                StatsHandler::addValues,
+                EntityStats::merge);
+    }
+
+    public synchronized void addAttributes(String node, String triple, TripleObject to) {
         if (to != null && to.getAttributes() != null) {
             if (!stats.containsKey(node))
                 stats.put(node, new HashMap<>());
@@ -30,14 +102,102 @@ public class StatsHandler {
             if (!stats.get(node).get(triple).containsKey(to.getClassName())) {
                 stats.get(node).get(triple).put(to.getClassName(), new EntityStats(to.getClassName()));
             }
-            EntityStats es = stats.get(node).get(triple).get(to.getClassName());
+            addValues(stats.get(node).get(triple).get(to.getClassName()), to);
+            touch(node, triple, to.getClassName());
+        }
+    }
+
+    private static void addValues(EntityStats es, TripleObject to) {
+        if (to != null && to.getAttributes() != null) {
             for (Map.Entry<String, Object> attEntity : to.getAttributes().entrySet()) { // Para todos los attributos
                 es.addValue(attEntity.getKey(),attEntity.getValue());
             }
+        }
+    }
 
+
+    /*
+     * Quita de las estadisticas de su clase los atributos de una entidad que se añadio con addAttributes. Si la clase se
+     * queda sin valores se elimina
+     */
+    public synchronized void removeAttributes(String node, String triple, TripleObject to) {
+        if (to != null && to.getAttributes() != null) {
+            EntityStats es = getAttributesMap(node, triple, to.getClassName());
+            if (es == null)
+                return;
+            for (Map.Entry<String, Object> attEntity : to.getAttributes().entrySet()) { // Para todos los attributos
+                es.removeValue(attEntity.getKey(),attEntity.getValue());
+            }
+            touch(node, triple, to.getClassName());
+            if (es.isEmpty()) {
+                stats.get(node).get(triple).remove(to.getClassName());
+                if (stats.get(node).get(triple).isEmpty())
+                    stats.get(node).remove(triple);
+                if (stats.get(node).isEmpty())
+                    stats.remove(node);
+            }
         }
     }
 
+    /*
+     * Sustituye los atributos de la version anterior de una entidad por los de la nueva
+     */
+    public synchronized void updateAttributes(String node, String triple, TripleObject oldTo, TripleObject newTo) {
+        removeAttributes(node, triple, oldTo);
+        addAttributes(node, triple, newTo);
+    }
+
+    /*
+     * true si las estadisticas de la clase se han desviado por las entidades quitadas (solo con HyperLogLog)
+     */
+    public synchronized boolean isStale(String node, String triple, String className) {
+        EntityStats es = getAttributesMap(node, triple, className);
+        return es != null && es.isStale();
+    }
+
+    /*
+     * Reconstruye desde cero las estadisticas de una clase a partir de sus entidades actuales
+     */
+    public void rebuildClass(String node, String triple, String className, Collection<TripleObject> tos) {
+        setClassStats(node, triple, className, buildClass(className, tos));
+    }
+
+    /*
+     * Sustituye las estadisticas de una clase. Si no tienen valores, la clase se quita
+     */
+    public synchronized void setClassStats(String node, String triple, String className, EntityStats es) {
+        if (es != null && !es.isEmpty()) {
+            stats.computeIfAbsent(node, k -> new HashMap<>())
+                    .computeIfAbsent(triple, k -> new HashMap<>())
+                    .put(className, es);
+        } else if (stats.containsKey(node) && stats.get(node).containsKey(triple)) {
+            stats.get(node).get(triple).remove(className);
+            if (stats.get(node).get(triple).isEmpty())
+                stats.get(node).remove(triple);
+            if (stats.get(node).isEmpty())
+                stats.remove(node);
+        }
+        touch(node, triple, className);
+    }
+
+    /*
+     * Quita las estadisticas de las clases (nodo, triple store, clase) que no cumplen la condicion
+     */
+    public synchronized void retainClasses(Predicate<List<String>> retained) {
+        List<List<String>> removed = new ArrayList<>();
+        for (Map.Entry<String, Map<String, Map<String, EntityStats>>> nodeEntry : stats.entrySet()) {
+            for (Map.Entry<String, Map<String, EntityStats>> tripleEntry : nodeEntry.getValue().entrySet()) {
+                for (String className : tripleEntry.getValue().keySet()) {
+                    List<String> key = Arrays.asList(nodeEntry.getKey(), tripleEntry.getKey(), className);
+                    if (!retained.test(key))
+                        removed.add(key);
+                }
+            }
+        }
+        for (List<String> key : removed) {
+            setClassStats(key.get(0), key.get(1), key.get(2), null);
+        }
+    }
 
     public EntityStats getAttributesMap(String node, String triple, String className) {
         if (stats.containsKey(node) && stats.get(node).containsKey(triple) && stats.get(node).get(triple).containsKey(className))
@@ -51,24 +211,114 @@ public class StatsHandler {
         return stats.isEmpty();
     }
 
-    public void cleanStats() {
+    public synchronized void cleanStats() {
         stats = new HashMap<>();
+        touchAll();
+    }
+
+    public synchronized void setStats(Map<String ,Map<String, Map<String,EntityStats>>> stats) {
+        this.stats = stats;
+        touchAll();
     }
 
-    public Map<String,Object> buildStats(String node, String triple, String className) {
+    public synchronized Map<String,Object> buildStats(String node, String triple, String className) {
         if (this.stats.containsKey(node) && this.stats.get(node).containsKey(triple) && this.stats.get(node).get(triple).containsKey(className)) {
             return this.stats.get(node).get(triple).get(className).buildStats();
         } else
             return null;
     }
 
+    /*
+     * Pesos de los atributos de la clase, ordenados de mas a menos relevante (a igual peso, por nombre). El mapa es
+     * compartido y no se puede modificar
+     */
     public Map<String,Float> generateMoreRelevantAttributesMap(String node, String triple, String className){
-        if (this.stats.containsKey(node) && this.stats.get(node).containsKey(triple) && this.stats.get(node).get(triple).containsKey(className)) {
-            return this.stats.get(node).get(triple).get(className).generateMoreRelevantAttributesMap(null);
-        } else
+        RelevantAttributes relevant = getRelevantAttributes(node, triple, className);
+        return (relevant != null) ? relevant.getWeights() : null;
+    }
+
+    /*
+     * Atributos relevantes de la clase. Se calculan una vez por version de la clase: mientras sus estadisticas no
+     * cambian, la lectura no bloquea
+     */
+    public RelevantAttributes getRelevantAttributes(String node, String triple, String className) {
+        List<String> key = Arrays.asList(node, triple, className);
+        RelevantAttributes relevant = relevantAttributes.get(key);
+        if (relevant != null && relevant.getVersion() == getVersion(node, triple, className)) {
+            RELEVANT_ATTRIBUTES_HITS.increment();
+            return relevant;
+        }
+        RELEVANT_ATTRIBUTES_MISSES.increment();
+        relevant = computeRelevantAttributes(node, triple, className);
+        if (relevant != null)
+            relevantAttributes.put(key, relevant);
+        return relevant;
+    }
+
+    public long getVersion(String node, String triple, String className) {
+        Long version = versions.get(Arrays.asList(node, triple, className));
+        return (version != null) ? version : baseVersion.get();
+    }
+
+    public static long getRelevantAttributesHits() {
+        return RELEVANT_ATTRIBUTES_HITS.sum();
+    }
+
+    public static long getRelevantAttributesMisses() {
+        return RELEVANT_ATTRIBUTES_MISSES.sum();
+    }
+
+    /*
+     * Con el bloqueo de las modificaciones, para que la version corresponda a las estadisticas con las que se calcula
+     */
+    private synchronized RelevantAttributes computeRelevantAttributes(String node, String triple, String className) {
+        EntityStats es = getAttributesMap(node, triple, className);
+        if (es == null)
             return null;
+        return new RelevantAttributes(node, triple, getVersion(node, triple, className), es.generateMoreRelevantAttributesMap(null));
+    }
+
+    private void touch(String node, String triple, String className) {
+        versions.put(Arrays.asList(node, triple, className), VERSION_COUNTER.incrementAndGet());
     }
 
+    private void touchAll() {
+        baseVersion.set(VERSION_COUNTER.incrementAndGet());
+        versions.clear();
+        relevantAttributes.clear();
+    }
+
+    /*
+     * Pesos de los atributos de una clase en orden de relevancia, para una version de sus estadisticas. La version solo
+     * identifica las estadisticas junto con el nodo y el triple store: las clases sin cambios comparten la version base
+     */
+    public static final class RelevantAttributes {
+        private final String node;
+        private final String tripleStore;
+        private final long version;
+        private final Map<String, Float> weights;
 
+        RelevantAttributes(String node, String tripleStore, long version, Map<String, Float> sortedWeights) {
+            this.node = node;
+            this.tripleStore = tripleStore;
+            this.version = version;
+            this.weights = Collections.unmodifiableMap(new LinkedHashMap<>(sortedWeights));
+        }
 
+        public String getNode() {
+            return node;
+        }
+
+        public String getTripleStore() {
+            return tripleStore;
+        }
+
+        public long getVersion() {
+            return version;
+        }
+
+        public Map<String, Float> getWeights() {
+            return weights;
+        }
+    }
 }
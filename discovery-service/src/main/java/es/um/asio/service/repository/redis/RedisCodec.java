@@ -0,0 +1,292 @@
+package es.um.asio.service.repository.redis;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileGenerator;
+import com.google.gson.*;
+import net.jpountz.lz4.LZ4FrameInputStream;
+import net.jpountz.lz4.LZ4FrameOutputStream;
+
+import java.io.*;
+import java.lang.reflect.Type;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Encoding of the values stored in Redis: a {@link Format} (compact JSON, CBOR or Smile) and a {@link Compression}
+ * (none, Deflate or LZ4).
+ * <p>
+ * Encoded values start with a header (a zero byte, "IB", the header version, the format and the compression), so
+ * every value says how it was written and can be read whatever the codec configured when reading. A value without
+ * header is a JSON string as written before the codecs, and is read as such. JSON without compression, the default, is
+ * written without header, so those values are still plain JSON strings for older versions and other readers. Objects go through Gson as before (with
+ * its {@code @Expose} rules and types): JSON is written and read by Gson in a single pass, and the binary formats are
+ * the Gson tree of the object written with Jackson. Numbers keep whether they are integers or decimals, so what Gson
+ * reads back is the same as from JSON.
+ */
+public class RedisCodec {
+
+    private static final byte[] MAGIC = {0, 'I', 'B'};
+    private static final byte HEADER_VERSION = 1;
+    public static final int HEADER_SIZE = MAGIC.length + 3;
+
+    private static final CBORFactory CBOR_FACTORY = new CBORFactory();
+    // Smile referencia los nombres y valores cortos repetidos en lugar de volver a escribirlos
+    private static final SmileFactory SMILE_FACTORY = new SmileFactory().configure(SmileGenerator.Feature.CHECK_SHARED_STRING_VALUES, true);
+
+    static {
+        for (JsonFactory factory : new JsonFactory[] {CBOR_FACTORY, SMILE_FACTORY}) {
+            factory.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+            factory.disable(JsonParser.Feature.AUTO_CLOSE_SOURCE);
+        }
+    }
+
+    public enum Format {
+        JSON(1), CBOR(2), SMILE(3);
+
+        private final byte id;
+
+        Format(int id) {
+            this.id = (byte) id;
+        }
+
+        static Format of(byte id) {
+            for (Format format : values()) {
+                if (format.id == id)
+                    return format;
+            }
+            throw new IllegalArgumentException("Unknown Redis value format: " + id);
+        }
+
+        private JsonFactory getFactory() {
+            return (this == CBOR) ? CBOR_FACTORY : SMILE_FACTORY;
+        }
+    }
+
+    public enum Compression {
+        NONE(0), DEFLATE(1), LZ4(2);
+
+        private final byte id;
+
+        Compression(int id) {
+            this.id = (byte) id;
+        }
+
+        static Compression of(byte id) {
+            for (Compression compression : values()) {
+                if (compression.id == id)
+                    return compression;
+            }
+            throw new IllegalArgumentException("Unknown Redis value compression: " + id);
+        }
+
+        private OutputStream compress(OutputStream out) throws IOException {
+            switch (this) {
+                case DEFLATE:
+                    Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+                    return new DeflaterOutputStream(out, deflater, 8192) {
+                        @Override
+                        public void close() throws IOException {
+                            try {
+                                super.close();
+                            } finally {
+                                deflater.end();
+                            }
+                        }
+                    };
+                case LZ4:
+                    return new LZ4FrameOutputStream(out);
+                default:
+                    return out;
+            }
+        }
+
+        private InputStream decompress(InputStream in) throws IOException {
+            switch (this) {
+                case DEFLATE:
+                    return new InflaterInputStream(in);
+                case LZ4:
+                    return new LZ4FrameInputStream(in);
+                default:
+                    return in;
+            }
+        }
+    }
+
+    private final Format format;
+    private final Compression compression;
+
+    public RedisCodec(Format format, Compression compression) {
+        this.format = format;
+        this.compression = compression;
+    }
+
+    public Format getFormat() {
+        return format;
+    }
+
+    public Compression getCompression() {
+        return compression;
+    }
+
+    /*
+     * Objeto serializado con Gson en el formato y compresion configurados, con la cabecera del codec. En JSON sin
+     * comprimir no se escribe cabecera: el valor es la cadena JSON en UTF-8, como antes de los codecs
+     */
+    public byte[] encode(Gson gson, Object value, Type type) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(8192);
+        if (hasHeader()) {
+            bytes.write(MAGIC, 0, MAGIC.length);
+            bytes.write(HEADER_VERSION);
+            bytes.write(format.id);
+            bytes.write(compression.id);
+        }
+        try (OutputStream out = compression.compress(bytes)) {
+            if (format == Format.JSON) {
+                Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+                gson.toJson(value, type, writer);
+                writer.flush();
+            } else {
+                try (JsonGenerator generator = format.getFactory().createGenerator(out)) {
+                    write(gson.toJsonTree(value, type), generator);
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    /*
+     * Objeto del valor, en el formato que diga su cabecera, o JSON si no la tiene (valores anteriores a los codecs)
+     */
+    public <T> T decode(Gson gson, byte[] value, Type type) {
+        if (value == null)
+            return null;
+        if (!hasHeader(value))
+            return gson.fromJson(new String(value, StandardCharsets.UTF_8), type);
+        if (value[MAGIC.length] != HEADER_VERSION)
+            throw new IllegalArgumentException("Unknown Redis value header version: " + value[MAGIC.length]);
+        Format valueFormat = Format.of(value[MAGIC.length + 1]);
+        Compression valueCompression = Compression.of(value[MAGIC.length + 2]);
+        try (InputStream in = valueCompression.decompress(new ByteArrayInputStream(value, HEADER_SIZE, value.length - HEADER_SIZE))) {
+            if (valueFormat == Format.JSON)
+                return gson.fromJson(new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8)), type);
+            try (JsonParser parser = valueFormat.getFactory().createParser(in)) {
+                if (parser.nextToken() == null)
+                    return null;
+                return gson.fromJson(read(parser), type);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /*
+     * Si los valores de este codec llevan cabecera: todos salvo JSON sin comprimir
+     */
+    public boolean hasHeader() {
+        return format != Format.JSON || compression != Compression.NONE;
+    }
+
+    public static boolean hasHeader(byte[] value) {
+        if (value.length < HEADER_SIZE)
+            return false;
+        for (int i = 0; i < MAGIC.length; i++) {
+            if (value[i] != MAGIC[i])
+                return false;
+        }
+        return true;
+    }
+
+    private static void write(JsonElement element, JsonGenerator generator) throws IOException {
+        if (element == null || element.isJsonNull()) {
+            generator.writeNull();
+        } else if (element.isJsonObject()) {
+            generator.writeStartObject();
+            for (Map.Entry<String, JsonElement> member : element.getAsJsonObject().entrySet()) {
+                generator.writeFieldName(member.getKey());
+                write(member.getValue(), generator);
+            }
+            generator.writeEndObject();
+        } else if (element.isJsonArray()) {
+            generator.writeStartArray();
+            for (JsonElement item : element.getAsJsonArray()) {
+                write(item, generator);
+            }
+            generator.writeEndArray();
+        } else {
+            JsonPrimitive primitive = element.getAsJsonPrimitive();
+            if (primitive.isBoolean())
+                generator.writeBoolean(primitive.getAsBoolean());
+            else if (primitive.isString())
+                generator.writeString(primitive.getAsString());
+            else
+                writeNumber(primitive.getAsNumber(), generator);
+        }
+    }
+
+    /*
+     * Los enteros se escriben como enteros y el resto como decimales. Los numeros leidos de JSON por Gson
+     * (LazilyParsedNumber) se clasifican por su texto
+     */
+    private static void writeNumber(Number number, JsonGenerator generator) throws IOException {
+        if (number instanceof Double || number instanceof Float) {
+            generator.writeNumber(number.doubleValue());
+        } else if (number instanceof Long || number instanceof Integer || number instanceof Short || number instanceof Byte) {
+            generator.writeNumber(number.longValue());
+        } else if (number instanceof BigInteger) {
+            generator.writeNumber((BigInteger) number);
+        } else if (number instanceof BigDecimal) {
+            generator.writeNumber((BigDecimal) number);
+        } else {
+            String text = number.toString();
+            if (text.indexOf('.') < 0 && text.indexOf('e') < 0 && text.indexOf('E') < 0)
+                generator.writeNumber(new BigInteger(text));
+            else
+                generator.writeNumber(number.doubleValue());
+        }
+    }
+
+    private static JsonElement read(JsonParser parser) throws IOException {
+        JsonToken token = parser.currentToken();
+        switch (token) {
+            case START_OBJECT:
+                JsonObject object = new JsonObject();
+                while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                    String name = parser.getCurrentName();
+                    parser.nextToken();
+                    object.add(name, read(parser));
+                }
+                return object;
+            case START_ARRAY:
+                JsonArray array = new JsonArray();
+                while (parser.nextToken() != JsonToken.END_ARRAY) {
+                    array.add(read(parser));
+                }
+                return array;
+            case VALUE_STRING:
+                return new JsonPrimitive(parser.getText());
+            case VALUE_NUMBER_INT:
+            case VALUE_NUMBER_FLOAT:
+                return new JsonPrimitive(parser.getNumberValue());
+            case VALUE_TRUE:
+                return new JsonPrimitive(Boolean.TRUE);
+            case VALUE_FALSE:
+                return new JsonPrimitive(Boolean.FALSE);
+            case VALUE_NULL:
+                return JsonNull.INSTANCE;
+            default:
+                throw new IOException("Unexpected token in Redis value: " + token);
+        }
+    }
+}
@@ -1,7 +1,9 @@
 package es.um.asio.service.repository.redis;
 
+import org.springframework.data.redis.core.RedisCallback;
 import org.springframework.data.redis.core.StringRedisTemplate;
 
+import java.nio.charset.StandardCharsets;
 import java.util.HashSet;
 import java.util.Set;
 
@@ -21,6 +23,17 @@ public class StringRedisRepository {
         return template.opsForValue().get(key);
     }
 
+    /*
+     * Valores binarios (codificados con RedisCodec), sin pasar por el serializador de cadenas de la plantilla
+     */
+    public void addBytes(String key, byte[] value) {
+        template.execute((RedisCallback<Boolean>) connection -> connection.set(key.getBytes(StandardCharsets.UTF_8), value));
+    }
+
+    public byte[] getBytesBy(String key) {
+        return template.execute((RedisCallback<byte[]>) connection -> connection.get(key.getBytes(StandardCharsets.UTF_8)));
+    }
+
     public Set<String> getKeys(String patternKey) {
         return template.keys(patternKey);
     }
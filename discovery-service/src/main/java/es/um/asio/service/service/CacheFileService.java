@@ -0,0 +1,11 @@
+package es.um.asio.service.service;
+
+public interface CacheFileService {
+
+    public boolean isEnabled();
+
+    public boolean loadInCache();
+
+    public boolean saveFromCache();
+
+}
@@ -1,6 +1,8 @@
 package es.um.asio.service.service;
 
 import es.um.asio.service.model.TripleObject;
+import es.um.asio.service.model.cache.CacheSnapshot;
+import es.um.asio.service.model.cache.CacheView;
 import es.um.asio.service.model.elasticsearch.TripleObjectES;
 import es.um.asio.service.model.stats.StatsHandler;
 import java.util.Iterator;
@@ -45,10 +47,16 @@ public interface CacheService {
 
     public Set<TripleObject> getAllTripleObjects(String node, String tripleStore);
 
+    public CacheView getTripleObjectsView(String node, String tripleStore, String className);
+
     public Map<String,TripleObject> getTripleObjects(String node,String tripleStore, String className);
 
     public TripleObject getTripleObject(String node, String tripleStore, String className, String id);
 
+    public Map<String,TripleObject> getTripleObjectsModifiedSince(String node, String tripleStore, String className, long since);
+
+    public CacheSnapshot pinSnapshot();
+
     public void updateStats();
 
     public Set<String> getAllNodes();
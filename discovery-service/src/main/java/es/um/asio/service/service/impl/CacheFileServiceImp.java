@@ -0,0 +1,130 @@
+package es.um.asio.service.service.impl;
+
+import es.um.asio.service.config.DataSourcesConfiguration;
+import es.um.asio.service.model.TripleObject;
+import es.um.asio.service.model.cache.CacheFile;
+import es.um.asio.service.model.cache.CacheSnapshot;
+import es.um.asio.service.model.cache.TripleObjectIndex;
+import es.um.asio.service.service.CacheFileService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps the binary copy of the cache on local disk ({@link CacheFile}): loads it at startup, before going to Redis,
+ * and writes it periodically and when the application stops.
+ */
+@Service
+public class CacheFileServiceImp implements CacheFileService {
+
+    private final Logger logger = LoggerFactory.getLogger(CacheFileServiceImp.class);
+
+    @Autowired
+    CacheServiceImp cache;
+
+    @Autowired
+    DataSourcesConfiguration dataSourcesConfiguration;
+
+    private ScheduledExecutorService scheduler;
+    // Ultima generacion escrita, para no reescribir el fichero si la cache no ha cambiado
+    private TripleObjectIndex savedIndex;
+    private long savedGeneration = -1;
+
+    @PostConstruct
+    private void initialize() {
+        long interval = getSettings().getInterval();
+        if (isEnabled() && interval > 0) {
+            scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "cache-file-writer");
+                thread.setDaemon(true);
+                return thread;
+            });
+            scheduler.scheduleWithFixedDelay(this::saveFromCache, interval, interval, TimeUnit.MINUTES);
+        }
+    }
+
+    @PreDestroy
+    private void shutdown() {
+        if (scheduler != null)
+            scheduler.shutdownNow();
+        saveFromCache();
+    }
+
+    @Override
+    public boolean isEnabled() {
+        return getSettings().isEnabled();
+    }
+
+    /*
+     * Carga la cache desde el fichero local. Devuelve false si no esta configurado, no existe o no es valido, y entonces
+     * la cache no cambia
+     */
+    @Override
+    public boolean loadInCache() {
+        if (!isEnabled())
+            return false;
+        Path path = getPath();
+        if (!Files.isRegularFile(path)) {
+            logger.info("Local cache file {} not found", path);
+            return false;
+        }
+        try {
+            long start = System.currentTimeMillis();
+            Map<String, Map<String, Map<String, Map<String, TripleObject>>>> triplesMap = CacheFile.read(path);
+            logger.info("Read local cache file {} in {} ms", path, System.currentTimeMillis() - start);
+            cache.setTriplesMap(triplesMap);
+            logger.info("Load Data From local cache file complete in {} ms", System.currentTimeMillis() - start);
+            return !cache.getTripleObjectsView(null, null, null).isEmpty();
+        } catch (IOException e) {
+            logger.warn("Local cache file {} discarded: {}", path, e.getMessage());
+            return false;
+        }
+    }
+
+    /*
+     * Escribe la generacion actual de la cache en el fichero local si ha cambiado desde la ultima vez. Una cache vacia
+     * (aun sin cargar) no sustituye al fichero
+     */
+    @Override
+    public synchronized boolean saveFromCache() {
+        if (!isEnabled())
+            return false;
+        TripleObjectIndex index = cache.getTriplesIndex();
+        if (index.isEmpty())
+            return false;
+        Path path = getPath();
+        try (CacheSnapshot snapshot = index.pin()) {
+            if (index == savedIndex && snapshot.getGeneration() == savedGeneration)
+                return false;
+            long start = System.currentTimeMillis();
+            long size = CacheFile.write(snapshot, path);
+            savedIndex = index;
+            savedGeneration = snapshot.getGeneration();
+            logger.info("Written local cache file {} ({} instances, {} bytes, generation {}) in {} ms", path, snapshot.size(), size, savedGeneration, System.currentTimeMillis() - start);
+            return true;
+        } catch (IOException | RuntimeException e) {
+            logger.error("Fail on write local cache file {}: {}", path, e.getMessage());
+            return false;
+        }
+    }
+
+    private DataSourcesConfiguration.CacheStorage.LocalFile getSettings() {
+        return dataSourcesConfiguration.getCache().getFile();
+    }
+
+    private Path getPath() {
+        return Paths.get(getSettings().getPath());
+    }
+}
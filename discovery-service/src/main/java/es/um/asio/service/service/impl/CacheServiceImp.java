@@ -1,82 +1,78 @@
 package es.um.asio.service.service.impl;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
+import es.um.asio.service.comparators.blocking.ClassLshIndex;
+import es.um.asio.service.comparators.blocking.MinHashLshIndex;
+import es.um.asio.service.config.DataSourcesConfiguration;
+import es.um.asio.service.config.SettingsInitializer;
 import es.um.asio.service.model.TripleObject;
-import es.um.asio.service.model.TripleStore;
+import es.um.asio.service.model.cache.CacheSnapshot;
+import es.um.asio.service.model.cache.CacheView;
+import es.um.asio.service.model.cache.ClassKey;
+import es.um.asio.service.model.cache.ModificationIndex;
+import es.um.asio.service.model.cache.TripleObjectIndex;
 import es.um.asio.service.model.elasticsearch.TripleObjectES;
 import es.um.asio.service.model.stats.StatsHandler;
 import es.um.asio.service.service.CacheService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.DependsOn;
 import org.springframework.stereotype.Service;
 import javax.annotation.PostConstruct;
 import java.text.DateFormat;
 import java.text.SimpleDateFormat;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 
 @Service
+@DependsOn(SettingsInitializer.NAME)
 public class CacheServiceImp implements CacheService {
 
     private final Logger logger = LoggerFactory.getLogger(CacheServiceImp.class);
 
-    private Map<String, Map<String, Map<String, Map<String,TripleObject>>>> triplesMap; // Class --> Instances
-    private Map<String, Map<String, Map<String, Map<Integer,Map<Integer,Map<String,TripleObject>>>>>> triplesMapByDate; // Class --> Instances
+    private volatile TripleObjectIndex triplesIndex; // (Node, TripleStore, Class) --> Instances
     private Map<String, Map<String, Map<String,TripleObject>>> filtered;
     private Map<String, Map<String, Map<String, Map<String,TripleObject>>>> esTriplesMap; // Class --> Instances
-    private StatsHandler statsHandler;
+    private volatile StatsHandler statsHandler;
+    private volatile Map<ClassKey, ClassLshIndex> lshIndexes; // (Node, TripleStore, Class) --> Indice
     DateFormat dateFormat;
 
     @Autowired
     RedisServiceImp redisServiceImp;
 
+    @Autowired
+    DataSourcesConfiguration dataSourcesConfiguration;
+
     @PostConstruct
     public void initialize() {
-        triplesMap = new HashMap<>();
-        triplesMapByDate = new HashMap<>();
+        triplesIndex = new TripleObjectIndex(isColumnar());
         filtered = new HashMap<>();
         esTriplesMap = new HashMap<>();
         statsHandler = new StatsHandler();
+        lshIndexes = new ConcurrentHashMap<>();
         dateFormat = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSS'Z'");
     }
 
     @Override
     public void addTripleObject(String node, String triple, TripleObject to) {
         if (to!=null) {
-            if (!triplesMap.containsKey(node) || triplesMap.get(node) == null) {
-                triplesMap.put(node, new HashMap<>());
+            // Sin id la instancia no se puede sustituir, quitar ni indexar por fecha: se descarta en lugar de guardarla con clave null
+            if (to.getId() == null) {
+                logger.warn("TripleObject without id not added to cache: node: {}, tripleStore: {}, class: {}", node, triple, to.getClassName());
+                return;
             }
-
-            if (!triplesMapByDate.containsKey(node) || triplesMapByDate.get(node) == null)
-                triplesMapByDate.put(node, new HashMap<>());
-
-            if (!triplesMap.get(node).containsKey(triple)  || triplesMap.get(node).get(triple) == null) {
-                triplesMap.get(node).put(triple, new HashMap<>());
+            Map<String, TripleObject> instances = triplesIndex.getOrCreateSegment(node, triple, to.getClassName());
+            // Los escritores de una misma clase se serializan para que instancias y estadisticas cambien a la vez. Los lectores no se bloquean
+            synchronized (instances) {
+                TripleObject previous = triplesIndex.put(node, triple, to);
+                // Las estadisticas se mantienen por entidad; si se vuelve a añadir la misma instancia no cambian
+                StatsHandler stats = statsHandler;
+                if (previous == null)
+                    stats.addAttributes(node, triple, to);
+                else if (previous != to)
+                    stats.updateAttributes(node, triple, previous, to);
+                lshChanged(node, triple, to.getClassName(), to.getId());
             }
-
-            if (!triplesMapByDate.get(node).containsKey(triple) || triplesMapByDate.get(node).get(triple) == null) {
-                triplesMapByDate.get(node).put(triple, new HashMap<>());
-            }
-
-            if (!triplesMap.get(node).get(triple).containsKey(to.getClassName()) || triplesMap.get(node).get(triple).get(to.getClassName()) == null) {
-                triplesMap.get(node).get(triple).put(to.getClassName(), new HashMap<>());
-            }
-
-            if (!triplesMapByDate.get(node).get(triple).containsKey(to.getClassName()) || triplesMapByDate.get(node).get(triple).get(to.getClassName()) == null) {
-                triplesMapByDate.get(node).get(triple).put(to.getClassName(), new HashMap<>());
-            }
-
-            if (!triplesMapByDate.get(node).get(triple).get(to.getClassName()).containsKey(to.getYear()) || triplesMapByDate.get(node).get(triple).get(to.getClassName()).get(to.getYear()) == null) {
-                triplesMapByDate.get(node).get(triple).get(to.getClassName()).put(to.getYear(), new HashMap<>());
-            }
-
-            if (!triplesMapByDate.get(node).get(triple).get(to.getClassName()).get(to.getYear()).containsKey(to.getMonth()) || triplesMapByDate.get(node).get(triple).get(to.getClassName()).get(to.getYear()).get(to.getMonth()) == null) {
-                triplesMapByDate.get(node).get(triple).get(to.getClassName()).get(to.getYear()).put(to.getMonth(), new HashMap<>());
-            }
-
-            triplesMap.get(node).get(triple).get(to.getClassName()).put(to.getId(), to);
-            triplesMapByDate.get(node).get(triple).get(to.getClassName()).get(to.getYear()).get(to.getMonth()).put(to.getId(), to);
-
         }
     }
 
@@ -88,26 +84,26 @@ public class CacheServiceImp implements CacheService {
 
     @Override
     public void removeTripleObject(String node, String triple, TripleObject to) {
-        if (    triplesMap.containsKey(node) &&
-                triplesMap.get(node).containsKey(triple) &&
-                triplesMap.get(node).get(triple).containsKey(to.getClassName())) {
-            triplesMap.get(node).get(triple).get(to.getClassName()).remove(to.getId());
-        }
-        if (
-                triplesMapByDate.containsKey(node) &&
-                triplesMapByDate.get(node).containsKey(triple) &&
-                triplesMapByDate.get(node).get(triple).containsKey(to.getClassName()) &&
-                triplesMapByDate.get(node).get(triple).get(to.getClassName()).containsKey(to.getYear()) &&
-                triplesMapByDate.get(node).get(triple).get(to.getClassName()).get(to.getYear()).containsKey(to.getMonth()) &&
-                triplesMapByDate.get(node).get(triple).get(to.getClassName()).get(to.getYear()).get(to.getMonth()).containsKey(to.getId())
-        ) {
-            triplesMapByDate.get(node).get(triple).get(to.getClassName()).get(to.getYear()).get(to.getMonth()).remove(to.getId());
+        Map<String, TripleObject> instances = triplesIndex.getSegment(node, triple, to.getClassName());
+        if (instances != null && to.getId() != null) {
+            synchronized (instances) {
+                TripleObject removed = triplesIndex.remove(node, triple, to.getClassName(), to.getId());
+                if (removed != null) { // Se quitan los valores de la instancia de la cache, que son los que se contaron
+                    StatsHandler stats = statsHandler;
+                    stats.removeAttributes(node, triple, removed);
+                    if (stats.isStale(node, triple, to.getClassName())) {
+                        logger.info("Rebuild Stats by class: {}", to.getClassName());
+                        stats.rebuildClass(node, triple, to.getClassName(), instances.values());
+                    }
+                    lshChanged(node, triple, to.getClassName(), to.getId());
+                }
+            }
         }
     }
 
     @Override
     public void saveInCache() {
-        redisServiceImp.setTriplesMap(this.triplesMap, true,true);
+        redisServiceImp.setTriplesMap(getTriplesMap(), true,true);
         redisServiceImp.setFilteredTriples(this.filtered);
         redisServiceImp.setEntityStats(this.statsHandler);
         redisServiceImp.setElasticSearchTriplesMap(this.esTriplesMap);
@@ -115,7 +111,7 @@ public class CacheServiceImp implements CacheService {
 
     @Override
     public void saveTriplesMapInCache() {
-        redisServiceImp.setTriplesMap(this.triplesMap, true,true);
+        redisServiceImp.setTriplesMap(getTriplesMap(), true,true);
     }
 
     @Override
@@ -123,32 +119,16 @@ public class CacheServiceImp implements CacheService {
         redisServiceImp.setTriplesMap(getTipleMapByNodeAndTripleStoreAndClassName(node,tripleStore,className), true, true);
     }
 
+    /*
+     * Mapa anidado con las clases del nodo, triple store y clase (null es cualquiera). No copia las instancias: los mapas
+     * de cada clase son vistas de solo lectura de la cache
+     */
     @Override
     public Map<String, Map<String, Map<String, Map<String, TripleObject>>>> getTipleMapByNodeAndTripleStoreAndClassName(String node, String tripleStore, String className) {
-        Map<String, Map<String, Map<String, Map<String, TripleObject>>>> returnedTripleMap = new HashMap<>();
-        for (Map.Entry<String, Map<String, Map<String, Map<String, TripleObject>>>> nodeEntry : getTriplesMap().entrySet()) { // Node Loop
-            if (node == null || nodeEntry.getKey().trim().equals(node.trim())) {
-                if (!returnedTripleMap.containsKey(nodeEntry.getKey()))
-                    returnedTripleMap.put(nodeEntry.getKey(), new HashMap<>());
-                for (Map.Entry<String, Map<String, Map<String, TripleObject>>> tripleStoreEntry : nodeEntry.getValue().entrySet()) { // TripleStore Loop Loop
-                    if (tripleStore == null || tripleStoreEntry.getKey().trim().equals(tripleStore.trim())) {
-                        if (!returnedTripleMap.get(nodeEntry.getKey()).containsKey(tripleStoreEntry.getKey()))
-                            returnedTripleMap.get(nodeEntry.getKey()).put(tripleStoreEntry.getKey(), new HashMap<>());
-                        for (Map.Entry<String, Map<String, TripleObject>> classEntry : tripleStoreEntry.getValue().entrySet()) {
-                            if (className == null || classEntry.getKey().trim().equals(className.trim())) {
-                                if (!returnedTripleMap.get(nodeEntry.getKey()).get(tripleStoreEntry.getKey()).containsKey(classEntry.getKey()))
-                                    returnedTripleMap.get(nodeEntry.getKey()).get(tripleStoreEntry.getKey()).put(classEntry.getKey(), new HashMap<>());
-                                for (Map.Entry<String, TripleObject> instanceEntry : classEntry.getValue().entrySet()) {
-                                    returnedTripleMap.get(nodeEntry.getKey()).get(tripleStoreEntry.getKey()).get(classEntry.getKey()).put(instanceEntry.getKey(),instanceEntry.getValue());
-                                }
-                            }
-                        }
-
-                    }
-                }
-            }
-        }
-        return returnedTripleMap;
+        return getTripleObjectsView(
+                (node != null) ? node.trim() : null,
+                (tripleStore != null) ? tripleStore.trim() : null,
+                (className != null) ? className.trim() : null).asNestedMap();
     }
 
     @Override
@@ -188,20 +168,12 @@ public class CacheServiceImp implements CacheService {
 
     @Override
     public boolean isPopulatedCache() {
-        return (triplesMap.size()>0 && filtered.size()>0);
+        return (!triplesIndex.isEmpty() && filtered.size()>0);
     }
 
     @Override
     public void generateEntityStats() {
-        for (Map.Entry<String, Map<String, Map<String, Map<String, TripleObject>>>> nodeEntry: triplesMap.entrySet()) { // Node
-            for (Map.Entry<String, Map<String, Map<String, TripleObject>>> tripleEntry: nodeEntry.getValue().entrySet()) { // Node
-                for (Map.Entry<String, Map<String, TripleObject>> classEntry: tripleEntry.getValue().entrySet()) { // Node
-                    for (Map.Entry<String, TripleObject> tipleObjectEntry: classEntry.getValue().entrySet()) { // Node
-                        statsHandler.addAttributes(nodeEntry.getKey(),tripleEntry.getKey(),tipleObjectEntry.getValue());
-                    }
-                }
-            }
-        }
+        rebuildStats();
         if (redisServiceImp!=null)
             redisServiceImp.setEntityStats(statsHandler);
     }
@@ -219,106 +191,137 @@ public class CacheServiceImp implements CacheService {
         return tripleObjects.iterator();
     }
 
+    /*
+     * Copia de las instancias del nodo y triple store, para quien necesita modificarla. Para recorrerlas basta con
+     * getTripleObjectsView, que no copia nada
+     */
     @Override
     public Set<TripleObject> getAllTripleObjects(String node, String tripleStore) {
-        Set<TripleObject> triples = new HashSet<>();
-        if (triplesMap!=null && triplesMap.entrySet() != null) {
-            for (Map.Entry<String, Map<String, Map<String, Map<String, TripleObject>>>> nodeEntry : triplesMap.entrySet()) { // Node
-                if (nodeEntry!=null && nodeEntry.getKey().equals(node) && nodeEntry.getValue() != null && nodeEntry.getValue().entrySet() != null) {
-                    for (Map.Entry<String, Map<String, Map<String, TripleObject>>> tripleEntry : nodeEntry.getValue().entrySet()) { // Node
-                        if (tripleEntry!=null && tripleEntry.getKey().equals(tripleStore) && tripleEntry.getValue() != null && tripleEntry.getValue().entrySet() != null) {
-                            for (Map.Entry<String, Map<String, TripleObject>> classEntry : tripleEntry.getValue().entrySet()) { // Node
-                                if (classEntry!=null && classEntry.getValue() != null && classEntry.getValue().entrySet() != null) {
-                                    for (Map.Entry<String, TripleObject> tipleObjectEntry : classEntry.getValue().entrySet()) { // Node
-                                        triples.add(tipleObjectEntry.getValue());
-                                    }
-                                }
-                            }
-                        }
-                    }
-                }
-            }
-        }
-        return triples;
+        return new HashSet<>(getTripleObjectsView(node, tripleStore, null));
+    }
+
+    /*
+     * Vista de solo lectura de las instancias del nodo, triple store y clase (null es cualquiera), que se puede recorrer
+     * o procesar con streams paralelos sin copiar la cache
+     */
+    @Override
+    public CacheView getTripleObjectsView(String node, String tripleStore, String className) {
+        return triplesIndex.view(node, tripleStore, className);
     }
 
     @Override
     public Map<String, TripleObject> getTripleObjects(String node, String tripleStore, String className) {
-        if (this.triplesMap.containsKey(node) && this.triplesMap.get(node).containsKey(tripleStore) && this.triplesMap.get(node).get(tripleStore).containsKey(className))
-            return this.triplesMap.get(node).get(tripleStore).get(className);
-        else
-            return null;
+        return triplesIndex.getSegment(node, tripleStore, className);
     }
 
+    @Override
+    public TripleObject getTripleObject(String node, String tripleStore, String className, String id) {
+        return triplesIndex.get(node, tripleStore, className, id);
+    }
 
+    /*
+     * Instancias de la clase modificadas en la fecha dada (epoch millis) o despues, desde el indice por fecha. Devuelve
+     * null si la clase no esta en la cache
+     */
+    @Override
+    public Map<String, TripleObject> getTripleObjectsModifiedSince(String node, String tripleStore, String className, long since) {
+        ModificationIndex modifications = triplesIndex.getModifications(node, tripleStore, className);
+        return (modifications == null) ? null : modifications.modifiedSinceById(since);
+    }
 
+    /*
+     * Instancias de la clase modificadas en la fecha dada o despues, tal como estan en la generacion fijada, desde el
+     * indice por fecha y los cambios posteriores a la generacion. Devuelve null si la clase no estaba en la generacion
+     */
+    public Map<String, TripleObject> getTripleObjectsModifiedSince(CacheSnapshot snapshot, String node, String tripleStore, String className, long since) {
+        return triplesIndex.modifiedSince(snapshot, node, tripleStore, className, since);
+    }
+
+    /*
+     * Fija la generacion actual de la cache para un trabajo. Hay que cerrarla al terminar (try-with-resources)
+     */
     @Override
-    public TripleObject getTripleObject(String node, String tripleStore, String className, String id) {
-        try {
-            if (this.triplesMap.containsKey(node) && this.triplesMap.get(node).containsKey(tripleStore) && this.triplesMap.get(node).get(tripleStore).containsKey(className) && this.triplesMap.get(node).get(tripleStore).get(className).containsKey(id))
-                return this.triplesMap.get(node).get(tripleStore).get(className).get(id);
-            else
-                return null;
-        } catch (Exception e) {
-            logger.error(String.format("Error in getTripleObject: %s", e.getMessage()));
+    public CacheSnapshot pinSnapshot() {
+        CacheSnapshot snapshot = triplesIndex.pin();
+        logger.info("Pinned cache generation {} (pinned generations: {})", snapshot.getGeneration(), triplesIndex.getPinnedGenerations());
+        return snapshot;
+    }
+
+    /*
+     * Indice LSH de las instancias de la clase en la generacion fijada por el trabajo. Se construye la primera vez que se
+     * pide y despues se actualiza con las instancias que cambian, o se reconstruye si cambian muchas o se piden otros
+     * parametros. Devuelve null si la clase no esta en la generacion
+     */
+    public MinHashLshIndex getLshIndex(CacheSnapshot snapshot, String node, String tripleStore, String className, int bands, int rows, int shingleSize) {
+        Map<String, TripleObject> tripleObjects = snapshot.getTripleObjects(node, tripleStore, className);
+        if (tripleObjects == null)
             return null;
+        // Los indices se leen antes que la cache: al cargarla se sustituye primero la cache y despues los indices
+        Map<ClassKey, ClassLshIndex> indexes = lshIndexes;
+        TripleObjectIndex index = triplesIndex;
+        if (!snapshot.isOf(index)) // Generacion de una cache ya sustituida: sus cambios no se anotan
+            return MinHashLshIndex.build(tripleObjects.values(), bands, rows, shingleSize);
+        ClassKey key = ClassKey.of(node, tripleStore, className);
+        Map<String, TripleObject> instances = index.getSegment(key);
+        ClassLshIndex lsh;
+        Map<String, Long> changes;
+        // Con el cerrojo de los escritores de la clase, todo cambio visible en la generacion ya esta anotado
+        synchronized ((instances != null) ? instances : indexes) {
+            lsh = indexes.get(key);
+            if (lsh == null || !lsh.hasParameters(bands, rows, shingleSize)) {
+                logger.info("Creating LSH index for node: {}, tripleStore: {}, class: {} with {} instances", node, tripleStore, className, tripleObjects.size());
+                lsh = new ClassLshIndex(bands, rows, shingleSize, index.getGeneration());
+                indexes.put(key, lsh);
+            }
+            changes = lsh.getChanges();
         }
+        return lsh.get(tripleObjects, snapshot.getGeneration(), changes);
+    }
 
+    /*
+     * Anota en el indice LSH de la clase, si lo hay, el cambio de una instancia. Se llama con el cerrojo de los
+     * escritores de la clase, despues del cambio
+     */
+    private void lshChanged(String node, String triple, String className, String id) {
+        ClassLshIndex lsh = lshIndexes.get(ClassKey.lookup(node, triple, className));
+        if (lsh != null)
+            lsh.changed(id, triplesIndex.getGeneration());
     }
 
+    /*
+     * Indice concurrente de las instancias de la cache por (nodo, triple store, clase)
+     */
+    public TripleObjectIndex getTriplesIndex() {
+        return triplesIndex;
+    }
+
+    /*
+     * Vista anidada nodo -> triple store -> clase -> id del indice. Los mapas de instancias son los de la cache
+     */
     public Map<String, Map<String, Map<String, Map<String, TripleObject>>>> getTriplesMap() {
-        return triplesMap;
+        return triplesIndex.toNestedMap();
     }
 
     public void setTriplesMap(Map<String, Map<String, Map<String, Map<String, TripleObject>>>> triplesMap) {
-        this.triplesMap = triplesMap;
-        if (triplesMap!=null && triplesMap.entrySet()!=null) {
-            for (Map.Entry<String, Map<String, Map<String, Map<String, TripleObject>>>> node : triplesMap.entrySet()) {
-                if (!triplesMapByDate.containsKey(node.getKey()))
-                    triplesMapByDate.put(node.getKey(), new HashMap<>());
-                if (node!=null && node.getValue() != null && node.getValue().entrySet() != null){
-                    for (Map.Entry<String, Map<String, Map<String, TripleObject>>> tripleStore : node.getValue().entrySet()) {
-                        if (!triplesMapByDate.get(node.getKey()).containsKey(tripleStore.getKey()))
-                            triplesMapByDate.get(node.getKey()).put(tripleStore.getKey(), new HashMap<>());
-                        if (tripleStore != null && tripleStore.getValue() != null && tripleStore.getValue().entrySet() != null) {
-                            for (Map.Entry<String, Map<String, TripleObject>> className : tripleStore.getValue().entrySet()) {
-                                logger.info("complete load in cache node: {}, tripleStore: {}, class: {}",node.getKey(),tripleStore.getKey(),className.getKey());
-                                if (!triplesMapByDate.get(node.getKey()).get(tripleStore.getKey()).containsKey(className.getKey()))
-                                    triplesMapByDate.get(node.getKey()).get(tripleStore.getKey()).put(className.getKey(), new HashMap<>());
-                                if (className != null &&  className.getValue() != null && className.getValue().entrySet() != null) {
-                                    for (Map.Entry<String, TripleObject> to : className.getValue().entrySet()) {
-                                        to.getValue().buildFlattenAttributes();
-                                        TripleObject toInner = null;
-                                        try {
-                                            toInner = new ObjectMapper().convertValue(to.getValue(), TripleObject.class);
-                                            if (toInner.getLastModification() != 0) {
-                                                Calendar cal = Calendar.getInstance();
-                                                cal.setTime(new Date(toInner.getLastModification()));
-                                                int year = cal.get(Calendar.YEAR);
-                                                int month = cal.get(Calendar.MONTH);
-                                                if (!triplesMapByDate.get(node.getKey()).get(tripleStore.getKey()).get(className.getKey()).containsKey(year)) {
-                                                    triplesMapByDate.get(node.getKey()).get(tripleStore.getKey()).get(className.getKey()).put(year, new HashMap<>());
-                                                }
-                                                if (!triplesMapByDate.get(node.getKey()).get(tripleStore.getKey()).get(className.getKey()).get(year).containsKey(month)) {
-                                                    triplesMapByDate.get(node.getKey()).get(tripleStore.getKey()).get(className.getKey()).get(year).put(month, new HashMap<>());
-                                                }
-                                                triplesMapByDate.get(node.getKey()).get(tripleStore.getKey()).get(className.getKey()).get(year).get(month).put(toInner.getId(), toInner);
-
-                                            }
-                                        } catch (Exception e) {
-                                            logger.error(e.getMessage());
-                                        }
-                                    }
-                                }
-                            }
-                        }
-                    }
-                }
-            }
+        // El indice convierte las clases al almacen columnar si esta configurado y construye los indices por fecha
+        TripleObjectIndex index = TripleObjectIndex.of(triplesMap, isColumnar());
+        for (Map.Entry<ClassKey, Map<String, TripleObject>> segment : index.segments()) {
+            ClassKey key = segment.getKey();
+            logger.info("complete load in cache node: {}, tripleStore: {}, class: {}", key.getNode(), key.getTripleStore(), key.getClassName());
         }
+        // Los lectores pasan al nuevo indice de una vez
+        this.triplesIndex = index;
+        lshIndexes = new ConcurrentHashMap<>();
         logger.info("Completed load in cache");
     }
 
+    /*
+     * Si la cache guarda las instancias de cada clase en un almacen columnar. Sin configuracion (fuera de Spring) no
+     */
+    private boolean isColumnar() {
+        return dataSourcesConfiguration != null && dataSourcesConfiguration.getCache().isColumnar();
+    }
+
     public void setEsTriplesMap(Map<String, Map<String, Map<String, Map<String,TripleObject>>>> esTriplesMap) {
         this.esTriplesMap = esTriplesMap;
     }
@@ -349,41 +352,53 @@ public class CacheServiceImp implements CacheService {
         return statsHandler;
     }
 
+    /*
+     * Sustituye el StatsHandler, por ejemplo al cargarlo de Redis. Los escritores usan el que leen al tomar el cerrojo de
+     * su clase; para rehacer las estadisticas con escritores activos se usa updateStats
+     */
     public void setStatsHandler(StatsHandler statsHandler) {
         this.statsHandler = statsHandler;
     }
 
-    @Override
-    public void updateStats() {
-        statsHandler = new StatsHandler();
-        for (Map.Entry<String, Map<String, Map<String, Map<String, TripleObject>>>> nodeEntry: triplesMap.entrySet()) { // Node
-            for (Map.Entry<String, Map<String, Map<String, TripleObject>>> tripleEntry: nodeEntry.getValue().entrySet()) { // Triple
-                for (Map.Entry<String, Map<String, TripleObject>> classEntry: tripleEntry.getValue().entrySet()) { // Class
-                    logger.info("Update Stats by class: {}",classEntry.getKey());
-                    for (Map.Entry<String, TripleObject> tipleObjectEntry: classEntry.getValue().entrySet()) { // TO
-                        try {
-                            TripleStore ts = tipleObjectEntry.getValue().getTripleStore();
-                            statsHandler.addAttributes(ts.getNode().getNodeName(), ts.getName(), tipleObjectEntry.getValue());
-                        } catch (Exception e) {
-                            logger.error("Update Stats Error: {}",e.getMessage());
-                        }
-                    }
-                }
+    /*
+     * Rehace las estadisticas sobre el StatsHandler actual en lugar de sustituirlo, para no perder los cambios que
+     * addTripleObject y removeTripleObject aplican mientras tanto. Cada clase se reconstruye con el cerrojo de su segmento,
+     * el mismo que toman los escritores, asi ningun cambio se pierde ni se cuenta dos veces. Las clases se recorren una a
+     * una (las entidades de cada una se acumulan en paralelo) para no esperar un cerrojo desde el pool comun. Despues se
+     * quitan las clases que ya no estan en la cache
+     */
+    private void rebuildStats() {
+        StatsHandler stats = statsHandler;
+        TripleObjectIndex index = triplesIndex;
+        for (Map.Entry<ClassKey, Map<String, TripleObject>> segment : index.segments()) {
+            ClassKey key = segment.getKey();
+            Map<String, TripleObject> instances = segment.getValue();
+            synchronized (instances) {
+                stats.setClassStats(key.getNode(), key.getTripleStore(), key.getClassName(),
+                        StatsHandler.buildClass(key.getClassName(), instances.values()));
             }
         }
+        stats.retainClasses(key -> index.getSegment(key.get(0), key.get(1), key.get(2)) != null);
+    }
+
+    /*
+     * Reconstruye todas las estadisticas desde la cache. Solo hace falta en el arranque en frio: despues, addTripleObject
+     * y removeTripleObject las mantienen entidad a entidad
+     */
+    @Override
+    public void updateStats() {
+        long start = System.currentTimeMillis();
+        rebuildStats();
+        logger.info("Update Stats completed in {} ms", System.currentTimeMillis() - start);
     }
 
     @Override
     public Set<String> getAllNodes() {
-        return triplesMap.keySet();
+        return triplesIndex.getNodes();
     }
 
     @Override
     public Set<String> getAllTripleStoreByNode(String node) {
-        Set<String> tripleStores = new HashSet<>();
-        if (triplesMap.containsKey(node)) {
-            return triplesMap.get(node).keySet();
-        }
-        return tripleStores;
+        return triplesIndex.getTripleStores(node);
     }
 }
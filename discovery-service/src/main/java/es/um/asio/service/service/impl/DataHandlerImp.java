@@ -12,6 +12,7 @@ import es.um.asio.service.model.appstate.ApplicationState;
 import es.um.asio.service.model.appstate.DataState;
 import es.um.asio.service.model.appstate.DataType;
 import es.um.asio.service.model.appstate.State;
+import es.um.asio.service.model.cache.ClassKey;
 import es.um.asio.service.model.elasticsearch.TripleObjectES;
 import es.um.asio.service.model.relational.DiscoveryApplication;
 import es.um.asio.service.repository.relational.CacheRegistryRepository;
@@ -50,6 +51,9 @@ public class DataHandlerImp implements DataHandler {
     @Autowired
     RedisServiceImp redisService;
 
+    @Autowired
+    CacheFileServiceImp cacheFileService;
+
     @Autowired
     FirebaseStorageStrategy firebaseStorageStrategy;
 
@@ -107,12 +111,13 @@ public class DataHandlerImp implements DataHandler {
             // Update State of Application
             applicationState.setAppState(ApplicationState.AppState.INITIALIZED_WITH_CACHED_DATA);
             applicationState.setDataState(DataType.REDIS, State.CACHED_DATA);
-            updateState(DataType.REDIS,cache.getTriplesMap());
+            updateState(DataType.REDIS);
             applicationState.setDataState(DataType.CACHE, State.CACHED_DATA);
-            updateState(DataType.CACHE,cache.getTriplesMap());
+            updateState(DataType.CACHE);
         }
         // Update data from triple store (add deltas)
         updateCachedData(); //  quit comment
+        cacheFileService.saveFromCache();
         // Update elasticSearch
         logger.info("Writing Triple Objects in Elasticsearch");
         updateElasticData();
@@ -148,9 +153,8 @@ public class DataHandlerImp implements DataHandler {
                 Map<String,Map<String,TripleObjectES>> toSaveES = new HashMap<>();
                 // Cargo los datos actuales de ES
                 Map<String, Set<String>> savedInES = elasticsearchService.getAllSimplifiedTripleObject(node,tripleStore);
-                Set<TripleObject> tos = cache.getAllTripleObjects(node,tripleStore); // Todas las tripletas
-
-                for (TripleObject to : tos) {
+                // Todas las tripletas, recorridas sobre la cache sin copiarlas
+                for (TripleObject to : cache.getTripleObjectsView(node,tripleStore,null)) {
                     if (!savedInES.containsKey(to.getClassName()) || !savedInES.get(to.getClassName()).contains(to.getId())) {
                         if (!toSaveES.containsKey(to.getClassName()))
                             toSaveES.put(to.getClassName(), new HashMap<>());
@@ -169,16 +173,19 @@ public class DataHandlerImp implements DataHandler {
             }
         }
         applicationState.setDataState(DataType.ELASTICSEARCH, State.UPLOAD_DATA);
-        updateState(DataType.ELASTICSEARCH,cache.getTriplesMap());
+        updateState(DataType.ELASTICSEARCH);
 
 
     }
 
     private void loadDataFromRedisToCache() {
+        // La copia binaria local, si esta configurada y es valida, evita leer y parsear el JSON de Redis
+        if (cacheFileService.loadInCache())
+            return;
         try {
             // Load data from cache
             cache.setTriplesMap(redisService.getTriplesMap());
-            if (cache.getTriplesMap().size() == 0 && dataProperties.isReadCacheFromFirebase()) { // Get cache from file in firebase if is empty
+            if (cache.getTripleObjectsView(null,null,null).isEmpty() && dataProperties.isReadCacheFromFirebase()) { // Get cache from file in firebase if is empty
                 Gson gson = new GsonBuilder()
                         .setPrettyPrinting()
                         .excludeFieldsWithoutExposeAnnotation()
@@ -206,28 +213,24 @@ public class DataHandlerImp implements DataHandler {
                 isChanged = isChanged | handler.updateData(cache);
             }
         }
-        if(isChanged) {
-            cache.updateStats();
+        if(isChanged) { // Las estadisticas ya se han actualizado con cada entidad añadida o eliminada
             cache.saveTriplesMapInCache();
             cache.saveEntityStatsInCache();
         }
         if (applicationState.getAppState().getOrder()< ApplicationState.AppState.INITIALIZED.getOrder()) {
             applicationState.setAppState(ApplicationState.AppState.INITIALIZED);
             applicationState.setDataState(DataType.REDIS, State.UPLOAD_DATA);
-            updateState(DataType.REDIS, cache.getTriplesMap());
+            updateState(DataType.REDIS);
             applicationState.setDataState(DataType.CACHE, State.UPLOAD_DATA);
-            updateState(DataType.CACHE, cache.getTriplesMap());
+            updateState(DataType.CACHE);
         }
     }
 
-    private void updateState(DataType dataType, Map<String, Map<String, Map<String, Map<String, TripleObject>>>> data) {
+    private void updateState(DataType dataType) {
         DataState dataState = applicationState.getDataState(dataType);
-        for (Map.Entry<String, Map<String, Map<String, Map<String, TripleObject>>>> nEntry : data.entrySet()) {
-            for (Map.Entry<String, Map<String, Map<String, TripleObject>>> tsEntry : nEntry.getValue().entrySet()) {
-                for (Map.Entry<String, Map<String, TripleObject>> cnEntry : tsEntry.getValue().entrySet()) {
-                    dataState.addDataStats(nEntry.getKey(),tsEntry.getKey(),cnEntry.getKey(),cnEntry.getValue().size());
-                }
-            }
+        for (Map.Entry<ClassKey, Map<String, TripleObject>> segment : cache.getTripleObjectsView(null,null,null).segments().entrySet()) {
+            ClassKey key = segment.getKey();
+            dataState.addDataStats(key.getNode(),key.getTripleStore(),key.getClassName(),segment.getValue().size());
         }
     }
 }
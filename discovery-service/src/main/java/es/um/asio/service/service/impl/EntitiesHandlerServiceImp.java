@@ -5,31 +5,47 @@ import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
 import com.google.gson.JsonParser;
 import com.google.gson.internal.LinkedTreeMap;
-import es.um.asio.service.comparators.entities.EntityComparator;
+import es.um.asio.service.comparators.blocking.MinHashLshIndex;
+import es.um.asio.service.comparators.entities.ComparisonPlan;
 import es.um.asio.service.comparators.entities.EntitySimilarityObj;
+import es.um.asio.service.comparators.entities.SimilarityClustering;
 import es.um.asio.service.config.DataSourcesConfiguration;
 import es.um.asio.service.config.LodConfiguration;
+import es.um.asio.service.config.SettingsInitializer;
+import es.um.asio.service.config.SimilarityScoringPoolConfig;
 import es.um.asio.service.exceptions.CustomDiscoveryException;
 import es.um.asio.service.model.SimilarityResult;
 import es.um.asio.service.model.TripleObject;
+import es.um.asio.service.model.cache.CacheSnapshot;
+import es.um.asio.service.model.cache.ClassKey;
 import es.um.asio.service.model.elasticsearch.TripleObjectES;
 import es.um.asio.service.model.rdf.TripleObjectLink;
 import es.um.asio.service.model.stats.StatsHandler;
 import es.um.asio.service.service.EntitiesHandlerService;
-import es.um.asio.service.util.Utils;
 import org.asynchttpclient.*;
 import org.javatuples.Pair;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.context.annotation.DependsOn;
 import org.springframework.stereotype.Service;
 
 import java.util.*;
+import java.util.concurrent.Callable;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Predicate;
 import java.util.stream.Collectors;
 
 
 @Service
+@DependsOn(SettingsInitializer.NAME)
 public class EntitiesHandlerServiceImp implements EntitiesHandlerService {
 
     @Autowired
@@ -44,57 +60,166 @@ public class EntitiesHandlerServiceImp implements EntitiesHandlerService {
     @Autowired
     LodConfiguration lodConfiguration;
 
+    @Autowired
+    @Qualifier(SimilarityScoringPoolConfig.SIMILARITY_SCORING_POOL)
+    ForkJoinPool scoringPool;
+
     private final Logger logger = LoggerFactory.getLogger(EntitiesHandlerServiceImp.class);
     private static final String MANUAL_KEY="MANUAL";
     private static final String AUTOMATIC_KEY="AUTOMATIC";
+    // Entidades de cada ola por hilo del pool: bastantes para mantenerlo ocupado y pocas para que se puntuen pocas
+    // entidades que luego descarta otra de la misma ola
+    private static final int WAVE_TASKS_PER_THREAD = 4;
 
     @Override
     public Set<SimilarityResult> findEntitiesLinksByNodeAndTripleStoreAndClass(String node, String tripleStore, String className, boolean searchInOtherNodes, Date deltaDate) {
-        Set<SimilarityResult> similarities = new HashSet<>();
-        Map<String, TripleObject> tripleObjects = cache.getTripleObjects(node,tripleStore,className);
+        // El trabajo lee las instancias de la clase de una generacion fija de la cache, aunque esta cambie mientras dura
+        try (CacheSnapshot snapshot = cache.pinSnapshot()) {
+            Map<String, TripleObject> tripleObjects = getTripleObjectsForJob(snapshot, node, tripleStore, className, deltaDate);
+            return findEntitiesLinksByNodeAndTripleStoreAndClass(snapshot, tripleObjects, node, tripleStore, className, searchInOtherNodes);
+        }
+    }
+
+    /*
+     * Instancias de la clase en la generacion fijada: todas, o solo las modificadas desde el delta (por el indice de
+     * fechas de la cache, corregido con los cambios posteriores a la generacion)
+     */
+    private Map<String, TripleObject> getTripleObjectsForJob(CacheSnapshot snapshot, String node, String tripleStore, String className, Date deltaDate) {
+        Map<String, TripleObject> tripleObjects;
         if (deltaDate!=null) {
-            tripleObjects = tripleObjects.entrySet()
-                    .stream()
-                    .filter(map -> map.getValue().getLastModification() >= deltaDate.getTime())
-                    .collect(Collectors.toMap(map -> map.getKey(), map -> map.getValue()));
+            tripleObjects = cache.getTripleObjectsModifiedSince(snapshot,node,tripleStore,className,deltaDate.getTime());
+            if (tripleObjects == null)
+                tripleObjects = new HashMap<>();
         } else {
-            if (tripleObjects.isEmpty())
+            tripleObjects = snapshot.getTripleObjects(node,tripleStore,className);
+            if (tripleObjects == null || tripleObjects.isEmpty())
                 throw new CustomDiscoveryException(String.format("Not found for [ Node: %s, TripleStore: %s, ClassName: %s]", node, tripleStore, className));
 
         }
+        return tripleObjects;
+    }
 
+    private Set<SimilarityResult> findEntitiesLinksByNodeAndTripleStoreAndClass(CacheSnapshot snapshot, Map<String, TripleObject> tripleObjects, String node, String tripleStore, String className, boolean searchInOtherNodes) {
         StatsHandler statsHandler = cache.getStatsHandler();
-        Map<String, Float> stats = statsHandler.generateMoreRelevantAttributesMap(node,tripleStore,className);
-        int counter = 0;
-        Set<String> foundsSimilarities = new HashSet<>();
-        for (TripleObject to1 : tripleObjects.values()) {
-            if (foundsSimilarities.contains(to1.getId())) {
-                ++counter;
-                continue;
+        StatsHandler.RelevantAttributes relevant = statsHandler.getRelevantAttributes(node,tripleStore,className);
+        List<TripleObject> entities = new ArrayList<>(tripleObjects.values());
+        /*
+         * Las entidades encontradas como similitud automatica de otra ya puntuada no se buscan. Para que el resultado sea
+         * el del recorrido secuencial sin depender del orden en el que terminan los hilos, se puntuan por olas de
+         * entidades consecutivas: antes de cada ola se quitan las descartadas por las olas anteriores, la ola se puntua en
+         * paralelo y sus resultados se aplican en orden, descartando las entidades que ya encontro una anterior. Una tarea
+         * que empieza cuando su entidad ya esta descartada por un resultado aplicado no busca. Cada entidad se puntua como
+         * mucho una vez y se cuenta una sola vez en el progreso. Con agrupacion, los grupos se forman durante el recorrido
+         * y se descartan las entidades que ya estan en uno: solo el representante de cada grupo busca
+         */
+        Set<SimilarityResult> similarities = new LinkedHashSet<>();
+        Set<String> skipped = ConcurrentHashMap.newKeySet();
+        SimilarityClustering clustering = dataSourcesConfiguration.getSimilarity().getClustering().isEnabled() ? new SimilarityClustering() : null;
+        Predicate<TripleObject> isSkipped = (clustering != null) ? clustering::isClustered : to -> skipped.contains(to.getId());
+        AtomicInteger counter = new AtomicInteger();
+        int waveSize = Math.max(1, scoringPool.getParallelism() * WAVE_TASKS_PER_THREAD);
+        for (int start = 0; start < entities.size(); start += waveSize) {
+            List<TripleObject> wave = new ArrayList<>(waveSize);
+            for (TripleObject to1 : entities.subList(start, Math.min(start + waveSize, entities.size()))) {
+                if (isSkipped.test(to1))
+                    counter.incrementAndGet();
+                else
+                    wave.add(to1);
+            }
+            List<Callable<SimilarityResult>> tasks = new ArrayList<>(wave.size());
+            for (TripleObject to1 : wave) {
+                tasks.add(() -> {
+                    if (isSkipped.test(to1)) {
+                        counter.incrementAndGet();
+                        return null;
+                    }
+                    return findSimilarityResult(snapshot, to1, relevant, searchInOtherNodes, counter, entities.size());
+                });
             }
-            List<TripleObject> matches = getSimilarEntitiesFromElasticsearch(to1, stats, searchInOtherNodes);
-            logger.info("For [Node: {}, TripleStore: {}, ClassName: {}], founds {} similarities in Elasticsearch for id: {}", to1.getTripleStore().getNode().getNodeName(), to1.getTripleStore().getName(), to1.getClassName(), matches.size(), to1.getId());
-            if (matches.size()>1) {
-                Map<String, List<EntitySimilarityObj>> similarity = calculateSimilarities(to1, stats, matches);
-                logger.info("Completed ({}/{}) --> For [Node: {}, TripleStore: {}, ClassName: {}], founds {} automatic similarities and {} manuals similarities in Elasticsearch for id: {}%n", ++counter, tripleObjects.values().size(), to1.getTripleStore().getNode().getNodeName(), to1.getTripleStore().getName(), to1.getClassName(), similarity.get(AUTOMATIC_KEY).size(), similarity.get(MANUAL_KEY).size(), to1.getId());
-                if (!similarity.get(MANUAL_KEY).isEmpty() || !similarity.get(AUTOMATIC_KEY).isEmpty()) {
-                    SimilarityResult sr = new SimilarityResult(to1);
-                    sr.addAutomatics(similarity.get(AUTOMATIC_KEY));
-                    sr.addManuals(similarity.get(MANUAL_KEY));
-                    similarities.add(sr);
-                    if (!sr.getAutomatic().isEmpty()) {
+            List<Future<SimilarityResult>> results = submitScoringTasks(tasks);
+            try {
+                for (int i = 0; i < wave.size(); i++) {
+                    if (isSkipped.test(wave.get(i)))
+                        continue; // Descartada por una entidad anterior de la misma ola
+                    SimilarityResult sr = getScoringResult(results.get(i));
+                    if (sr == null)
+                        continue;
+                    if (clustering != null) {
+                        clustering.add(sr);
+                    } else {
+                        similarities.add(sr);
                         for (EntitySimilarityObj entitySimilarityObj: sr.getAutomatic()) {
-                            foundsSimilarities.add(entitySimilarityObj.getTripleObject().getId());
+                            skipped.add(entitySimilarityObj.getTripleObject().getId());
                         }
                     }
                 }
-            } else {
-                logger.info("Completed ({}/{}) --> For [Node: {}, TripleStore: {}, ClassName: {}], founds {} automatic similarities and {} manuals similarities in Elasticsearch for id: {}%n", ++counter, tripleObjects.values().size(), to1.getTripleStore().getNode().getNodeName(), to1.getTripleStore().getName(), to1.getClassName(), 0, 0, to1.getId());
+            } catch (RuntimeException e) {
+                for (Future<SimilarityResult> result : results) {
+                    result.cancel(false);
+                }
+                throw e;
             }
         }
+        if (clustering != null) {
+            // Los duplicados encontrados desde distintas entidades se unen en un solo resultado por grupo
+            List<SimilarityResult> clusters = clustering.getClusters();
+            logger.info("For [Node: {}, TripleStore: {}, ClassName: {}], {} similarity results grouped in {} clusters", node, tripleStore, className, clustering.size(), clusters.size());
+            return new LinkedHashSet<>(clusters);
+        }
         return similarities;
     }
 
+    /*
+     * Busca los candidatos de la entidad y calcula sus similitudes. Devuelve null si no tiene ninguna
+     */
+    private SimilarityResult findSimilarityResult(CacheSnapshot snapshot, TripleObject to1, StatsHandler.RelevantAttributes relevant, boolean searchInOtherNodes, AtomicInteger counter, int total) {
+        List<TripleObject> matches = getSimilarEntities(snapshot, to1, relevant.getWeights(), searchInOtherNodes);
+        logger.info("For [Node: {}, TripleStore: {}, ClassName: {}], founds {} similarities in Elasticsearch for id: {}", to1.getTripleStore().getNode().getNodeName(), to1.getTripleStore().getName(), to1.getClassName(), matches.size(), to1.getId());
+        int completed = counter.incrementAndGet();
+        if (matches.size()>1) {
+            Map<String, List<EntitySimilarityObj>> similarity = calculateSimilarities(to1, relevant, matches);
+            logger.info("Completed ({}/{}) --> For [Node: {}, TripleStore: {}, ClassName: {}], founds {} automatic similarities and {} manuals similarities in Elasticsearch for id: {}%n", completed, total, to1.getTripleStore().getNode().getNodeName(), to1.getTripleStore().getName(), to1.getClassName(), similarity.get(AUTOMATIC_KEY).size(), similarity.get(MANUAL_KEY).size(), to1.getId());
+            if (!similarity.get(MANUAL_KEY).isEmpty() || !similarity.get(AUTOMATIC_KEY).isEmpty()) {
+                SimilarityResult sr = new SimilarityResult(to1);
+                sr.addAutomatics(similarity.get(AUTOMATIC_KEY));
+                sr.addManuals(similarity.get(MANUAL_KEY));
+                return sr;
+            }
+        } else {
+            logger.info("Completed ({}/{}) --> For [Node: {}, TripleStore: {}, ClassName: {}], founds {} automatic similarities and {} manuals similarities in Elasticsearch for id: {}%n", completed, total, to1.getTripleStore().getNode().getNodeName(), to1.getTripleStore().getName(), to1.getClassName(), 0, 0, to1.getId());
+        }
+        return null;
+    }
+
+    /*
+     * Envia las tareas al pool sin esperarlas, para aplicar cada resultado en cuanto estan los anteriores
+     */
+    private List<Future<SimilarityResult>> submitScoringTasks(List<Callable<SimilarityResult>> tasks) {
+        List<Future<SimilarityResult>> results = new ArrayList<>(tasks.size());
+        try {
+            for (Callable<SimilarityResult> task : tasks) {
+                results.add(scoringPool.submit(task));
+            }
+            return results;
+        } catch (RejectedExecutionException e) {
+            for (Future<SimilarityResult> result : results) {
+                result.cancel(false);
+            }
+            throw new CustomDiscoveryException("Similarity scoring pool is not accepting tasks", e);
+        }
+    }
+
+    private SimilarityResult getScoringResult(Future<SimilarityResult> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CustomDiscoveryException("Interrupted while scoring similarities", e);
+        } catch (ExecutionException e) {
+            throw new CustomDiscoveryException("Error scoring similarities: " + e.getCause().getMessage(), e.getCause());
+        }
+    }
+
     @Override
     public SimilarityResult findEntitiesLinksByNodeAndTripleStoreAndTripleObject(TripleObject to, boolean searchInOtherNodes) {
         Map<String, TripleObject> tripleObjects = cache.getTripleObjects(to.getTripleStore().getNode().getNodeName(),to.getTripleStore().getName(),to.getClassName());
@@ -102,11 +227,19 @@ public class EntitiesHandlerServiceImp implements EntitiesHandlerService {
             throw new CustomDiscoveryException(String.format("Not found for [ Node: %s, TripleStore: %s, ClassName: %s]",to.getTripleStore().getNode().getNodeName(),to.getTripleStore().getName(), to.getClassName()));
         StatsHandler statsHandler = cache.getStatsHandler();
 
-        Map<String, Float> stats = statsHandler.generateMoreRelevantAttributesMap(to.getTripleStore().getNode().getNodeName(),to.getTripleStore().getName(),to.getClassName());
-        List<TripleObject> matches = getSimilarEntitiesFromElasticsearch(to, stats, searchInOtherNodes);
+        StatsHandler.RelevantAttributes relevant = statsHandler.getRelevantAttributes(to.getTripleStore().getNode().getNodeName(),to.getTripleStore().getName(),to.getClassName());
+        List<TripleObject> matches;
+        if (isLshMode()) {
+            // Los candidatos del indice LSH son los de una generacion fija de la cache
+            try (CacheSnapshot snapshot = cache.pinSnapshot()) {
+                matches = getSimilarEntitiesFromLshIndex(snapshot, to, searchInOtherNodes);
+            }
+        } else {
+            matches = getSimilarEntitiesFromElasticsearch(to, relevant.getWeights(), searchInOtherNodes);
+        }
         logger.info("For [Node: {}, TripleStore: {}, ClassName: {}], founds {} similarities in Elasticsearch for id: {}", to.getTripleStore().getNode().getNodeName(), to.getTripleStore().getName(), to.getClassName(), matches.size(), to.getId());
         if (!matches.isEmpty()) {
-            Map<String, List<EntitySimilarityObj>> similarity = calculateSimilarities(to, stats, matches);
+            Map<String, List<EntitySimilarityObj>> similarity = calculateSimilarities(to, relevant, matches);
             logger.info("Completed --> For [Node: {}, TripleStore: {}, ClassName: {}], founds {} automatic similarities and {} manuals similarities in Elasticsearch for id: {} ",  to.getTripleStore().getNode().getNodeName(), to.getTripleStore().getName(), to.getClassName(), similarity.get(AUTOMATIC_KEY).size(), similarity.get(MANUAL_KEY).size(), to.getId());
             if (!similarity.get(MANUAL_KEY).isEmpty() || !similarity.get(AUTOMATIC_KEY).isEmpty()) {
                 SimilarityResult sr = new SimilarityResult(to);
@@ -132,18 +265,10 @@ public class EntitiesHandlerServiceImp implements EntitiesHandlerService {
     @Override
     public Set<SimilarityResult> findEntitiesLinksByNodeAndTripleStoreAndClassInLOD(String node, String tripleStore, String className, Date deltaDate) {
         Set<SimilarityResult> similarities = new HashSet<>();
-        Map<String, TripleObject> tripleObjects = cache.getTripleObjects(node,tripleStore,className);
-        if (deltaDate!=null) { // Filtrar por delta
-            tripleObjects = tripleObjects.entrySet()
-                    .stream()
-                    .filter(map -> map.getValue().getLastModification() >= deltaDate.getTime())
-                    .collect(Collectors.toMap(map -> map.getKey(), map -> map.getValue()));
-        } else {
-            if (tripleObjects.isEmpty())
-                throw new CustomDiscoveryException(String.format("Not found for [ Node: %s, TripleStore: %s, ClassName: %s]", node, tripleStore, className));
-
+        Map<TripleObject,List<TripleObjectLink>> links;
+        try (CacheSnapshot snapshot = cache.pinSnapshot()) {
+            links = handleRequestLodSearch(getTripleObjectsForJob(snapshot, node, tripleStore, className, deltaDate));
         }
-        Map<TripleObject,List<TripleObjectLink>> links = handleRequestLodSearch(tripleObjects);
         for (Map.Entry<TripleObject, List<TripleObjectLink>> linkEntry : links.entrySet()) { // TripleObject --> List<TripleObjectLink>
             Map<String, List<EntitySimilarityObj>> similarity = new HashMap<>();
             similarity.put(MANUAL_KEY,new ArrayList<>());
@@ -177,7 +302,7 @@ public class EntitiesHandlerServiceImp implements EntitiesHandlerService {
     }
     /*
             if (!matches.isEmpty()) {
-            Map<String, List<EntitySimilarityObj>> similarity = calculateSimilarities(to, stats, matches);
+            Map<String, List<EntitySimilarityObj>> similarity = calculateSimilarities(to, relevant, matches);
             logger.info("Completed --> For [Node: {}, TripleStore: {}, ClassName: {}], founds {} automatic similarities and {} manuals similarities in Elasticsearch for id: {} ",  to.getTripleStore().getNode().getNodeName(), to.getTripleStore().getName(), to.getClassName(), similarity.get(AUTOMATIC_KEY).size(), similarity.get(MANUAL_KEY).size(), to.getId());
             if (!similarity.get(MANUAL_KEY).isEmpty() || !similarity.get(AUTOMATIC_KEY).isEmpty()) {
                 SimilarityResult sr = new SimilarityResult(to);
@@ -286,22 +411,32 @@ public class EntitiesHandlerServiceImp implements EntitiesHandlerService {
         return responseFuture.toCompletableFuture();
     }
 
-    private Map<String, List<EntitySimilarityObj>>  calculateSimilarities(TripleObject to, Map<String, Float> stats, List<TripleObject> matches) {
+    private Map<String, List<EntitySimilarityObj>>  calculateSimilarities(TripleObject to, StatsHandler.RelevantAttributes relevant, List<TripleObject> matches) {
         Map<String, List<EntitySimilarityObj>> similarities = new HashMap<>();
         similarities.put(MANUAL_KEY,new ArrayList<>());
         similarities.put(AUTOMATIC_KEY,new ArrayList<>());
-        Map<String,Float> statsAux = new TreeMap<>();
-        for (TripleObject other: matches) {
-            if (stats.size()>1 && other.getAttributes().containsKey("id") && !to.getAttributes().containsKey("id")) {
-                for (Map.Entry<String, Float> statsEntry: stats.entrySet()) {
-                    if (!statsEntry.getKey().equalsIgnoreCase("id"))
-                        statsAux.put(statsEntry.getKey(),statsEntry.getValue());
-                }
-            } else {
-                statsAux = stats;
-            }
-
-            EntitySimilarityObj eso = EntityComparator.compare(to,other,statsAux);
+        // Con evaluacion acotada se deja de comparar en cuanto la entidad no puede alcanzar el umbral manual
+        float threshold = dataSourcesConfiguration.getThresholds().isBoundedEvaluation() ? (float) dataSourcesConfiguration.getThresholds().getManualThreshold() : 0f;
+        // El plan se compila una vez por version de las estadisticas de la clase. Si el candidato tiene id y la entidad no,
+        // el id no se tiene en cuenta: se usa el plan sin id, que tambien se compila una sola vez
+        ComparisonPlan plan = ComparisonPlan.of(to.getClassName(), relevant);
+        Map<String, Float> stats = relevant.getWeights();
+        boolean[] withoutId = new boolean[matches.size()];
+        List<TripleObject> matchesWithId = new ArrayList<>();
+        List<TripleObject> matchesWithoutId = new ArrayList<>();
+        for (int i = 0; i < matches.size(); i++) {
+            TripleObject other = matches.get(i);
+            withoutId[i] = stats.size()>1 && other.getAttributes().containsKey("id") && !to.getAttributes().containsKey("id");
+            if (withoutId[i])
+                matchesWithoutId.add(other);
+            else
+                matchesWithId.add(other);
+        }
+        // Cada grupo se compara de una vez, de forma que los valores de la entidad se preparan una sola vez por atributo
+        Iterator<EntitySimilarityObj> withIdIterator = plan.compare(to,matchesWithId,threshold).iterator();
+        Iterator<EntitySimilarityObj> withoutIdIterator = plan.withoutId().compare(to,matchesWithoutId,threshold).iterator();
+        for (int i = 0; i < matches.size(); i++) {
+            EntitySimilarityObj eso = withoutId[i] ? withoutIdIterator.next() : withIdIterator.next();
             if (eso.getSimilarity() >= dataSourcesConfiguration.getThresholds().getAutomaticThreshold()) {
                 similarities.get(AUTOMATIC_KEY).add(eso);
             } else if (eso.getSimilarity() >= dataSourcesConfiguration.getThresholds().getManualThreshold()) {
@@ -312,6 +447,40 @@ public class EntitiesHandlerServiceImp implements EntitiesHandlerService {
     }
 
 
+    /*
+     * Candidatos a comparar con la entidad, segun el modo configurado: consulta a Elasticsearch o indice LSH en memoria
+     */
+    private List<TripleObject> getSimilarEntities(CacheSnapshot snapshot, TripleObject to,Map<String, Float> stats, boolean otherNodes) {
+        if (isLshMode())
+            return getSimilarEntitiesFromLshIndex(snapshot, to, otherNodes);
+        else
+            return getSimilarEntitiesFromElasticsearch(to, stats, otherNodes);
+    }
+
+    private boolean isLshMode() {
+        return dataSourcesConfiguration.getSimilarity().getCandidates().getMode() == DataSourcesConfiguration.Similarity.Candidates.Mode.LSH;
+    }
+
+    /*
+     * Candidatos del indice LSH de la clase en el mismo triple store o, si se busca en otros nodos, en todos los que la
+     * tienen en la generacion fijada. Se devuelven los topK de mayor similitud estimada
+     */
+    private List<TripleObject> getSimilarEntitiesFromLshIndex(CacheSnapshot snapshot, TripleObject to, boolean otherNodes) {
+        DataSourcesConfiguration.Similarity.Candidates candidatesConfiguration = dataSourcesConfiguration.getSimilarity().getCandidates();
+        List<MinHashLshIndex.Candidate> candidates = new ArrayList<>();
+        String node = to.getTripleStore().getNode().getNodeName();
+        String tripleStore = to.getTripleStore().getName();
+        for (ClassKey key : snapshot.getClasses()) {
+            if (!Objects.equals(key.getClassName(), to.getClassName()) || (!otherNodes && !(Objects.equals(key.getNode(), node) && Objects.equals(key.getTripleStore(), tripleStore))))
+                continue;
+            MinHashLshIndex index = cache.getLshIndex(snapshot, key.getNode(), key.getTripleStore(), key.getClassName(), candidatesConfiguration.getBands(), candidatesConfiguration.getRows(), candidatesConfiguration.getShingleSize());
+            if (index != null)
+                candidates.addAll(index.query(to, candidatesConfiguration.getTopK()));
+        }
+        candidates.sort(Comparator.comparing(MinHashLshIndex.Candidate::getSimilarity).reversed());
+        return candidates.stream().limit(candidatesConfiguration.getTopK()).map(MinHashLshIndex.Candidate::getTripleObject).collect(Collectors.toList());
+    }
+
     private List<TripleObject> getSimilarEntitiesFromElasticsearch(TripleObject to,Map<String, Float> stats, boolean otherNodes) {
         List<String> moreRelevant = getMoreRelevantAttributes(to,stats);
         List<Pair<String,Object>> params = new ArrayList<>();
@@ -339,22 +508,24 @@ public class EntitiesHandlerServiceImp implements EntitiesHandlerService {
         return new ArrayList<>();
     }
 
+    /*
+     * stats viene de generateMoreRelevantAttributesMap, ya ordenado por relevancia: basta con quedarse con los atributos
+     * que tiene la entidad, sin volver a ordenar
+     */
     private List<String> getMoreRelevantAttributes(TripleObject to, Map<String, Float> stats) {
         List<String> moreRelevant = new ArrayList<>();
-        Map<String, Float> statsAux = new TreeMap<>();
+        List<Map.Entry<String, Float>> statsAux = new ArrayList<>();
         float sumStats = 0f;
         for (Map.Entry<String, Float> stat : stats.entrySet()) {
             if (to.hasAttribute(stat.getKey(),to.getAttributes())) {
                 sumStats += stat.getValue();
-                statsAux.put(String.valueOf(stat.getKey()),stat.getValue());
+                statsAux.add(stat);
             }
         }
 
-        statsAux = Utils.sortByValues(statsAux);
-
         float aggregateValue = 0f;
         int counter = 0;
-        for (Map.Entry<String, Float> stat : statsAux.entrySet()) {
+        for (Map.Entry<String, Float> stat : statsAux) {
             aggregateValue += (stat.getValue()/sumStats);
             counter += 1;
             moreRelevant.add(stat.getKey());
@@ -2,11 +2,12 @@ package es.um.asio.service.service.impl;
 
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
-import com.google.gson.JsonObject;
 import com.google.gson.reflect.TypeToken;
 import es.um.asio.service.model.TripleObject;
+import es.um.asio.service.repository.redis.RedisCodec;
 import es.um.asio.service.repository.redis.StringRedisRepository;
 import org.javatuples.Pair;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.scheduling.annotation.Async;
 import org.springframework.stereotype.Service;
 
@@ -18,30 +19,33 @@ import java.util.concurrent.CompletableFuture;
 @Service
 public class RedisServiceHelper {
 
+    private static final Type TRIPLE_MAP_TYPE = new TypeToken<Map<String, TripleObject>>() {}.getType();
+
+    @Autowired
+    RedisCodec redisCodec;
+
     Gson gson;
 
     @PostConstruct
     public void init() {
         gson = new GsonBuilder()
-                .setPrettyPrinting()
                 .excludeFieldsWithoutExposeAnnotation()
                 .create();
     }
 
+    /*
+     * Cada clase se codifica en un hilo del pool, directamente desde sus instancias y sin copias intermedias
+     */
     @Async("threadPoolTaskExecutor")
     public CompletableFuture<Boolean> setTripleMap(StringRedisRepository redisRepository, String key, Map<String, TripleObject> triplesMap) {
-        JsonObject jTriplesMap = gson.fromJson(gson.toJson(triplesMap),JsonObject.class);
-        redisRepository.add(key, jTriplesMap.toString());
+        redisRepository.addBytes(key, redisCodec.encode(gson, triplesMap, TRIPLE_MAP_TYPE));
         return CompletableFuture.completedFuture(true);
     }
 
     @Async("threadPoolTaskExecutor")
     public CompletableFuture<Pair<String,Map<String, TripleObject>>> getTripleMap(StringRedisRepository redisRepository, String key) {
-        String jMapStr = redisRepository.getBy(key);
-
-        Type type = new TypeToken< Map<String, TripleObject>>() {}.getType();
-        Map<String, TripleObject> triplesMap = gson.fromJson(jMapStr, type);
-
+        byte[] value = redisRepository.getBytesBy(key);
+        Map<String, TripleObject> triplesMap = redisCodec.decode(gson, value, TRIPLE_MAP_TYPE);
         return CompletableFuture.completedFuture(new Pair<>(key,triplesMap));
     }
 
@@ -3,8 +3,6 @@ package es.um.asio.service.service.impl;
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
 import com.google.gson.JsonArray;
-import com.google.gson.JsonObject;
-import com.google.gson.internal.LinkedTreeMap;
 import com.google.gson.reflect.TypeToken;
 import es.um.asio.service.config.DataSourcesConfiguration;
 import es.um.asio.service.model.TripleObject;
@@ -12,6 +10,7 @@ import es.um.asio.service.model.appstate.ApplicationState;
 import es.um.asio.service.model.relational.CacheRegistry;
 import es.um.asio.service.model.stats.EntityStats;
 import es.um.asio.service.model.stats.StatsHandler;
+import es.um.asio.service.repository.redis.RedisCodec;
 import es.um.asio.service.repository.redis.StringRedisRepository;
 import es.um.asio.service.repository.relational.CacheRegistryRepository;
 import es.um.asio.service.service.RedisService;
@@ -41,6 +40,9 @@ public class RedisServiceImp implements RedisService {
     @Autowired
     RedisServiceHelper redisServiceHelper;
 
+    @Autowired
+    RedisCodec redisCodec;
+
     @Autowired
     CacheRegistryRepository cacheRegistryRepository;
 
@@ -56,14 +58,20 @@ public class RedisServiceImp implements RedisService {
     private static final String ENTITY_STATS_KEY = "ENTITY_STATS_KEY";
     private static final String ELASTICSEARCH_KEY = " ELASTICSEARCH_KEY";
 
+    private static final Type FILTERED_TYPE = new TypeToken<Map<String, Map<String, Map<String, TripleObject>>>>() {}.getType();
+    private static final Type ENTITY_STATS_TYPE = new TypeToken<Map<String, Map<String, Map<String, EntityStats>>>>() {}.getType();
+    private static final Type TRIPLES_MAP_TYPE = new TypeToken<Map<String, Map<String, Map<String, Map<String, TripleObject>>>>>() {}.getType();
+
     private Gson gson;
+    // Las estadisticas se escriben con todos sus campos, no solo los anotados con @Expose
+    private Gson statsGson;
 
     @PostConstruct
     public void init() {
         gson = new GsonBuilder()
-                .setPrettyPrinting()
                 .excludeFieldsWithoutExposeAnnotation()
                 .create();
+        statsGson = new Gson();
     }
 
     @Override
@@ -171,13 +179,12 @@ public class RedisServiceImp implements RedisService {
         for (Map.Entry<String, Map<String, Map<String, Map<String, TripleObject>>>> nodeEntry: triplesMap.entrySet()) { // Node
             for (Map.Entry<String, Map<String, Map<String, TripleObject>>> tripleEntry: nodeEntry.getValue().entrySet()) { // TripleStore
                 for (Map.Entry<String, Map<String, TripleObject>> classEntry: tripleEntry.getValue().entrySet()) { // class
-                    Map<String, TripleObject> tMap = gson.fromJson(gson.toJson(classEntry.getValue()), LinkedTreeMap.class);
                     String key = String.format("%s:%s.%s.%s",TRIPLES_MAP_PREFIX,nodeEntry.getKey(),tripleEntry.getKey(),classEntry.getKey());
                     keys.add(key);
                     // DiscoveryApplication discoveryApplication, String node, String tripleStore, String className
                     CacheRegistry cacheRegistry = new CacheRegistry(applicationState.getApplication(),nodeEntry.getKey(),tripleEntry.getKey(),classEntry.getKey());
                     cacheRegistryRepository.save(cacheRegistry);
-                    futures.add(redisServiceHelper.setTripleMap(redisRepository,key,tMap));
+                    futures.add(redisServiceHelper.setTripleMap(redisRepository,key,classEntry.getValue()));
                 }
             }
         }
@@ -211,15 +218,10 @@ public class RedisServiceImp implements RedisService {
 
     @Override
     public Map<String, Map<String, Map<String, TripleObject>>> getFilteredTriples() {
-        String cachedTriplesMapStr = redisRepository.getBy(FILTERED_KEY);
-        if (cachedTriplesMapStr!=null) {
+        byte[] cachedTriplesMap = redisRepository.getBytesBy(FILTERED_KEY);
+        if (cachedTriplesMap!=null) {
             try {
-                Gson gsonInner = new GsonBuilder()
-                        .setPrettyPrinting()
-                        .excludeFieldsWithoutExposeAnnotation()
-                        .create();
-                Type type = new TypeToken<Map<String, Map<String, Map<String, TripleObject>>>>() {}.getType();
-                return gsonInner.fromJson(cachedTriplesMapStr, type);
+                return redisCodec.decode(gson, cachedTriplesMap, FILTERED_TYPE);
             } catch (Exception e) {
                 return new HashMap<>();
             }
@@ -229,25 +231,15 @@ public class RedisServiceImp implements RedisService {
 
     @Override
     public void setFilteredTriples(Map<String, Map<String, Map<String, TripleObject>>> filteredTriples) {
-        Gson gsonInner = new GsonBuilder()
-                .setPrettyPrinting()
-                .excludeFieldsWithoutExposeAnnotation()
-                .create();
-        JsonObject jTriplesMap = gsonInner.fromJson(gsonInner.toJson(filteredTriples),JsonObject.class);
-        redisRepository.add(FILTERED_KEY,jTriplesMap.toString());
+        redisRepository.addBytes(FILTERED_KEY, redisCodec.encode(gson, filteredTriples, FILTERED_TYPE));
     }
 
     @Override
     public StatsHandler getEntityStats() {
-        String entityStatsStr = redisRepository.getBy(ENTITY_STATS_KEY);
-        if (entityStatsStr!=null) {
+        byte[] entityStats = redisRepository.getBytesBy(ENTITY_STATS_KEY);
+        if (entityStats!=null) {
             try {
-                Gson gsonInner = new GsonBuilder()
-                        .setPrettyPrinting()
-                        .excludeFieldsWithoutExposeAnnotation()
-                        .create();
-                Type type = new TypeToken<Map<String ,Map<String, Map<String, EntityStats>>>>() {}.getType();
-                Map<String ,Map<String, Map<String,EntityStats>>> stats = gsonInner.fromJson(entityStatsStr, type);
+                Map<String ,Map<String, Map<String,EntityStats>>> stats = redisCodec.decode(gson, entityStats, ENTITY_STATS_TYPE);
                 StatsHandler statsHandler = new StatsHandler();
                 statsHandler.setStats(stats);
                 return statsHandler;
@@ -260,23 +252,16 @@ public class RedisServiceImp implements RedisService {
 
     @Override
     public void setEntityStats(StatsHandler statsHandler) {
-        Gson gsonInner = new Gson();
         Map<String, Map<String, Map<String, EntityStats>>> stats = statsHandler.getStats();
-        JsonObject jEntityStats = gsonInner.fromJson(gsonInner.toJson(stats),JsonObject.class);
-        redisRepository.add(ENTITY_STATS_KEY,jEntityStats.toString());
+        redisRepository.addBytes(ENTITY_STATS_KEY, redisCodec.encode(statsGson, stats, ENTITY_STATS_TYPE));
     }
 
     @Override
     public Map<String, Map<String, Map<String, Map<String, TripleObject>>>> getElasticSearchTriplesMap() {
-        String cachedElasticSearchTriplesMapStr = redisRepository.getBy(ELASTICSEARCH_KEY);
-        if (cachedElasticSearchTriplesMapStr!=null) {
+        byte[] cachedElasticSearchTriplesMap = redisRepository.getBytesBy(ELASTICSEARCH_KEY);
+        if (cachedElasticSearchTriplesMap!=null) {
             try {
-                Gson gsonInner = new GsonBuilder()
-                        .setPrettyPrinting()
-                        .excludeFieldsWithoutExposeAnnotation()
-                        .create();
-                Type type = new TypeToken<Map<String, Map<String, Map<String, Map<String, TripleObject>>>>>() {}.getType();
-                return gsonInner.fromJson(cachedElasticSearchTriplesMapStr, type);
+                return redisCodec.decode(gson, cachedElasticSearchTriplesMap, TRIPLES_MAP_TYPE);
             } catch (Exception e) {
                 return new HashMap<>();
             }
@@ -286,12 +271,7 @@ public class RedisServiceImp implements RedisService {
 
     @Override
     public void setElasticSearchTriplesMap(Map<String, Map<String, Map<String, Map<String, TripleObject>>>> elasticSearchTriplesMap) {
-        Gson gsonInner = new GsonBuilder()
-                .setPrettyPrinting()
-                .excludeFieldsWithoutExposeAnnotation()
-                .create();
-        JsonObject jElasticSearchTriplesMap = gsonInner.fromJson(gsonInner.toJson(elasticSearchTriplesMap),JsonObject.class);
-        redisRepository.add(ELASTICSEARCH_KEY,jElasticSearchTriplesMap.toString());
+        redisRepository.addBytes(ELASTICSEARCH_KEY, redisCodec.encode(gson, elasticSearchTriplesMap, TRIPLES_MAP_TYPE));
     }
 }
 
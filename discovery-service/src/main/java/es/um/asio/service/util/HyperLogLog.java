@@ -0,0 +1,195 @@
+package es.um.asio.service.util;
+
+/**
+ * HyperLogLog estimate of the number of distinct values of a stream, in bounded memory.
+ * <p>
+ * Values are hashed to 64 bits. The first {@code 2^precision / 16} distinct hashes are kept in a sparse open-addressing
+ * table, so small attributes are counted exactly and take little memory; beyond that the sketch switches to
+ * {@code 2^precision} one-byte registers, with a relative standard error of {@code 1.04 / sqrt(2^precision)} (0.8% with
+ * the default precision of 14, 16 KB per sketch). Sketches of the same precision can be merged, and the result is the
+ * sketch of the union of both streams, which is what a parallel build needs. The hash is fixed, so the same values always
+ * give the same estimate. Not thread safe.
+ */
+public class HyperLogLog {
+
+    public static final int DEFAULT_PRECISION = 14;
+    public static final int MIN_PRECISION = 4;
+    public static final int MAX_PRECISION = 18;
+
+    private static final int INITIAL_SPARSE_CAPACITY = 16;
+
+    private int precision;
+    // Tabla de hashes mientras hay pocos valores distintos (0 es hueco libre), null una vez se pasa a registros
+    private long[] sparse;
+    private int sparseSize;
+    private byte[] registers;
+
+    public HyperLogLog() {
+        this(DEFAULT_PRECISION);
+    }
+
+    public HyperLogLog(int precision) {
+        if (precision < MIN_PRECISION || precision > MAX_PRECISION)
+            throw new IllegalArgumentException(String.format("Invalid HyperLogLog precision [precision: %d, min: %d, max: %d]", precision, MIN_PRECISION, MAX_PRECISION));
+        this.precision = precision;
+        this.sparse = new long[INITIAL_SPARSE_CAPACITY];
+    }
+
+    public int getPrecision() {
+        return precision;
+    }
+
+    /*
+     * Error relativo tipico de la estimacion con registros
+     */
+    public double getStandardError() {
+        return 1.04d / Math.sqrt(1 << precision);
+    }
+
+    public boolean isSparse() {
+        return registers == null;
+    }
+
+    public void add(Object value) {
+        if (value != null)
+            addHash(hash(value));
+    }
+
+    public void addHash(long hash) {
+        if (registers != null)
+            addToRegisters(hash);
+        else if (addToSparse(hash) && sparseSize * 2 > sparse.length)
+            growSparse();
+    }
+
+    /*
+     * Numero estimado de valores distintos. Exacto (salvo colisiones de hash) mientras la tabla es dispersa
+     */
+    public long cardinality() {
+        if (registers == null)
+            return sparseSize;
+        int m = registers.length;
+        double sum = 0d;
+        int zeros = 0;
+        for (byte register : registers) {
+            sum += 1d / (1L << register);
+            if (register == 0)
+                zeros++;
+        }
+        double estimate = alpha(m) * m * m / sum;
+        // Rango pequeño: linear counting sobre los registros vacios
+        if (estimate <= 2.5d * m && zeros > 0)
+            estimate = m * Math.log((double) m / zeros);
+        return Math.round(estimate);
+    }
+
+    /*
+     * Añade los valores del otro sketch, que debe tener la misma precision
+     */
+    public void merge(HyperLogLog other) {
+        if (other.precision != precision)
+            throw new IllegalArgumentException(String.format("Can not merge HyperLogLog of different precision [precision: %d, other: %d]", precision, other.precision));
+        if (other.registers == null) {
+            for (long hash : other.sparse) {
+                if (hash != 0L)
+                    addHash(hash);
+            }
+            return;
+        }
+        if (registers == null)
+            toRegisters();
+        for (int i = 0; i < registers.length; i++) {
+            if (other.registers[i] > registers[i])
+                registers[i] = other.registers[i];
+        }
+    }
+
+    public long getMemoryBytes() {
+        return (registers != null) ? registers.length : (long) sparse.length * Long.BYTES;
+    }
+
+    /*
+     * Hash de 64 bits del valor. Como en un Set, valores iguales dan el mismo hash y valores de distinta clase
+     * (1 y "1") se cuentan por separado
+     */
+    public static long hash(Object value) {
+        long h;
+        if (value instanceof CharSequence) {
+            CharSequence s = (CharSequence) value;
+            h = 0xCBF29CE484222325L;
+            for (int i = 0; i < s.length(); i++) {
+                h = (h ^ s.charAt(i)) * 0x100000001B3L;
+            }
+        } else {
+            h = value.getClass().getName().hashCode() * 0x9E3779B97F4A7C15L ^ value.hashCode();
+        }
+        h = mix(h);
+        return (h == 0L) ? 1L : h;
+    }
+
+    private boolean addToSparse(long hash) {
+        int mask = sparse.length - 1;
+        int i = (int) (hash ^ (hash >>> 32)) & mask;
+        while (sparse[i] != 0L) {
+            if (sparse[i] == hash)
+                return false;
+            i = (i + 1) & mask;
+        }
+        sparse[i] = hash;
+        sparseSize++;
+        return true;
+    }
+
+    private void growSparse() {
+        int capacity = sparse.length * 2;
+        // Con mas de 2^precision / 16 valores la tabla ocuparia lo mismo que los registros
+        if ((long) capacity * Long.BYTES > (1L << precision)) {
+            toRegisters();
+            return;
+        }
+        long[] old = sparse;
+        sparse = new long[capacity];
+        sparseSize = 0;
+        for (long hash : old) {
+            if (hash != 0L)
+                addToSparse(hash);
+        }
+    }
+
+    private void toRegisters() {
+        registers = new byte[1 << precision];
+        for (long hash : sparse) {
+            if (hash != 0L)
+                addToRegisters(hash);
+        }
+        sparse = null;
+        sparseSize = 0;
+    }
+
+    private void addToRegisters(long hash) {
+        int index = (int) (hash >>> (64 - precision));
+        // Posicion del primer 1 en los bits restantes (acotada por el bit centinela)
+        byte rank = (byte) (Long.numberOfLeadingZeros((hash << precision) | (1L << (precision - 1))) + 1);
+        if (rank > registers[index])
+            registers[index] = rank;
+    }
+
+    private static double alpha(int m) {
+        switch (m) {
+            case 16:
+                return 0.673d;
+            case 32:
+                return 0.697d;
+            case 64:
+                return 0.709d;
+            default:
+                return 0.7213d / (1d + 1.079d / m);
+        }
+    }
+
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+}
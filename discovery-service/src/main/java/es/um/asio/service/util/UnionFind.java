@@ -0,0 +1,87 @@
+package es.um.asio.service.util;
+
+import java.util.*;
+
+/**
+ * Disjoint sets of elements (union-find) with path halving.
+ * <p>
+ * Elements are numbered in the order they are added and the representative of a set is always its first element, so
+ * the sets and their representatives do not depend on the order of the unions.
+ */
+public class UnionFind<T> {
+
+    private final Map<T, Integer> indexes = new HashMap<>();
+    private final List<T> elements = new ArrayList<>();
+    private int[] parent = new int[16];
+
+    /*
+     * Añade el elemento, si no estaba, como conjunto propio. Devuelve su posicion
+     */
+    public int add(T element) {
+        Integer index = indexes.get(element);
+        if (index != null)
+            return index;
+        int i = elements.size();
+        if (i == parent.length)
+            parent = Arrays.copyOf(parent, i * 2);
+        parent[i] = i;
+        elements.add(element);
+        indexes.put(element, i);
+        return i;
+    }
+
+    public boolean contains(T element) {
+        return indexes.containsKey(element);
+    }
+
+    public int size() {
+        return elements.size();
+    }
+
+    /*
+     * Representante del conjunto del elemento (el primero que se añadio), o null si no se ha añadido
+     */
+    public T find(T element) {
+        Integer index = indexes.get(element);
+        return (index == null) ? null : elements.get(root(index));
+    }
+
+    /*
+     * Une los conjuntos de ambos elementos, añadiendolos si hace falta. Devuelve false si ya estaban en el mismo
+     */
+    public boolean union(T a, T b) {
+        int rootA = root(add(a));
+        int rootB = root(add(b));
+        if (rootA == rootB)
+            return false;
+        if (rootA < rootB)
+            parent[rootB] = rootA;
+        else
+            parent[rootA] = rootB;
+        return true;
+    }
+
+    /*
+     * Conjuntos por representante, en el orden en el que se añadieron sus representantes y con sus elementos en el
+     * orden en el que se añadieron
+     */
+    public Map<T, List<T>> groups() {
+        Map<Integer, List<T>> byRoot = new TreeMap<>();
+        for (int i = 0; i < elements.size(); i++) {
+            byRoot.computeIfAbsent(root(i), k -> new ArrayList<>()).add(elements.get(i));
+        }
+        Map<T, List<T>> groups = new LinkedHashMap<>();
+        for (Map.Entry<Integer, List<T>> group : byRoot.entrySet()) {
+            groups.put(elements.get(group.getKey()), group.getValue());
+        }
+        return groups;
+    }
+
+    private int root(int i) {
+        while (parent[i] != i) {
+            parent[i] = parent[parent[i]];
+            i = parent[i];
+        }
+        return i;
+    }
+}
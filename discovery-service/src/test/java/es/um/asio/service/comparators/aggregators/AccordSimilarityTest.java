@@ -2,6 +2,7 @@ package es.um.asio.service.comparators.aggregators;
 
 import data.Stats;
 import data.SyntheticData;
+import es.um.asio.service.comparators.strings.Similarity;
 import org.javatuples.Pair;
 import org.junit.Assert;
 import org.junit.jupiter.api.BeforeEach;
@@ -9,7 +10,14 @@ import org.junit.jupiter.api.Test;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 class AccordSimilarityTest {
     private final Logger logger = LoggerFactory.getLogger(AccordSimilarityTest.class);
@@ -87,6 +95,77 @@ class AccordSimilarityTest {
         Assert.assertTrue( stats.getRatioForRange(0.65f) < .05f);
     }
 
+    @Test
+    void boundedSimilarityIsIdenticalAboveThreshold() {
+        float threshold = 0.7f;
+        for (List<Pair<String,String>> dataCollection : Arrays.asList(equals, shuffled, changedCharacters, truncatedCharacter, different)) {
+            for (Pair<String,String> t : dataCollection) {
+                float similarity = AccordSimilarity.calculateAccordSimilarity(t.getValue0(), t.getValue1());
+                float bounded = AccordSimilarity.calculateAccordSimilarity(t.getValue0(), t.getValue1(), threshold);
+                if (similarity >= threshold)
+                    Assert.assertTrue(similarity == bounded);
+                else
+                    Assert.assertTrue(bounded < threshold && bounded >= similarity);
+            }
+        }
+    }
+
+    /*
+     * Los algoritmos se crean una vez al cargar la clase y se comparten sin poder modificarse entre los hilos
+     */
+    @Test
+    void algorithmsAreSharedAndUnmodifiable() throws Exception {
+        List<Map<String, Similarity>> seen = Collections.synchronizedList(new ArrayList<>());
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < 32; i++) {
+                futures.add(executor.submit(() -> seen.add(AccordSimilarity.getAlgorithms())));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+        for (Map<String, Similarity> algorithms : seen) {
+            Assert.assertSame(AccordSimilarity.getAlgorithms(), algorithms);
+        }
+        Assert.assertEquals(14, AccordSimilarity.getAlgorithms().size());
+        try {
+            AccordSimilarity.getAlgorithms().put("other", AccordSimilarity.getAlgorithms().get("JaccardSimilarityImp"));
+            Assert.fail();
+        } catch (UnsupportedOperationException e) {
+            Assert.assertFalse(AccordSimilarity.getAlgorithms().containsKey("other"));
+        }
+    }
+
+    @Test
+    void batchSimilarityIsIdenticalToPairwise() {
+        for (List<Pair<String,String>> dataCollection : Arrays.asList(shuffled, changedCharacters, allChanges)) {
+            List<String> candidates = new ArrayList<>();
+            for (Pair<String,String> t : dataCollection.subList(0, Math.min(20, dataCollection.size()))) {
+                candidates.add(t.getValue1());
+            }
+            float[] out = new float[candidates.size()];
+            float[] thresholds = new float[candidates.size()];
+            Arrays.fill(thresholds, 0.7f);
+            float[] boundedOut = new float[candidates.size()];
+            for (Pair<String,String> t : dataCollection.subList(0, Math.min(5, dataCollection.size()))) {
+                AccordSimilarity.calculateAccordSimilarity(t.getValue0(), candidates, out);
+                AccordSimilarity.calculateAccordSimilarity(t.getValue0(), candidates, thresholds, boundedOut);
+                for (int i = 0; i < candidates.size(); i++) {
+                    float similarity = AccordSimilarity.calculateAccordSimilarity(t.getValue0(), candidates.get(i));
+                    Assert.assertTrue(similarity == out[i]);
+                    if (similarity >= 0.7f)
+                        Assert.assertTrue(similarity == boundedOut[i]);
+                    else
+                        Assert.assertTrue(boundedOut[i] < 0.7f);
+                }
+            }
+        }
+    }
+
     public Stats evaluateSimilarityAccord(List<Pair<String,String>> dataCollection) {
         Stats stats = new Stats();
         for (Pair<String,String> t : dataCollection) {
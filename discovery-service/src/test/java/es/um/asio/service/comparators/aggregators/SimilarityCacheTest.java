@@ -0,0 +1,58 @@
+package es.um.asio.service.comparators.aggregators;
+
+import org.junit.Assert;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class SimilarityCacheTest {
+
+    @BeforeEach
+    void setUp() {
+        SimilarityCache.configure(true, SimilarityCache.DEFAULT_MAXIMUM_SIZE);
+    }
+
+    @AfterEach
+    void tearDown() {
+        SimilarityCache.configure(true, SimilarityCache.DEFAULT_MAXIMUM_SIZE);
+    }
+
+    @Test
+    void keyIsOrderInsensitive() {
+        SimilarityCache.put(SimilarityEnsemble.FULL, "universidad de murcia", "murcia", 0.5f);
+        Assert.assertEquals(0.5f, SimilarityCache.get(SimilarityEnsemble.FULL, "murcia", "universidad de murcia"), 0f);
+        Assert.assertEquals(0.5f, SimilarityCache.get(SimilarityEnsemble.FULL, "universidad de murcia", "murcia"), 0f);
+    }
+
+    @Test
+    void keyDependsOnProfile() {
+        SimilarityCache.put(SimilarityEnsemble.FULL, "universidad de murcia", "murcia", 0.5f);
+        Assert.assertNull(SimilarityCache.get(SimilarityEnsemble.FAST, "universidad de murcia", "murcia"));
+    }
+
+    @Test
+    void accordSimilarityIsCached() {
+        float similarity = AccordSimilarity.calculateAccordSimilarity("Daniel Ruiz Santamaria", "Ruiz Santamaría, D.");
+        long hits = SimilarityCache.getCache().stats().hitCount();
+        Assert.assertTrue(similarity == AccordSimilarity.calculateAccordSimilarity("Ruiz Santamaría, D.", "Daniel Ruiz Santamaria"));
+        Assert.assertEquals(hits + 1, SimilarityCache.getCache().stats().hitCount());
+    }
+
+    @Test
+    void sizeIsBounded() {
+        SimilarityCache.configure(true, 10);
+        for (int i = 0; i < 100; i++) {
+            SimilarityCache.put(SimilarityEnsemble.FULL, "a" + i, "b" + i, 1f);
+        }
+        SimilarityCache.getCache().cleanUp();
+        Assert.assertTrue(SimilarityCache.getCache().estimatedSize() <= 10);
+        Assert.assertTrue(SimilarityCache.getCache().stats().evictionCount() >= 90);
+    }
+
+    @Test
+    void disabledCacheReturnsNothing() {
+        SimilarityCache.configure(false, SimilarityCache.DEFAULT_MAXIMUM_SIZE);
+        SimilarityCache.put(SimilarityEnsemble.FULL, "a", "b", 1f);
+        Assert.assertNull(SimilarityCache.get(SimilarityEnsemble.FULL, "a", "b"));
+    }
+}
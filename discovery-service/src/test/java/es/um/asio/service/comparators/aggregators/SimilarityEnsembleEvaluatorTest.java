@@ -0,0 +1,46 @@
+package es.um.asio.service.comparators.aggregators;
+
+import data.SyntheticData;
+import org.javatuples.Pair;
+import org.junit.Assert;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+class SimilarityEnsembleEvaluatorTest {
+    private final Logger logger = LoggerFactory.getLogger(SimilarityEnsembleEvaluatorTest.class);
+    Map<String, List<Pair<String,String>>> positives;
+    Map<String, List<Pair<String,String>>> negatives;
+
+    @BeforeEach
+    void setUp() {
+        SyntheticData sd = SyntheticData.getInstance();
+        positives = new LinkedHashMap<>();
+        positives.put("equals", sd.getEquals());
+        positives.put("shuffled", sd.getShuffled());
+        positives.put("changedCharacters", sd.getChangedCharacters());
+        positives.put("truncatedCharacter", sd.getTruncatedCharacter());
+        negatives = new LinkedHashMap<>();
+        negatives.put("different", sd.getDifferent());
+    }
+
+    @Test
+    void evaluateProfiles() {
+        SimilarityEnsembleEvaluator.Report full = SimilarityEnsembleEvaluator.evaluate(SimilarityEnsemble.full(), positives, negatives, 0.7f);
+        SimilarityEnsembleEvaluator.Report fast = SimilarityEnsembleEvaluator.evaluate(SimilarityEnsemble.fast(), positives, negatives, 0.7f);
+        logger.info(full.toString());
+        logger.info(fast.toString());
+        for (SimilarityEnsembleEvaluator.Report report : new SimilarityEnsembleEvaluator.Report[] { full, fast }) {
+            Assert.assertEquals(5000, report.getPairs());
+            Assert.assertEquals(1.0, report.getSets().get(0).getAcceptedRatio(), 0);
+            Assert.assertTrue(report.getPrecision() > 0.95);
+            Assert.assertTrue(report.getRecall() > 0.8);
+            Assert.assertTrue(report.getThroughput() > 0);
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package es.um.asio.service.comparators.aggregators;
+
+import es.um.asio.service.comparators.strings.PreparedString;
+import org.junit.Assert;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+
+class SimilarityProfilesTest {
+
+    @AfterEach
+    void tearDown() {
+        SimilarityProfiles.reset();
+    }
+
+    @Test
+    void fullProfileIsTheAccordSimilarity() {
+        Assert.assertEquals(SimilarityEnsemble.FULL, SimilarityProfiles.getDefault().getName());
+        Assert.assertEquals(AccordSimilarity.getAlgorithms().size(), SimilarityProfiles.getDefault().getMetricNames().size());
+        Assert.assertEquals(3, SimilarityProfiles.get(SimilarityEnsemble.FAST).getMetricNames().size());
+    }
+
+    @Test
+    void resolvePrecedence() {
+        Map<String, String> classProfiles = new HashMap<>();
+        classProfiles.put("Person", SimilarityEnsemble.FAST);
+        Map<String, Map<String, String>> attributeProfiles = new HashMap<>();
+        attributeProfiles.put("Person", Collections.singletonMap("name", SimilarityEnsemble.FULL));
+        SimilarityProfiles.configure(null, SimilarityEnsemble.FULL, classProfiles, attributeProfiles);
+        Assert.assertEquals(SimilarityEnsemble.FULL, SimilarityProfiles.resolve("Person", "name").getName());
+        Assert.assertEquals(SimilarityEnsemble.FAST, SimilarityProfiles.resolve("Person", "surname").getName());
+        Assert.assertEquals(SimilarityEnsemble.FULL, SimilarityProfiles.resolve("Project", "name").getName());
+        Assert.assertEquals(SimilarityEnsemble.FULL, SimilarityProfiles.resolve(null, null).getName());
+    }
+
+    @Test
+    void customProfile() {
+        Map<String, Float> metrics = new LinkedHashMap<>();
+        metrics.put("JaroWinklerSimilarityImp", 3f);
+        metrics.put("JaccardSimilarityImp", 1f);
+        SimilarityEnsemble custom = new SimilarityEnsemble("custom", SimilarityEnsemble.Aggregation.WEIGHTED_MEAN, metrics);
+        SimilarityProfiles.configure(Collections.singletonList(custom), "custom", null, null);
+        PreparedString a = PreparedString.of("daniel ruiz");
+        PreparedString b = PreparedString.of("daniel ruis");
+        float expected = (3f * AccordSimilarity.getAlgorithms().get("JaroWinklerSimilarityImp").calculateSimilarity(a, b)
+                + AccordSimilarity.getAlgorithms().get("JaccardSimilarityImp").calculateSimilarity(a, b)) / 4f;
+        Assert.assertEquals(expected, SimilarityProfiles.getDefault().calculateSimilarity(a, b), 1e-6f);
+    }
+
+    @Test
+    void unknownProfileOrMetricIsRejected() {
+        try {
+            SimilarityProfiles.configure(null, "unknown", null, null);
+            Assert.fail();
+        } catch (IllegalArgumentException e) {
+            Assert.assertEquals(SimilarityEnsemble.FULL, SimilarityProfiles.getDefault().getName());
+        }
+        try {
+            new SimilarityEnsemble("wrong", SimilarityEnsemble.Aggregation.WEIGHTED_MEAN, Collections.singletonMap("UnknownSimilarityImp", 1f));
+            Assert.fail();
+        } catch (IllegalArgumentException e) {
+            Assert.assertTrue(e.getMessage().contains("UnknownSimilarityImp"));
+        }
+    }
+
+    @Test
+    void boundedEvaluationIsIdenticalAboveThreshold() {
+        SimilarityEnsemble fast = SimilarityProfiles.get(SimilarityEnsemble.FAST);
+        String[][] pairs = {{"universidad de murcia", "universidad murcia"}, {"daniel ruiz santamaria", "ruiz santamaria daniel"}, {"murcia", "cartagena"}};
+        for (String[] pair : pairs) {
+            PreparedString a = PreparedString.of(pair[0]);
+            PreparedString b = PreparedString.of(pair[1]);
+            float similarity = fast.calculateSimilarity(a, b);
+            float bounded = fast.calculateSimilarity(a, b, 0.7f);
+            if (similarity >= 0.7f)
+                Assert.assertTrue(similarity == bounded);
+            else
+                Assert.assertTrue(bounded < 0.7f && bounded >= similarity);
+        }
+    }
+}
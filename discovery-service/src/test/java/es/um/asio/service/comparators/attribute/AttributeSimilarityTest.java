@@ -1,15 +1,15 @@
 package es.um.asio.service.comparators.attribute;
 
+import es.um.asio.service.comparators.aggregators.SimilarityProfiles;
+import es.um.asio.service.comparators.entities.SimilarityValue;
+import es.um.asio.service.model.TypedValue;
 import org.apache.commons.lang3.RandomStringUtils;
 import org.junit.Assert;
 import org.junit.jupiter.api.Test;
 import org.junit.runner.RunWith;
 import org.springframework.test.context.junit4.SpringRunner;
 
-import java.util.ArrayList;
-import java.util.Date;
-import java.util.List;
-import java.util.Random;
+import java.util.*;
 
 @RunWith(SpringRunner.class)
 class AttributeSimilarityTest {
@@ -149,4 +149,28 @@ class AttributeSimilarityTest {
     void getClassOffAttributes() {
         Assert.assertTrue(AttributeSimilarity.getClassOffAttributes(new Random().nextInt(),new Random().nextInt()).equals("int"));
     }
-}
\ No newline at end of file
+
+    @Test
+    void compareTypedIsIdenticalToCompare() {
+        List<Object> values = Arrays.asList("5", "3000000000", "12.25", "12.", "true", "no", "2020-01-15", "15/01/2020", 7, 12.5, RandomStringUtils.randomAlphabetic(10), RandomStringUtils.randomAlphabetic(10));
+        for (Object v1 : values) {
+            for (Object v2 : values) {
+                List<Object> l1 = Collections.singletonList(v1);
+                List<Object> l2 = Collections.singletonList(v2);
+                SimilarityValue expected = AttributeSimilarity.compare(l1, l2, 0.5f);
+                SimilarityValue typed = AttributeSimilarity.compareTyped(TypedValue.of(l1), TypedValue.of(l2), 0.5f, 0f, SimilarityProfiles.getDefault());
+                Assert.assertEquals(expected.getSimilarity(), typed.getSimilarity(), 0f);
+                Assert.assertEquals(expected.getWeightedSimilarity(), typed.getWeightedSimilarity(), 0f);
+            }
+        }
+    }
+
+    @Test
+    void compareListDoesNotModifyValues() {
+        List<Object> l1 = new ArrayList<>(Arrays.asList("c", "a", "b"));
+        List<Object> l2 = new ArrayList<>(Arrays.asList("b", "c"));
+        AttributeSimilarity.compareList(l1, l2, 1f);
+        Assert.assertEquals(Arrays.asList("c", "a", "b"), l1);
+        Assert.assertEquals(Arrays.asList("b", "c"), l2);
+    }
+}
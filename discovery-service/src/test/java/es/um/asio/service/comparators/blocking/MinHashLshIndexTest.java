@@ -0,0 +1,134 @@
+package es.um.asio.service.comparators.blocking;
+
+import com.google.gson.internal.LinkedTreeMap;
+import es.um.asio.service.model.TripleObject;
+import org.apache.commons.lang3.RandomStringUtils;
+import org.junit.Assert;
+import org.junit.jupiter.api.Test;
+import org.junit.runner.RunWith;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import java.util.*;
+
+@RunWith(SpringRunner.class)
+class MinHashLshIndexTest {
+
+    private static final int ENTITIES = 200;
+
+    @Test
+    void queryFindsNearDuplicates() {
+        List<TripleObject> originals = new ArrayList<>();
+        for (int i = 0; i < ENTITIES; i++) {
+            originals.add(tripleObject(String.valueOf(i), RandomStringUtils.randomAlphabetic(20), RandomStringUtils.randomAlphabetic(30), String.valueOf(1900 + i)));
+        }
+        MinHashLshIndex index = MinHashLshIndex.build(originals);
+        int found = 0;
+        for (int i = 0; i < ENTITIES; i++) {
+            TripleObject original = originals.get(i);
+            String name = original.getAttributes().get("name").toString();
+            String surname = original.getAttributes().get("surname").toString();
+            // Un caracter cambiado en cada cadena
+            TripleObject modified = tripleObject("q" + i, name.substring(0, 10) + "#" + name.substring(11), surname.substring(0, 15) + "#" + surname.substring(16), original.getAttributes().get("year").toString());
+            List<MinHashLshIndex.Candidate> candidates = index.query(modified, 5);
+            if (!candidates.isEmpty() && candidates.get(0).getTripleObject() == original)
+                found++;
+        }
+        Assert.assertTrue(found >= ENTITIES * 0.95);
+    }
+
+    @Test
+    void queryExcludesItselfAndIsSorted() {
+        List<TripleObject> entities = new ArrayList<>();
+        String name = RandomStringUtils.randomAlphabetic(20);
+        for (int i = 0; i < 10; i++) {
+            entities.add(tripleObject(String.valueOf(i), name.substring(0, 10 + i), "surname", "2000"));
+        }
+        MinHashLshIndex index = MinHashLshIndex.build(entities);
+        List<MinHashLshIndex.Candidate> candidates = index.query(entities.get(9), 20);
+        Assert.assertFalse(candidates.isEmpty());
+        for (int i = 0; i < candidates.size(); i++) {
+            Assert.assertNotSame(entities.get(9), candidates.get(i).getTripleObject());
+            if (i > 0)
+                Assert.assertTrue(candidates.get(i - 1).getSimilarity() >= candidates.get(i).getSimilarity());
+        }
+        Assert.assertTrue(candidates.get(0).getSimilarity() > 0.5f);
+        Assert.assertEquals(3, index.query(entities.get(9), 3).size());
+    }
+
+    @Test
+    void entitiesWithoutValuesAreNotIndexed() {
+        List<TripleObject> entities = new ArrayList<>();
+        entities.add(tripleObject("1", "", "", ""));
+        entities.add(tripleObject("2", "", "", ""));
+        MinHashLshIndex index = MinHashLshIndex.build(entities);
+        Assert.assertEquals(2, index.size());
+        Assert.assertTrue(index.query(entities.get(0), 10).isEmpty());
+        Assert.assertTrue(MinHashLshIndex.build(Collections.emptyList()).query(entities.get(0), 10).isEmpty());
+    }
+
+    /*
+     * Con las entidades cambiadas sobre el indice base se encuentran los mismos candidatos, con la misma similitud, que
+     * con un indice construido desde cero con las entidades finales
+     */
+    @Test
+    void changesMatchARebuiltIndex() {
+        List<TripleObject> originals = new ArrayList<>();
+        String name = RandomStringUtils.randomAlphabetic(20);
+        for (int i = 0; i < 20; i++) {
+            originals.add(tripleObject(String.valueOf(i), name.substring(0, 10) + RandomStringUtils.randomAlphabetic(2), "surname", String.valueOf(2000 + i % 3)));
+        }
+        MinHashLshIndex base = MinHashLshIndex.build(originals);
+        Map<String, TripleObject> changes = new HashMap<>();
+        changes.put("3", tripleObject("3", name, "surname", "2000"));
+        changes.put("5", null);
+        changes.put("new", tripleObject("new", name, "surname", "2000"));
+        Map<String, TripleObject> current = new LinkedHashMap<>();
+        for (TripleObject to : originals) {
+            current.put(to.getId(), to);
+        }
+        current.remove("5");
+        current.put("3", changes.get("3"));
+        current.put("new", changes.get("new"));
+
+        MinHashLshIndex changed = base.withChanges(changes);
+        MinHashLshIndex rebuilt = MinHashLshIndex.build(current.values());
+        Assert.assertEquals(rebuilt.size(), changed.size());
+        for (TripleObject to : current.values()) {
+            Map<String, Float> expected = similarities(rebuilt.query(to, ENTITIES));
+            Assert.assertEquals(to.getId(), expected, similarities(changed.query(to, ENTITIES)));
+            Assert.assertFalse(expected.containsKey("5"));
+        }
+        Assert.assertTrue(similarities(changed.query(changes.get("3"), ENTITIES)).containsKey("new"));
+        // Los cambios se aplican siempre sobre el indice base
+        Assert.assertEquals(originals.size() + 1, changed.withChanges(Collections.singletonMap("new", changes.get("new"))).size());
+    }
+
+    @Test
+    void invalidParameters() {
+        try {
+            MinHashLshIndex.build(Collections.emptyList(), 0, 4, 3);
+            Assert.fail();
+        } catch (IllegalArgumentException e) {
+            Assert.assertTrue(e.getMessage().contains("bands: 0"));
+        }
+    }
+
+    private static Map<String, Float> similarities(List<MinHashLshIndex.Candidate> candidates) {
+        Map<String, Float> similarities = new HashMap<>();
+        for (MinHashLshIndex.Candidate candidate : candidates) {
+            similarities.put(candidate.getTripleObject().getId(), candidate.getSimilarity());
+        }
+        return similarities;
+    }
+
+    private static TripleObject tripleObject(String id, String name, String surname, String year) {
+        LinkedTreeMap<String,Object> attributes = new LinkedTreeMap<>();
+        attributes.put("name", name);
+        attributes.put("surname", surname);
+        attributes.put("year", year);
+        TripleObject to = new TripleObject("um", "trellis", "person", attributes);
+        to.setId(id);
+        to.buildFlattenAttributes();
+        return to;
+    }
+}
@@ -0,0 +1,198 @@
+package es.um.asio.service.comparators.entities;
+
+import com.google.gson.internal.LinkedTreeMap;
+import es.um.asio.service.comparators.aggregators.SimilarityEnsemble;
+import es.um.asio.service.comparators.aggregators.SimilarityProfiles;
+import es.um.asio.service.comparators.attribute.AttributeSimilarity;
+import es.um.asio.service.model.TripleObject;
+import es.um.asio.service.model.stats.StatsHandler;
+import org.junit.Assert;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+
+class ComparisonPlanTest {
+
+    @AfterEach
+    void tearDown() {
+        SimilarityProfiles.reset();
+        ComparisonPlan.invalidateAll();
+    }
+
+    @Test
+    void attributesAreOrderedByDescendingWeight() {
+        ComparisonPlan plan = ComparisonPlan.of("person", stats());
+        Assert.assertEquals(Arrays.asList("name", "surname", "city", "year"), plan.getAttributes());
+    }
+
+    @Test
+    void planIsCachedByVersionUntilProfilesChange() {
+        ComparisonPlan plan = ComparisonPlan.of("um", "trellis", "person", 1L, stats());
+        Assert.assertSame(plan, ComparisonPlan.of("um", "trellis", "person", 1L, new TreeMap<>(stats())));
+        Assert.assertNotSame(plan, ComparisonPlan.of("um", "trellis", "person", 2L, stats()));
+        Assert.assertNotSame(plan, ComparisonPlan.of("um", "trellis", "other", 1L, stats()));
+        Assert.assertSame(plan.withoutId(), plan.withoutId());
+        SimilarityProfiles.configure(null, SimilarityEnsemble.FAST, null, null);
+        Assert.assertNotSame(plan, ComparisonPlan.of("um", "trellis", "person", 1L, stats()));
+    }
+
+    /*
+     * Una clase con el mismo nombre en dos nodos comparte la version base de las estadisticas cargadas, pero cada una
+     * tiene su propio plan con sus atributos relevantes
+     */
+    @Test
+    void classesOfOtherNodesHaveTheirOwnPlan() {
+        Map<String, Map<String, Map<String, Map<String, TripleObject>>>> triplesMap = new HashMap<>();
+        for (String node : Arrays.asList("um", "other")) {
+            Map<String, TripleObject> instances = new HashMap<>();
+            for (int i = 0; i < 10; i++) {
+                TripleObject to = node.equals("um")
+                        ? tripleObject(node + i, "name" + i, null, null, "19" + (50 + i % 2))
+                        : tripleObject(node + i, null, "surname" + i, "city" + (i % 2), null);
+                instances.put(to.getId(), to);
+            }
+            triplesMap.put(node, Collections.singletonMap("trellis", Collections.singletonMap("person", instances)));
+        }
+        StatsHandler statsHandler = new StatsHandler();
+        statsHandler.setStats(StatsHandler.build(triplesMap).getStats());
+        StatsHandler.RelevantAttributes um = statsHandler.getRelevantAttributes("um", "trellis", "person");
+        StatsHandler.RelevantAttributes other = statsHandler.getRelevantAttributes("other", "trellis", "person");
+        Assert.assertEquals(um.getVersion(), other.getVersion());
+        Assert.assertEquals(new HashSet<>(um.getWeights().keySet()), new HashSet<>(ComparisonPlan.of("person", um).getAttributes()));
+        Assert.assertEquals(new HashSet<>(other.getWeights().keySet()), new HashSet<>(ComparisonPlan.of("person", other).getAttributes()));
+        Assert.assertNotEquals(ComparisonPlan.of("person", um).getAttributes(), ComparisonPlan.of("person", other).getAttributes());
+    }
+
+    /*
+     * Al llenarse la cache se descarta el plan usado hace mas tiempo, no todos
+     */
+    @Test
+    void leastRecentlyUsedPlanIsEvicted() {
+        ComparisonPlan first = ComparisonPlan.of("um", "trellis", "person", 0L, stats());
+        ComparisonPlan second = ComparisonPlan.of("um", "trellis", "person", 1L, stats());
+        for (long version = 2; version <= 1024; version++) {
+            Assert.assertSame(first, ComparisonPlan.of("um", "trellis", "person", 0L, stats()));
+            ComparisonPlan.of("um", "trellis", "person", version, stats());
+        }
+        Assert.assertSame(first, ComparisonPlan.of("um", "trellis", "person", 0L, stats()));
+        Assert.assertNotSame(second, ComparisonPlan.of("um", "trellis", "person", 1L, stats()));
+    }
+
+    /*
+     * Los pesos y las similitudes se suman en el orden del comparador anterior al plan (un HashMap de los atributos
+     * presentes), por lo que la similitud es identica bit a bit
+     */
+    @Test
+    void similarityIsSummedInTheBaselineOrder() {
+        Random random = new Random(7);
+        Map<String, Float> stats = new LinkedHashMap<>();
+        for (int a = 0; a < 24; a++) {
+            stats.put("attribute" + a, random.nextFloat());
+        }
+        ComparisonPlan plan = ComparisonPlan.of("person", stats);
+        for (int pair = 0; pair < 200; pair++) {
+            TripleObject o1 = randomTripleObject(String.valueOf(pair), stats.keySet(), random);
+            TripleObject o2 = randomTripleObject(pair + "b", stats.keySet(), random);
+            float expected = baseline(o1, o2, stats);
+            Assert.assertEquals(expected, plan.compare(o1, o2).getSimilarity(), 0f);
+            Assert.assertEquals(expected, plan.compare(o1, Collections.singletonList(o2), 0f).get(0).getSimilarity(), 0f);
+        }
+    }
+
+    @Test
+    void weightsAreNormalisedOverPresentAttributes() {
+        ComparisonPlan plan = ComparisonPlan.of("person", stats());
+        TripleObject o1 = tripleObject("1", "daniel", "ruiz", null, "1980");
+        TripleObject o2 = tripleObject("2", "daniel", "ruiz", null, "1981");
+        EntitySimilarityObj eso = plan.compare(o1, o2);
+        Assert.assertFalse(eso.getSimilarities().containsKey("city"));
+        Assert.assertEquals(0.4f / 0.8f, eso.getSimilarities().get("name").getWeight(), 1e-6f);
+        float sum = 0f;
+        for (SimilarityValue value : eso.getSimilarities().values()) {
+            sum += value.getWeight();
+        }
+        Assert.assertEquals(1f, sum, 1e-6f);
+        Assert.assertEquals(1f, plan.compare(o1, o1).getSimilarity(), 1e-6f);
+    }
+
+    @Test
+    void boundedAndBatchAreIdentical() {
+        ComparisonPlan plan = ComparisonPlan.of("person", stats());
+        TripleObject o1 = tripleObject("1", "daniel", "ruiz", "murcia", "1980");
+        List<TripleObject> others = Arrays.asList(
+                tripleObject("2", "daniel", "ruiz", "murcia", "1981"),
+                tripleObject("3", "danial", "ruis", null, "1980"),
+                tripleObject("4", "maria", "lopez", "madrid", "1960"),
+                tripleObject("5", "daniel", null, "murcia", null));
+        float threshold = 0.7f;
+        List<EntitySimilarityObj> batch = plan.compare(o1, others, 0f);
+        List<EntitySimilarityObj> boundedBatch = plan.compare(o1, others, threshold);
+        for (int i = 0; i < others.size(); i++) {
+            EntitySimilarityObj eso = plan.compare(o1, others.get(i));
+            Assert.assertEquals(eso.getSimilarity(), batch.get(i).getSimilarity(), 0f);
+            Assert.assertEquals(plan.compare(o1, others.get(i), threshold).getSimilarity(), boundedBatch.get(i).getSimilarity(), 0f);
+            if (eso.getSimilarity() >= threshold)
+                Assert.assertEquals(eso.getSimilarity(), boundedBatch.get(i).getSimilarity(), 0f);
+            else
+                Assert.assertTrue(boundedBatch.get(i).getSimilarity() < threshold);
+        }
+    }
+
+    /*
+     * El comparador anterior al plan: pesos normalizados en un HashMap de los atributos presentes y similitud acumulada
+     * en su orden
+     */
+    private static float baseline(TripleObject o1, TripleObject o2, Map<String, Float> stats) {
+        Map<String, Float> present = new HashMap<>();
+        for (Map.Entry<String, Float> stat : stats.entrySet()) {
+            if (o1.checkIfHasAttribute(stat.getKey()) || o2.checkIfHasAttribute(stat.getKey()))
+                present.put(stat.getKey(), stat.getValue());
+        }
+        float sum = present.values().stream().reduce(0f, Float::sum);
+        present.replaceAll((k, v) -> v / sum);
+        EntitySimilarityObj eso = new EntitySimilarityObj(o2);
+        for (Map.Entry<String, Float> stat : present.entrySet()) {
+            eso.addSimilarity(stat.getKey(), AttributeSimilarity.compare(
+                    o1.getValueFromFlattenAttributes(stat.getKey()), o2.getValueFromFlattenAttributes(stat.getKey()), stat.getValue()));
+        }
+        return eso.getSimilarity();
+    }
+
+    private static TripleObject randomTripleObject(String id, Set<String> names, Random random) {
+        LinkedTreeMap<String,Object> attributes = new LinkedTreeMap<>();
+        for (String name : names) {
+            if (random.nextInt(3) > 0)
+                attributes.put(name, "value" + random.nextInt(4) + " word" + random.nextInt(3));
+        }
+        TripleObject to = new TripleObject("um", "trellis", "person", attributes);
+        to.setId(id);
+        to.buildFlattenAttributes();
+        return to;
+    }
+
+    private static Map<String, Float> stats() {
+        Map<String, Float> stats = new HashMap<>();
+        stats.put("year", 0.1f);
+        stats.put("name", 0.4f);
+        stats.put("city", 0.2f);
+        stats.put("surname", 0.3f);
+        return stats;
+    }
+
+    private static TripleObject tripleObject(String id, String name, String surname, String city, String year) {
+        LinkedTreeMap<String,Object> attributes = new LinkedTreeMap<>();
+        if (name != null)
+            attributes.put("name", name);
+        if (surname != null)
+            attributes.put("surname", surname);
+        if (city != null)
+            attributes.put("city", city);
+        if (year != null)
+            attributes.put("year", year);
+        TripleObject to = new TripleObject("um", "trellis", "person", attributes);
+        to.setId(id);
+        to.buildFlattenAttributes();
+        return to;
+    }
+}
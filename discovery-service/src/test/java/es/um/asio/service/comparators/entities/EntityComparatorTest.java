@@ -1,5 +1,6 @@
 package es.um.asio.service.comparators.entities;
 
+import com.google.gson.internal.LinkedTreeMap;
 import data.DataGenerator;
 import es.um.asio.service.model.TripleObject;
 import es.um.asio.service.model.stats.StatsHandler;
@@ -10,12 +11,18 @@ import org.junit.jupiter.api.Test;
 import org.junit.runner.RunWith;
 import org.springframework.test.context.junit4.SpringRunner;
 
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 @RunWith(SpringRunner.class)
 class EntityComparatorTest {
 
+    private static final float THRESHOLD = 0.7f;
+    // Margen de la evaluacion acotada frente al redondeo de las sumas en float
+    private static final float EPSILON = 1e-4f;
+
     Map<TripleObject, Map<String,Float>> tos = new HashMap<>();
     DataGenerator dg;
     CacheServiceImp cache;
@@ -50,4 +57,76 @@ class EntityComparatorTest {
         }
     }
 
-}
\ No newline at end of file
+    @Test
+    void compareWithThreshold() {
+        int below = 0;
+        int pruned = 0;
+        for (Map.Entry<TripleObject, Map<String, Float>> toEntry : tos.entrySet()) {
+            for (TripleObject other : variants()) {
+                EntitySimilarityObj eso = EntityComparator.compare(toEntry.getKey(),other,toEntry.getValue());
+                EntitySimilarityObj bounded = EntityComparator.compare(toEntry.getKey(),other,toEntry.getValue(),THRESHOLD);
+                assertBounded(eso, bounded);
+                if (eso.getSimilarity() < THRESHOLD)
+                    below++;
+                if (bounded.getSimilarities().size() < eso.getSimilarities().size())
+                    pruned++;
+            }
+        }
+        // Los datos tienen pares por debajo del umbral, y en alguno la evaluacion se detiene antes de tiempo
+        Assert.assertTrue(below > 0);
+        Assert.assertTrue(pruned > 0);
+    }
+
+    @Test
+    void compareBatch() {
+        List<TripleObject> others = new ArrayList<>(tos.keySet());
+        others.addAll(variants());
+        for (Map.Entry<TripleObject, Map<String, Float>> toEntry : tos.entrySet()) {
+            List<EntitySimilarityObj> batch = EntityComparator.compare(toEntry.getKey(),others,toEntry.getValue());
+            List<EntitySimilarityObj> boundedBatch = EntityComparator.compare(toEntry.getKey(),others,toEntry.getValue(),THRESHOLD);
+            Assert.assertEquals(others.size(), batch.size());
+            for (int i = 0; i < others.size(); i++) {
+                EntitySimilarityObj eso = EntityComparator.compare(toEntry.getKey(),others.get(i),toEntry.getValue());
+                Assert.assertSame(others.get(i), batch.get(i).getTripleObject());
+                Assert.assertTrue(eso.getSimilarity() == batch.get(i).getSimilarity());
+                assertBounded(eso, boundedBatch.get(i));
+            }
+        }
+    }
+
+    /*
+     * Por encima del umbral el resultado acotado es el exacto; por debajo no lo alcanza y su cota no es menor que la
+     * similitud exacta
+     */
+    private static void assertBounded(EntitySimilarityObj eso, EntitySimilarityObj bounded) {
+        if (eso.getSimilarity() >= THRESHOLD) {
+            Assert.assertTrue(eso.getSimilarity() == bounded.getSimilarity());
+        } else {
+            Assert.assertTrue(bounded.getSimilarity() <= THRESHOLD);
+            Assert.assertTrue(bounded.getUpperBound() >= eso.getSimilarity() - EPSILON);
+        }
+    }
+
+    /*
+     * Copias de la primera entidad con de cero a cinco atributos cambiados por valores sin relacion
+     */
+    private List<TripleObject> variants() {
+        TripleObject base = dg.getTripleObjects().get(0);
+        String[] unrelated = {"zqxw", "plmokn ijb", "uhb ygv", "tfcrdx", "esz wa"};
+        List<TripleObject> variants = new ArrayList<>();
+        for (int changed = 0; changed <= 5; changed++) {
+            LinkedTreeMap<String,Object> attributes = new LinkedTreeMap<>();
+            int a = 0;
+            for (Map.Entry<String, Object> attribute : base.getAttributes().entrySet()) {
+                attributes.put(attribute.getKey(), (a < changed) ? unrelated[a] : attribute.getValue());
+                a++;
+            }
+            TripleObject to = new TripleObject("um","trellis","class1",attributes);
+            to.setId("variant-" + changed);
+            to.buildFlattenAttributes();
+            variants.add(to);
+        }
+        return variants;
+    }
+
+}
@@ -1,6 +1,8 @@
 package es.um.asio.service.comparators.entities;
 
 import data.DataGenerator;
+import com.google.gson.Gson;
+import com.google.gson.internal.LinkedTreeMap;
 import es.um.asio.service.model.TripleObject;
 import es.um.asio.service.model.stats.AttributeStats;
 import es.um.asio.service.service.impl.CacheServiceImp;
@@ -12,10 +14,7 @@ import org.junit.runner.RunWith;
 import org.springframework.boot.configurationprocessor.json.JSONObject;
 import org.springframework.test.context.junit4.SpringRunner;
 
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
+import java.util.*;
 
 @RunWith(SpringRunner.class)
 class EntitySimilarityTest {
@@ -36,6 +35,9 @@ class EntitySimilarityTest {
         JSONObject jData2 = new JSONObject("{\"attrs\":{\"k1\":\"vn1\",\"k2\":\"vn2\",\"k3\":\"vn3\"}}");
         to1 = new TripleObject("n1","ts1","test",jData1);
         to2 = new TripleObject("n1","ts1","test",jData2);
+        // La cache solo guarda instancias con id
+        to1.setId("1");
+        to2.setId("2");
         cache.addTripleObject(to1.getTripleStore().getNode().getNodeName(), to1.getTripleStore().getName(), to1);
         cache.addTripleObject(to2.getTripleStore().getNode().getNodeName(), to2.getTripleStore().getName(), to2);
         cache.generateEntityStats();
@@ -174,4 +176,45 @@ class EntitySimilarityTest {
         Assert.assertTrue(s1.size() == new ArrayList((ArrayList) to1.getAttributes().get("k1")).size());
         Assert.assertTrue( (s1.stream().mapToDouble(a->a).sum()) / (new ArrayList((ArrayList) to1.getAttributes().get("k1")).size()) == 1f);
     }
-}
\ No newline at end of file
+
+    @Test
+    void compareIsIdenticalToJsonModel() {
+        // Mismos datos con valores Java (enteros, long, nulos) y tal y como quedan tras serializarlos con Gson
+        LinkedTreeMap<String,Object> nested1 = new LinkedTreeMap<>();
+        nested1.put("k1", "v1");
+        nested1.put("k2", Arrays.asList("a", "b", "c"));
+        nested1.put("k3", null);
+        LinkedTreeMap<String,Object> nested2 = new LinkedTreeMap<>();
+        nested2.put("k1", "vn1");
+        nested2.put("k2", Arrays.asList("c", "d"));
+        LinkedTreeMap<String,Object> o1 = new LinkedTreeMap<>();
+        o1.put("n", 12);
+        o1.put("l", 3000000000L);
+        o1.put("b", true);
+        o1.put("s", "Universidad de Murcia");
+        o1.put("o", nested1);
+        o1.put("list", Arrays.asList(nested1, nested2));
+        o1.put("empty", null);
+        LinkedTreeMap<String,Object> o2 = new LinkedTreeMap<>();
+        o2.put("n", 15);
+        o2.put("l", 3000000001L);
+        o2.put("b", "si");
+        o2.put("s", "Universidad Murcia");
+        o2.put("o", nested2);
+        o2.put("list", Collections.singletonList(nested1));
+        o2.put("empty", "x");
+        Map<String, AttributeStats> statsMap = new HashMap<>();
+        for (String key : o1.keySet()) {
+            statsMap.put(key, new AttributeStats(key, key));
+        }
+        Gson gson = new Gson();
+        Object json1 = gson.fromJson(gson.toJson(o1), LinkedHashMap.class);
+        Object json2 = gson.fromJson(gson.toJson(o2), LinkedHashMap.class);
+        EntitySimilarityObj expected = EntitySimilarity.compare(to1, statsMap, json1, json2);
+        EntitySimilarityObj eso = EntitySimilarity.compare(to1, statsMap, o1, o2);
+        Assert.assertEquals(expected.getSimilarity(), eso.getSimilarity(), 0f);
+        Assert.assertEquals(expected.getSimilarities().keySet(), eso.getSimilarities().keySet());
+        // Las listas de los objetos no se consumen al compararlas
+        Assert.assertEquals(3, ((List) nested1.get("k2")).size());
+    }
+}
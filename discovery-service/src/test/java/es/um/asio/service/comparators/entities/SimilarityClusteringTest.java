@@ -0,0 +1,95 @@
+package es.um.asio.service.comparators.entities;
+
+import com.google.gson.internal.LinkedTreeMap;
+import es.um.asio.service.model.SimilarityResult;
+import es.um.asio.service.model.TripleObject;
+import org.junit.Assert;
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+import java.util.stream.Collectors;
+
+class SimilarityClusteringTest {
+
+    @Test
+    void automaticSimilaritiesAreJoinedTransitively() {
+        TripleObject a = tripleObject("a");
+        TripleObject b = tripleObject("b");
+        TripleObject c = tripleObject("c");
+        TripleObject d = tripleObject("d");
+        TripleObject e = tripleObject("e");
+        // a ~ b, d ~ b (d no se encontro desde a), c solo tiene una similitud manual con a
+        List<SimilarityResult> similarities = Arrays.asList(
+                result(a, Collections.singletonList(eso(b, 0.97f)), Collections.singletonList(eso(e, 0.8f))),
+                result(c, Collections.emptyList(), Collections.singletonList(eso(a, 0.75f))),
+                result(d, Collections.singletonList(eso(b, 0.96f)), Collections.singletonList(eso(a, 0.9f))));
+        List<SimilarityResult> clusters = SimilarityClustering.cluster(similarities);
+        Assert.assertEquals(2, clusters.size());
+        SimilarityResult first = clusters.get(0);
+        Assert.assertSame(a, first.getTripleObject());
+        Assert.assertEquals(new HashSet<>(Arrays.asList("b", "d")), ids(first.getAutomatic()));
+        // La similitud manual de d con a queda dentro del grupo; la de a con e se mantiene
+        Assert.assertEquals(Collections.singleton("e"), ids(first.getManual()));
+        SimilarityResult second = clusters.get(1);
+        Assert.assertSame(c, second.getTripleObject());
+        Assert.assertTrue(second.getAutomatic().isEmpty());
+        Assert.assertEquals(Collections.singleton("a"), ids(second.getManual()));
+    }
+
+    @Test
+    void membersKeepTheirBestLink() {
+        TripleObject a = tripleObject("a");
+        TripleObject b = tripleObject("b");
+        TripleObject c = tripleObject("c");
+        List<SimilarityResult> similarities = Arrays.asList(
+                result(a, Arrays.asList(eso(b, 0.96f), eso(c, 0.95f)), Collections.emptyList()),
+                result(c, Collections.singletonList(eso(b, 0.99f)), Collections.emptyList()));
+        List<SimilarityResult> clusters = SimilarityClustering.cluster(similarities);
+        Assert.assertEquals(1, clusters.size());
+        Map<String, Float> best = clusters.get(0).getAutomatic().stream().collect(Collectors.toMap(eso -> eso.getTripleObject().getId(), EntitySimilarityObj::getSimilarity));
+        Assert.assertEquals(0.99f, best.get("b"), 0f);
+        Assert.assertEquals(0.99f, best.get("c"), 0f);
+    }
+
+    /*
+     * Las entidades de un resultado y sus similitudes automaticas quedan agrupadas; las manuales no
+     */
+    @Test
+    void resultsAreClusteredAsTheyAreAdded() {
+        TripleObject a = tripleObject("a");
+        TripleObject b = tripleObject("b");
+        TripleObject c = tripleObject("c");
+        SimilarityClustering clustering = new SimilarityClustering();
+        Assert.assertFalse(clustering.isClustered(a));
+        clustering.add(result(a, Collections.singletonList(eso(b, 0.97f)), Collections.singletonList(eso(c, 0.8f))));
+        Assert.assertTrue(clustering.isClustered(a));
+        Assert.assertTrue(clustering.isClustered(b));
+        Assert.assertFalse(clustering.isClustered(c));
+        Assert.assertEquals(1, clustering.getClusters().size());
+    }
+
+    private static Set<String> ids(Collection<EntitySimilarityObj> esos) {
+        return esos.stream().map(eso -> eso.getTripleObject().getId()).collect(Collectors.toSet());
+    }
+
+    private static SimilarityResult result(TripleObject to, List<EntitySimilarityObj> automatics, List<EntitySimilarityObj> manuals) {
+        SimilarityResult sr = new SimilarityResult(to);
+        sr.addAutomatics(automatics);
+        sr.addManuals(manuals);
+        return sr;
+    }
+
+    private static EntitySimilarityObj eso(TripleObject to, float similarity) {
+        EntitySimilarityObj eso = new EntitySimilarityObj(to);
+        eso.setSimilarity(similarity);
+        return eso;
+    }
+
+    private static TripleObject tripleObject(String id) {
+        LinkedTreeMap<String,Object> attributes = new LinkedTreeMap<>();
+        attributes.put("name", id);
+        TripleObject to = new TripleObject("um", "trellis", "person", attributes);
+        to.setId(id);
+        return to;
+    }
+}
@@ -0,0 +1,165 @@
+package es.um.asio.service.comparators.lists;
+
+import org.junit.Assert;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+
+class ListMatcherTest {
+
+    private static final ListMatcher.PairSimilarity<Integer> SIMILARITY = (a, b) -> (a % 7 == b % 7) ? 1f : (float) Math.abs(Math.sin(a * 31 + b)) * 0.9f;
+
+    @AfterEach
+    public void tearDown() {
+        ListMatcher.configure(ListMatcher.DEFAULT_HUNGARIAN_CUTOFF, ListMatcher.DEFAULT_PARALLEL_THRESHOLD);
+    }
+
+    @Test
+    void hungarianIsOptimal() {
+        Random random = new Random(1);
+        for (int test = 0; test < 200; test++) {
+            List<Integer> l1 = values(random, 1 + random.nextInt(6));
+            List<Integer> l2 = values(random, 1 + random.nextInt(6));
+            ListMatcher.Matching matching = ListMatcher.match(l1, l2, SIMILARITY, ListMatcher.Strategy.HUNGARIAN);
+            Assert.assertEquals(bruteForce(l1, l2), sum(matching), 1e-5);
+            checkOneToOne(matching);
+        }
+    }
+
+    @Test
+    void greedyTakesBestPairsFirst() {
+        Random random = new Random(2);
+        for (int test = 0; test < 200; test++) {
+            List<Integer> l1 = values(random, 1 + random.nextInt(10));
+            List<Integer> l2 = values(random, 1 + random.nextInt(10));
+            ListMatcher.Matching matching = ListMatcher.match(l1, l2, SIMILARITY, ListMatcher.Strategy.GREEDY);
+            Assert.assertEquals(repeatedBestPair(l1, l2), matched(matching));
+            checkOneToOne(matching);
+            Assert.assertTrue(sum(ListMatcher.match(l1, l2, SIMILARITY, ListMatcher.Strategy.HUNGARIAN)) >= sum(matching) - 1e-5);
+        }
+    }
+
+    @Test
+    void autoDependsOnCutoff() {
+        // El voraz empareja 1-1 (0.9) y deja 2-3 (0.1); el optimo es 1-3 y 2-1 (0.8 + 0.8)
+        ListMatcher.PairSimilarity<Integer> similarity = (a, b) -> {
+            if (a == 1) return (b == 1) ? 0.9f : 0.8f;
+            return (b == 1) ? 0.8f : 0.1f;
+        };
+        List<Integer> l1 = Arrays.asList(1, 2);
+        List<Integer> l2 = Arrays.asList(1, 3);
+        Assert.assertEquals(1.6f, sum(ListMatcher.match(l1, l2, similarity)), 1e-5);
+        ListMatcher.configure(1, ListMatcher.DEFAULT_PARALLEL_THRESHOLD);
+        Assert.assertEquals(1.0f, sum(ListMatcher.match(l1, l2, similarity)), 1e-5);
+    }
+
+    @Test
+    void parallelFillIsIdentical() {
+        Random random = new Random(3);
+        List<Integer> l1 = values(random, 120);
+        List<Integer> l2 = values(random, 90);
+        ListMatcher.configure(ListMatcher.DEFAULT_HUNGARIAN_CUTOFF, 0);
+        ListMatcher.Matching sequential = ListMatcher.match(l1, l2, SIMILARITY);
+        ListMatcher.configure(ListMatcher.DEFAULT_HUNGARIAN_CUTOFF, 1);
+        ListMatcher.Matching parallel = ListMatcher.match(l1, l2, SIMILARITY);
+        for (int i = 0; i < l1.size(); i++) {
+            Assert.assertEquals(sequential.getColumn(i), parallel.getColumn(i));
+        }
+    }
+
+    @Test
+    void sourceListsAreNotModified() {
+        List<Integer> l1 = new ArrayList<>(Arrays.asList(5, 3, 9));
+        List<Integer> l2 = new ArrayList<>(Arrays.asList(9, 5));
+        ListMatcher.Matching matching = ListMatcher.match(l1, l2, (a, b) -> a.equals(b) ? 1f : 0f);
+        Assert.assertEquals(Arrays.asList(5, 3, 9), l1);
+        Assert.assertEquals(Arrays.asList(9, 5), l2);
+        Assert.assertEquals(1, matching.getColumn(0));
+        Assert.assertEquals(-1, matching.getColumn(1));
+        Assert.assertEquals(0, matching.getColumn(2));
+        Assert.assertEquals(2, matching.getMatchedCount());
+    }
+
+    private static List<Integer> values(Random random, int size) {
+        List<Integer> values = new ArrayList<>();
+        for (int i = 0; i < size; i++) {
+            values.add(random.nextInt(1000));
+        }
+        return values;
+    }
+
+    private static float sum(ListMatcher.Matching matching) {
+        float sum = 0f;
+        for (int i = 0; i < matching.getRows(); i++) {
+            sum += matching.getMatchedSimilarity(i);
+        }
+        return sum;
+    }
+
+    private static List<Float> matched(ListMatcher.Matching matching) {
+        List<Float> similarities = new ArrayList<>();
+        for (int i = 0; i < matching.getRows(); i++) {
+            if (matching.getColumn(i) != -1)
+                similarities.add(matching.getMatchedSimilarity(i));
+        }
+        Collections.sort(similarities);
+        return similarities;
+    }
+
+    private static void checkOneToOne(ListMatcher.Matching matching) {
+        Set<Integer> columns = new HashSet<>();
+        for (int i = 0; i < matching.getRows(); i++) {
+            if (matching.getColumn(i) != -1)
+                Assert.assertTrue(columns.add(matching.getColumn(i)));
+        }
+    }
+
+    // Emparejamiento por permutaciones de la lista mayor
+    private static double bruteForce(List<Integer> l1, List<Integer> l2) {
+        return bruteForce(l1, l2, 0, new boolean[l2.size()]);
+    }
+
+    private static double bruteForce(List<Integer> l1, List<Integer> l2, int i, boolean[] used) {
+        if (i == l1.size())
+            return 0;
+        double best = bruteForce(l1, l2, i + 1, used);
+        for (int j = 0; j < l2.size(); j++) {
+            if (!used[j]) {
+                used[j] = true;
+                best = Math.max(best, SIMILARITY.similarity(l1.get(i), l2.get(j)) + bruteForce(l1, l2, i + 1, used));
+                used[j] = false;
+            }
+        }
+        return best;
+    }
+
+    // Busqueda repetida del mejor par, como hacia EntitySimilarity.compareLists
+    private static List<Float> repeatedBestPair(List<Integer> ls1, List<Integer> ls2) {
+        List<Integer> l1 = new ArrayList<>(ls1);
+        List<Integer> l2 = new ArrayList<>(ls2);
+        List<Float> similarities = new ArrayList<>();
+        while (!l1.isEmpty() && !l2.isEmpty()) {
+            int best1 = -1;
+            int best2 = -1;
+            float max = 0f;
+            for (int i = 0; i < l1.size(); i++) {
+                for (int j = 0; j < l2.size(); j++) {
+                    float similarity = SIMILARITY.similarity(l1.get(i), l2.get(j));
+                    if (similarity > max) {
+                        max = similarity;
+                        best1 = i;
+                        best2 = j;
+                    }
+                }
+            }
+            if (best1 == -1)
+                break;
+            similarities.add(max);
+            l1.remove(best1);
+            l2.remove(best2);
+        }
+        Collections.sort(similarities);
+        return similarities;
+    }
+}
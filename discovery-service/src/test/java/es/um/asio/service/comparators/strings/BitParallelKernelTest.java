@@ -0,0 +1,73 @@
+package es.um.asio.service.comparators.strings;
+
+import org.junit.Assert;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+class BitParallelKernelTest {
+
+    private static final String ALPHABET = "abcde fgñ€";
+
+    private final Random random = new Random(42);
+
+    @Test
+    void levenshteinIsIdenticalToDynamicProgramming() {
+        for (int i = 0; i < 5000; i++) {
+            char[] a = randomChars(BitParallelKernel.MAX_LENGTH);
+            char[] b = randomChars(BitParallelKernel.MAX_LENGTH * 2);
+            Assert.assertEquals(StringKernel.dynamicLevenshteinDistance(a, b), (float) BitParallelKernel.levenshteinDistance(a, b), 0.0f);
+        }
+    }
+
+    @Test
+    void longestCommonSubsequenceIsIdenticalToDynamicProgramming() {
+        for (int i = 0; i < 5000; i++) {
+            char[] a = randomChars(BitParallelKernel.MAX_LENGTH);
+            char[] b = randomChars(BitParallelKernel.MAX_LENGTH * 2);
+            Assert.assertEquals(StringKernel.dynamicLongestCommonSubsequenceLength(a, b), BitParallelKernel.longestCommonSubsequenceLength(a, b));
+        }
+    }
+
+    @Test
+    void jaroIsIdenticalToDynamicProgramming() {
+        for (int i = 0; i < 5000; i++) {
+            char[] a = randomChars(BitParallelKernel.MAX_LENGTH);
+            char[] b = randomChars(BitParallelKernel.MAX_LENGTH);
+            Assert.assertEquals(StringKernel.dynamicJaro(a, b), BitParallelKernel.jaro(a, b), 0.0f);
+        }
+    }
+
+    @Test
+    void fullWordLength() {
+        char[] a = new char[BitParallelKernel.MAX_LENGTH];
+        char[] b = new char[BitParallelKernel.MAX_LENGTH];
+        Arrays.fill(a, 'a');
+        Arrays.fill(b, 'a');
+        b[BitParallelKernel.MAX_LENGTH - 1] = 'b';
+        Assert.assertEquals(1, BitParallelKernel.levenshteinDistance(a, b));
+        Assert.assertEquals(BitParallelKernel.MAX_LENGTH - 1, BitParallelKernel.longestCommonSubsequenceLength(a, b));
+    }
+
+    @Test
+    void sharedMaskIsIdenticalToThreadMask() {
+        for (int i = 0; i < 2000; i++) {
+            char[] a = randomChars(BitParallelKernel.MAX_LENGTH);
+            char[] b = randomChars(BitParallelKernel.MAX_LENGTH);
+            BitParallelKernel.CharMask maskA = BitParallelKernel.CharMask.of(a);
+            BitParallelKernel.CharMask maskB = BitParallelKernel.CharMask.of(b);
+            Assert.assertEquals(BitParallelKernel.levenshteinDistance(a, b), BitParallelKernel.levenshteinDistance(maskA, b));
+            Assert.assertEquals(BitParallelKernel.longestCommonSubsequenceLength(a, b), BitParallelKernel.longestCommonSubsequenceLength(maskA, b));
+            Assert.assertEquals(BitParallelKernel.jaro(a, b), BitParallelKernel.jaro(a, maskA, b, maskB), 0f);
+        }
+    }
+
+    private char[] randomChars(int maxLength) {
+        char[] chars = new char[random.nextInt(maxLength + 1)];
+        for (int i = 0; i < chars.length; i++) {
+            chars[i] = ALPHABET.charAt(random.nextInt(ALPHABET.length()));
+        }
+        return chars;
+    }
+}
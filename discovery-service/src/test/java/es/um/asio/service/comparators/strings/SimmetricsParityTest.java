@@ -0,0 +1,135 @@
+package es.um.asio.service.comparators.strings;
+
+import org.junit.Assert;
+import org.junit.jupiter.api.Test;
+import org.simmetrics.MultisetMetric;
+import org.simmetrics.SetMetric;
+import org.simmetrics.StringMetric;
+import org.simmetrics.metrics.*;
+import org.simmetrics.simplifiers.Simplifiers;
+import org.simmetrics.tokenizers.Tokenizers;
+
+import java.util.*;
+
+import static org.simmetrics.builders.StringMetricBuilder.with;
+
+/*
+ * Cada implementacion devuelve lo mismo que la composicion de simmetrics a la que sustituye, sobre pares aleatorios
+ */
+class SimmetricsParityTest {
+
+    private static final int PAIRS = 3000;
+    private static final String ALPHABET = "aaabcdeeeilmnooprstuzáéíóñüAEMZ-.,'";
+
+    @Test
+    void kernelsMatchSimmetrics() {
+        Map<Similarity, StringMetric> metrics = new LinkedHashMap<>();
+        metrics.put(new BlockDistanceSimilarityImp(), tokenized(new BlockDistance<>()));
+        metrics.put(new CosineSimilarityImp(), tokenized(new CosineSimilarity<>()));
+        metrics.put(new DiceDistanceSimilarityImp(), tokenized(new Dice<>()));
+        metrics.put(new EuclideanDistanceSimilarityImp(), tokenized(new EuclideanDistance<>()));
+        metrics.put(new GeneralizedJaccardSimilarityImp(), tokenized(new GeneralizedJaccard<>()));
+        metrics.put(new JaccardSimilarityImp(), tokenized(new Jaccard<>()));
+        metrics.put(new SimonWhiteSimilarityImp(), tokenized(new SimonWhite<>()));
+        metrics.put(new OverlapCoefficientSimilarityImp(), with(new OverlapCoefficient<String>())
+                .simplify(Simplifiers.toLowerCase())
+                .simplify(Simplifiers.removeDiacritics())
+                .tokenize(Tokenizers.whitespace())
+                .build());
+        metrics.put(new NeedlemanWunchSimilarityImp(), with(new NeedlemanWunch())
+                .simplify(Simplifiers.toLowerCase())
+                .simplify(Simplifiers.replaceNonWord())
+                .build());
+        metrics.put(new JaroSimilarityImp(), withoutDiacritics(new Jaro()));
+        metrics.put(new JaroWinklerSimilarityImp(), withoutDiacritics(new JaroWinkler()));
+        metrics.put(new LevenshteinSimilarityImp(), withoutDiacritics(new Levenshtein()));
+        metrics.put(new LongestCommonSubStringSimilarityImp(), withoutDiacritics(new LongestCommonSubstring()));
+        metrics.put(new LongestCommonSubsequenceSimilarityImp(), withoutDiacritics(new LongestCommonSubsequence()));
+        metrics.put(new SmithWetermanGotohSimilarityImp(), withoutDiacritics(new SmithWatermanGotoh()));
+        metrics.put(new SmithWetermanSimilarityImp(), withoutDiacritics(new SmithWaterman()));
+
+        Random random = new Random(42);
+        for (int i = 0; i < PAIRS; i++) {
+            String a = text(random);
+            String b = (random.nextBoolean()) ? mutate(a, random) : text(random);
+            for (Map.Entry<Similarity, StringMetric> metric : metrics.entrySet()) {
+                float expected = Math.max(
+                        new MongeElkan(metric.getValue()).compare(Arrays.asList(a.split(" ")), Arrays.asList(b.split(" "))),
+                        metric.getValue().compare(a, b));
+                String message = String.format("%s('%s', '%s')", metric.getKey().getClass().getSimpleName(), a, b);
+                Assert.assertEquals(message, expected, metric.getKey().calculateSimilarity(a, b), 0.0f);
+            }
+        }
+    }
+
+    @Test
+    void jaroWinklerBoostsLowJaroScores() {
+        float expected = new JaroWinkler().compare("znb", "znx ab");
+        Assert.assertEquals(expected, StringKernel.jaroWinkler("znb".toCharArray(), "znx ab".toCharArray()), 0.0f);
+    }
+
+    private static StringMetric tokenized(SetMetric<String> metric) {
+        return with(metric)
+                .simplify(Simplifiers.toLowerCase())
+                .simplify(Simplifiers.replaceNonWord())
+                .tokenize(Tokenizers.whitespace())
+                .build();
+    }
+
+    private static StringMetric tokenized(MultisetMetric<String> metric) {
+        return with(metric)
+                .simplify(Simplifiers.toLowerCase())
+                .simplify(Simplifiers.replaceNonWord())
+                .tokenize(Tokenizers.whitespace())
+                .build();
+    }
+
+    private static StringMetric withoutDiacritics(StringMetric metric) {
+        return with(metric)
+                .simplify(Simplifiers.toLowerCase())
+                .simplify(Simplifiers.removeDiacritics())
+                .build();
+    }
+
+    /*
+     * Una a cuatro palabras de uno a diez caracteres, con mayusculas, acentos y signos
+     */
+    private static String text(Random random) {
+        int words = 1 + random.nextInt(4);
+        StringBuilder sb = new StringBuilder();
+        for (int w = 0; w < words; w++) {
+            if (w > 0)
+                sb.append(' ');
+            int length = 1 + random.nextInt(10);
+            for (int c = 0; c < length; c++) {
+                sb.append(ALPHABET.charAt(random.nextInt(ALPHABET.length())));
+            }
+        }
+        return sb.toString();
+    }
+
+    /*
+     * Variante de la cadena con caracteres cambiados, quitados o añadidos y palabras desordenadas
+     */
+    private static String mutate(String s, Random random) {
+        StringBuilder sb = new StringBuilder(s);
+        int changes = 1 + random.nextInt(3);
+        for (int i = 0; i < changes && sb.length() > 1; i++) {
+            int position = random.nextInt(sb.length());
+            switch (random.nextInt(3)) {
+                case 0:
+                    sb.setCharAt(position, ALPHABET.charAt(random.nextInt(ALPHABET.length())));
+                    break;
+                case 1:
+                    sb.deleteCharAt(position);
+                    break;
+                default:
+                    sb.insert(position, ALPHABET.charAt(random.nextInt(ALPHABET.length())));
+            }
+        }
+        List<String> words = new ArrayList<>(Arrays.asList(sb.toString().split(" ")));
+        if (random.nextInt(4) == 0)
+            Collections.shuffle(words, random);
+        return String.join(" ", words);
+    }
+}
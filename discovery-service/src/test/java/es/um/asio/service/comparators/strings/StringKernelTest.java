@@ -0,0 +1,53 @@
+package es.um.asio.service.comparators.strings;
+
+import org.junit.Assert;
+import org.junit.jupiter.api.Test;
+
+class StringKernelTest {
+
+    @Test
+    void levenshtein() {
+        Assert.assertEquals(1.0f - 2.0f / 6.0f, StringKernel.levenshtein("martha".toCharArray(), "marhta".toCharArray()), 0.0f);
+        Assert.assertEquals(1.0f, StringKernel.levenshtein(new char[0], new char[0]), 0.0f);
+        Assert.assertEquals(0.0f, StringKernel.levenshtein("abc".toCharArray(), new char[0]), 0.0f);
+    }
+
+    @Test
+    void jaroAndJaroWinkler() {
+        Assert.assertEquals(0.944f, StringKernel.jaro("martha".toCharArray(), "marhta".toCharArray()), 0.001f);
+        Assert.assertEquals(0.961f, StringKernel.jaroWinkler("martha".toCharArray(), "marhta".toCharArray()), 0.001f);
+        Assert.assertEquals(0.0f, StringKernel.jaro("abc".toCharArray(), "xyz".toCharArray()), 0.0f);
+    }
+
+    @Test
+    void longestCommonSubsequenceAndSubstring() {
+        Assert.assertEquals(4.0f / 6.0f, StringKernel.longestCommonSubsequence("abcdef".toCharArray(), "axcyef".toCharArray()), 0.0f);
+        Assert.assertEquals(2.0f / 6.0f, StringKernel.longestCommonSubstring("abcdef".toCharArray(), "axcyef".toCharArray()), 0.0f);
+    }
+
+    @Test
+    void tokenMetrics() {
+        PreparedString a = PreparedString.of("hola hola mundo");
+        PreparedString b = PreparedString.of("hola mundo cruel");
+        Assert.assertEquals(2.0f / 3.0f, StringKernel.jaccard(a.getWordTokens(), b.getWordTokens()), 0.0f);
+        Assert.assertEquals(2.0f * 2.0f / 6.0f, StringKernel.simonWhite(a.getWordTokens(), b.getWordTokens()), 0.0001f);
+        Assert.assertEquals(1.0f, StringKernel.overlapCoefficient(a.getWordTokens(), a.getWordTokens()), 0.0f);
+    }
+
+    @Test
+    void preparedStringIsReused() {
+        PreparedString a = PreparedString.of("Gestión de Proyectos");
+        Assert.assertSame(a.getDiacriticFree(), a.getDiacriticFree());
+        Assert.assertEquals("gestion de proyectos", new String(a.getDiacriticFree()));
+        Assert.assertEquals(3, a.getParts().length);
+        Assert.assertEquals(3, a.getDiacriticFreeTokens().size());
+    }
+
+    @Test
+    void preparedAndRawAreEquivalent() {
+        Similarity similarity = new SmithWetermanGotohSimilarityImp();
+        PreparedString a = PreparedString.of("Universidad de Murcia");
+        PreparedString b = PreparedString.of("Murcia Universidad");
+        Assert.assertEquals(similarity.calculateSimilarity("Universidad de Murcia", "Murcia Universidad"), similarity.calculateSimilarity(a, b), 0.0f);
+    }
+}
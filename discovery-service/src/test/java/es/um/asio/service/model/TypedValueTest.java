@@ -0,0 +1,46 @@
+package es.um.asio.service.model;
+
+import es.um.asio.service.comparators.attribute.AttributeSimilarity;
+import org.junit.Assert;
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+
+class TypedValueTest {
+
+    private static final List<Object> VALUES = Arrays.asList("5", "-12", "+7", " 5", "3000000000", "99999999999999999999",
+            "12.25", "1.5e3", "12.", "0.5", "true", "false", "yes", "si", "n", "2020-01-15", "15/01/2020",
+            "2020-01-15T10:11:12Z", "hello", "Hello World", "", 5, 12.0, 12.5, 3000000000L, 1.5f, true, 2.0e300);
+
+    @Test
+    void of() {
+        Assert.assertEquals(TypedValue.Type.INTEGER, TypedValue.of("5").getType());
+        Assert.assertEquals(5L, TypedValue.of("5").getLongValue());
+        Assert.assertEquals(TypedValue.Type.LONG, TypedValue.of(3000000000L).getType());
+        Assert.assertEquals(TypedValue.Type.FLOAT, TypedValue.of(12.5).getType());
+        Assert.assertEquals(12.5f, TypedValue.of(12.5).getFloatValue(), 0f);
+        Assert.assertEquals(TypedValue.Type.DOUBLE, TypedValue.of("99999999999999999999").getType());
+        Assert.assertEquals(TypedValue.Type.BOOLEAN, TypedValue.of("si").getType());
+        Assert.assertTrue(TypedValue.of("si").isBooleanValue());
+        Assert.assertEquals(TypedValue.Type.DATE, TypedValue.of("2020-01-15").getType());
+        Assert.assertEquals(TypedValue.Type.STRING, TypedValue.of(" Hello ").getType());
+        Assert.assertEquals("hello", TypedValue.of(" Hello ").getComparableValue());
+    }
+
+    @Test
+    void commonTypeMatchesAttributeSimilarity() {
+        Map<String, TypedValue.Type> types = new HashMap<>();
+        types.put("int", TypedValue.Type.INTEGER);
+        types.put("long", TypedValue.Type.LONG);
+        types.put("float", TypedValue.Type.FLOAT);
+        types.put("double", TypedValue.Type.DOUBLE);
+        types.put("boolean", TypedValue.Type.BOOLEAN);
+        types.put("Date", TypedValue.Type.DATE);
+        types.put("String", TypedValue.Type.STRING);
+        for (Object v1 : VALUES) {
+            for (Object v2 : VALUES) {
+                Assert.assertEquals(v1 + " - " + v2, types.get(AttributeSimilarity.getClassOffAttributes(v1, v2)), TypedValue.commonType(TypedValue.of(v1), TypedValue.of(v2)));
+            }
+        }
+    }
+}
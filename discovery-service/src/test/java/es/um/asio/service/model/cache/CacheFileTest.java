@@ -0,0 +1,185 @@
+package es.um.asio.service.model.cache;
+
+import com.google.gson.internal.LinkedTreeMap;
+import es.um.asio.service.model.TripleObject;
+import org.junit.Assert;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.stream.Stream;
+
+class CacheFileTest {
+
+    private Path directory;
+    private Path path;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        directory = Files.createTempDirectory("cache-file");
+        path = directory.resolve("snapshot/triples-map.bin");
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        try (Stream<Path> files = Files.walk(directory)) {
+            files.sorted(Comparator.reverseOrder()).forEach(file -> file.toFile().delete());
+        }
+    }
+
+    /*
+     * Lo leido es igual a lo escrito: ids, URIs, fechas y atributos con sus tipos, orden y anidamiento
+     */
+    @Test
+    void roundTripKeepsInstancesAndTypes() throws IOException {
+        TripleObjectIndex index = index(5, 300);
+        try (CacheSnapshot snapshot = index.pin()) {
+            long size = CacheFile.write(snapshot, path);
+            Assert.assertEquals(Files.size(path), size);
+        }
+        Assert.assertFalse(Files.exists(path.resolveSibling("triples-map.bin.tmp")));
+        Map<String, Map<String, Map<String, Map<String, TripleObject>>>> read = CacheFile.read(path);
+        Map<String, Map<String, Map<String, Map<String, TripleObject>>>> expected = index.toNestedMap();
+        Assert.assertEquals(expected.keySet(), read.keySet());
+        Assert.assertEquals(expected.get("um").keySet(), read.get("um").keySet());
+        for (String className : expected.get("um").get("trellis").keySet()) {
+            Map<String, TripleObject> expectedInstances = expected.get("um").get("trellis").get(className);
+            Map<String, TripleObject> readInstances = read.get("um").get("trellis").get(className);
+            Assert.assertEquals(expectedInstances.keySet(), readInstances.keySet());
+            for (TripleObject to : expectedInstances.values()) {
+                TripleObject readTo = readInstances.get(to.getId());
+                Assert.assertEquals(to.getId(), readTo.getId());
+                Assert.assertEquals(to.getLocalURI(), readTo.getLocalURI());
+                Assert.assertEquals(to.getLastModification(), readTo.getLastModification());
+                Assert.assertEquals(to.getClassName(), readTo.getClassName());
+                Assert.assertEquals("um", readTo.getTripleStore().getNode().getNodeName());
+                Assert.assertEquals("trellis", readTo.getTripleStore().getName());
+                Assert.assertEquals(to.getAttributes(), readTo.getAttributes());
+                Assert.assertEquals(new ArrayList<>(to.getAttributes().keySet()), new ArrayList<>(readTo.getAttributes().keySet()));
+                for (Map.Entry<String, Object> attribute : to.getAttributes().entrySet()) {
+                    Object value = readTo.getAttributes().get(attribute.getKey());
+                    Assert.assertEquals(attribute.getValue() == null ? null : attribute.getValue().getClass(), value == null ? null : value.getClass());
+                }
+            }
+        }
+        // Una cache cargada desde el fichero es igual a la original
+        Assert.assertEquals(index.size(), TripleObjectIndex.of(read).size());
+    }
+
+    @Test
+    void columnarClassesAreWrittenAsObjects() throws IOException {
+        TripleObjectIndex index = index(2, 100, true);
+        try (CacheSnapshot snapshot = index.pin()) {
+            CacheFile.write(snapshot, path);
+        }
+        Map<String, TripleObject> read = CacheFile.read(path).get("um").get("trellis").get("class1");
+        Assert.assertEquals(100, read.size());
+        Assert.assertEquals(index.get("um", "trellis", "class1", "class1.7").getAttributes(), read.get("class1.7").getAttributes());
+    }
+
+    /*
+     * Un fichero con otra version, truncado o con un bloque modificado se rechaza entero
+     */
+    @Test
+    void invalidFilesAreRejected() throws IOException {
+        try (CacheSnapshot snapshot = index(3, 50).pin()) {
+            CacheFile.write(snapshot, path);
+        }
+        byte[] valid = Files.readAllBytes(path);
+
+        byte[] corrupt = valid.clone();
+        corrupt[corrupt.length / 2] ^= 0x55;
+        assertRejected(corrupt, "checksum");
+
+        assertRejected(Arrays.copyOf(valid, valid.length - 10), "Truncated");
+        assertRejected(Arrays.copyOf(valid, valid.length + 3), "Unexpected data");
+        assertRejected(Arrays.copyOf(valid, 10), "Truncated");
+
+        byte[] otherVersion = valid.clone();
+        otherVersion[7] = (byte) (CacheFile.VERSION + 1);
+        assertRejected(otherVersion, "version");
+
+        byte[] notCache = valid.clone();
+        notCache[0] = '{';
+        assertRejected(notCache, "Not a cache file");
+    }
+
+    /*
+     * Una escritura sustituye al fichero anterior entero, y la generacion fijada no ve los cambios posteriores
+     */
+    @Test
+    void writesReplaceThePreviousFile() throws IOException {
+        TripleObjectIndex index = index(1, 10);
+        try (CacheSnapshot snapshot = index.pin()) {
+            CacheFile.write(snapshot, path);
+            index.put("um", "trellis", instance("class0", 99));
+            Assert.assertEquals(10, CacheFile.read(path).get("um").get("trellis").get("class0").size());
+        }
+        // Fichero nuevo en lugar de truncar el que se ha leido, que puede seguir proyectado en memoria
+        byte[] content = Files.readAllBytes(path);
+        Files.delete(path);
+        Files.write(path, Arrays.copyOf(content, content.length / 2));
+        try (CacheSnapshot snapshot = index.pin()) {
+            CacheFile.write(snapshot, path);
+        }
+        Assert.assertEquals(11, CacheFile.read(path).get("um").get("trellis").get("class0").size());
+    }
+
+    /*
+     * Cada contenido se escribe en un fichero nuevo: reescribir uno ya leido cambiaria paginas que pueden seguir
+     * proyectadas
+     */
+    private void assertRejected(byte[] content, String message) throws IOException {
+        Path rejected = Files.createTempFile(directory, "rejected", ".bin");
+        Files.write(rejected, content);
+        try {
+            CacheFile.read(rejected);
+            Assert.fail();
+        } catch (IOException e) {
+            Assert.assertTrue(e.getMessage(), e.getMessage().contains(message));
+        }
+    }
+
+    private static TripleObjectIndex index(int classes, int instances) {
+        return index(classes, instances, false);
+    }
+
+    private static TripleObjectIndex index(int classes, int instances, boolean columnar) {
+        TripleObjectIndex index = new TripleObjectIndex(columnar);
+        for (int c = 0; c < classes; c++) {
+            for (int i = 0; i < instances; i++) {
+                index.put("um", "trellis", instance("class" + c, i));
+            }
+        }
+        return index;
+    }
+
+    /*
+     * Instancia con los tipos de Gson (cadenas, Double, Boolean, mapas y listas), enteros, nulos y cadenas no ASCII
+     */
+    private static TripleObject instance(String className, int i) {
+        LinkedTreeMap<String,Object> attributes = new LinkedTreeMap<>();
+        attributes.put("id", className + "." + i);
+        attributes.put("name", "Nombre Ñandú " + (i % 7));
+        attributes.put("year", (double) (1950 + i % 70));
+        attributes.put("score", i / 3d);
+        attributes.put("count", i);
+        attributes.put("big", 1L << 40 | i);
+        attributes.put("active", i % 2 == 0);
+        attributes.put("empty", null);
+        attributes.put("keywords", new ArrayList<>(Arrays.asList("k" + (i % 5), (double) i, Collections.emptyList())));
+        LinkedTreeMap<String,Object> address = new LinkedTreeMap<>();
+        address.put("city", "city" + (i % 3));
+        address.put("number", (double) -i);
+        attributes.put("address", address);
+        TripleObject to = new TripleObject("um", "trellis", className, attributes);
+        to.setId(className + "." + i);
+        to.setLocalURI((i % 4 == 0) ? null : "http://localhost/" + className + "/" + i);
+        to.setLastModification(1600000000000L + i);
+        return to;
+    }
+}
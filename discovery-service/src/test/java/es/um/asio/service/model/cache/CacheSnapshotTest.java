@@ -0,0 +1,106 @@
+package es.um.asio.service.model.cache;
+
+import com.google.gson.internal.LinkedTreeMap;
+import es.um.asio.service.model.TripleObject;
+import org.junit.Assert;
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+
+class CacheSnapshotTest {
+
+    /*
+     * Una generacion fijada no ve los cambios posteriores de la cache
+     */
+    @Test
+    void pinnedGenerationDoesNotChange() {
+        TripleObjectIndex index = index(false);
+        try (CacheSnapshot snapshot = index.pin()) {
+            index.put("um", "trellis", instance("person", "p1", "changed"));
+            index.remove("um", "trellis", "person", "p2");
+            index.put("um", "trellis", instance("project", "j1", "new"));
+            Assert.assertEquals(10, snapshot.size());
+            Assert.assertEquals("name1", snapshot.getTripleObject("um", "trellis", "person", "p1").getAttributes().get("name"));
+            Assert.assertNotNull(snapshot.getTripleObject("um", "trellis", "person", "p2"));
+            Assert.assertNull(snapshot.getTripleObjects("um", "trellis", "project"));
+            Assert.assertEquals(Collections.singleton("um"), snapshot.getNodes());
+            try (CacheSnapshot current = index.pin()) {
+                Assert.assertTrue(current.getGeneration() > snapshot.getGeneration());
+                Assert.assertEquals(10, current.size());
+                Assert.assertEquals("changed", current.getTripleObject("um", "trellis", "person", "p1").getAttributes().get("name"));
+                Assert.assertNull(current.getTripleObject("um", "trellis", "person", "p2"));
+                Assert.assertEquals(index.getSegment("um", "trellis", "person"), current.getTripleObjects("um", "trellis", "person"));
+            }
+        }
+    }
+
+    @Test
+    void closedGenerationsAreReleased() {
+        TripleObjectIndex index = index(false);
+        CacheSnapshot first = index.pin();
+        CacheSnapshot second = index.pin();
+        Assert.assertEquals(first.getGeneration(), second.getGeneration());
+        index.put("um", "trellis", instance("person", "p11", "name11"));
+        CacheSnapshot third = index.pin();
+        Assert.assertEquals(Arrays.asList(first.getGeneration(), third.getGeneration()), index.getPinnedGenerations());
+        first.close();
+        first.close(); // Cerrar dos veces no libera la generacion de otro trabajo
+        Assert.assertTrue(first.isClosed());
+        Assert.assertEquals(Arrays.asList(second.getGeneration(), third.getGeneration()), index.getPinnedGenerations());
+        second.close();
+        Assert.assertTrue(index.hasGeneration());
+        third.close();
+        Assert.assertTrue(index.getPinnedGenerations().isEmpty());
+        // Sin generaciones fijadas la generacion actual se mantiene con los cambios y no se vuelve a construir
+        Assert.assertTrue(index.hasGeneration());
+        long generation = index.getGeneration();
+        index.put("um", "trellis", instance("person", "p12", "name12"));
+        try (CacheSnapshot current = index.pin()) {
+            Assert.assertEquals(generation + 1, current.getGeneration());
+            Assert.assertEquals(12, current.size());
+            Assert.assertEquals(index.getSegment("um", "trellis", "person"), current.getTripleObjects("um", "trellis", "person"));
+        }
+        index.clear();
+        try (CacheSnapshot cleared = index.pin()) {
+            Assert.assertEquals(0, cleared.size());
+            Assert.assertTrue(cleared.getClasses().isEmpty());
+        }
+    }
+
+    /*
+     * Con el almacen columnar las generaciones guardan las vistas, que no cambian al actualizar la instancia
+     */
+    @Test
+    void columnarGenerationsKeepTheirValues() {
+        TripleObjectIndex index = index(true);
+        Assert.assertTrue(index.getSegment("um", "trellis", "person") instanceof ClassColumnStore);
+        try (CacheSnapshot snapshot = index.pin()) {
+            // Cada lectura es una vista nueva: los atributos decodificados no se quedan en la generacion
+            Assert.assertNotSame(snapshot.getTripleObject("um", "trellis", "person", "p0"), snapshot.getTripleObject("um", "trellis", "person", "p0"));
+            for (int i = 0; i < 10; i++) {
+                index.put("um", "trellis", instance("person", "p" + i, "changed" + i));
+            }
+            for (int i = 0; i < 10; i++) {
+                Assert.assertEquals("name" + i, snapshot.getTripleObject("um", "trellis", "person", "p" + i).getAttributes().get("name"));
+                Assert.assertEquals("changed" + i, index.get("um", "trellis", "person", "p" + i).getAttributes().get("name"));
+            }
+        }
+    }
+
+    private static TripleObjectIndex index(boolean columnar) {
+        Map<String, TripleObject> instances = new HashMap<>();
+        for (int i = 0; i < 10; i++) {
+            instances.put("p" + i, instance("person", "p" + i, "name" + i));
+        }
+        return TripleObjectIndex.of(Collections.singletonMap("um", Collections.singletonMap("trellis", Collections.singletonMap("person", instances))), columnar);
+    }
+
+    private static TripleObject instance(String className, String id, String name) {
+        LinkedTreeMap<String,Object> attributes = new LinkedTreeMap<>();
+        attributes.put("id", id);
+        attributes.put("name", name);
+        TripleObject to = new TripleObject("um", "trellis", className, attributes);
+        to.setId(id);
+        return to;
+    }
+}
@@ -0,0 +1,116 @@
+package es.um.asio.service.model.cache;
+
+import com.google.gson.internal.LinkedTreeMap;
+import es.um.asio.service.model.TripleObject;
+import org.junit.Assert;
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+import java.util.stream.Collectors;
+import java.util.stream.StreamSupport;
+
+class CacheViewTest {
+
+    private static final String[] NODES = {"um", "upm"};
+    private static final String[] TRIPLE_STORES = {"trellis", "wikibase"};
+
+    @Test
+    void viewsFilterByNodeTripleStoreAndClass() {
+        TripleObjectIndex index = index(20, 50);
+        Assert.assertEquals(2 * 2 * 20 * 50, index.view(null, null, null).size());
+        Assert.assertEquals(2 * 20 * 50, index.view("um", null, null).size());
+        Assert.assertEquals(20 * 50, index.view("um", "trellis", null).size());
+        Assert.assertEquals(50, index.view("um", "trellis", "class7").size());
+        Assert.assertTrue(index.view("um", "trellis", "unknown").isEmpty());
+        Assert.assertTrue(index.view("unknown", null, null).isEmpty());
+        Set<String> classes = new HashSet<>();
+        for (TripleObject to : index.view("upm", "wikibase", null)) {
+            Assert.assertTrue(to.getId().startsWith("upm.wikibase."));
+            classes.add(to.getClassName());
+        }
+        Assert.assertEquals(20, classes.size());
+        Assert.assertEquals(2 * 20, index.view("um", null, null).segments().size());
+        Assert.assertEquals(index.toNestedMap().get("um"), index.view("um", null, null).asNestedMap().get("um"));
+        Assert.assertNull(index.view("um", null, null).asNestedMap().get("upm"));
+    }
+
+    @Test
+    void parallelStreamsSeeEveryInstanceOnce() {
+        TripleObjectIndex index = index(13, 700);
+        // Igual con las clases en almacenes columnares
+        for (TripleObjectIndex tested : Arrays.asList(index, TripleObjectIndex.of(index.toNestedMap(), true))) {
+            CacheView view = tested.view(null, null, null);
+            List<String> ids = view.parallelStream().map(TripleObject::getId).collect(Collectors.toList());
+            Assert.assertEquals(2 * 2 * 13 * 700, ids.size());
+            Assert.assertEquals(2 * 2 * 13 * 700, new HashSet<>(ids).size());
+            Assert.assertEquals(ids.size(), view.size());
+            // Con una sola clase tambien se reparte el trabajo
+            Spliterator<TripleObject> spliterator = tested.view("um", "trellis", "class3").spliterator();
+            Spliterator<TripleObject> split = spliterator.trySplit();
+            Assert.assertNotNull(split);
+            Assert.assertEquals(700, StreamSupport.stream(spliterator, false).count() + StreamSupport.stream(split, false).count());
+        }
+        Assert.assertTrue(TripleObjectIndex.of(index.toNestedMap(), true).getSegment("um", "trellis", "class3") instanceof ClassColumnStore);
+    }
+
+    @Test
+    void viewsAreReadOnlyAndLive() {
+        TripleObjectIndex index = index(2, 10);
+        CacheView view = index.view("um", "trellis", null);
+        TripleObject to = index.get("um", "trellis", "class1", "um.trellis.class1.3");
+        Assert.assertTrue(view.contains(to));
+        Assert.assertFalse(index.view("um", "trellis", "class0").contains(to));
+        try {
+            view.add(to);
+            Assert.fail();
+        } catch (UnsupportedOperationException e) {
+            Assert.assertEquals(20, view.size());
+        }
+        try {
+            Iterator<TripleObject> it = view.iterator();
+            it.next();
+            it.remove();
+            Assert.fail();
+        } catch (UnsupportedOperationException e) {
+            Assert.assertEquals(20, view.size());
+        }
+        try {
+            view.segments().values().iterator().next().remove("um.trellis.class1.3");
+            Assert.fail();
+        } catch (UnsupportedOperationException e) {
+            Assert.assertEquals(20, view.size());
+        }
+        // La vista ve los cambios de la cache, tambien mientras se recorre
+        int seen = 0;
+        for (TripleObject ignored : view) {
+            if (seen++ == 0)
+                index.getOrCreateSegment("um", "trellis", "class1").put("new", instance("um", "trellis", "class1", "new"));
+        }
+        Assert.assertEquals(21, view.size());
+    }
+
+    private static TripleObjectIndex index(int classes, int instances) {
+        TripleObjectIndex index = new TripleObjectIndex();
+        for (String node : NODES) {
+            for (String tripleStore : TRIPLE_STORES) {
+                for (int c = 0; c < classes; c++) {
+                    Map<String, TripleObject> segment = index.getOrCreateSegment(node, tripleStore, "class" + c);
+                    for (int i = 0; i < instances; i++) {
+                        String id = String.format("%s.%s.class%d.%d", node, tripleStore, c, i);
+                        segment.put(id, instance(node, tripleStore, "class" + c, id));
+                    }
+                }
+            }
+        }
+        return index;
+    }
+
+    private static TripleObject instance(String node, String tripleStore, String className, String id) {
+        LinkedTreeMap<String,Object> attributes = new LinkedTreeMap<>();
+        attributes.put("id", id);
+        attributes.put("name", "name" + id.hashCode() % 50);
+        TripleObject to = new TripleObject(node, tripleStore, className, attributes);
+        to.setId(id);
+        return to;
+    }
+}
@@ -0,0 +1,206 @@
+package es.um.asio.service.model.cache;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.internal.LinkedTreeMap;
+import com.google.gson.reflect.TypeToken;
+import es.um.asio.service.config.DataSourcesConfiguration;
+import es.um.asio.service.model.TripleObject;
+import es.um.asio.service.model.TypedValue;
+import es.um.asio.service.model.stats.StatsHandler;
+import es.um.asio.service.service.impl.CacheServiceImp;
+import org.junit.Assert;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.*;
+
+class ClassColumnStoreTest {
+
+    @Test
+    void viewsDecodeTheStoredEntities() {
+        ClassColumnStore store = new ClassColumnStore("um", "trellis", "person");
+        List<TripleObject> persons = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            TripleObject to = person(i, 0);
+            persons.add(to);
+            store.put(to.getId(), to);
+        }
+        Assert.assertEquals(200, store.size());
+        for (TripleObject to : persons) {
+            TripleObject view = store.get(to.getId());
+            Assert.assertTrue(view instanceof TripleObjectView);
+            Assert.assertEquals(to.getLocalURI(), view.getLocalURI());
+            Assert.assertEquals(to.getLastModification(), view.getLastModification());
+            Assert.assertEquals(to.getClassName(), view.getClassName());
+            Assert.assertEquals(to.getAttributes(), view.getAttributes());
+            Assert.assertEquals(to, view);
+            Assert.assertEquals(to.hashCode(), view.hashCode());
+        }
+    }
+
+    @Test
+    void viewsFlattenAsTripleObjects() {
+        ClassColumnStore store = new ClassColumnStore("um", "trellis", "person");
+        for (int i = 0; i < 50; i++) {
+            TripleObject to = person(i, 0);
+            store.put(to.getId(), to);
+            to.buildFlattenAttributes();
+            // Sin decodificar los atributos, la vista aplana desde la fila
+            TripleObject view = store.get(to.getId());
+            Assert.assertEquals(to.getFlattenAttributes(), view.getFlattenAttributes());
+            for (String path : to.getFlattenAttributes().keySet()) {
+                Assert.assertEquals(to.getTypedValueFromFlattenAttributes(path), view.getTypedValueFromFlattenAttributes(path));
+                Assert.assertTrue(view.checkIfHasAttribute(path));
+            }
+            Assert.assertNull(view.getTypedValueFromFlattenAttributes("unknown"));
+        }
+        // Las cadenas repetidas se tipan una sola vez
+        TypedValue city1 = store.get("1").getTypedValueFromFlattenAttributes("city").get(0);
+        TypedValue city31 = store.get("31").getTypedValueFromFlattenAttributes("city").get(0);
+        Assert.assertSame(city1, city31);
+    }
+
+    @Test
+    void updatesAndRemovalsAreVisible() {
+        ClassColumnStore store = new ClassColumnStore("um", "trellis", "person");
+        for (int i = 0; i < 10; i++) {
+            store.put(String.valueOf(i), person(i, 0));
+        }
+        TripleObject before = store.get("3");
+        TripleObject previous = store.put("3", person(3, 1));
+        Assert.assertEquals(before, previous);
+        Assert.assertEquals(person(3, 1).getAttributes(), store.get("3").getAttributes());
+        // La vista anterior sigue leyendo los datos que tenia
+        Assert.assertEquals(person(3, 0).getAttributes(), before.getAttributes());
+
+        Assert.assertEquals(person(4, 0), store.remove("4"));
+        Assert.assertNull(store.remove("4"));
+        Assert.assertFalse(store.containsKey("4"));
+        Assert.assertNull(store.get("4"));
+        Assert.assertEquals(9, store.size());
+
+        Iterator<TripleObject> it = store.values().iterator();
+        while (it.hasNext()) {
+            if (it.next().getId().equals("5"))
+                it.remove();
+        }
+        Assert.assertEquals(8, store.size());
+        Set<String> ids = new HashSet<>();
+        for (Map.Entry<String, TripleObject> entry : store.entrySet()) {
+            Assert.assertEquals(entry.getKey(), entry.getValue().getId());
+            ids.add(entry.getKey());
+        }
+        Assert.assertEquals(new HashSet<>(Arrays.asList("0", "1", "2", "3", "6", "7", "8", "9")), ids);
+    }
+
+    @Test
+    void removedRowsAreCompacted() {
+        ClassColumnStore store = new ClassColumnStore("um", "trellis", "person");
+        for (int i = 0; i < 100; i++) {
+            store.put(String.valueOf(i), person(i, 0));
+        }
+        TripleObject old = store.get("7");
+        for (int version = 1; version <= 5; version++) {
+            for (int i = 0; i < 100; i++) {
+                store.put(String.valueOf(i), person(i, version));
+            }
+        }
+        Assert.assertEquals(100, store.size());
+        Assert.assertTrue(store.getRowCount() < 300);
+        for (int i = 0; i < 100; i++) {
+            Assert.assertEquals(person(i, 5).getAttributes(), store.get(String.valueOf(i)).getAttributes());
+        }
+        Assert.assertEquals(person(7, 0).getAttributes(), old.getAttributes());
+    }
+
+    @Test
+    void valuesKeepTheirType() {
+        LinkedTreeMap<String,Object> attributes = new LinkedTreeMap<>();
+        attributes.put("small", 1980d);
+        attributes.put("fraction", 0.25d);
+        attributes.put("negative", -3d);
+        attributes.put("negativeZero", -0d);
+        attributes.put("int", 7);
+        attributes.put("negativeInt", -7);
+        attributes.put("long", 1L << 40);
+        attributes.put("float", 1.5f);
+        attributes.put("flag", true);
+        attributes.put("none", null);
+        attributes.put("empty", new ArrayList<>());
+        attributes.put("nested", new ArrayList<>(Arrays.asList(Arrays.asList("a", "b"), "c")));
+        TripleObject to = new TripleObject("um", "trellis", "values", attributes);
+        to.setId("1");
+        ClassColumnStore store = ClassColumnStore.of("um", "trellis", "values", Collections.singletonMap("1", to));
+        LinkedTreeMap<String,Object> decoded = store.get("1").getAttributes();
+        Assert.assertEquals(new ArrayList<>(attributes.keySet()), new ArrayList<>(decoded.keySet()));
+        for (Map.Entry<String,Object> entry : attributes.entrySet()) {
+            Assert.assertEquals(entry.getKey(), entry.getValue(), decoded.get(entry.getKey()));
+            if (entry.getValue() != null)
+                Assert.assertEquals(entry.getKey(), entry.getValue().getClass(), decoded.get(entry.getKey()).getClass());
+        }
+        Assert.assertEquals(Arrays.asList("a", "b", "c"), store.get("1").getValueFromFlattenAttributes("nested"));
+    }
+
+    @Test
+    void viewsAreWrittenAsTripleObjects() {
+        Gson gson = new GsonBuilder().excludeFieldsWithoutExposeAnnotation().create();
+        TripleObject to = person(1, 0);
+        to.setLocalURI("http://localhost/1");
+        ClassColumnStore store = ClassColumnStore.of("um", "trellis", "person", Collections.singletonMap("1", to));
+        Assert.assertEquals(gson.toJson(to), gson.toJson(store.get("1")));
+        Map<String, TripleObject> instances = new HashMap<>(store);
+        String json = gson.toJson(instances, new TypeToken<Map<String, TripleObject>>(){}.getType());
+        Map<String, TripleObject> read = gson.fromJson(json, new TypeToken<Map<String, TripleObject>>(){}.getType());
+        Assert.assertEquals(to.getAttributes(), read.get("1").getAttributes());
+    }
+
+    @Test
+    void cacheKeepsClassesInColumnStores() {
+        DataSourcesConfiguration configuration = new DataSourcesConfiguration();
+        configuration.getCache().setColumnar(true);
+        CacheServiceImp columnar = new CacheServiceImp();
+        ReflectionTestUtils.setField(columnar, "dataSourcesConfiguration", configuration);
+        columnar.initialize();
+        CacheServiceImp objects = new CacheServiceImp();
+        objects.initialize();
+        for (int version = 0; version < 2; version++) {
+            for (int i = 0; i < 100; i++) {
+                columnar.addTripleObject("um", "trellis", person(i, version));
+                objects.addTripleObject("um", "trellis", person(i, version));
+            }
+        }
+        for (int i = 0; i < 100; i += 3) {
+            columnar.removeTripleObject("um", "trellis", person(i, 1));
+            objects.removeTripleObject("um", "trellis", person(i, 1));
+        }
+        Assert.assertTrue(columnar.getTripleObjects("um", "trellis", "person") instanceof ClassColumnStore);
+        Assert.assertEquals(objects.getTripleObjects("um", "trellis", "person"), columnar.getTripleObjects("um", "trellis", "person"));
+        StatsHandler expected = objects.getStatsHandler();
+        StatsHandler actual = columnar.getStatsHandler();
+        Assert.assertEquals(
+                new HashMap<>(expected.generateMoreRelevantAttributesMap("um", "trellis", "person")),
+                new HashMap<>(actual.generateMoreRelevantAttributesMap("um", "trellis", "person")));
+    }
+
+    private static TripleObject person(int i, int version) {
+        LinkedTreeMap<String,Object> attributes = new LinkedTreeMap<>();
+        attributes.put("id", String.valueOf(i));
+        attributes.put("name", "name" + ((i + version) % 70));
+        attributes.put("city", "city" + (i % 30));
+        attributes.put("year", (double) (1900 + (i % 120)));
+        attributes.put("birthDate", "19" + (10 + i % 80) + "-01-0" + (1 + i % 9));
+        attributes.put("active", i % 2 == 0);
+        if (i % 4 != 0)
+            attributes.put("emails", new ArrayList<>(Arrays.asList("mail" + i, "mail" + (i + version))));
+        LinkedTreeMap<String,Object> address = new LinkedTreeMap<>();
+        address.put("street", "street" + (i % 20));
+        address.put("number", (double) (i % 50 + version));
+        address.put("geo", new ArrayList<>(Arrays.asList(37.98d + i / 1000d, -1.13d)));
+        attributes.put("address", address);
+        TripleObject to = new TripleObject("um", "trellis", "person", attributes);
+        to.setId(String.valueOf(i));
+        to.setLastModification(1600000000000L + i);
+        return to;
+    }
+}
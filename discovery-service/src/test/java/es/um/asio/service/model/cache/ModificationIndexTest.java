@@ -0,0 +1,103 @@
+package es.um.asio.service.model.cache;
+
+import es.um.asio.service.model.TripleObject;
+import org.junit.Assert;
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+
+class ModificationIndexTest {
+
+    @Test
+    void modifiedSinceMatchesFilter() {
+        Random random = new Random(21);
+        Map<String, TripleObject> instances = new HashMap<>();
+        for (int i = 0; i < 1000; i++) {
+            // Muchas instancias comparten fecha
+            instances.put(String.valueOf(i), instance(String.valueOf(i), 1600000000000L + random.nextInt(200) * 1000L));
+        }
+        Collection<TripleObject> tos = instances.values();
+        ModificationIndex index = ModificationIndex.of(instances);
+        Assert.assertEquals(1000, index.size());
+        for (long since = 1599999999000L; since <= 1600000201000L; since += 500L) {
+            Map<String, TripleObject> expected = new HashMap<>();
+            for (TripleObject to : tos) {
+                if (to.getLastModification() >= since)
+                    expected.put(to.getId(), to);
+            }
+            Assert.assertEquals(expected, index.modifiedSinceById(since));
+        }
+        long previous = Long.MIN_VALUE;
+        for (TripleObject to : index.modifiedSince(0)) {
+            Assert.assertTrue(to.getLastModification() >= previous);
+            previous = to.getLastModification();
+        }
+        Assert.assertEquals(Long.valueOf(previous), index.getLastModification());
+    }
+
+    @Test
+    void updatesMoveInstances() {
+        Map<String, TripleObject> instances = new HashMap<>();
+        ModificationIndex index = new ModificationIndex(instances);
+        for (TripleObject to : Arrays.asList(instance("1", 1000L), instance("2", 2000L), instance("3", 3000L), instance("1", 4000L))) {
+            instances.put(to.getId(), to);
+            index.put(to);
+        }
+        Assert.assertEquals(3, index.size());
+        Assert.assertEquals(new HashSet<>(Arrays.asList("1", "3")), index.modifiedSinceById(2500L).keySet());
+        Assert.assertEquals(4000L, index.modifiedSinceById(2500L).get("1").getLastModification());
+        Assert.assertEquals(3, index.modifiedSince(0).size());
+        instances.remove("3");
+        index.remove("3");
+        index.remove("unknown");
+        index.remove(null);
+        Assert.assertEquals(Collections.singleton("1"), index.modifiedSinceById(2500L).keySet());
+        index.put(instance(null, 5000L));
+        Assert.assertEquals(2, index.size());
+        index.clear();
+        Assert.assertTrue(index.modifiedSince(0).isEmpty());
+        Assert.assertNull(index.getLastModification());
+    }
+
+    @Test
+    void indexIsKeptWithTheSegment() {
+        TripleObjectIndex triplesIndex = new TripleObjectIndex();
+        Assert.assertNull(triplesIndex.getModifications("um", "trellis", "person"));
+        triplesIndex.getOrCreateSegment("um", "trellis", "person");
+        Assert.assertEquals(0, triplesIndex.getModifications("um", "trellis", "person").size());
+
+        Map<String, Map<String, Map<String, Map<String, TripleObject>>>> nested = new HashMap<>();
+        Map<String, TripleObject> instances = new HashMap<>();
+        for (int i = 0; i < 10; i++) {
+            instances.put(String.valueOf(i), instance(String.valueOf(i), i * 1000L));
+        }
+        nested.computeIfAbsent("um", k -> new HashMap<>()).computeIfAbsent("trellis", k -> new HashMap<>()).put("person", instances);
+        ModificationIndex modifications = TripleObjectIndex.of(nested).getModifications("um", "trellis", "person");
+        Assert.assertEquals(new HashSet<>(Arrays.asList("7", "8", "9")), modifications.modifiedSinceById(7000L).keySet());
+    }
+
+    /*
+     * Con el almacen columnar el indice no guarda las vistas: cada consulta lee la fila actual
+     */
+    @Test
+    void columnarInstancesAreReadOnDemand() {
+        TripleObjectIndex triplesIndex = new TripleObjectIndex(true);
+        for (int i = 0; i < 10; i++) {
+            triplesIndex.put("um", "trellis", instance(String.valueOf(i), i * 1000L));
+        }
+        ModificationIndex modifications = triplesIndex.getModifications("um", "trellis", "person");
+        TripleObject first = modifications.modifiedSinceById(7000L).get("8");
+        Assert.assertTrue(first instanceof TripleObjectView);
+        Assert.assertNotSame(first, modifications.modifiedSinceById(7000L).get("8"));
+        triplesIndex.put("um", "trellis", instance("8", 1000L));
+        Assert.assertEquals(new HashSet<>(Arrays.asList("7", "9")), modifications.modifiedSinceById(7000L).keySet());
+    }
+
+    private static TripleObject instance(String id, long lastModification) {
+        TripleObject to = new TripleObject();
+        to.setId(id);
+        to.setClassName("person");
+        to.setLastModification(lastModification);
+        return to;
+    }
+}
@@ -0,0 +1,136 @@
+package es.um.asio.service.model.cache;
+
+import org.junit.Assert;
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+
+class PersistentHashMapTest {
+
+    /*
+     * Operaciones aleatorias contra un HashMap: cada version es igual al modelo en su momento, y no cambia despues
+     */
+    @Test
+    void randomOperationsMatchHashMap() {
+        Random random = new Random(23);
+        PersistentHashMap<Integer, String> map = PersistentHashMap.empty();
+        Map<Integer, String> model = new HashMap<>();
+        List<PersistentHashMap<Integer, String>> versions = new ArrayList<>();
+        List<Map<Integer, String>> models = new ArrayList<>();
+        for (int i = 0; i < 20000; i++) {
+            int key = random.nextInt(3000);
+            if (random.nextInt(3) == 0) {
+                map = map.minus(key);
+                model.remove(key);
+            } else {
+                map = map.plus(key, "v" + i);
+                model.put(key, "v" + i);
+            }
+            if (i % 1000 == 0) {
+                versions.add(map);
+                models.add(new HashMap<>(model));
+            }
+        }
+        Assert.assertEquals(model.size(), map.size());
+        Assert.assertEquals(model, map);
+        Assert.assertEquals(model, new HashMap<>(map));
+        for (int v = 0; v < versions.size(); v++) {
+            Assert.assertEquals(models.get(v), versions.get(v));
+            Assert.assertEquals(models.get(v).size(), versions.get(v).size());
+        }
+    }
+
+    /*
+     * Claves con el mismo hash: se guardan juntas y se pueden quitar una a una
+     */
+    @Test
+    void collidingKeys() {
+        PersistentHashMap<Colliding, Integer> map = PersistentHashMap.empty();
+        for (int i = 0; i < 50; i++) {
+            map = map.plus(new Colliding(i, i % 3), i);
+        }
+        Assert.assertEquals(50, map.size());
+        for (int i = 0; i < 50; i++) {
+            Assert.assertEquals(Integer.valueOf(i), map.get(new Colliding(i, i % 3)));
+        }
+        PersistentHashMap<Colliding, Integer> full = map;
+        for (int i = 0; i < 50; i += 2) {
+            map = map.minus(new Colliding(i, i % 3));
+        }
+        Assert.assertEquals(25, map.size());
+        Assert.assertEquals(50, full.size());
+        Assert.assertNull(map.get(new Colliding(4, 1)));
+        Assert.assertEquals(Integer.valueOf(5), map.get(new Colliding(5, 2)));
+        for (int i = 1; i < 50; i += 2) {
+            map = map.minus(new Colliding(i, i % 3));
+        }
+        Assert.assertTrue(map.isEmpty());
+        Assert.assertSame(PersistentHashMap.empty(), map);
+    }
+
+    @Test
+    void builderMatchesPlus() {
+        Map<String, Integer> model = new HashMap<>();
+        PersistentHashMap<String, Integer> map = PersistentHashMap.empty();
+        for (int i = 0; i < 5000; i++) {
+            model.put("k" + i, i);
+            map = map.plus("k" + i, i);
+        }
+        PersistentHashMap<String, Integer> built = PersistentHashMap.of(model);
+        Assert.assertEquals(map, built);
+        Assert.assertEquals(5000, built.size());
+        // Cambiar lo construido no cambia el original
+        PersistentHashMap<String, Integer> changed = built.plus("k1", -1).minus("k2");
+        Assert.assertEquals(Integer.valueOf(1), built.get("k1"));
+        Assert.assertEquals(Integer.valueOf(2), built.get("k2"));
+        Assert.assertEquals(Integer.valueOf(-1), changed.get("k1"));
+        Assert.assertFalse(changed.containsKey("k2"));
+        PersistentHashMap.Builder<String, Integer> builder = new PersistentHashMap.Builder<>();
+        builder.put("a", 1).build();
+        try {
+            builder.put("b", 2);
+            Assert.fail();
+        } catch (IllegalStateException e) {
+            Assert.assertNotNull(e.getMessage());
+        }
+    }
+
+    @Test
+    void isReadOnly() {
+        PersistentHashMap<String, Integer> map = PersistentHashMap.<String, Integer>empty().plus("a", 1);
+        Assert.assertSame(map, map.minus("b"));
+        try {
+            map.put("b", 2);
+            Assert.fail();
+        } catch (UnsupportedOperationException e) {
+            Assert.assertEquals(1, map.size());
+        }
+        try {
+            map.entrySet().iterator().remove();
+            Assert.fail();
+        } catch (UnsupportedOperationException | IllegalStateException e) {
+            Assert.assertEquals(1, map.size());
+        }
+    }
+
+    private static final class Colliding {
+
+        private final int value;
+        private final int hash;
+
+        private Colliding(int value, int hash) {
+            this.value = value;
+            this.hash = hash;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Colliding && ((Colliding) o).value == value;
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
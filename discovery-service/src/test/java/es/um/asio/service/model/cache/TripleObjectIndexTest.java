@@ -0,0 +1,110 @@
+package es.um.asio.service.model.cache;
+
+import es.um.asio.service.model.TripleObject;
+import org.junit.Assert;
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+
+class TripleObjectIndexTest {
+
+    @Test
+    void keysAreInterned() {
+        ClassKey key = ClassKey.of("um", "trellis", "person");
+        Assert.assertSame(key, ClassKey.of("um", "trellis", "person"));
+        Assert.assertEquals(key, ClassKey.lookup("um", "trellis", "person"));
+        Assert.assertNotSame(key, ClassKey.lookup("um", "trellis", "person"));
+        Assert.assertNotEquals(key, ClassKey.of("um", "trellis", "project"));
+    }
+
+    @Test
+    void nestedMapRoundTrip() {
+        Map<String, Map<String, Map<String, Map<String, TripleObject>>>> nested = new HashMap<>();
+        nested.computeIfAbsent("um", k -> new HashMap<>()).computeIfAbsent("trellis", k -> new HashMap<>()).put("person", instances("person", 10));
+        nested.computeIfAbsent("um", k -> new HashMap<>()).computeIfAbsent("wikibase", k -> new HashMap<>()).put("project", instances("project", 5));
+        nested.computeIfAbsent("upm", k -> new HashMap<>()).computeIfAbsent("trellis", k -> new HashMap<>()).put("person", instances("person", 3));
+        nested.get("upm").get("trellis").get("person").put(null, null);
+
+        TripleObjectIndex index = TripleObjectIndex.of(nested);
+        Assert.assertEquals(18, index.size());
+        Assert.assertEquals(new HashSet<>(Arrays.asList("um", "upm")), index.getNodes());
+        Assert.assertEquals(new HashSet<>(Arrays.asList("trellis", "wikibase")), index.getTripleStores("um"));
+        Assert.assertEquals("3", index.get("um", "trellis", "person", "3").getId());
+        Assert.assertNull(index.get("um", "trellis", "project", "3"));
+        Assert.assertNull(index.get("um", "trellis", "person", null));
+        Assert.assertEquals(nested.get("um"), index.toNestedMap().get("um"));
+        Assert.assertEquals(3, index.toNestedMap().get("upm").get("trellis").get("person").size());
+    }
+
+    @Test
+    void segmentsAreCreatedOnce() {
+        TripleObjectIndex index = new TripleObjectIndex();
+        Assert.assertTrue(index.isEmpty());
+        Assert.assertNull(index.getSegment("um", "trellis", "person"));
+        Map<String, TripleObject> segment = index.getOrCreateSegment("um", "trellis", "person");
+        Assert.assertSame(segment, index.getOrCreateSegment("um", "trellis", "person"));
+        Assert.assertSame(segment, index.getSegment(ClassKey.of("um", "trellis", "person")));
+        Assert.assertFalse(segment instanceof ClassColumnStore);
+        // La representacion la decide el indice
+        Assert.assertTrue(new TripleObjectIndex(true).getOrCreateSegment("um", "trellis", "project") instanceof ClassColumnStore);
+    }
+
+    /*
+     * Las instancias modificadas desde una fecha en una generacion fijada son las de la generacion, aunque despues se
+     * cambien a otra fecha, se quiten o se añadan otras
+     */
+    @Test
+    void modifiedSinceReadsThePinnedGeneration() {
+        Random random = new Random(3);
+        TripleObjectIndex index = new TripleObjectIndex();
+        for (int i = 0; i < 200; i++) {
+            index.put("um", "trellis", instance(i, random.nextInt(1000)));
+        }
+        index.pin().close(); // Desde aqui hay generaciones y se anotan los cambios
+        List<CacheSnapshot> snapshots = new ArrayList<>();
+        for (int round = 0; round < 20; round++) {
+            snapshots.add(index.pin());
+            for (int change = 0; change < 30; change++) {
+                int i = random.nextInt(250);
+                if (random.nextInt(4) == 0)
+                    index.remove("um", "trellis", "person", String.valueOf(i));
+                else
+                    index.put("um", "trellis", instance(i, random.nextInt(1000)));
+            }
+            if (random.nextBoolean())
+                snapshots.remove(random.nextInt(snapshots.size())).close();
+            for (CacheSnapshot snapshot : snapshots) {
+                long since = random.nextInt(1000);
+                Map<String, TripleObject> expected = new HashMap<>();
+                for (TripleObject to : snapshot.getTripleObjects("um", "trellis", "person").values()) {
+                    if (to.getLastModification() >= since)
+                        expected.put(to.getId(), to);
+                }
+                Assert.assertEquals(expected, index.modifiedSince(snapshot, "um", "trellis", "person", since));
+            }
+        }
+        for (CacheSnapshot snapshot : snapshots) {
+            snapshot.close();
+        }
+        Assert.assertNull(index.modifiedSince(index.pin(), "um", "trellis", "project", 0));
+    }
+
+    private static TripleObject instance(int id, long lastModification) {
+        TripleObject to = new TripleObject();
+        to.setId(String.valueOf(id));
+        to.setClassName("person");
+        to.setLastModification(lastModification);
+        return to;
+    }
+
+    private static Map<String, TripleObject> instances(String className, int size) {
+        Map<String, TripleObject> instances = new HashMap<>();
+        for (int i = 0; i < size; i++) {
+            TripleObject to = new TripleObject();
+            to.setId(String.valueOf(i));
+            to.setClassName(className);
+            instances.put(to.getId(), to);
+        }
+        return instances;
+    }
+}
@@ -2,13 +2,16 @@ package es.um.asio.service.model.stats;
 
 import data.DataGenerator;
 import es.um.asio.service.model.TripleObject;
+import es.um.asio.service.util.HyperLogLog;
 import org.apache.commons.lang3.RandomStringUtils;
 import org.junit.Assert;
+import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.runner.RunWith;
 import org.springframework.test.context.junit4.SpringRunner;
 
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
@@ -40,6 +43,11 @@ class EntityStatsTest {
         }
     }
 
+    @AfterEach
+    public void tearDown() {
+        AttributeStats.configure(AttributeStats.Cardinality.EXACT, HyperLogLog.DEFAULT_PRECISION);
+    }
+
     @Test
     void addValue() {
         for (EntityStats es: entityStats) {
@@ -132,4 +140,56 @@ class EntityStatsTest {
             Assert.assertTrue(es.getObjValues().equals(objValues));
         }
     }
-}
\ No newline at end of file
+
+    @Test
+    void estimatedWeightsAreCloseToExactWeights() {
+        for (int precision : new int[]{10, HyperLogLog.DEFAULT_PRECISION}) {
+            float bound = 3 * 1.04f / (float) Math.sqrt(1 << precision);
+            AttributeStats.configure(AttributeStats.Cardinality.EXACT, precision);
+            // El mapa ordenado por valor no admite get, se copia
+            Map<String, Float> exact = new HashMap<>(buildPersonStats().generateMoreRelevantAttributesMap(null));
+            AttributeStats.configure(AttributeStats.Cardinality.HYPERLOGLOG, precision);
+            Map<String, Float> estimated = new HashMap<>(buildPersonStats().generateMoreRelevantAttributesMap(null));
+            Assert.assertEquals(exact.keySet(), estimated.keySet());
+            for (Map.Entry<String, Float> weight : exact.entrySet()) {
+                Assert.assertEquals(weight.getValue(), estimated.get(weight.getKey()), weight.getValue() * bound);
+            }
+        }
+    }
+
+    @Test
+    void estimatedStatsCanBeMerged() {
+        AttributeStats.configure(AttributeStats.Cardinality.HYPERLOGLOG, HyperLogLog.DEFAULT_PRECISION);
+        AttributeStats all = new AttributeStats("code");
+        AttributeStats first = new AttributeStats("code");
+        AttributeStats second = new AttributeStats("code");
+        for (int i = 0; i < 10000; i++) {
+            all.addValue("c" + (i % 7000));
+            ((i < 5000) ? first : second).addValue("c" + (i % 7000));
+        }
+        first.merge(second);
+        Assert.assertNull(first.getValues());
+        Assert.assertEquals(all.getCounter(), first.getCounter());
+        Assert.assertEquals(all.getCardinality(), first.getCardinality());
+        Assert.assertEquals(all.getRelativeImportanceRatio(), first.getRelativeImportanceRatio(), 0f);
+        AttributeStats.configure(AttributeStats.Cardinality.EXACT, HyperLogLog.DEFAULT_PRECISION);
+        try {
+            first.merge(new AttributeStats("code"));
+            Assert.fail();
+        } catch (IllegalArgumentException e) {
+            Assert.assertTrue(e.getMessage().contains("code"));
+        }
+    }
+
+    private static EntityStats buildPersonStats() {
+        EntityStats es = new EntityStats("person");
+        for (int i = 0; i < 30000; i++) {
+            es.addValue("code", "c" + i);
+            es.addValue("name", "name" + (i % 12000));
+            es.addValue("city", "city" + (i % 60));
+            es.addValue("year", 1900 + (i % 120));
+            es.addValue("score", i % 3000);
+        }
+        return es;
+    }
+}
@@ -1,14 +1,21 @@
 package es.um.asio.service.model.stats;
 
+import com.google.gson.internal.LinkedTreeMap;
 import data.DataGenerator;
 import es.um.asio.service.model.TripleObject;
+import es.um.asio.service.util.HyperLogLog;
 import org.junit.Assert;
+import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.runner.RunWith;
 import org.springframework.test.context.junit4.SpringRunner;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 @RunWith(SpringRunner.class)
 class StatsHandlerTest {
@@ -27,6 +34,11 @@ class StatsHandlerTest {
         }
     }
 
+    @AfterEach
+    public void tearDown() {
+        AttributeStats.configure(AttributeStats.Cardinality.EXACT, HyperLogLog.DEFAULT_PRECISION);
+    }
+
     @Test
     void addAttributes() {
         for (TripleObject to : tos) {
@@ -79,4 +91,205 @@ class StatsHandlerTest {
         statsHandler.setStats(statsHandler.getStats());
         Assert.assertFalse(statsHandler.isEmpty());
     }
-}
\ No newline at end of file
+
+    @Test
+    void removeAttributes() {
+        for (TripleObject to : tos) {
+            statsHandler.removeAttributes(to.getTripleStore().getNode().getNodeName(),to.getTripleStore().getName(),to);
+        }
+        Assert.assertTrue(statsHandler.isEmpty());
+    }
+
+    @Test
+    void incrementalUpdatesMatchRebuild() {
+        StatsHandler incremental = new StatsHandler();
+        List<TripleObject> current = new ArrayList<>();
+        for (int i = 0; i < 2000; i++) {
+            TripleObject to = person(i, 0);
+            incremental.addAttributes("um", "trellis", to);
+            current.add(to);
+        }
+        for (int i = 0; i < 2000; i += 3) { // Borrados
+            incremental.removeAttributes("um", "trellis", current.get(i));
+            current.set(i, null);
+        }
+        for (int i = 1; i < 2000; i += 3) { // Modificaciones
+            TripleObject to = person(i, 1);
+            incremental.updateAttributes("um", "trellis", current.get(i), to);
+            current.set(i, to);
+        }
+        StatsHandler rebuilt = new StatsHandler();
+        for (TripleObject to : current) {
+            if (to != null)
+                rebuilt.addAttributes("um", "trellis", to);
+        }
+        Assert.assertEquals(rebuilt.buildStats("um", "trellis", "person"), incremental.buildStats("um", "trellis", "person"));
+        Assert.assertEquals(new HashMap<>(rebuilt.generateMoreRelevantAttributesMap("um", "trellis", "person")),
+                new HashMap<>(incremental.generateMoreRelevantAttributesMap("um", "trellis", "person")));
+        Assert.assertFalse(incremental.isStale("um", "trellis", "person"));
+    }
+
+    /*
+     * Quitar instancias deja las mismas estadisticas que construir la clase con las que quedan, tambien con atributos
+     * cuyos valores restantes no son validos y objetos anidados vacios
+     */
+    @Test
+    void removalsKeepAttributesLikeBuildClass() {
+        StatsHandler incremental = new StatsHandler();
+        List<TripleObject> current = new ArrayList<>();
+        for (int i = 0; i < 500; i++) {
+            TripleObject to = person(i, 0);
+            to.getAttributes().put("nickname", (i % 10 == 0) ? "nick" + i : "");
+            Map<String,Object> extra = new LinkedTreeMap<>();
+            if (i % 10 == 0)
+                extra.put("code", "code" + i);
+            to.getAttributes().put("extra", extra);
+            incremental.addAttributes("um", "trellis", to);
+            current.add(to);
+        }
+        List<TripleObject> remaining = new ArrayList<>();
+        for (TripleObject to : current) {
+            if (Integer.parseInt(to.getId()) % 10 == 0)
+                incremental.removeAttributes("um", "trellis", to);
+            else
+                remaining.add(to);
+        }
+        EntityStats rebuilt = StatsHandler.buildClass("person", remaining);
+        EntityStats es = incremental.getAttributesMap("um", "trellis", "person");
+        Assert.assertTrue(rebuilt.getAttValues().containsKey("nickname"));
+        Assert.assertTrue(rebuilt.getObjValues().containsKey("extra"));
+        Assert.assertEquals(rebuilt.getAttValues().keySet(), es.getAttValues().keySet());
+        Assert.assertEquals(rebuilt.getObjValues().keySet(), es.getObjValues().keySet());
+        Assert.assertEquals(rebuilt.buildStats(), es.buildStats());
+        Assert.assertEquals(new HashMap<>(rebuilt.generateMoreRelevantAttributesMap(null)),
+                new HashMap<>(es.generateMoreRelevantAttributesMap(null)));
+
+        for (TripleObject to : remaining) {
+            incremental.removeAttributes("um", "trellis", to);
+        }
+        Assert.assertTrue(incremental.isEmpty());
+    }
+
+    /*
+     * Sin contar las repeticiones las exactas no guardan el mapa de repetidos, y la clase pasa a reconstruirse cuando se
+     * han quitado demasiados valores que no se han podido olvidar
+     */
+    @Test
+    void exactStatsWithoutRepeatsAreRebuiltWhenStale() {
+        AttributeStats.configure(AttributeStats.Cardinality.EXACT, HyperLogLog.DEFAULT_PRECISION, false);
+        StatsHandler handler = new StatsHandler();
+        List<TripleObject> current = new ArrayList<>();
+        for (int i = 0; i < 5000; i++) {
+            TripleObject to = person(i, 0);
+            handler.addAttributes("um", "trellis", to);
+            current.add(to);
+        }
+        AttributeStats city = handler.getAttributesMap("um", "trellis", "person").getAttValues().get("city");
+        Assert.assertFalse(city.isRepeatsCounted());
+        Assert.assertNull(city.repeated);
+        Assert.assertEquals(30, city.getCardinality());
+        while (!handler.isStale("um", "trellis", "person")) {
+            handler.removeAttributes("um", "trellis", current.remove(current.size() - 1));
+        }
+        Assert.assertTrue(current.size() > 4900);
+        handler.rebuildClass("um", "trellis", "person", current);
+        Assert.assertFalse(handler.isStale("um", "trellis", "person"));
+        Assert.assertEquals(current.size(), (long) handler.getAttributesMap("um", "trellis", "person").getAttValues().get("id").getCardinality());
+    }
+
+    @Test
+    void estimatedStatsAreRebuiltWhenStale() {
+        AttributeStats.configure(AttributeStats.Cardinality.HYPERLOGLOG, HyperLogLog.DEFAULT_PRECISION);
+        StatsHandler handler = new StatsHandler();
+        List<TripleObject> current = new ArrayList<>();
+        for (int i = 0; i < 5000; i++) {
+            TripleObject to = person(i, 0);
+            handler.addAttributes("um", "trellis", to);
+            current.add(to);
+        }
+        while (!handler.isStale("um", "trellis", "person")) {
+            handler.removeAttributes("um", "trellis", current.remove(current.size() - 1));
+        }
+        Assert.assertTrue(current.size() > 4500);
+        handler.rebuildClass("um", "trellis", "person", current);
+        Assert.assertFalse(handler.isStale("um", "trellis", "person"));
+        Assert.assertEquals(current.size(), (long) handler.getAttributesMap("um", "trellis", "person").getAttValues().get("id").getCardinality());
+        for (TripleObject to : current) {
+            handler.removeAttributes("um", "trellis", to);
+        }
+        Assert.assertTrue(handler.isEmpty());
+    }
+
+    @Test
+    void parallelBuildMatchesSequentialBuild() {
+        for (AttributeStats.Cardinality cardinality : AttributeStats.Cardinality.values()) {
+            AttributeStats.configure(cardinality, HyperLogLog.DEFAULT_PRECISION);
+            Map<String, Map<String, Map<String, Map<String, TripleObject>>>> triplesMap = new HashMap<>();
+            StatsHandler sequential = new StatsHandler();
+            for (int i = 0; i < 6000; i++) {
+                String node = (i % 5 == 0) ? "other" : "um";
+                TripleObject to = person(i, i % 2);
+                triplesMap.computeIfAbsent(node, k -> new HashMap<>())
+                        .computeIfAbsent("trellis", k -> new HashMap<>())
+                        .computeIfAbsent(to.getClassName(), k -> new HashMap<>())
+                        .put(to.getId(), to);
+                sequential.addAttributes(node, "trellis", to);
+            }
+            StatsHandler parallel = StatsHandler.build(triplesMap);
+            for (String node : Arrays.asList("um", "other")) {
+                Assert.assertEquals(sequential.buildStats(node, "trellis", "person"), parallel.buildStats(node, "trellis", "person"));
+                Assert.assertEquals(new HashMap<>(sequential.generateMoreRelevantAttributesMap(node, "trellis", "person")),
+                        new HashMap<>(parallel.generateMoreRelevantAttributesMap(node, "trellis", "person")));
+            }
+        }
+    }
+
+    @Test
+    void relevantAttributesAreMemoizedUntilStatsChange() {
+        StatsHandler handler = new StatsHandler();
+        for (int i = 0; i < 100; i++) {
+            handler.addAttributes("um", "trellis", person(i, 0));
+            handler.addAttributes("other", "trellis", person(i, 0));
+        }
+        Map<String, Float> weights = handler.generateMoreRelevantAttributesMap("um", "trellis", "person");
+        Map<String, Float> otherWeights = handler.generateMoreRelevantAttributesMap("other", "trellis", "person");
+        long hits = StatsHandler.getRelevantAttributesHits();
+        Assert.assertSame(weights, handler.generateMoreRelevantAttributesMap("um", "trellis", "person"));
+        Assert.assertEquals(hits + 1, StatsHandler.getRelevantAttributesHits());
+        float previous = Float.MAX_VALUE;
+        for (Map.Entry<String, Float> weight : weights.entrySet()) {
+            Assert.assertEquals(weight.getValue(), weights.get(weight.getKey()));
+            Assert.assertTrue(weight.getValue() <= previous);
+            previous = weight.getValue();
+        }
+
+        long version = handler.getVersion("um", "trellis", "person");
+        handler.addAttributes("um", "trellis", person(100, 0));
+        Assert.assertNotEquals(version, handler.getVersion("um", "trellis", "person"));
+        Assert.assertNotSame(weights, handler.generateMoreRelevantAttributesMap("um", "trellis", "person"));
+        Assert.assertSame(otherWeights, handler.generateMoreRelevantAttributesMap("other", "trellis", "person"));
+
+        handler.setStats(handler.getStats());
+        Assert.assertNotSame(otherWeights, handler.generateMoreRelevantAttributesMap("other", "trellis", "person"));
+        Assert.assertEquals(otherWeights, handler.generateMoreRelevantAttributesMap("other", "trellis", "person"));
+        handler.cleanStats();
+        Assert.assertNull(handler.generateMoreRelevantAttributesMap("um", "trellis", "person"));
+    }
+
+    private static TripleObject person(int i, int version) {
+        LinkedTreeMap<String,Object> attributes = new LinkedTreeMap<>();
+        attributes.put("id", String.valueOf(i));
+        attributes.put("name", "name" + ((i + version) % 700));
+        attributes.put("city", "city" + (i % 30));
+        attributes.put("year", 1900 + (i % 120));
+        if (i % 4 != 0)
+            attributes.put("emails", new ArrayList<>(Arrays.asList("mail" + i, "mail" + (i + version))));
+        Map<String,Object> address = new LinkedTreeMap<>();
+        address.put("street", "street" + (i % 200));
+        address.put("number", i % 50 + version);
+        attributes.put("address", address);
+        TripleObject to = new TripleObject("um", "trellis", "person", attributes);
+        to.setId(String.valueOf(i));
+        return to;
+    }
+}
@@ -0,0 +1,133 @@
+package es.um.asio.service.repository.redis;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonObject;
+import com.google.gson.internal.LinkedTreeMap;
+import com.google.gson.reflect.TypeToken;
+import es.um.asio.service.model.TripleObject;
+import org.junit.Assert;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+class RedisCodecTest {
+
+    private final Type type = new TypeToken<Map<String, TripleObject>>() {}.getType();
+    private Gson gson;
+    private Map<String, TripleObject> instances;
+
+    @BeforeEach
+    void setUp() {
+        gson = new GsonBuilder()
+                .excludeFieldsWithoutExposeAnnotation()
+                .create();
+        instances = new LinkedHashMap<>();
+        for (int i = 0; i < 50; i++) {
+            TripleObject to = instance(i);
+            instances.put(to.getId(), to);
+        }
+    }
+
+    /*
+     * Con cualquier formato y compresion se lee lo mismo que con el JSON de Gson
+     */
+    @Test
+    void roundTripWithEveryFormatAndCompression() {
+        Map<String, TripleObject> expected = gson.fromJson(gson.toJson(instances, type), type);
+        for (RedisCodec.Format format : RedisCodec.Format.values()) {
+            for (RedisCodec.Compression compression : RedisCodec.Compression.values()) {
+                String message = format + "/" + compression;
+                RedisCodec codec = new RedisCodec(format, compression);
+                byte[] value = codec.encode(gson, instances, type);
+                Assert.assertEquals(message, codec.hasHeader(), RedisCodec.hasHeader(value));
+                Map<String, TripleObject> read = codec.decode(gson, value, type);
+                Assert.assertEquals(message, expected.keySet(), read.keySet());
+                for (TripleObject to : expected.values()) {
+                    TripleObject readTo = read.get(to.getId());
+                    Assert.assertEquals(message, to.getLocalURI(), readTo.getLocalURI());
+                    Assert.assertEquals(message, to.getLastModification(), readTo.getLastModification());
+                    Assert.assertEquals(message, to.getClassName(), readTo.getClassName());
+                    Assert.assertEquals(message, to.getAttributes(), readTo.getAttributes());
+                    Assert.assertEquals(message, Double.class, readTo.getAttributes().get("year").getClass());
+                }
+            }
+        }
+    }
+
+    /*
+     * Un valor se lee con el formato de su cabecera, no con el configurado
+     */
+    @Test
+    void valuesAreReadWithTheFormatOfTheirHeader() {
+        byte[] value = new RedisCodec(RedisCodec.Format.JSON, RedisCodec.Compression.DEFLATE).encode(gson, instances, type);
+        Map<String, TripleObject> read = new RedisCodec(RedisCodec.Format.SMILE, RedisCodec.Compression.LZ4).decode(gson, value, type);
+        Assert.assertEquals(instances.keySet(), read.keySet());
+    }
+
+    /*
+     * Los valores escritos antes de los codecs (JSON sin cabecera) se siguen leyendo
+     */
+    @Test
+    void legacyJsonIsRead() {
+        JsonObject json = gson.fromJson(gson.toJson(instances), JsonObject.class);
+        byte[] value = json.toString().getBytes(StandardCharsets.UTF_8);
+        Assert.assertFalse(RedisCodec.hasHeader(value));
+        Map<String, TripleObject> read = new RedisCodec(RedisCodec.Format.CBOR, RedisCodec.Compression.NONE).decode(gson, value, type);
+        Assert.assertEquals(instances.keySet(), read.keySet());
+        Assert.assertEquals(instances.get("7").getAttributes().get("name"), read.get("7").getAttributes().get("name"));
+        Assert.assertNull(new RedisCodec(RedisCodec.Format.JSON, RedisCodec.Compression.NONE).decode(gson, null, type));
+    }
+
+    /*
+     * Con el codec por defecto (JSON sin comprimir) el valor es la cadena JSON, sin cabecera, y lo leen las versiones
+     * anteriores a los codecs
+     */
+    @Test
+    void defaultCodecWritesPlainJson() {
+        RedisCodec codec = new RedisCodec(RedisCodec.Format.JSON, RedisCodec.Compression.NONE);
+        Assert.assertFalse(codec.hasHeader());
+        byte[] value = codec.encode(gson, instances, type);
+        Assert.assertFalse(RedisCodec.hasHeader(value));
+        Map<String, TripleObject> read = gson.fromJson(new String(value, StandardCharsets.UTF_8), type);
+        Assert.assertEquals(instances.keySet(), read.keySet());
+        Assert.assertEquals(instances.get("7").getAttributes().get("name"), read.get("7").getAttributes().get("name"));
+        Map<String, TripleObject> decoded = new RedisCodec(RedisCodec.Format.SMILE, RedisCodec.Compression.LZ4).decode(gson, value, type);
+        Assert.assertEquals(instances.keySet(), decoded.keySet());
+        Assert.assertTrue(new RedisCodec(RedisCodec.Format.JSON, RedisCodec.Compression.DEFLATE).hasHeader());
+    }
+
+    @Test
+    void unknownFormatIsRejected() {
+        RedisCodec codec = new RedisCodec(RedisCodec.Format.JSON, RedisCodec.Compression.DEFLATE);
+        byte[] value = codec.encode(gson, instances, type);
+        value[RedisCodec.HEADER_SIZE - 2] = 99;
+        try {
+            codec.decode(gson, value, type);
+            Assert.fail();
+        } catch (IllegalArgumentException e) {
+            Assert.assertTrue(e.getMessage().contains("format"));
+        }
+    }
+
+    private static TripleObject instance(int i) {
+        LinkedTreeMap<String,Object> attributes = new LinkedTreeMap<>();
+        attributes.put("id", String.valueOf(i));
+        attributes.put("name", "Nombre Ñandú " + (i % 7));
+        attributes.put("year", (double) (1950 + i % 70));
+        attributes.put("score", i / 3d);
+        attributes.put("active", i % 2 == 0);
+        attributes.put("keywords", new ArrayList<>(Arrays.asList("k" + (i % 5), (double) i)));
+        LinkedTreeMap<String,Object> address = new LinkedTreeMap<>();
+        address.put("city", "city" + (i % 3));
+        attributes.put("address", address);
+        TripleObject to = new TripleObject("um", "trellis", "class", attributes);
+        to.setId(String.valueOf(i));
+        to.setLocalURI("http://localhost/class/" + i);
+        to.setLastModification(1600000000000L + i);
+        return to;
+    }
+}
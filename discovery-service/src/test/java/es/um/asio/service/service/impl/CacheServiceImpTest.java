@@ -1,7 +1,21 @@
 package es.um.asio.service.service.impl;
 
+import com.google.gson.internal.LinkedTreeMap;
+import es.um.asio.service.comparators.blocking.ClassLshIndex;
+import es.um.asio.service.comparators.blocking.MinHashLshIndex;
+import es.um.asio.service.model.TripleObject;
+import es.um.asio.service.model.cache.CacheSnapshot;
+import es.um.asio.service.model.cache.ClassKey;
+import es.um.asio.service.model.stats.StatsHandler;
+import org.junit.Assert;
+import org.junit.jupiter.api.Test;
 import org.junit.runner.RunWith;
 import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 @RunWith(SpringRunner.class)
 /*@SpringBootTest(classes={TestApplicationOld.class})*/
@@ -165,4 +179,222 @@ class CacheServiceImpTest {
     @Test
     void updateStats() {
     }*/
+
+    private static final int WRITERS = 4;
+    private static final int INSTANCES = 500;
+    private static final String[] CLASSES = {"person", "project", "organization"};
+
+    /*
+     * Varios escritores añaden, actualizan y borran instancias de las mismas clases mientras otros hilos las recorren:
+     * no se pierde ninguna escritura, los lectores no fallan y las estadisticas, que tambien se rehacen a la vez, son las
+     * de la cache final
+     */
+    @Test
+    void concurrentUpdatesAreNotLost() throws Exception {
+        CacheServiceImp cache = new CacheServiceImp();
+        cache.initialize();
+        ExecutorService executor = Executors.newFixedThreadPool(WRITERS + 2);
+        CountDownLatch start = new CountDownLatch(1);
+        AtomicBoolean writing = new AtomicBoolean(true);
+        List<Throwable> errors = new CopyOnWriteArrayList<>();
+        List<Future<?>> writers = new ArrayList<>();
+        for (int w = 0; w < WRITERS; w++) {
+            int writer = w;
+            writers.add(executor.submit(() -> {
+                await(start);
+                try {
+                    for (int i = 0; i < INSTANCES; i++) {
+                        for (String className : CLASSES) {
+                            cache.addTripleObject("um", "trellis", instance(className, writer, i, 0));
+                        }
+                    }
+                    for (int i = 0; i < INSTANCES; i++) {
+                        for (String className : CLASSES) {
+                            if (i % 5 == 0)
+                                cache.removeTripleObject("um", "trellis", instance(className, writer, i, 0));
+                            else
+                                cache.addTripleObject("um", "trellis", instance(className, writer, i, 1));
+                        }
+                    }
+                } catch (Throwable e) {
+                    errors.add(e);
+                }
+            }));
+        }
+        List<Future<?>> readers = new ArrayList<>();
+        for (int r = 0; r < 2; r++) {
+            readers.add(executor.submit(() -> {
+                await(start);
+                try {
+                    while (writing.get()) {
+                        for (String className : CLASSES) {
+                            Map<String, TripleObject> instances = cache.getTripleObjects("um", "trellis", className);
+                            if (instances != null) {
+                                for (Map.Entry<String, TripleObject> entry : instances.entrySet()) {
+                                    Assert.assertEquals(entry.getKey(), entry.getValue().getId());
+                                }
+                            }
+                        }
+                        cache.getAllTripleObjects("um", "trellis");
+                        cache.updateStats(); // Rehacer las estadisticas no pisa las de los escritores
+                        try (CacheSnapshot snapshot = cache.pinSnapshot()) { // La generacion fijada no cambia mientras se lee
+                            long size = snapshot.size();
+                            Thread.yield();
+                            Assert.assertEquals(size, snapshot.size());
+                        }
+                        cache.getTipleMapByNodeAndTripleStoreAndClassName("um", "trellis", null);
+                    }
+                } catch (Throwable e) {
+                    errors.add(e);
+                }
+            }));
+        }
+        start.countDown();
+        for (Future<?> writer : writers) {
+            writer.get(60, TimeUnit.SECONDS);
+        }
+        writing.set(false);
+        for (Future<?> reader : readers) {
+            reader.get(60, TimeUnit.SECONDS);
+        }
+        executor.shutdown();
+        Assert.assertTrue(errors.toString(), errors.isEmpty());
+
+        for (String className : CLASSES) {
+            Map<String, TripleObject> instances = cache.getTripleObjects("um", "trellis", className);
+            Assert.assertEquals(WRITERS * (INSTANCES - INSTANCES / 5), instances.size());
+            Assert.assertEquals(instances.keySet(), cache.getTripleObjectsModifiedSince("um", "trellis", className, 0).keySet());
+            for (int w = 0; w < WRITERS; w++) {
+                for (int i = 0; i < INSTANCES; i++) {
+                    TripleObject cached = cache.getTripleObject("um", "trellis", className, w + "-" + i);
+                    if (i % 5 == 0)
+                        Assert.assertNull(cached);
+                    else
+                        Assert.assertEquals(instance(className, w, i, 1).getAttributes(), cached.getAttributes());
+                }
+            }
+            StatsHandler rebuilt = StatsHandler.build(cache.getTriplesMap());
+            Assert.assertEquals(
+                    new HashMap<>(rebuilt.generateMoreRelevantAttributesMap("um", "trellis", className)),
+                    new HashMap<>(cache.getStatsHandler().generateMoreRelevantAttributesMap("um", "trellis", className)));
+        }
+        Assert.assertEquals(WRITERS * (INSTANCES - INSTANCES / 5) * CLASSES.length, cache.getAllTripleObjects("um", "trellis").size());
+        Assert.assertEquals(Collections.singleton("um"), cache.getAllNodes());
+        Assert.assertEquals(Collections.singleton("trellis"), cache.getAllTripleStoreByNode("um"));
+        Assert.assertTrue(cache.getTriplesIndex().getPinnedGenerations().isEmpty());
+        try (CacheSnapshot snapshot = cache.pinSnapshot()) {
+            Assert.assertEquals(cache.getTriplesIndex().size(), snapshot.size());
+        }
+    }
+
+    /*
+     * Las instancias modificadas desde una fecha salen del indice por fecha, que sigue a las actualizaciones y borrados
+     */
+    @Test
+    void modifiedSinceFollowsUpdates() {
+        CacheServiceImp cache = new CacheServiceImp();
+        cache.initialize();
+        Assert.assertNull(cache.getTripleObjectsModifiedSince("um", "trellis", "person", 0));
+        for (int i = 0; i < 10; i++) {
+            cache.addTripleObject("um", "trellis", instance("person", 0, i, 0));
+        }
+        long since = instance("person", 0, 7, 0).getLastModification();
+        Assert.assertEquals(new HashSet<>(Arrays.asList("0-7", "0-8", "0-9")), cache.getTripleObjectsModifiedSince("um", "trellis", "person", since).keySet());
+        cache.addTripleObject("um", "trellis", instance("person", 0, 2, 9000));
+        cache.removeTripleObject("um", "trellis", instance("person", 0, 8, 0));
+        Map<String, TripleObject> modified = cache.getTripleObjectsModifiedSince("um", "trellis", "person", since);
+        Assert.assertEquals(new HashSet<>(Arrays.asList("0-2", "0-7", "0-9")), modified.keySet());
+        Assert.assertEquals(instance("person", 0, 2, 9000).getAttributes(), modified.get("0-2").getAttributes());
+
+        // Con una generacion fijada se devuelven las instancias tal como estaban al fijarla
+        try (CacheSnapshot snapshot = cache.pinSnapshot()) {
+            cache.addTripleObject("um", "trellis", instance("person", 0, 9, 9000));
+            cache.addTripleObject("um", "trellis", instance("person", 0, 3, 9000));
+            cache.removeTripleObject("um", "trellis", instance("person", 0, 7, 0));
+            Map<String, TripleObject> pinned = cache.getTripleObjectsModifiedSince(snapshot, "um", "trellis", "person", since);
+            Assert.assertEquals(new HashSet<>(Arrays.asList("0-2", "0-7", "0-9")), pinned.keySet());
+            Assert.assertEquals(instance("person", 0, 9, 0).getAttributes(), pinned.get("0-9").getAttributes());
+            modified = cache.getTripleObjectsModifiedSince("um", "trellis", "person", since);
+        }
+
+        Map<String, Map<String, Map<String, Map<String, TripleObject>>>> loaded = cache.getTipleMapByNodeAndTripleStoreAndClassName(null, null, null);
+        CacheServiceImp reloaded = new CacheServiceImp();
+        reloaded.initialize();
+        reloaded.setTriplesMap(loaded);
+        Assert.assertEquals(modified.keySet(), reloaded.getTripleObjectsModifiedSince("um", "trellis", "person", since).keySet());
+    }
+
+    /*
+     * El indice LSH no se descarta al cambiar la clase: cada generacion fijada ve sus propias instancias, y con muchos
+     * cambios se reconstruye y olvida los que ya incluye
+     */
+    @Test
+    void lshIndexFollowsPinnedGenerations() {
+        CacheServiceImp cache = new CacheServiceImp();
+        cache.initialize();
+        for (int i = 0; i < 100; i++) {
+            cache.addTripleObject("um", "trellis", instance("person", 0, i, 0));
+        }
+        try (CacheSnapshot first = cache.pinSnapshot()) {
+            MinHashLshIndex base = cache.getLshIndex(first, "um", "trellis", "person", 16, 4, 3);
+            Assert.assertEquals(100, base.size());
+            Assert.assertSame(base, cache.getLshIndex(first, "um", "trellis", "person", 16, 4, 3));
+            cache.removeTripleObject("um", "trellis", instance("person", 0, 1, 0));
+            cache.addTripleObject("um", "trellis", instance("person", 1, 0, 0));
+            cache.addTripleObject("um", "trellis", instance("person", 0, 2, 7));
+            try (CacheSnapshot second = cache.pinSnapshot()) {
+                MinHashLshIndex changed = cache.getLshIndex(second, "um", "trellis", "person", 16, 4, 3);
+                Assert.assertEquals(100, changed.size());
+                TripleObject added = instance("person", 1, 0, 0);
+                Assert.assertTrue(ids(changed.query(added, 200)).contains("0-0"));
+                Assert.assertFalse(ids(changed.query(instance("person", 5, 1, 0), 200)).contains("0-1"));
+                Assert.assertEquals(instance("person", 0, 2, 7).getAttributes(), second.getTripleObject("um", "trellis", "person", "0-2").getAttributes());
+                // La generacion anterior sigue viendo la instancia quitada y no la añadida
+                MinHashLshIndex old = cache.getLshIndex(first, "um", "trellis", "person", 16, 4, 3);
+                Assert.assertTrue(ids(old.query(instance("person", 5, 1, 0), 200)).contains("0-1"));
+                Assert.assertFalse(ids(old.query(instance("person", 5, 0, 0), 200)).contains("1-0"));
+            }
+        }
+        for (int i = 0; i < 100; i++) {
+            cache.addTripleObject("um", "trellis", instance("person", 2, i, 0));
+        }
+        Assert.assertEquals(103, lshIndex(cache).getPendingChanges());
+        try (CacheSnapshot third = cache.pinSnapshot()) {
+            Assert.assertEquals(200, cache.getLshIndex(third, "um", "trellis", "person", 16, 4, 3).size());
+            Assert.assertEquals(0, lshIndex(cache).getPendingChanges());
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static ClassLshIndex lshIndex(CacheServiceImp cache) {
+        return ((Map<ClassKey, ClassLshIndex>) ReflectionTestUtils.getField(cache, "lshIndexes")).get(ClassKey.of("um", "trellis", "person"));
+    }
+
+    private static Set<String> ids(List<MinHashLshIndex.Candidate> candidates) {
+        Set<String> ids = new HashSet<>();
+        for (MinHashLshIndex.Candidate candidate : candidates) {
+            ids.add(candidate.getTripleObject().getId());
+        }
+        return ids;
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static TripleObject instance(String className, int writer, int i, int version) {
+        LinkedTreeMap<String,Object> attributes = new LinkedTreeMap<>();
+        attributes.put("id", writer + "-" + i);
+        attributes.put("name", "name" + ((i + version) % 40));
+        attributes.put("city", "city" + (i % 15));
+        attributes.put("version", (double) version);
+        TripleObject to = new TripleObject("um", "trellis", className, attributes);
+        to.setId(writer + "-" + i);
+        to.setLastModification(1600000000000L + i * 1000L + version);
+        return to;
+    }
 }
\ No newline at end of file
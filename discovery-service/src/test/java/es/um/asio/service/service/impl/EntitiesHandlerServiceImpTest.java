@@ -0,0 +1,135 @@
+package es.um.asio.service.service.impl;
+
+import com.google.gson.internal.LinkedTreeMap;
+import es.um.asio.service.comparators.blocking.MinHashLshIndex;
+import es.um.asio.service.comparators.entities.EntitySimilarityObj;
+import es.um.asio.service.config.DataSourcesConfiguration;
+import es.um.asio.service.model.SimilarityResult;
+import es.um.asio.service.model.TripleObject;
+import es.um.asio.service.model.cache.CacheSnapshot;
+import org.junit.Assert;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+class EntitiesHandlerServiceImpTest {
+
+    private static final int GROUPS = 40;
+    private static final String[] NAMES = {"daniel", "maria", "jose", "lucia", "pablo", "carmen", "javier", "elena"};
+    private static final String[] SURNAMES = {"ruiz", "lopez", "garcia", "martinez", "sanchez", "perez", "gomez", "diaz"};
+
+    /*
+     * Con un hilo o con varios se descartan las mismas entidades y se obtienen los mismos resultados, en el mismo orden
+     */
+    @Test
+    void parallelScoringMatchesSequential() {
+        CacheServiceImp cache = cache();
+        List<String> sequential = summary(service(cache, 1).findEntitiesLinksByNodeAndTripleStoreAndClass("um", "trellis", "person", false, null));
+        List<String> parallel = summary(service(cache, 8).findEntitiesLinksByNodeAndTripleStoreAndClass("um", "trellis", "person", false, null));
+        Assert.assertFalse(sequential.isEmpty());
+        Assert.assertEquals(sequential, parallel);
+    }
+
+    /*
+     * Una entidad encontrada como similitud automatica de otra anterior no tiene resultado propio
+     */
+    @Test
+    void automaticSimilaritiesAreNotSearchedAgain() {
+        Set<SimilarityResult> results = service(cache(), 8).findEntitiesLinksByNodeAndTripleStoreAndClass("um", "trellis", "person", false, null);
+        Set<String> found = new HashSet<>();
+        for (SimilarityResult result : results) {
+            Assert.assertFalse(result.getTripleObject().getId(), found.contains(result.getTripleObject().getId()));
+            for (EntitySimilarityObj eso : result.getAutomatic()) {
+                found.add(eso.getTripleObject().getId());
+            }
+        }
+        Assert.assertFalse(found.isEmpty());
+    }
+
+    /*
+     * Con agrupacion se obtiene un resultado por grupo, igual con uno o varios hilos, y los miembros ya agrupados no
+     * buscan candidatos
+     */
+    @Test
+    void clustersAreSearchedFromTheirRepresentative() {
+        CountingCache cache = cache();
+        EntitiesHandlerServiceImp sequential = service(cache, 1);
+        sequential.dataSourcesConfiguration.getSimilarity().getClustering().setEnabled(true);
+        List<String> clusters = summary(sequential.findEntitiesLinksByNodeAndTripleStoreAndClass("um", "trellis", "person", false, null));
+        Assert.assertTrue(cache.queries.get() < GROUPS * 3);
+        cache.queries.set(0);
+        EntitiesHandlerServiceImp parallel = service(cache, 8);
+        parallel.dataSourcesConfiguration.getSimilarity().getClustering().setEnabled(true);
+        Assert.assertEquals(clusters, summary(parallel.findEntitiesLinksByNodeAndTripleStoreAndClass("um", "trellis", "person", false, null)));
+        Assert.assertTrue(cache.queries.get() < GROUPS * 3);
+    }
+
+    private static EntitiesHandlerServiceImp service(CacheServiceImp cache, int parallelism) {
+        DataSourcesConfiguration configuration = new DataSourcesConfiguration();
+        DataSourcesConfiguration.Thresholds thresholds = new DataSourcesConfiguration.Thresholds();
+        thresholds.setAutomaticThreshold(0.9);
+        thresholds.setManualThreshold(0.6);
+        configuration.setThresholds(thresholds);
+        configuration.getSimilarity().getCandidates().setMode(DataSourcesConfiguration.Similarity.Candidates.Mode.LSH);
+        EntitiesHandlerServiceImp service = new EntitiesHandlerServiceImp();
+        ReflectionTestUtils.setField(service, "cache", cache);
+        ReflectionTestUtils.setField(service, "dataSourcesConfiguration", configuration);
+        ReflectionTestUtils.setField(service, "scoringPool", new ForkJoinPool(parallelism));
+        return service;
+    }
+
+    /*
+     * Grupos de tres personas casi iguales: las dos primeras son identicas y la tercera tiene otro año
+     */
+    private static CountingCache cache() {
+        CountingCache cache = new CountingCache();
+        cache.initialize();
+        for (int g = 0; g < GROUPS; g++) {
+            for (int v = 0; v < 3; v++) {
+                cache.addTripleObject("um", "trellis", person(g * 3 + v, g, v));
+            }
+        }
+        cache.generateEntityStats();
+        return cache;
+    }
+
+    /*
+     * Cuenta las busquedas de candidatos: cada entidad que busca pide el indice LSH de su clase una vez
+     */
+    private static class CountingCache extends CacheServiceImp {
+        private final AtomicInteger queries = new AtomicInteger();
+
+        @Override
+        public MinHashLshIndex getLshIndex(CacheSnapshot snapshot, String node, String tripleStore, String className, int bands, int rows, int shingleSize) {
+            queries.incrementAndGet();
+            return super.getLshIndex(snapshot, node, tripleStore, className, bands, rows, shingleSize);
+        }
+    }
+
+    private static TripleObject person(int id, int group, int variant) {
+        LinkedTreeMap<String,Object> attributes = new LinkedTreeMap<>();
+        attributes.put("name", NAMES[group % NAMES.length] + " " + NAMES[(group / NAMES.length) % NAMES.length]);
+        attributes.put("surname", SURNAMES[group % SURNAMES.length] + " " + SURNAMES[(group / 3) % SURNAMES.length]);
+        attributes.put("year", String.valueOf(1950 + group + ((variant == 2) ? 1 : 0)));
+        TripleObject to = new TripleObject("um", "trellis", "person", attributes);
+        to.setId(String.valueOf(id));
+        to.buildFlattenAttributes();
+        return to;
+    }
+
+    private static List<String> summary(Set<SimilarityResult> results) {
+        List<String> summary = new ArrayList<>();
+        for (SimilarityResult result : results) {
+            summary.add(result.getTripleObject().getId() + " " + ids(result.getAutomatic()) + " " + ids(result.getManual()));
+        }
+        return summary;
+    }
+
+    private static List<String> ids(Set<EntitySimilarityObj> similarities) {
+        return similarities.stream().map(eso -> eso.getTripleObject().getId()).sorted().collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,84 @@
+package es.um.asio.service.util;
+
+import org.junit.Assert;
+import org.junit.jupiter.api.Test;
+
+class HyperLogLogTest {
+
+    @Test
+    void smallCardinalitiesAreExact() {
+        HyperLogLog hll = new HyperLogLog();
+        for (int i = 0; i < 3000; i++) {
+            hll.add("value" + (i % 500));
+        }
+        Assert.assertTrue(hll.isSparse());
+        Assert.assertEquals(500, hll.cardinality());
+    }
+
+    @Test
+    void estimateIsWithinTheStandardError() {
+        for (int precision : new int[]{10, 14}) {
+            double bound = 3 * 1.04d / Math.sqrt(1 << precision);
+            for (int n : new int[]{2000, 20000, 200000}) {
+                HyperLogLog hll = new HyperLogLog(precision);
+                for (int i = 0; i < n; i++) {
+                    hll.add("value" + i);
+                    hll.add("value" + i);
+                }
+                Assert.assertFalse(hll.isSparse());
+                Assert.assertEquals(n, hll.cardinality(), n * bound);
+                Assert.assertEquals(1L << precision, hll.getMemoryBytes());
+            }
+        }
+    }
+
+    @Test
+    void valuesOfDifferentClassAreDistinct() {
+        HyperLogLog hll = new HyperLogLog();
+        hll.add(1);
+        hll.add(1L);
+        hll.add("1");
+        hll.add(1);
+        hll.add(null);
+        Assert.assertEquals(3, hll.cardinality());
+    }
+
+    @Test
+    void mergeIsTheSketchOfTheUnion() {
+        HyperLogLog all = new HyperLogLog();
+        HyperLogLog even = new HyperLogLog();
+        HyperLogLog odd = new HyperLogLog();
+        HyperLogLog small = new HyperLogLog();
+        for (int i = 0; i < 50000; i++) {
+            all.add(i);
+            if (i % 2 == 0)
+                even.add(i);
+            else
+                odd.add(i);
+            if (i < 100)
+                small.add(i);
+        }
+        even.merge(odd);
+        Assert.assertEquals(all.cardinality(), even.cardinality());
+        even.merge(small);
+        Assert.assertEquals(all.cardinality(), even.cardinality());
+        small.merge(all);
+        Assert.assertEquals(all.cardinality(), small.cardinality());
+    }
+
+    @Test
+    void invalidPrecision() {
+        try {
+            new HyperLogLog(HyperLogLog.MAX_PRECISION + 1);
+            Assert.fail();
+        } catch (IllegalArgumentException e) {
+            Assert.assertTrue(e.getMessage().contains("precision"));
+        }
+        try {
+            new HyperLogLog(10).merge(new HyperLogLog(12));
+            Assert.fail();
+        } catch (IllegalArgumentException e) {
+            Assert.assertTrue(e.getMessage().contains("precision"));
+        }
+    }
+}
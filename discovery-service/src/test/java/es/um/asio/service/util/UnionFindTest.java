@@ -0,0 +1,54 @@
+package es.um.asio.service.util;
+
+import org.junit.Assert;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+class UnionFindTest {
+
+    @Test
+    void unionIsTransitive() {
+        UnionFind<String> uf = new UnionFind<>();
+        uf.add("a");
+        uf.add("b");
+        uf.add("c");
+        uf.add("d");
+        Assert.assertTrue(uf.union("c", "b"));
+        Assert.assertTrue(uf.union("d", "c"));
+        Assert.assertFalse(uf.union("b", "d"));
+        Assert.assertEquals("b", uf.find("d"));
+        Assert.assertEquals("a", uf.find("a"));
+        Assert.assertNull(uf.find("e"));
+    }
+
+    @Test
+    void representativeIsTheFirstAdded() {
+        UnionFind<Integer> uf = new UnionFind<>();
+        for (int i = 0; i < 100; i++) {
+            uf.add(i);
+        }
+        // Impares de mayor a menor: el representante sigue siendo el primero que se añadio
+        for (int i = 99; i > 1; i -= 2) {
+            uf.union(i, i - 2);
+        }
+        uf.union(98, 1);
+        Map<Integer, List<Integer>> groups = uf.groups();
+        Assert.assertEquals(Arrays.asList(0, 1, 2, 4), groups.keySet().stream().limit(4).collect(Collectors.toList()));
+        Assert.assertEquals(Integer.valueOf(1), uf.find(99));
+        Assert.assertEquals(Integer.valueOf(1), uf.find(98));
+        Assert.assertEquals(51, groups.get(1).size());
+    }
+
+    @Test
+    void unionAddsMissingElements() {
+        UnionFind<String> uf = new UnionFind<>();
+        uf.union("x", "y");
+        Assert.assertEquals(2, uf.size());
+        Assert.assertTrue(uf.contains("y"));
+        Assert.assertEquals(1, uf.groups().size());
+    }
+}